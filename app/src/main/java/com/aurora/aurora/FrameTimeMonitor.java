@@ -0,0 +1,133 @@
+package com.aurora.aurora;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time between the frames that the user interface draws, to see how much a file that is being
+ * processed slows the user interface down. The report is written to the log, so the frame times with and without
+ * {@link BuildConfig#ISOLATED_PROCESSING} can be compared on a real device. All methods have to be called on the
+ * main thread.
+ */
+class FrameTimeMonitor implements Choreographer.FrameCallback {
+    /**
+     * Tag for logging
+     */
+    private static final String LOG_TAG = FrameTimeMonitor.class.getSimpleName();
+
+    /**
+     * The time between two frames at 60 frames per second, in nanoseconds
+     */
+    private static final long FRAME_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    /**
+     * Frames that take longer than this number of frame periods are counted as janky, because at least one frame
+     * was skipped
+     */
+    private static final double JANK_FRAMES = 1.5;
+
+    /**
+     * The time between the frames that were drawn since the monitor started, in nanoseconds
+     */
+    private final List<Long> mFrameTimes = new ArrayList<>();
+
+    /**
+     * The time of the last frame, or 0 if no frame was drawn since the monitor started
+     */
+    private long mLastFrameNanos = 0;
+
+    /**
+     * Whether the monitor is measuring
+     */
+    private boolean mRunning = false;
+
+    /**
+     * Starts measuring the frame times. Nothing happens if the monitor is already measuring.
+     */
+    void start() {
+        if (mRunning) {
+            return;
+        }
+
+        mRunning = true;
+        mFrameTimes.clear();
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * Stops measuring the frame times and writes a report of them to the log. Nothing happens if the monitor is
+     * not measuring.
+     *
+     * @param what a description of what happened while the monitor was measuring
+     */
+    void stop(@NonNull final String what) {
+        if (!mRunning) {
+            return;
+        }
+
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+
+        Log.i(LOG_TAG, "Frames while " + what + " (isolated processing: " + BuildConfig.ISOLATED_PROCESSING
+                + "): " + getReport());
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos != 0) {
+            mFrameTimes.add(frameTimeNanos - mLastFrameNanos);
+        }
+        mLastFrameNanos = frameTimeNanos;
+
+        // A frame callback only runs once
+        if (mRunning) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Private helper method that summarises the measured frame times
+     *
+     * @return the number of frames, the number of janky frames and some percentiles of the frame times
+     */
+    private String getReport() {
+        if (mFrameTimes.isEmpty()) {
+            return "no frames";
+        }
+
+        List<Long> sorted = new ArrayList<>(mFrameTimes);
+        Collections.sort(sorted);
+
+        int janky = 0;
+        for (long frameTime : sorted) {
+            if (frameTime > JANK_FRAMES * FRAME_NANOS) {
+                janky++;
+            }
+        }
+
+        return String.format(Locale.US, "%d frames, %d janky, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                sorted.size(), janky, percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6,
+                percentile(sorted, 99) / 1e6, sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    /**
+     * Private helper method that gets a percentile of sorted frame times
+     *
+     * @param sorted     the frame times in ascending order, which is not empty
+     * @param percentile the percentile, between 0 and 100
+     * @return the frame time below which the given percentage of the frame times are
+     */
+    private static long percentile(@NonNull final List<Long> sorted, final int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+
+        return sorted.get(Math.max(0, Math.min(index, sorted.size() - 1)));
+    }
+}
@@ -1,6 +1,7 @@
 package com.aurora.aurora;
 
 import android.arch.lifecycle.MutableLiveData;
+import android.content.ClipData;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
@@ -14,7 +15,9 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.provider.OpenableColumns;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.design.widget.NavigationView;
+import android.support.design.widget.Snackbar;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.widget.DrawerLayout;
 import android.support.v7.app.ActionBarDrawerToggle;
@@ -29,13 +32,17 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.webkit.MimeTypeMap;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.aurora.auroralib.Constants;
 import com.aurora.internalservice.internalcache.CachedFileInfo;
 import com.aurora.kernel.AuroraCommunicator;
+import com.aurora.kernel.BatchFile;
+import com.aurora.kernel.BatchProgress;
 import com.aurora.kernel.ContextNullException;
 import com.aurora.kernel.Kernel;
+import com.aurora.kernel.event.ProcessingProgressEvent;
 import com.aurora.market.ui.MarketPluginListActivity;
 import com.aurora.plugin.InternalServices;
 import com.aurora.plugin.Plugin;
@@ -48,6 +55,7 @@ import java.util.List;
 import java.util.Objects;
 
 import io.reactivex.Observer;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 
 /**
@@ -86,6 +94,11 @@ public class MainActivity extends AppCompatActivity
      */
     private static final int DEVIDE_IN_HALF = 2;
 
+    /**
+     * The number of bytes in a kilobyte, to show how much of a file was read
+     */
+    private static final long BYTES_PER_KB = 1024;
+
     /**
      * Android view which is basically a scrollview, but efficiently
      * reuses the containers.
@@ -114,6 +127,16 @@ public class MainActivity extends AppCompatActivity
      */
     private List<CachedFileInfo> mCachedFileInfoList = new ArrayList<>();
 
+    /**
+     * Measures how smooth the user interface stays while a file is being processed
+     */
+    private final FrameTimeMonitor mFrameTimeMonitor = new FrameTimeMonitor();
+
+    /**
+     * The batch of files that is being imported, which needs to be disposed when the activity is destroyed
+     */
+    private Disposable mBatchDisposable = null;
+
 
     /**
      * {@inheritDoc}
@@ -222,23 +245,71 @@ public class MainActivity extends AppCompatActivity
             MutableLiveData<Boolean> mLoading = mAuroraCommunicator.getLoadingData();
             mLoading.observe(this, (Boolean isLoading) -> {
                 if (isLoading == null || !isLoading) {
+                    mFrameTimeMonitor.stop("processing a file");
                     findViewById(R.id.pb_extracting).setVisibility(View.GONE);
                     findViewById(R.id.nav_view).bringToFront();
                     ((DrawerLayout) findViewById(R.id.drawer_layout))
                             .setDrawerLockMode(DrawerLayout.LOCK_MODE_UNLOCKED);
                 } else {
                     // Show loading screen if it was visible before.
+                    mFrameTimeMonitor.start();
                     findViewById(R.id.pb_extracting).setVisibility(View.VISIBLE);
                     ((DrawerLayout) findViewById(R.id.drawer_layout))
                             .setDrawerLockMode(DrawerLayout.LOCK_MODE_LOCKED_CLOSED);
                 }
             });
+            mAuroraCommunicator.getProgressData().observe(this, this::showProgress);
         } catch (ContextNullException e) {
             Log.e(LOG_TAG,
                     "The kernel was not initialized with a valid android application context", e);
         }
     }
 
+    /**
+     * Shows how far the processing of the file that is being opened is. The bar is only shown when the total of the
+     * current phase is known, the phase itself is always shown.
+     *
+     * @param progress the last progress of the file, or null if no progress was reported yet
+     */
+    private void showProgress(@Nullable ProcessingProgressEvent progress) {
+        ProgressBar progressBar = findViewById(R.id.pb_extracting_progress);
+        TextView phaseView = findViewById(R.id.tv_extracting_phase);
+        if (progress == null) {
+            progressBar.setVisibility(View.INVISIBLE);
+            phaseView.setText("");
+            return;
+        }
+
+        if (progress.isDeterminate()) {
+            progressBar.setMax((int) progress.getTotal());
+            progressBar.setProgress((int) progress.getDone());
+            progressBar.setVisibility(View.VISIBLE);
+        } else {
+            progressBar.setVisibility(View.INVISIBLE);
+        }
+
+        switch (progress.getPhase()) {
+            case READING:
+                phaseView.setText(getString(R.string.progress_reading, progress.getDone() / BYTES_PER_KB));
+                break;
+            case PAGES:
+                phaseView.setText(getString(R.string.progress_pages, progress.getDone(), progress.getTotal()));
+                break;
+            case PARAGRAPHS:
+                phaseView.setText(getString(R.string.progress_paragraphs, progress.getDone(), progress.getTotal()));
+                break;
+            case IMAGES:
+                phaseView.setText(getString(R.string.progress_images, progress.getDone()));
+                break;
+            case ANNOTATION:
+                phaseView.setText(getString(R.string.progress_annotation, progress.getDone(), progress.getTotal()));
+                break;
+            default:
+                phaseView.setText("");
+                break;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -249,6 +320,17 @@ public class MainActivity extends AppCompatActivity
         refreshCachedFileInfoList();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDestroy() {
+        if (mBatchDisposable != null) {
+            mBatchDisposable.dispose();
+        }
+        super.onDestroy();
+    }
+
     /**
      * Refresh the list of info of the cached files
      */
@@ -318,17 +400,21 @@ public class MainActivity extends AppCompatActivity
     }
 
     /**
-     * Creates an intent to open the file manager.
+     * Creates an intent to open the file manager. Several files can be selected at once, which are then all
+     * imported with the same plugin. The documents are opened with a grant that can be persisted, so the jobs that
+     * process them can still read them after the process was killed.
      */
     protected void selectFile() {
         final String[] mimeTypes = {
                 "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
                 "text/plain",
                 "application/pdf"};
-        Intent intent = new Intent();
-        intent.setType("* / *");
-        intent.setAction(Intent.ACTION_GET_CONTENT);
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION);
         intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         if (intent.resolveActivity(getPackageManager()) != null) {
             startActivityForResult(intent, REQUEST_FILE_GET);
         }
@@ -344,9 +430,22 @@ public class MainActivity extends AppCompatActivity
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == REQUEST_FILE_GET && resultCode == RESULT_OK) {
-            Uri textFile = data.getData();
+            ClipData clipData = data.getClipData();
+            if (clipData != null && clipData.getItemCount() > 1) {
+                importFiles(clipData);
+                return;
+            }
+
+            // Some file choosers also put a single selected file in the clip data
+            Uri textFile = data.getData() == null && clipData != null ? clipData.getItemAt(0).getUri()
+                    : data.getData();
 
             try {
+                // The file is queued as a job, which may only run after the process was killed
+                if (textFile != null) {
+                    persistReadPermission(textFile);
+                }
+
                 if (textFile != null) {
                     Log.i("URI", textFile.toString());
                     String type = MimeTypeMap.getSingleton().getExtensionFromMimeType(
@@ -366,33 +465,25 @@ public class MainActivity extends AppCompatActivity
                     // Make inputstream reader for aurora communicator
                     InputStream read = getContentResolver().openInputStream(textFile);
 
-                    // TODO: create and call custom chooser here, and let it return the unique plugin name of the
-                    // plugin to open the file with (package name, e.g. "com.aurora.basicplugin")
-
-
-                    // Create intent to open file with a certain plugin
-                    Intent pluginAction = new Intent(Constants.PLUGIN_ACTION);
-                    pluginAction.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-                    pluginAction.setType("*/*");
+                    // Get a list of filled in Plugin objects
+                    List<Plugin> plugins = findPlugins();
 
-
-                    // Look for plugins that can answer the pluginAction
-                    PackageManager manager = getPackageManager();
-                    List<ResolveInfo> infos = manager.queryIntentActivities(pluginAction,
-                            PackageManager.MATCH_DEFAULT_ONLY);
-
-                    if (!infos.isEmpty()) {
-                        List<String> packageNames = new ArrayList<>();
-                        for (ResolveInfo info : infos) {
-                            Log.i(LOG_TAG,
-                                    "Found Plugin: " + info.activityInfo.packageName +
-                                            " - " + info.getIconResource());
-                            packageNames.add(info.activityInfo.packageName);
+                    if (!plugins.isEmpty()) {
+                        // Extract the file while the user picks a plugin
+                        InputStream prepare = fileName == null || type == null ? null
+                                : getContentResolver().openInputStream(textFile);
+                        if (prepare != null) {
+                            mAuroraCommunicator.prepareFile(textFile.toString(), fileName, type, prepare, plugins);
                         }
-                        // Get a list of filled in Plugin objects
-                        List<Plugin> plugins = getPlugins(packageNames);
+
                         // Show the chooser
-                        showPluginAdapterAlertDialog(plugins, textFile, fileName, type, read);
+                        showPluginAdapterAlertDialog(plugins, (Plugin selectedPlugin) -> {
+                            findViewById(R.id.pb_extracting).setVisibility(View.VISIBLE);
+                            ((DrawerLayout) findViewById(R.id.drawer_layout))
+                                    .setDrawerLockMode(DrawerLayout.LOCK_MODE_LOCKED_CLOSED);
+                            mAuroraCommunicator.openFileWithPlugin(textFile.toString(), fileName, type, read,
+                                    selectedPlugin);
+                        });
 
                     } else {
                         Log.i(LOG_TAG, "NO PLUGINS FOUND");
@@ -410,6 +501,124 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    /**
+     * Private helper method that keeps the permission to read a document after the process was killed, so the job
+     * that processes it can still read it when it is resumed. Documents that were not picked with
+     * {@link #selectFile()}, such as files opened from a file explorer, cannot keep their permission and can only be
+     * read as long as the app runs.
+     *
+     * @param uri the uri of the document
+     */
+    private void persistReadPermission(@NonNull final Uri uri) {
+        try {
+            getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e) {
+            Log.w(LOG_TAG, "The permission to read " + uri + " cannot be kept", e);
+        }
+    }
+
+    /**
+     * Imports all selected files with the one plugin the user picks. The files are processed in the background and
+     * the progress of the whole batch is shown, so a file that fails does not stop the other ones.
+     *
+     * @param clipData the uris of the selected files
+     */
+    private void importFiles(ClipData clipData) {
+        List<BatchFile> files = new ArrayList<>();
+        for (int i = 0; i < clipData.getItemCount(); i++) {
+            Uri uri = clipData.getItemAt(i).getUri();
+            if (uri != null) {
+                persistReadPermission(uri);
+            }
+            String fileName = uri == null ? null : getFileName(uri);
+            String type = uri == null ? null : MimeTypeMap.getSingleton().getExtensionFromMimeType(
+                    getContentResolver().getType(uri));
+
+            if (fileName != null && type != null) {
+                files.add(new BatchFile(uri.toString(), fileName, type));
+            } else {
+                Log.w(LOG_TAG, "Skipping selected file " + uri + " because its name or type is unknown");
+            }
+        }
+
+        List<Plugin> plugins = findPlugins();
+        if (files.isEmpty()) {
+            showPopUpView("None of the selected files could be read, please select other files!");
+        } else if (plugins.isEmpty()) {
+            Log.i(LOG_TAG, "NO PLUGINS FOUND");
+            showPopUpView("No plugins were found");
+        } else {
+            showPluginAdapterAlertDialog(plugins, (Plugin selectedPlugin) -> importFiles(files, selectedPlugin));
+        }
+    }
+
+    /**
+     * Imports a batch of files with a plugin and keeps a snackbar up to date with the progress of the batch
+     *
+     * @param files          the files to import
+     * @param selectedPlugin the plugin that will open the files
+     */
+    private void importFiles(List<BatchFile> files, Plugin selectedPlugin) {
+        if (mBatchDisposable != null) {
+            mBatchDisposable.dispose();
+        }
+
+        Snackbar snackbar = Snackbar.make(mRecyclerView,
+                getString(R.string.batch_finished, 0, files.size(), 0), Snackbar.LENGTH_INDEFINITE);
+        snackbar.show();
+
+        mBatchDisposable = mAuroraCommunicator.importFiles(files, selectedPlugin)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe((BatchProgress progress) -> {
+                    if (progress.getLastFailure() != null) {
+                        Log.w(LOG_TAG, progress.getLastFileRef() + ": " + progress.getLastFailure());
+                    }
+
+                    if (progress.isFinished() && progress.getPending() > 0) {
+                        snackbar.setText(getString(R.string.batch_finished_pending, progress.getSucceeded(),
+                                progress.getTotal(), progress.getFailed(), progress.getPending()));
+                        snackbar.setDuration(Snackbar.LENGTH_LONG);
+                        snackbar.show();
+                    } else if (progress.isFinished()) {
+                        snackbar.setText(getString(R.string.batch_finished, progress.getSucceeded(),
+                                progress.getTotal(), progress.getFailed()));
+                        snackbar.setDuration(Snackbar.LENGTH_LONG);
+                        snackbar.show();
+                    } else {
+                        snackbar.setText(getString(R.string.batch_progress, progress.getSucceeded(),
+                                progress.getTotal(), progress.getFailed(), progress.getThroughput()));
+                    }
+                }, (Throwable e) -> {
+                    Log.e(LOG_TAG, "The files could not be imported", e);
+                    snackbar.dismiss();
+                });
+    }
+
+    /**
+     * Looks for the plugins that are installed on the device
+     *
+     * @return the plugins that were found, which is empty if there are none
+     */
+    private List<Plugin> findPlugins() {
+        // Create intent to open file with a certain plugin
+        Intent pluginAction = new Intent(Constants.PLUGIN_ACTION);
+        pluginAction.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        pluginAction.setType("*/*");
+
+        // Look for plugins that can answer the pluginAction
+        List<ResolveInfo> infos = getPackageManager().queryIntentActivities(pluginAction,
+                PackageManager.MATCH_DEFAULT_ONLY);
+
+        List<String> packageNames = new ArrayList<>();
+        for (ResolveInfo info : infos) {
+            Log.i(LOG_TAG,
+                    "Found Plugin: " + info.activityInfo.packageName +
+                            " - " + info.getIconResource());
+            packageNames.add(info.activityInfo.packageName);
+        }
+        return getPlugins(packageNames);
+    }
+
     /**
      * Get all plugins on device and their info form their packageNames
      *
@@ -477,13 +686,9 @@ public class MainActivity extends AppCompatActivity
      * Shows the plugin picker dialog.
      *
      * @param plugins  The plugins to be offered in the chooser dialog
-     * @param textFile The exact uri of the file to be opened
-     * @param fileName The name of the file to be opened
-     * @param type     The MIME type of the file to be opened
-     * @param readFile An InputStream to the read file
+     * @param listener The listener that is called with the selected plugin
      */
-    private void showPluginAdapterAlertDialog(List<Plugin> plugins, Uri textFile, String fileName, String type,
-                                              InputStream readFile) {
+    private void showPluginAdapterAlertDialog(List<Plugin> plugins, PluginSelectedListener listener) {
 
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         // Set title value.
@@ -494,16 +699,14 @@ public class MainActivity extends AppCompatActivity
             if (plugins.get(itemIndex).getUniqueName() != null) {
                 Plugin selectedPlugin = plugins.get(itemIndex);
                 Log.i(LOG_TAG, "Selected Plugin: " + selectedPlugin.getUniqueName());
-                findViewById(R.id.pb_extracting).setVisibility(View.VISIBLE);
-                ((DrawerLayout) findViewById(R.id.drawer_layout))
-                        .setDrawerLockMode(DrawerLayout.LOCK_MODE_LOCKED_CLOSED);
-                mAuroraCommunicator.openFileWithPlugin(textFile.toString(), fileName, type, readFile,
-                        selectedPlugin);
+                listener.onPluginSelected(selectedPlugin);
                 dialogInterface.cancel();
             }
         });
 
+        // The file that was extracted while the user picked a plugin is not needed if no plugin was picked
         builder.setCancelable(true);
+        builder.setOnCancelListener((DialogInterface dialogInterface) -> mAuroraCommunicator.cancelPreparedFile());
         AlertDialog dialog = builder.create();
         Objects.requireNonNull(dialog.getWindow()).setBackgroundDrawable(getDrawable(R.drawable.inset_dialog));
         dialog.show();
@@ -614,4 +817,16 @@ public class MainActivity extends AppCompatActivity
         // Create and show the pop-up
         alertDialogBuilder.create().show();
     }
+
+    /**
+     * Listener for the plugin that is picked in the plugin chooser dialog
+     */
+    private interface PluginSelectedListener {
+        /**
+         * Called when the user picked a plugin
+         *
+         * @param selectedPlugin the plugin that was picked
+         */
+        void onPluginSelected(Plugin selectedPlugin);
+    }
 }
@@ -0,0 +1,117 @@
+package com.aurora.internalservice;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Token that is handed to long running internal services, so they can stop early when nobody is waiting for
+ * their result anymore. The services check the token between pages, paragraphs or sections. Because the token is
+ * already handed to every step of the work, the steps also report their progress through it.
+ */
+public class CancellationToken {
+    /**
+     * Whether the work was cancelled
+     */
+    private volatile boolean mCancelled = false;
+
+    /**
+     * The actions that are run when the work is cancelled
+     */
+    private final List<Runnable> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The listener that is told how far the work is, or null if nobody is interested
+     */
+    private volatile ProgressListener mProgressListener = null;
+
+    /**
+     * Cancels the work this token was handed to. The work stops at the next point where it checks the token.
+     */
+    public void cancel() {
+        mCancelled = true;
+
+        for (Runnable listener : mListeners) {
+            if (mListeners.remove(listener)) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Adds an action that is run when the work is cancelled, for work that cannot check the token itself, like
+     * work that runs in another process. The action runs immediately if the work was already cancelled.
+     *
+     * @param listener the action to run on the thread that cancels the work
+     */
+    public void addListener(Runnable listener) {
+        mListeners.add(listener);
+
+        // The work may have been cancelled before the listener was added
+        if (mCancelled && mListeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Removes an action that was added with {@link #addListener(Runnable)}, when the work is done
+     *
+     * @param listener the action that should no longer run
+     */
+    public void removeListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return true if the work this token was handed to was cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Stops the current work if it was cancelled
+     *
+     * @throws CancellationException if the work was cancelled
+     */
+    public void throwIfCancelled() {
+        if (mCancelled) {
+            throw new CancellationException("The work was cancelled");
+        }
+    }
+
+    /**
+     * Sets the listener that is told how far the work this token was handed to is
+     *
+     * @param progressListener the listener, or null to stop reporting the progress
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+    /**
+     * Reports that the work enters a phase. Nothing happens if no progress listener was set.
+     *
+     * @param phase the phase that starts
+     */
+    public void startPhase(ProcessingPhase phase) {
+        ProgressListener listener = mProgressListener;
+        if (listener != null) {
+            listener.onPhaseStarted(phase);
+        }
+    }
+
+    /**
+     * Reports that a part of a phase is done. Nothing happens if no progress listener was set.
+     *
+     * @param phase the phase the work is in
+     * @param done  the number of parts of the phase that are done
+     * @param total the total number of parts of the phase, or a number below 1 if the total is not known
+     */
+    public void reportProgress(ProcessingPhase phase, long done, long total) {
+        ProgressListener listener = mProgressListener;
+        if (listener != null) {
+            listener.onProgress(phase, done, total);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.aurora.internalservice;
+
+/**
+ * The phases an internal service goes through while it processes a document. The phases are reported to a
+ * {@link ProgressListener} through the {@link CancellationToken} of the work, so the user can see how far the
+ * processing is and the time spent in every phase can be measured.
+ */
+public enum ProcessingPhase {
+    /**
+     * The bytes of the document are read, the total number of bytes is usually not known
+     */
+    READING,
+    /**
+     * The pages of a PDF document are parsed
+     */
+    PAGES,
+    /**
+     * The paragraphs of a text or docx document are split into sections
+     */
+    PARAGRAPHS,
+    /**
+     * The images of a document are encoded
+     */
+    IMAGES,
+    /**
+     * The sections of the extracted text are annotated by the NLP pipeline
+     */
+    ANNOTATION
+}
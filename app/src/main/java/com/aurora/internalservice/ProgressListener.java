@@ -0,0 +1,23 @@
+package com.aurora.internalservice;
+
+/**
+ * Listener that is told how far an internal service is with a document. It is set on the {@link CancellationToken}
+ * of the work, and it is called on the thread that does the work, so it should return quickly.
+ */
+public interface ProgressListener {
+    /**
+     * Called when the work enters a phase, before anything of that phase is done
+     *
+     * @param phase the phase that starts
+     */
+    void onPhaseStarted(ProcessingPhase phase);
+
+    /**
+     * Called when a part of a phase is done
+     *
+     * @param phase the phase the work is in
+     * @param done  the number of parts of the phase that are done, like pages, paragraphs, bytes or sections
+     * @param total the total number of parts of the phase, or a number below 1 if the total is not known
+     */
+    void onProgress(ProcessingPhase phase, long done, long total);
+}
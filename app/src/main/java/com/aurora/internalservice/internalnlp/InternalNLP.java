@@ -4,7 +4,9 @@ import android.util.Log;
 
 import com.aurora.auroralib.ExtractedText;
 import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 import com.aurora.internalservice.InternalService;
+import com.aurora.internalservice.ProcessingPhase;
 import com.aurora.plugin.InternalServices;
 
 import org.apache.commons.lang3.NotImplementedException;
@@ -40,8 +42,11 @@ public class InternalNLP implements InternalService {
     /** Id of the pos annotator in the basicAnnotators */
     private static final int POS = 2;
 
-    /** Static list of 3 default annotators that will only be loaded at most once */
-    private static final List<Annotator> sBasicAnnotators = new ArrayList<>();
+    /**
+     * Static list of 3 default annotators that are loaded when they are first needed, or null if they are not
+     * loaded. They are shared by all pipelines, and can be unloaded when the app runs low on memory.
+     */
+    private static List<Annotator> sBasicAnnotators = null;
 
     /** The CoreNLP annotation pipeline */
     private AnnotationPipeline mAnnotationPipeline;
@@ -53,16 +58,6 @@ public class InternalNLP implements InternalService {
     private final Set<java.lang.Class<? extends edu.stanford.nlp.ling.CoreAnnotation>>
             mSatisfiedDependencies = new HashSet<>();
 
-    static {
-        synchronized (sBasicAnnotators) {
-            sBasicAnnotators.add(new TokenizerAnnotator(false, "en"));
-            sBasicAnnotators.add(new WordsToSentencesAnnotator(false));
-            sBasicAnnotators.add(new POSTaggerAnnotator(false));
-
-            sBasicAnnotators.notifyAll();
-        }
-    }
-
     /**
      * Default constructor
      */
@@ -71,6 +66,35 @@ public class InternalNLP implements InternalService {
         mAnnotationSerializer = new ProtobufAnnotationSerializer(true);
     }
 
+    /**
+     * Private helper method that gets the default annotators, and loads them if they are not loaded
+     *
+     * @return the list of the default annotators
+     */
+    private static synchronized List<Annotator> getBasicAnnotators() {
+        if (sBasicAnnotators == null) {
+            List<Annotator> basicAnnotators = new ArrayList<>();
+            basicAnnotators.add(new TokenizerAnnotator(false, "en"));
+            basicAnnotators.add(new WordsToSentencesAnnotator(false));
+            basicAnnotators.add(new POSTaggerAnnotator(false));
+
+            sBasicAnnotators = basicAnnotators;
+        }
+
+        return sBasicAnnotators;
+    }
+
+    /**
+     * Unloads the default annotators, so their models can be garbage collected. Pipelines that were already built
+     * keep working, the annotators are loaded again when a new pipeline needs them.
+     */
+    public static synchronized void unloadModels() {
+        if (sBasicAnnotators != null) {
+            Log.i(CLASS_TAG, "Unloading the NLP models");
+            sBasicAnnotators = null;
+        }
+    }
+
     /**
      * Method that adds an Annotator to the AnnotationPipeline if it is supported
      *
@@ -79,13 +103,13 @@ public class InternalNLP implements InternalService {
     public void addAnnotator(InternalServices annotator) {
         switch (annotator) {
             case NLP_TOKENIZE:
-                addAnnotatorIfSatisfied(sBasicAnnotators.get(TOKENIZE), annotator);
+                addAnnotatorIfSatisfied(getBasicAnnotators().get(TOKENIZE), annotator);
                 break;
             case NLP_SSPLIT:
-                addAnnotatorIfSatisfied(sBasicAnnotators.get(SSPLIT), annotator);
+                addAnnotatorIfSatisfied(getBasicAnnotators().get(SSPLIT), annotator);
                 break;
             case NLP_POS:
-                addAnnotatorIfSatisfied(sBasicAnnotators.get(POS), annotator);
+                addAnnotatorIfSatisfied(getBasicAnnotators().get(POS), annotator);
                 break;
 
             default:
@@ -143,29 +167,67 @@ public class InternalNLP implements InternalService {
      * @param extractedText ExtractedText object that should be annotated
      */
     public void annotate(ExtractedText extractedText) {
+        annotate(extractedText, new CancellationToken());
+    }
+
+    /**
+     * Add annotations to all text in the extractedText object, and stop early when the given token is cancelled.
+     * The token is checked before every section, and told how many sections are annotated.
+     *
+     * @param extractedText     ExtractedText object that should be annotated
+     * @param cancellationToken token that is checked before every section
+     * @throws java.util.concurrent.CancellationException if the annotation was cancelled
+     */
+    public void annotate(ExtractedText extractedText, CancellationToken cancellationToken) {
+
+        cancellationToken.startPhase(ProcessingPhase.ANNOTATION);
 
         // Title annotations
+        annotateTitle(extractedText);
+
+        // Section annotations
+        List<Section> sections = extractedText.getSections();
+        for (int i = 0; i < sections.size(); i++) {
+            cancellationToken.throwIfCancelled();
+
+            annotateSection(sections.get(i));
+            cancellationToken.reportProgress(ProcessingPhase.ANNOTATION, i + 1L, sections.size());
+        }
+    }
+
+    /**
+     * Add annotations to the title of the extractedText object. The pipeline does not keep state between texts,
+     * so this can be called from several threads at the same time for different texts.
+     *
+     * @param extractedText ExtractedText object of which the title should be annotated
+     */
+    public void annotateTitle(ExtractedText extractedText) {
         if (!extractedText.getTitle().isEmpty()) {
             Annotation annotatedTitle = new Annotation(extractedText.getTitle());
             mAnnotationPipeline.annotate(annotatedTitle);
             extractedText.setTitleAnnotationProto(mAnnotationSerializer.toProto(annotatedTitle));
         }
+    }
 
-        // Section annotations
-        for (Section section: extractedText.getSections()) {
-            // Section title annotations
-            if (!section.getTitle().isEmpty()) {
-                Annotation annotatedTitle = new Annotation(section.getTitle());
-                mAnnotationPipeline.annotate(annotatedTitle);
-                section.setTitleAnnotationProto(mAnnotationSerializer.toProto(annotatedTitle));
-            }
+    /**
+     * Add annotations to the title and body of a section. The pipeline does not keep state between texts, so this
+     * can be called from several threads at the same time for different sections.
+     *
+     * @param section the Section that should be annotated
+     */
+    public void annotateSection(Section section) {
+        // Section title annotations
+        if (!section.getTitle().isEmpty()) {
+            Annotation annotatedTitle = new Annotation(section.getTitle());
+            mAnnotationPipeline.annotate(annotatedTitle);
+            section.setTitleAnnotationProto(mAnnotationSerializer.toProto(annotatedTitle));
+        }
 
-            // Section body annotations
-            if (!section.getBody().isEmpty()) {
-                Annotation annotatedBody = new Annotation(section.getBody());
-                mAnnotationPipeline.annotate(annotatedBody);
-                section.setBodyAnnotationProto(mAnnotationSerializer.toProto(annotatedBody));
-            }
+        // Section body annotations
+        if (!section.getBody().isEmpty()) {
+            Annotation annotatedBody = new Annotation(section.getBody());
+            mAnnotationPipeline.annotate(annotatedBody);
+            section.setBodyAnnotationProto(mAnnotationSerializer.toProto(annotatedBody));
         }
     }
 }
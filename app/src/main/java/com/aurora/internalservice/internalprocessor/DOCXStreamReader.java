@@ -0,0 +1,980 @@
+package com.aurora.internalservice.internalprocessor;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.apache.poi.javax.xml.stream.XMLInputFactory;
+import org.apache.poi.javax.xml.stream.XMLStreamConstants;
+import org.apache.poi.javax.xml.stream.XMLStreamException;
+import org.apache.poi.javax.xml.stream.XMLStreamReader;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.openxml4j.opc.TargetMode;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.xwpf.usermodel.XWPFRelation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the body of a .docx file element by element in a single forward pass over word/document.xml, so only the
+ * paragraph, table or content control that is being read is kept in memory instead of the whole document. The
+ * elements are read with the same rules as the XWPFDocument of Apache POI, so the text of every element is the
+ * same as the text that POI gives. The images of a paragraph are only read from the file when they are asked for.
+ * <p>
+ * A .docx file is a zip file whose parts are not stored in a fixed order, so the stream of the file is first copied
+ * to a temporary file, from which the parts are read at random positions.
+ */
+final class DOCXStreamReader implements Closeable {
+    /**
+     * Returned by {@link #next()} when a paragraph was read
+     */
+    static final int PARAGRAPH = 0;
+
+    /**
+     * Returned by {@link #next()} when a table was read
+     */
+    static final int TABLE = 1;
+
+    /**
+     * Returned by {@link #next()} when a block level content control was read
+     */
+    static final int CONTENT_CONTROL = 2;
+
+    /**
+     * Returned by {@link #next()} when the body has no more elements
+     */
+    static final int END_DOCUMENT = -1;
+
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = DOCXStreamReader.class.getSimpleName();
+
+    /**
+     * Namespace of the elements and attributes of WordprocessingML
+     */
+    private static final String W = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    /**
+     * Namespace of the relationship ids that refer to other parts of the package
+     */
+    private static final String R = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    /**
+     * Namespace of the DrawingML pictures
+     */
+    private static final String PIC = "http://schemas.openxmlformats.org/drawingml/2006/picture";
+
+    /**
+     * Namespace of the DrawingML elements
+     */
+    private static final String A = "http://schemas.openxmlformats.org/drawingml/2006/main";
+
+    /**
+     * The temporary copy of the file
+     */
+    private final File mSpool;
+
+    /**
+     * The package of the file, which reads its parts from the temporary copy
+     */
+    private final OPCPackage mPackage;
+
+    /**
+     * The main document part, to which the relationship ids of the images refer
+     */
+    private final PackagePart mDocumentPart;
+
+    /**
+     * The stream of word/document.xml
+     */
+    private final InputStream mDocumentStream;
+
+    /**
+     * The reader of word/document.xml, which is on the w:body element or at the end of the last body element read
+     */
+    private final XMLStreamReader mReader;
+
+    /**
+     * The names of the styles of the document, by style id
+     */
+    private final Map<String, String> mStyleNames;
+
+    /**
+     * The paragraph that was read last, or null if the last element was not a paragraph
+     */
+    private Paragraph mParagraph = null;
+
+    /**
+     * The text of the table or content control that was read last
+     */
+    private String mText = null;
+
+    /**
+     * Creates a reader on the body of a document
+     *
+     * @param spool          the temporary copy of the file
+     * @param docxPackage    the package of the file
+     * @param documentPart   the main document part
+     * @param documentStream the stream of the main document part
+     * @param reader         the reader of the main document part, positioned on the w:body element
+     * @param styleNames     the names of the styles of the document, by style id
+     */
+    private DOCXStreamReader(File spool, OPCPackage docxPackage, PackagePart documentPart,
+                             InputStream documentStream, XMLStreamReader reader, Map<String, String> styleNames) {
+        mSpool = spool;
+        mPackage = docxPackage;
+        mDocumentPart = documentPart;
+        mDocumentStream = documentStream;
+        mReader = reader;
+        mStyleNames = styleNames;
+    }
+
+    /**
+     * Opens a .docx file and reads its styles, so the elements of its body can be read
+     *
+     * @param file InputStream to the file, which is read completely but not closed
+     * @return a reader that is positioned before the first element of the body
+     * @throws IOException when the file is not a .docx file or cannot be read
+     */
+    static DOCXStreamReader open(@NonNull InputStream file) throws IOException {
+        File spool = File.createTempFile("extract", ".docx");
+        OPCPackage docxPackage = null;
+        InputStream documentStream = null;
+        try {
+            try (OutputStream outputStream = new FileOutputStream(spool)) {
+                IOUtils.copy(file, outputStream);
+            }
+            docxPackage = OPCPackage.open(spool, PackageAccess.READ);
+            PackagePart documentPart = getDocumentPart(docxPackage);
+            Map<String, String> styleNames = readStyleNames(documentPart);
+
+            documentStream = documentPart.getInputStream();
+            XMLStreamReader reader = createInputFactory().createXMLStreamReader(documentStream);
+            if (!toElement(reader, "body")) {
+                throw new IOException("The document has no body");
+            }
+            return new DOCXStreamReader(spool, docxPackage, documentPart, documentStream, reader, styleNames);
+        } catch (InvalidFormatException | XMLStreamException | RuntimeException e) {
+            close(spool, docxPackage, documentStream);
+            throw new IOException("The file could not be opened as a docx", e);
+        } catch (IOException e) {
+            close(spool, docxPackage, documentStream);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next paragraph, table or content control of the body. Other elements, such as the section
+     * properties, are skipped.
+     *
+     * @return {@link #PARAGRAPH}, {@link #TABLE}, {@link #CONTENT_CONTROL} or {@link #END_DOCUMENT}
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    int next() throws XMLStreamException {
+        mParagraph = null;
+        mText = null;
+        while (nextChild(mReader)) {
+            if (isW("p")) {
+                mParagraph = readParagraph();
+                return PARAGRAPH;
+            } else if (isW("tbl")) {
+                mText = readTable();
+                return TABLE;
+            } else if (isW("sdt")) {
+                mText = readBlockContentControl();
+                return CONTENT_CONTROL;
+            }
+            skipElement(mReader);
+        }
+        return END_DOCUMENT;
+    }
+
+    /**
+     * @return the paragraph that was read last by {@link #next()}
+     */
+    Paragraph getParagraph() {
+        return mParagraph;
+    }
+
+    /**
+     * @return the text of the table or content control that was read last by {@link #next()}. The cells of a
+     * table row are separated by tabs, and every row ends with a newline.
+     */
+    String getText() {
+        return mText;
+    }
+
+    /**
+     * Reads an image that is embedded in the document
+     *
+     * @param relationshipId the relationship id of the image, as referred to by a picture in a run
+     * @return the data of the image, or null if the document does not contain the image
+     * @throws IOException when the image cannot be read
+     */
+    @Nullable
+    byte[] readPicture(@NonNull String relationshipId) throws IOException {
+        try {
+            PackageRelationship relationship = mDocumentPart.getRelationship(relationshipId);
+            if (relationship == null || relationship.getTargetMode() == TargetMode.EXTERNAL) {
+                return null;
+            }
+            PackagePart picturePart = mDocumentPart.getRelatedPart(relationship);
+            try (InputStream pictureStream = picturePart.getInputStream()) {
+                return IOUtils.toByteArray(pictureStream);
+            }
+        } catch (InvalidFormatException | IllegalArgumentException e) {
+            Log.e(CLASS_TAG, "The image " + relationshipId + " could not be found", e);
+            return null;
+        }
+    }
+
+    /**
+     * Closes the document and deletes its temporary copy
+     */
+    @Override
+    public void close() {
+        try {
+            mReader.close();
+        } catch (XMLStreamException e) {
+            Log.e(CLASS_TAG, "Failed to close the document", e);
+        }
+        close(mSpool, mPackage, mDocumentStream);
+    }
+
+    /**
+     * Private helper method that closes the parts of a document that are opened, and deletes its temporary copy
+     *
+     * @param spool          the temporary copy of the file
+     * @param docxPackage    the package of the file, or null if it was not opened
+     * @param documentStream the stream of the main document part, or null if it was not opened
+     */
+    private static void close(File spool, OPCPackage docxPackage, InputStream documentStream) {
+        if (documentStream != null) {
+            try {
+                documentStream.close();
+            } catch (IOException e) {
+                Log.e(CLASS_TAG, "Failed to close the document", e);
+            }
+        }
+        if (docxPackage != null) {
+            // The package is only read, so it is not saved when it is closed
+            docxPackage.revert();
+        }
+        if (!spool.delete()) {
+            Log.e(CLASS_TAG, "Failed to delete the temporary copy: " + spool);
+        }
+    }
+
+    /**
+     * @return a factory for readers that do not resolve DTDs or external entities
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Private helper method that finds the main document part of a package
+     *
+     * @param docxPackage the package of the file
+     * @return the part that contains word/document.xml
+     * @throws InvalidFormatException when the package has no main document part
+     */
+    private static PackagePart getDocumentPart(OPCPackage docxPackage) throws InvalidFormatException {
+        PackageRelationshipCollection relationships =
+                docxPackage.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (relationships.size() == 0) {
+            throw new InvalidFormatException("The package has no main document part");
+        }
+        PackagePart documentPart = docxPackage.getPart(relationships.getRelationship(0));
+        if (documentPart == null) {
+            throw new InvalidFormatException("The main document part is missing");
+        }
+        return documentPart;
+    }
+
+    /**
+     * Private helper method that reads the names of the styles from styles.xml
+     *
+     * @param documentPart the main document part
+     * @return the names of the styles by style id, which is empty if the document has no styles
+     * @throws InvalidFormatException when the styles cannot be found
+     * @throws IOException            when the styles cannot be read
+     * @throws XMLStreamException     when the styles are not well-formed
+     */
+    private static Map<String, String> readStyleNames(PackagePart documentPart)
+            throws InvalidFormatException, IOException, XMLStreamException {
+        Map<String, String> styleNames = new HashMap<>();
+        PackageRelationshipCollection relationships =
+                documentPart.getRelationshipsByType(XWPFRelation.STYLES.getRelation());
+        if (relationships.size() == 0) {
+            return styleNames;
+        }
+        PackagePart stylesPart = documentPart.getRelatedPart(relationships.getRelationship(0));
+
+        try (InputStream stylesStream = stylesPart.getInputStream()) {
+            XMLStreamReader reader = createInputFactory().createXMLStreamReader(stylesStream);
+            try {
+                String styleId = null;
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT || !W.equals(reader.getNamespaceURI())) {
+                        continue;
+                    }
+                    if ("style".equals(reader.getLocalName())) {
+                        styleId = reader.getAttributeValue(W, "styleId");
+                    } else if ("name".equals(reader.getLocalName()) && styleId != null) {
+                        styleNames.put(styleId, reader.getAttributeValue(W, "val"));
+                        styleId = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return styleNames;
+    }
+
+    /**
+     * Private helper method that moves a reader to the first element with a name in the WordprocessingML namespace
+     *
+     * @param reader    the reader of a part
+     * @param localName the local name of the element
+     * @return true if the reader is on the element, false if the part has no such element
+     * @throws XMLStreamException when the part is not well-formed
+     */
+    private static boolean toElement(XMLStreamReader reader, String localName) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && W.equals(reader.getNamespaceURI())
+                    && localName.equals(reader.getLocalName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private helper method that moves a reader to the next child of the element it is in
+     *
+     * @param reader the reader, which is on the start of an element or on the end of one of its children
+     * @return true if the reader is on the start of the next child, false if it is on the end of the element
+     * @throws XMLStreamException when the part is not well-formed
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private helper method that moves a reader past all children of the element it is on
+     *
+     * @param reader the reader, which is on the start of an element, and ends on the end of that element
+     * @throws XMLStreamException when the part is not well-formed
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @param localName the local name of an element
+     * @return true if the reader is on the start of the WordprocessingML element with this name
+     */
+    private boolean isW(String localName) {
+        return W.equals(mReader.getNamespaceURI()) && localName.equals(mReader.getLocalName());
+    }
+
+    /**
+     * @param localName the local name of an attribute
+     * @return the value of the WordprocessingML attribute of the current element, or null if it is not set
+     */
+    private String getW(String localName) {
+        return mReader.getAttributeValue(W, localName);
+    }
+
+    /**
+     * Private method that reads a w:p element with its style, its runs and its inline content controls
+     *
+     * @return the paragraph
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private Paragraph readParagraph() throws XMLStreamException {
+        Paragraph paragraph = new Paragraph();
+        while (nextChild(mReader)) {
+            if (isW("pPr")) {
+                while (nextChild(mReader)) {
+                    if (isW("pStyle")) {
+                        paragraph.mStyle = getW("val");
+                        paragraph.mStyleName = mStyleNames.get(paragraph.mStyle);
+                    }
+                    skipElement(mReader);
+                }
+            } else {
+                readRunContent(paragraph);
+            }
+        }
+        return paragraph;
+    }
+
+    /**
+     * Private method that reads an element of a paragraph that can contain runs. Hyperlinks, simple fields and
+     * tracked changes are read for their runs, smart tags like a paragraph. Elements that POI does not see as
+     * runs are skipped.
+     *
+     * @param paragraph the paragraph to which the runs are added
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private void readRunContent(Paragraph paragraph) throws XMLStreamException {
+        if (isW("r")) {
+            paragraph.addRun(readRun());
+        } else if (isW("sdt")) {
+            paragraph.mText.append(readInlineContentControl());
+        } else if (isW("smartTag")) {
+            while (nextChild(mReader)) {
+                readRunContent(paragraph);
+            }
+        } else if (isW("hyperlink") || isW("fldSimple") || isW("ins") || isW("del") || isW("moveFrom")
+                || isW("moveTo")) {
+            while (nextChild(mReader)) {
+                if (isW("r")) {
+                    paragraph.addRun(readRun());
+                } else {
+                    skipElement(mReader);
+                }
+            }
+        } else {
+            skipElement(mReader);
+        }
+    }
+
+    /**
+     * Private method that reads a w:r element with its text, its font size and the images of its drawings
+     *
+     * @return the run
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    //I suppress this warning because every kind of run content only takes a single line.
+    @java.lang.SuppressWarnings("squid:MethodCyclomaticComplexity")
+    private Run readRun() throws XMLStreamException {
+        Run run = new Run(getW("rsidDel") != null);
+        while (nextChild(mReader)) {
+            if (isW("t") || isW("delText")) {
+                run.mText.append(mReader.getElementText());
+            } else if (isW("tab") || isW("ptab")) {
+                run.mText.append('\t');
+                skipElement(mReader);
+            } else if (isW("br") || isW("cr")) {
+                run.mText.append('\n');
+                skipElement(mReader);
+            } else if (isW("footnoteReference") || isW("endnoteReference")) {
+                run.mText.append(isW("footnoteReference") ? "[footnoteRef:" : "[endnoteRef:")
+                        .append(getW("id")).append(']');
+                skipElement(mReader);
+            } else if (isW("fldChar")) {
+                readFieldChar(run);
+            } else if (isW("ruby")) {
+                readRuby(run);
+            } else if (isW("rPr")) {
+                readRunProperties(run);
+            } else if (isW("drawing") || isW("pict")) {
+                readPictures(run);
+            } else {
+                skipElement(mReader);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Private method that reads the font size from a w:rPr element
+     *
+     * @param run the run of the properties
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private void readRunProperties(Run run) throws XMLStreamException {
+        while (nextChild(mReader)) {
+            if (isW("sz")) {
+                // The size is given in half points
+                int halfPoints = parseInt(getW("val"), -1);
+                run.mFontSize = halfPoints < 0 ? -1 : halfPoints / 2;
+            }
+            skipElement(mReader);
+        }
+    }
+
+    /**
+     * Private method that reads a w:fldChar element, which shows the state of a check box of a form
+     *
+     * @param run the run of the field
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private void readFieldChar(Run run) throws XMLStreamException {
+        boolean begin = "begin".equals(getW("fldCharType"));
+        int depth = 1;
+        while (depth > 0 && mReader.hasNext()) {
+            int event = mReader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (begin && depth == 3 && isW("checkBox")) {
+                    run.mText.append(isCheckBoxOn() ? "|X|" : "|_|");
+                    depth--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Private method that reads the default state of a w:checkBox element of a form
+     *
+     * @return true if the check box is checked by default
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private boolean isCheckBoxOn() throws XMLStreamException {
+        boolean on = false;
+        while (nextChild(mReader)) {
+            if (isW("default")) {
+                String value = getW("val");
+                on = "1".equals(value) || "true".equals(value) || "on".equals(value);
+            }
+            skipElement(mReader);
+        }
+        return on;
+    }
+
+    /**
+     * Private method that reads the base text of a w:ruby element, without its phonetic guide
+     *
+     * @param run the run of the ruby
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private void readRuby(Run run) throws XMLStreamException {
+        while (nextChild(mReader)) {
+            if (isW("rubyBase")) {
+                while (nextChild(mReader)) {
+                    if (isW("r")) {
+                        run.mText.append(readRun().text());
+                    } else {
+                        skipElement(mReader);
+                    }
+                }
+            } else {
+                skipElement(mReader);
+            }
+        }
+    }
+
+    /**
+     * Private method that collects the relationship ids of the pictures in a w:drawing or w:pict element
+     *
+     * @param run the run of the drawing
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private void readPictures(Run run) throws XMLStreamException {
+        int depth = 1;
+        boolean inPicture = false;
+        int pictureDepth = 0;
+        while (depth > 0 && mReader.hasNext()) {
+            int event = mReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (!inPicture && PIC.equals(mReader.getNamespaceURI()) && "pic".equals(mReader.getLocalName())) {
+                    inPicture = true;
+                    pictureDepth = depth;
+                } else if (inPicture && A.equals(mReader.getNamespaceURI())
+                        && "blip".equals(mReader.getLocalName())) {
+                    String embed = mReader.getAttributeValue(R, "embed");
+                    if (embed != null) {
+                        run.mPictureIds.add(embed);
+                    }
+                    // Only the first image of a picture is used
+                    inPicture = false;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inPicture && depth == pictureDepth) {
+                    inPicture = false;
+                }
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Private method that reads the text of a w:sdt element inside a paragraph. Only the runs that are directly
+     * inside its content are read.
+     *
+     * @return the text of the content control
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readInlineContentControl() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (nextChild(mReader)) {
+            if (isW("sdtContent")) {
+                while (nextChild(mReader)) {
+                    if (isW("r")) {
+                        text.append(readRun().text());
+                    } else {
+                        skipElement(mReader);
+                    }
+                }
+            } else {
+                skipElement(mReader);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private method that reads the text of a w:sdt element of the body, a table cell or another content control.
+     * The paragraphs, tables and content controls in its content are separated by newlines.
+     *
+     * @return the text of the content control
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readBlockContentControl() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        // A paragraph, table or content control is followed by a newline, unless it is the last element
+        boolean newline = false;
+        while (nextChild(mReader)) {
+            if (!isW("sdtContent")) {
+                skipElement(mReader);
+                continue;
+            }
+            while (nextChild(mReader)) {
+                String element;
+                boolean block = true;
+                if (isW("p")) {
+                    element = readParagraph().runText();
+                } else if (isW("tbl")) {
+                    element = readTable();
+                } else if (isW("sdt")) {
+                    element = readBlockContentControl();
+                } else if (isW("r")) {
+                    element = readRun().text();
+                    block = false;
+                } else {
+                    skipElement(mReader);
+                    continue;
+                }
+                if (newline) {
+                    text.append('\n');
+                }
+                text.append(element);
+                newline = block;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private method that reads the text of a w:tbl element row by row. The cells of a row are separated by tabs,
+     * and every row ends with a newline.
+     *
+     * @return the text of the table
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readTable() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (nextChild(mReader)) {
+            if (!isW("tr")) {
+                skipElement(mReader);
+                continue;
+            }
+            boolean firstCell = true;
+            while (nextChild(mReader)) {
+                String cell;
+                if (isW("tc")) {
+                    cell = readCell();
+                } else if (isW("sdt")) {
+                    cell = readContentControlCell();
+                } else {
+                    skipElement(mReader);
+                    continue;
+                }
+                if (!firstCell) {
+                    text.append('\t');
+                }
+                text.append(cell);
+                firstCell = false;
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private method that reads the text of a w:tc element, including the text of nested tables. A paragraph or
+     * content control in the cell is followed by a tab and a table by a newline, unless it is the last element.
+     *
+     * @return the text of the cell
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readCell() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        Character separator = null;
+        boolean hasParagraph = false;
+        while (nextChild(mReader)) {
+            String element;
+            char next = '\t';
+            if (isW("p")) {
+                element = readParagraph().getText();
+                hasParagraph = true;
+            } else if (isW("tbl")) {
+                element = readNestedTable();
+                next = '\n';
+            } else if (isW("sdt")) {
+                element = readBlockContentControl();
+            } else {
+                skipElement(mReader);
+                continue;
+            }
+            if (separator != null) {
+                text.append(separator.charValue());
+            }
+            text.append(element);
+            separator = next;
+        }
+        if (!hasParagraph && separator != null) {
+            // POI adds an empty paragraph at the end of a cell without paragraphs
+            text.append(separator.charValue());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private method that reads the text of a w:tbl element inside a table cell. Like in POI, the text of its cells
+     * is not separated.
+     *
+     * @return the text of the table
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readNestedTable() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while (nextChild(mReader)) {
+            if (!isW("tr")) {
+                skipElement(mReader);
+                continue;
+            }
+            while (nextChild(mReader)) {
+                if (isW("tc")) {
+                    text.append(readCell());
+                } else {
+                    skipElement(mReader);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private method that reads all text of a w:sdt element that takes the place of cells in a table row. Its
+     * cells are separated by tabs, and its paragraphs by newlines.
+     *
+     * @return the text of the content control
+     * @throws XMLStreamException when the document is not well-formed
+     */
+    private String readContentControlCell() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int cells = 0;
+        int blocks = 0;
+        int depth = 1;
+        while (depth > 0 && mReader.hasNext()) {
+            int event = mReader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(mReader.getText());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (isW("tc") && cells++ > 0) {
+                    text.append('\t');
+                } else if ((isW("p") || isW("tbl") || isW("sdt")) && blocks++ > 0) {
+                    text.append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Private helper method that parses a number of an attribute
+     *
+     * @param value        the value of the attribute, or null
+     * @param defaultValue the number that is returned when the value is not a number
+     * @return the number
+     */
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * A paragraph of the document with its runs
+     */
+    static final class Paragraph {
+        /**
+         * The runs of the paragraph, including the runs in hyperlinks, fields and tracked changes
+         */
+        private final List<Run> mRuns = new ArrayList<>();
+
+        /**
+         * The text of the runs that are not deleted and of the inline content controls
+         */
+        private final StringBuilder mText = new StringBuilder();
+
+        /**
+         * The style id of the paragraph, or null if it has no style
+         */
+        private String mStyle = null;
+
+        /**
+         * The name of the style of the paragraph, or null if it is not known
+         */
+        private String mStyleName = null;
+
+        /**
+         * Private helper method that adds a run to the paragraph
+         *
+         * @param run the run that is added
+         */
+        private void addRun(Run run) {
+            mRuns.add(run);
+            if (!run.mDeleted) {
+                mText.append(run.text());
+            }
+        }
+
+        /**
+         * @return the runs of the paragraph, in the order of the document
+         */
+        List<Run> getRuns() {
+            return mRuns;
+        }
+
+        /**
+         * @return the text of the paragraph, including the text of inline content controls
+         */
+        String getText() {
+            return mText.toString();
+        }
+
+        /**
+         * @return the text of all runs of the paragraph, without the text of inline content controls
+         */
+        private String runText() {
+            StringBuilder text = new StringBuilder();
+            for (Run run : mRuns) {
+                text.append(run.text());
+            }
+            return text.toString();
+        }
+
+        /**
+         * @return the style id of the paragraph, or null if it has no style
+         */
+        String getStyle() {
+            return mStyle;
+        }
+
+        /**
+         * @return the name of the style of the paragraph as given in styles.xml, or null if it is not known
+         */
+        String getStyleName() {
+            return mStyleName;
+        }
+    }
+
+    /**
+     * A run of text with the same properties
+     */
+    static final class Run {
+        /**
+         * The text of the run, with tabs and newlines for its tabs and breaks
+         */
+        private final StringBuilder mText = new StringBuilder();
+
+        /**
+         * The relationship ids of the pictures in the drawings of the run
+         */
+        private final List<String> mPictureIds = new ArrayList<>();
+
+        /**
+         * Whether the run was marked as deleted
+         */
+        private final boolean mDeleted;
+
+        /**
+         * The font size of the run in points, or -1 if it is not set on the run itself
+         */
+        private int mFontSize = -1;
+
+        /**
+         * Creates an empty run
+         *
+         * @param deleted whether the run was marked as deleted
+         */
+        private Run(boolean deleted) {
+            mDeleted = deleted;
+        }
+
+        /**
+         * @return the text of the run
+         */
+        String text() {
+            return mText.toString();
+        }
+
+        /**
+         * @return the font size of the run in points, or -1 if it is not set on the run itself
+         */
+        int getFontSize() {
+            return mFontSize;
+        }
+
+        /**
+         * @return the relationship ids of the pictures of the run, which are read with
+         * {@link DOCXStreamReader#readPicture(String)}
+         */
+        List<String> getPictureIds() {
+            return mPictureIds;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.aurora.internalservice.internalprocessor;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+
+/**
+ * A part of a text that is emitted while the text is extracted with
+ * {@link TextExtractor#extractParts}. A part is either the header with the title of the text, or a section.
+ */
+public final class ExtractedPart {
+    /**
+     * The title of the text, or null if this part is a section
+     */
+    private final String mTitle;
+
+    /**
+     * The section, or null if this part is the header
+     */
+    private final Section mSection;
+
+    /**
+     * Creates a part
+     *
+     * @param title   the title of the text, or null if the part is a section
+     * @param section the section, or null if the part is the header
+     */
+    private ExtractedPart(@Nullable final String title, @Nullable final Section section) {
+        mTitle = title;
+        mSection = section;
+    }
+
+    /**
+     * Creates the header of a text
+     *
+     * @param title the title of the text
+     * @return the part with the title
+     */
+    @NonNull
+    public static ExtractedPart header(@NonNull final String title) {
+        return new ExtractedPart(title, null);
+    }
+
+    /**
+     * Creates a section of a text
+     *
+     * @param section the section
+     * @return the part with the section
+     */
+    @NonNull
+    public static ExtractedPart section(@NonNull final Section section) {
+        return new ExtractedPart(null, section);
+    }
+
+    /**
+     * @return true if this part is the header with the title of the text, false if it is a section
+     */
+    public boolean isHeader() {
+        return mSection == null;
+    }
+
+    /**
+     * @return the title of the text, or null if this part is a section
+     */
+    @Nullable
+    public String getTitle() {
+        return mTitle;
+    }
+
+    /**
+     * @return the section, or null if this part is the header
+     */
+    @Nullable
+    public Section getSection() {
+        return mSection;
+    }
+
+    /**
+     * Adds this part to a text that is built from the parts
+     *
+     * @param extractedText the text that is built
+     */
+    public void addTo(@NonNull final ExtractedText extractedText) {
+        if (mSection == null) {
+            extractedText.setTitle(mTitle);
+        } else {
+            extractedText.addSection(mSection);
+        }
+    }
+}
@@ -3,21 +3,41 @@ package com.aurora.internalservice.internalprocessor;
 import android.util.Log;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 import com.aurora.internalservice.InternalService;
+import com.aurora.internalservice.ProcessingPhase;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
 
 /**
  * Class that takes care of internal processing of file (such as text extraction)
  */
 public class InternalTextProcessor implements InternalService {
 
+    /**
+     * The extractor of pdf files, which interprets pages at the same time
+     */
+    private final TextExtractorPDF mPdfExtractor = new TextExtractorPDF();
+
     private Map<String, TextExtractor> fileFormatExtractorMap = createFileToExtractorMap();
 
+    /**
+     * Sets how many pages of a document are interpreted at the same time, for the file types that can do so
+     *
+     * @param parallelism the number of pages at the same time, 1 to interpret them on the extracting thread
+     */
+    public void setPageParallelism(int parallelism) {
+        mPdfExtractor.setParallelism(parallelism);
+    }
+
 
     /**
      * extracts text from a file using the right Extractor
@@ -34,16 +54,42 @@ public class InternalTextProcessor implements InternalService {
     public ExtractedText processFile(InputStream file, String fileUri, String fileRef, String type,
                                      boolean extractImages)
             throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        return processFile(file, fileUri, fileRef, type, extractImages, new CancellationToken());
+    }
+
+    /**
+     * extracts text from a file using the right Extractor, and stops early when the given token is cancelled.
+     * The number of bytes read from the file is reported to the token, as well as the progress of the extractor.
+     *
+     * @param file              the stream containing the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param type              the mimetype of the file
+     * @param extractImages     True if images also need to be extracted, false otherwise
+     * @param cancellationToken token that is checked regularly during the extraction
+     * @return The extracted content from the file
+     * @throws FileTypeNotSupportedException if the filetype is not recognized
+     * @throws DocumentNotSupportedException if the file could not be processed for another reason
+     * @throws java.util.concurrent.CancellationException if the extraction was cancelled
+     */
+    public ExtractedText processFile(InputStream file, String fileUri, String fileRef, String type,
+                                     boolean extractImages, CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
         ExtractedText extractedText;
         TextExtractor extractor = fileFormatExtractorMap.get(type);
         if (extractor != null) {
 
-            extractedText = extractor.extract(file, fileUri, fileRef, extractImages);
-
             try {
-                Objects.requireNonNull(file).close();
-            } catch (IOException e) {
-                Log.e("FILE_CLOSE", "Failed to close the file: " + fileRef, e);
+                cancellationToken.startPhase(ProcessingPhase.READING);
+                extractedText = extractor.extract(new ProgressInputStream(file, cancellationToken), fileUri,
+                        fileRef, extractImages, cancellationToken);
+            } finally {
+                // Also close the file when the extraction was cancelled
+                try {
+                    Objects.requireNonNull(file).close();
+                } catch (IOException e) {
+                    Log.e("FILE_CLOSE", "Failed to close the file: " + fileRef, e);
+                }
             }
         } else {
             Log.d("InternalTextProcessor", "File type not supported");
@@ -53,13 +99,118 @@ public class InternalTextProcessor implements InternalService {
         return extractedText;
     }
 
+    /**
+     * extracts text from a file using the right Extractor, and hands a preview with the title and the first
+     * sections to a listener as soon as they are extracted, so they can be shown while the rest of the file is
+     * extracted. The preview is only given when the file has more sections than the preview, a shorter file is only
+     * returned as a whole.
+     *
+     * @param file              the stream containing the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param type              the mimetype of the file
+     * @param extractImages     True if images also need to be extracted, false otherwise
+     * @param previewSections   the number of sections in the preview
+     * @param previewListener   the listener that receives the preview on the extracting thread
+     * @param cancellationToken token that is checked regularly during the extraction
+     * @return The extracted content from the whole file
+     * @throws FileTypeNotSupportedException if the filetype is not recognized
+     * @throws DocumentNotSupportedException if the file could not be processed for another reason
+     * @throws java.util.concurrent.CancellationException if the extraction was cancelled
+     */
+    public ExtractedText processFile(InputStream file, String fileUri, String fileRef, String type,
+                                     boolean extractImages, int previewSections, PreviewListener previewListener,
+                                     CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        ExtractedText extractedText = new ExtractedText(fileUri, fileRef);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // The parts are emitted on this thread, so the text is complete when subscribe returns
+        processFileInParts(file, fileUri, fileRef, type, extractImages, cancellationToken)
+                .subscribe((ExtractedPart part) -> {
+                    part.addTo(extractedText);
+
+                    // The section after the preview shows that the file is longer than the preview
+                    if (!part.isHeader() && extractedText.getSections().size() == previewSections + 1) {
+                        previewListener.onPreview(createPreview(extractedText, previewSections));
+                    }
+                }, failure::set);
+
+        Throwable error = failure.get();
+        if (error instanceof FileTypeNotSupportedException) {
+            throw (FileTypeNotSupportedException) error;
+        } else if (error instanceof DocumentNotSupportedException) {
+            throw (DocumentNotSupportedException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new DocumentNotSupportedException(error.getMessage());
+        }
+        return extractedText;
+    }
+
+    /**
+     * Private helper method that copies the title and the first sections of a text that is being extracted
+     *
+     * @param extractedText the text that is being extracted
+     * @param sections      the number of sections to copy
+     * @return the preview of the text, which does not change when more sections are added to the text
+     */
+    private static ExtractedText createPreview(ExtractedText extractedText, int sections) {
+        ExtractedText preview = new ExtractedText(extractedText.getFileUri(), extractedText.getFilename());
+        preview.setTitle(extractedText.getTitle());
+        for (Section section : extractedText.getSections().subList(0, sections)) {
+            preview.addSection(section);
+        }
+        return preview;
+    }
+
+    /**
+     * extracts text from a file part by part using the right Extractor, so the sections can be used while the rest
+     * of the file is extracted. The file is closed when the extraction is done, failed or was disposed.
+     *
+     * @param file              the stream containing the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param type              the mimetype of the file
+     * @param extractImages     True if images also need to be extracted, false otherwise
+     * @param cancellationToken token that is checked regularly during the extraction
+     * @return an Observable that extracts the file on the subscribing thread and emits the title and the sections.
+     * It fails with a {@link FileTypeNotSupportedException} if the filetype is not recognized, and with a
+     * {@link DocumentNotSupportedException} if the file could not be processed for another reason.
+     */
+    public Observable<ExtractedPart> processFileInParts(InputStream file, String fileUri, String fileRef,
+                                                        String type, boolean extractImages,
+                                                        CancellationToken cancellationToken) {
+        TextExtractor extractor = fileFormatExtractorMap.get(type);
+        if (extractor == null) {
+            Log.d("InternalTextProcessor", "File type not supported");
+            return Observable.error(new FileTypeNotSupportedException("You have opened a file with type: " + type +
+                    "\n This type is not supported."));
+        }
+
+        return Observable.defer(() -> {
+            cancellationToken.startPhase(ProcessingPhase.READING);
+            return extractor.extractParts(new ProgressInputStream(file, cancellationToken), fileUri, fileRef,
+                    extractImages, cancellationToken);
+        }).doFinally(() -> {
+            try {
+                Objects.requireNonNull(file).close();
+            } catch (IOException e) {
+                Log.e("FILE_CLOSE", "Failed to close the file: " + fileRef, e);
+            }
+        });
+    }
+
     /**
      * @return the mapping of fileTypes to the related extractor
      */
     private Map<String, TextExtractor> createFileToExtractorMap() {
         Map<String, TextExtractor> map = new HashMap<>();
         map.put("txt", new TextExtractorTXT());
-        map.put("pdf", new TextExtractorPDF());
+        map.put("pdf", mPdfExtractor);
         map.put("docx", new TextExtractorDOCX());
         return map;
     }
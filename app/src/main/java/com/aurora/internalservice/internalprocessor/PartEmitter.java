@@ -0,0 +1,85 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.auroralib.Section;
+
+import java.util.concurrent.CancellationException;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+
+/**
+ * Sink that emits the parts of a text on an Observable as soon as the extractor hands them over. When the
+ * Observable is disposed, the extractor is stopped at the next part.
+ */
+final class PartEmitter implements TextSink {
+    /**
+     * The emitter of the Observable of the parts
+     */
+    private final ObservableEmitter<ExtractedPart> mEmitter;
+
+    /**
+     * Creates a sink that emits on an Observable
+     *
+     * @param emitter the emitter of the Observable of the parts
+     */
+    private PartEmitter(ObservableEmitter<ExtractedPart> emitter) {
+        mEmitter = emitter;
+    }
+
+    /**
+     * Creates an Observable that runs an extraction when it is subscribed to, and emits the parts of the text
+     * while the extraction runs on the subscribing thread
+     *
+     * @param extraction the extraction that hands the parts over to a sink
+     * @return an Observable of the parts, which completes when the extraction is done
+     */
+    static Observable<ExtractedPart> stream(Extraction extraction) {
+        return Observable.create((ObservableEmitter<ExtractedPart> emitter) -> {
+            try {
+                extraction.extract(new PartEmitter(emitter));
+            } catch (CancellationException e) {
+                // Nobody is waiting for the parts if the Observable was disposed
+                if (!emitter.isDisposed()) {
+                    throw e;
+                }
+                return;
+            }
+            emitter.onComplete();
+        });
+    }
+
+    @Override
+    public void onTitle(String title) {
+        emit(ExtractedPart.header(title));
+    }
+
+    @Override
+    public void onSection(Section section) {
+        emit(ExtractedPart.section(section));
+    }
+
+    /**
+     * Private helper method that emits a part, or stops the extraction if the Observable was disposed
+     *
+     * @param part the part to emit
+     */
+    private void emit(ExtractedPart part) {
+        if (mEmitter.isDisposed()) {
+            throw new CancellationException("Nobody is waiting for the extracted parts");
+        }
+        mEmitter.onNext(part);
+    }
+
+    /**
+     * An extraction of a text that hands its parts over to a sink
+     */
+    interface Extraction {
+        /**
+         * Extracts the text
+         *
+         * @param sink the sink that receives the parts
+         * @throws DocumentNotSupportedException if the document cannot be processed
+         */
+        void extract(TextSink sink) throws DocumentNotSupportedException;
+    }
+}
@@ -0,0 +1,20 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.auroralib.ExtractedText;
+
+/**
+ * Listener that receives the first sections of a file while the rest of the file is still being extracted
+ *
+ * @see InternalTextProcessor#processFile(java.io.InputStream, String, String, String, boolean, int,
+ * PreviewListener, com.aurora.internalservice.CancellationToken)
+ */
+public interface PreviewListener {
+    /**
+     * Called on the extracting thread as soon as the first sections of a file are extracted. The extraction waits
+     * until this returns, so the preview should be handed over to another thread.
+     *
+     * @param preview the title and the first sections of the file. The preview is not changed anymore by the
+     *                extraction, but its sections are also part of the complete text.
+     */
+    void onPreview(ExtractedText preview);
+}
@@ -0,0 +1,94 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * InputStream that reports the number of bytes that were read from a file as the progress of the
+ * {@link ProcessingPhase#READING} phase. The size of the file is not known, so no total is reported.
+ */
+class ProgressInputStream extends FilterInputStream {
+    /**
+     * The token the progress is reported to
+     */
+    private final CancellationToken mCancellationToken;
+
+    /**
+     * The number of bytes that were read so far
+     */
+    private long mBytesRead = 0;
+
+    /**
+     * Creates a stream that reports how many bytes were read from another stream
+     *
+     * @param in                the stream to read from
+     * @param cancellationToken the token the progress is reported to
+     */
+    ProgressInputStream(InputStream in, CancellationToken cancellationToken) {
+        super(in);
+        mCancellationToken = cancellationToken;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        if (read != -1) {
+            bytesRead(1);
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            bytesRead(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            bytesRead(skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * Marks and resets are not passed on, so a byte is never counted twice
+     *
+     * @return false
+     */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Gets the channel of the file, when the stream reads from a file. Bytes that are read from the channel are not
+     * reported.
+     *
+     * @return the channel of the file, or null if the stream does not read from a file
+     */
+    FileChannel getChannel() {
+        return in instanceof FileInputStream ? ((FileInputStream) in).getChannel() : null;
+    }
+
+    /**
+     * Private helper method that counts and reports the bytes that were read
+     *
+     * @param bytes the number of bytes that were read
+     */
+    private void bytesRead(long bytes) {
+        mBytesRead += bytes;
+        mCancellationToken.reportProgress(ProcessingPhase.READING, mBytesRead, -1);
+    }
+}
@@ -0,0 +1,33 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+
+/**
+ * Sink that collects all parts of a text in an ExtractedText, for the extractors that return the whole text at once
+ */
+final class TextCollector implements TextSink {
+    /**
+     * The text the parts are added to
+     */
+    private final ExtractedText mExtractedText;
+
+    /**
+     * Creates a sink that collects the parts of a text
+     *
+     * @param extractedText the text the parts are added to
+     */
+    TextCollector(ExtractedText extractedText) {
+        mExtractedText = extractedText;
+    }
+
+    @Override
+    public void onTitle(String title) {
+        mExtractedText.setTitle(title);
+    }
+
+    @Override
+    public void onSection(Section section) {
+        mExtractedText.addSection(section);
+    }
+}
@@ -2,9 +2,12 @@ package com.aurora.internalservice.internalprocessor;
 
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
 
 import java.io.InputStream;
 
+import io.reactivex.Observable;
+
 /**
  * Interface for different extractors, extracting text from different file formats
  */
@@ -19,4 +22,34 @@ public interface TextExtractor {
      */
     ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages)
             throws DocumentNotSupportedException;
+
+    /**
+     * @param file              InputStream to the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param extractImages     True if images need to be extracted, False otherwise
+     * @param cancellationToken token that is checked regularly, the extraction stops when it is cancelled
+     * @return the extracted text, split in parts
+     * @throws DocumentNotSupportedException if the document cannot be processed
+     * @throws java.util.concurrent.CancellationException if the extraction was cancelled
+     */
+    ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages,
+                          CancellationToken cancellationToken)
+            throws DocumentNotSupportedException;
+
+    /**
+     * Extracts the text part by part. Every section is emitted as soon as it is complete, so the sections can be
+     * processed while the rest of the document is extracted, and the extractor does not keep the whole text in
+     * memory. The extraction runs on the thread that subscribes, every time the Observable is subscribed to.
+     *
+     * @param file              InputStream to the file, which can only be read by one subscription
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param extractImages     True if images need to be extracted, False otherwise
+     * @param cancellationToken token that is checked regularly, the extraction stops when it is cancelled
+     * @return an Observable that emits the header with the title, normally first, and the sections in the order of
+     * the document. It fails with a {@link DocumentNotSupportedException} if the document cannot be processed.
+     */
+    Observable<ExtractedPart> extractParts(InputStream file, String fileUri, String fileRef, boolean extractImages,
+                                           CancellationToken cancellationToken);
 }
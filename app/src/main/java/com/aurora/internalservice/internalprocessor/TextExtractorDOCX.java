@@ -7,27 +7,21 @@ import android.util.Log;
 import com.aurora.auroralib.ExtractedImage;
 import com.aurora.auroralib.ExtractedText;
 import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
 
-import org.apache.poi.xwpf.usermodel.IBodyElement;
-import org.apache.poi.xwpf.usermodel.ICell;
-import org.apache.poi.xwpf.usermodel.IRunElement;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFPicture;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
-import org.apache.poi.xwpf.usermodel.XWPFSDT;
-import org.apache.poi.xwpf.usermodel.XWPFSDTCell;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
-import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.poi.javax.xml.stream.XMLStreamException;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.reactivex.Observable;
+
 public class TextExtractorDOCX implements TextExtractor {
 
     /**
@@ -36,25 +30,9 @@ public class TextExtractorDOCX implements TextExtractor {
     private static final String CLASS_TAG = TextExtractorDOCX.class.getSimpleName();
 
     /**
-     * Extracted text object
-     */
-    private ExtractedText mExtractedText = null;
-
-    /**
-     * Section that still needs to be added to extractedText
+     * Pattern of the heading level at the end of a style
      */
-    private Section mSectionInProgress = null;
-
-    /**
-     * Runs where no paragraph level can be found will get this level
-     */
-    private int mLastSeenParagraphLevel = 0;
-
-    /**
-     * Array that keeps track of the sizes of titles to determine the level
-     */
-    private int mPreviousRunSize = 0;
-
+    private static final Pattern TRAILING_NUMBER = Pattern.compile("[0-9]+$");
 
     static {
         /* Set system properties for DOCX */
@@ -78,173 +56,352 @@ public class TextExtractorDOCX implements TextExtractor {
      */
     @Override
     public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages) {
-        mExtractedText = new ExtractedText(fileUri, fileRef);
-
-        // Set the values to defaults
-        mSectionInProgress = null;
-        mLastSeenParagraphLevel = 0;
-        mPreviousRunSize = 0;
-
-        try (XWPFDocument doc = new XWPFDocument(file)) {
-
-            for (IBodyElement bodyElement : doc.getBodyElements()) {
-                if (bodyElement instanceof XWPFParagraph) {
-                    appendParagraphText((XWPFParagraph) bodyElement, extractImages);
-                } else if (bodyElement instanceof XWPFTable) {
-                    appendTableText((XWPFTable) bodyElement);
-                } else if (bodyElement instanceof XWPFSDT) {
-                    mExtractedText.addSimpleSection(((XWPFSDT) bodyElement).getContent().getText());
+        return extract(file, fileUri, fileRef, extractImages, new CancellationToken());
+    }
+
+    /**
+     * Extracts the text from a .docx file, and stops early when the token is cancelled.
+     *
+     * @param file          InputStream to the file
+     * @param fileUri       the uri of the file to be processed
+     * @param fileRef       the name of the file
+     * @param extractImages True if images need to be extracted, False otherwise
+     * @param cancellationToken token that is checked before every paragraph, table or content control, and told
+     *                          how many of them are done
+     * @return ExtractedText object with title and sections.
+     */
+    @Override
+    public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages,
+                                 CancellationToken cancellationToken) {
+        ExtractedText extractedText = new ExtractedText(fileUri, fileRef);
+        extract(file, fileRef, extractImages, new TextCollector(extractedText), cancellationToken);
+        return extractedText;
+    }
+
+    /**
+     * Extracts the text from a .docx file section by section, and stops early when the token is cancelled.
+     *
+     * @param file              InputStream to the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file
+     * @param extractImages     True if images need to be extracted, False otherwise
+     * @param cancellationToken token that is checked before every paragraph, table or content control, and told
+     *                          how many of them are done
+     * @return an Observable of the title and the sections, in the order of the document
+     */
+    @Override
+    public Observable<ExtractedPart> extractParts(InputStream file, String fileUri, String fileRef,
+                                                  boolean extractImages, CancellationToken cancellationToken) {
+        return PartEmitter.stream((TextSink sink) ->
+                extract(file, fileRef, extractImages, sink, cancellationToken));
+    }
+
+    /**
+     * Private method that extracts the text from a .docx file and hands every section over to a sink as soon as
+     * it is complete. The state of the document is kept by a {@link SectionBuilder} of its own, so several documents
+     * can be extracted at the same time.
+     *
+     * @param file              InputStream to the file
+     * @param fileRef           the name of the file
+     * @param extractImages     True if images need to be extracted, False otherwise
+     * @param sink              the sink that receives the title and the sections
+     * @param cancellationToken token that is checked before every paragraph, table or content control
+     */
+    private static void extract(InputStream file, String fileRef, boolean extractImages, TextSink sink,
+                                CancellationToken cancellationToken) {
+        SectionBuilder builder = null;
+        try (DOCXStreamReader reader = DOCXStreamReader.open(file)) {
+            builder = new SectionBuilder(reader, sink, extractImages, cancellationToken);
+
+            // The body is read in a single pass, so the number of paragraphs is not known in advance
+            cancellationToken.startPhase(ProcessingPhase.PARAGRAPHS);
+            long done = 0;
+            for (int element = reader.next(); element != DOCXStreamReader.END_DOCUMENT; element = reader.next()) {
+                cancellationToken.throwIfCancelled();
+
+                if (element == DOCXStreamReader.PARAGRAPH) {
+                    builder.appendParagraphText(reader.getParagraph());
+                } else {
+                    // A table or content control is added as a section of its own
+                    builder.addSection(new Section(reader.getText()));
                 }
+
+                done++;
+                cancellationToken.reportProgress(ProcessingPhase.PARAGRAPHS, done, -1);
             }
-        } catch (IOException e) {
+        } catch (IOException | XMLStreamException e) {
             Log.e(CLASS_TAG,
                     "a problem occurred while reading the file as a docx: " + fileRef, e);
 
         } finally {
             // Flush section in progress
-            if (mSectionInProgress != null) {
-                mExtractedText.addSection(mSectionInProgress);
+            if (builder != null) {
+                builder.finish();
             }
         }
-
-        return mExtractedText;
     }
 
-
     /**
-     * Appends the String run to the extractedText object. State is maintained in order to
-     * estimate if the run is a title. The first run is always the title.
+     * Private method to get heading level of a paragraph. Style of paragraph is used because
+     * there is no easy way to get the style of a run and only in very specific cases is the heading
+     * style specified in the run. When the style id is translated, the name of the built in style
+     * is used, which is always English.
      *
-     * @param run            String that needs to be added to extractedText
-     * @param paragraphLevel If a level can be extracted from the parent paragraph, this will
-     *                       be for multilevel titles.
-     * @param runSize        If the paragraphlevel cannot be used, the textsize is used to
-     *                       determine (sub)titles. Only one level of titles is supported in
-     *                       this case.
+     * @param paragraph paragraph to determine level of
+     * @return -1 if no level is found, otherwise level starting at 0 for title
      */
-    //I suppress these warnings because there is no easy way to simplify or split this logic into
-    // multiple methods without making it harder to understand.
-    @java.lang.SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S3776"})
-    private void addRun(@NonNull String run, int paragraphLevel, int runSize,
-                        @NonNull List<ExtractedImage> extractedImages) {
-        String formatted = run.trim();
-
-        // First text line is always a title for simplicity
-        if (mExtractedText.getTitle().isEmpty() && !formatted.isEmpty()) {
-            mExtractedText.setTitle(formatted);
-
-            // The title section contains extractedImages, add them to their own section.
-            if (!extractedImages.isEmpty()) {
-                Section imageSection = new Section();
-                imageSection.setExtractedImages(extractedImages);
-                mExtractedText.addSection(imageSection);
-            }
+    private static int getLevel(DOCXStreamReader.Paragraph paragraph) {
+        String paragraphStyle = paragraph.getStyle();
 
-            // If the font size is larger than 0 keep track of this. If the built in word
-            // headers are used, font size is -1 for some reason.
-            if (runSize > 0) {
-                mPreviousRunSize = runSize;
+        int level = -1;
+
+        if (paragraphStyle == null) {
+            return -1;
+        } else if ("Titel".equals(paragraphStyle) || "Title".equals(paragraphStyle)) {
+            level = 0;
+        } else if (paragraphStyle.contains("Heading") || paragraphStyle.contains("Kop")) {
+            level = getTrailingNumber(paragraphStyle);
+        }
+
+        String styleName = paragraph.getStyleName();
+        if (level < 0 && styleName != null) {
+            String name = styleName.toLowerCase(Locale.ENGLISH);
+            if ("title".equals(name)) {
+                level = 0;
+            } else if (name.startsWith("heading")) {
+                level = getTrailingNumber(name);
             }
-            return;
         }
+        return level;
+    }
 
-        // A Header is encountered -> start a new Section and flush the previous one if it exists
-        if (paragraphLevel >= 0 || mPreviousRunSize < runSize) {
-            // Flush the previous section, a title will always create a new section
+    /**
+     * @param style the id or the name of a style
+     * @return the number at the end of the style, or -1 if it does not end with a number
+     */
+    private static int getTrailingNumber(String style) {
+        Matcher m = TRAILING_NUMBER.matcher(style);
+        if (m.find()) {
+            return Integer.parseInt(m.group());
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the title and the sections of one document from its paragraphs, and hands every section over to a sink
+     * as soon as it is complete
+     */
+    private static final class SectionBuilder {
+        /**
+         * The reader of the document, from which the images are read
+         */
+        private final DOCXStreamReader mReader;
+
+        /**
+         * The sink that receives the title and the sections of the document
+         */
+        private final TextSink mSink;
+
+        /**
+         * True if images need to be extracted, False otherwise
+         */
+        private final boolean mExtractImages;
+
+        /**
+         * Token of the extraction, which is told how many images are done
+         */
+        private final CancellationToken mCancellationToken;
+
+        /**
+         * Whether the title of the document was found
+         */
+        private boolean mTitleFound = false;
+
+        /**
+         * Section that still needs to be added to extractedText
+         */
+        private Section mSectionInProgress = null;
+
+        /**
+         * Runs where no paragraph level can be found will get this level
+         */
+        private int mLastSeenParagraphLevel = 0;
+
+        /**
+         * Array that keeps track of the sizes of titles to determine the level
+         */
+        private int mPreviousRunSize = 0;
+
+        /**
+         * The number of images that were encoded
+         */
+        private int mEncodedImages = 0;
+
+        /**
+         * Creates a builder for one document
+         *
+         * @param reader            the reader of the document, from which the images are read
+         * @param sink              the sink that receives the title and the sections
+         * @param extractImages     True if images need to be extracted, False otherwise
+         * @param cancellationToken token of the extraction, which is told how many images are done
+         */
+        private SectionBuilder(DOCXStreamReader reader, TextSink sink, boolean extractImages,
+                               CancellationToken cancellationToken) {
+            mReader = reader;
+            mSink = sink;
+            mExtractImages = extractImages;
+            mCancellationToken = cancellationToken;
+        }
+
+        /**
+         * Hands a section that is complete on its own, like a table, over to the sink
+         *
+         * @param section the section
+         */
+        private void addSection(Section section) {
+            mSink.onSection(section);
+        }
+
+        /**
+         * Hands the section that is still in progress over to the sink, at the end of the document
+         */
+        private void finish() {
             if (mSectionInProgress != null) {
-                mExtractedText.addSection(mSectionInProgress);
+                mSink.onSection(mSectionInProgress);
+                mSectionInProgress = null;
             }
+        }
 
-            // Create a new Section
-            mSectionInProgress = new Section();
-            mSectionInProgress.setTitle(formatted);
-            mSectionInProgress.setExtractedImages(extractedImages);
+        /**
+         * Appends the String run to the extractedText object. State is maintained in order to
+         * estimate if the run is a title. The first run is always the title.
+         *
+         * @param run            String that needs to be added to extractedText
+         * @param paragraphLevel If a level can be extracted from the parent paragraph, this will
+         *                       be for multilevel titles.
+         * @param runSize        If the paragraphlevel cannot be used, the textsize is used to
+         *                       determine (sub)titles. Only one level of titles is supported in
+         *                       this case.
+         */
+        //I suppress these warnings because there is no easy way to simplify or split this logic into
+        // multiple methods without making it harder to understand.
+        @java.lang.SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S3776"})
+        private void addRun(@NonNull String run, int paragraphLevel, int runSize,
+                            @NonNull List<ExtractedImage> extractedImages) {
+            String formatted = run.trim();
+
+            // First text line is always a title for simplicity
+            if (!mTitleFound && !formatted.isEmpty()) {
+                mTitleFound = true;
+                mSink.onTitle(formatted);
+
+                // The title section contains extractedImages, add them to their own section.
+                if (!extractedImages.isEmpty()) {
+                    Section imageSection = new Section();
+                    imageSection.setExtractedImages(extractedImages);
+                    mSink.onSection(imageSection);
+                }
 
-            // If the default headers of word are used, we can extract a paragraph level, non
-            // header sections will get the last seen paragraph level.
-            if (paragraphLevel >= 0) {
-                mSectionInProgress.setLevel(paragraphLevel);
-                mLastSeenParagraphLevel = paragraphLevel;
-            } else {
-                // In case the default headers are not used, it is to hard to determine the
-                // level of a paragraph. Just set them all to default level 0.
-                mSectionInProgress.setLevel(0);
-                mLastSeenParagraphLevel = 0;
-                mPreviousRunSize = runSize;
+                // If the font size is larger than 0 keep track of this. If the built in word
+                // headers are used, font size is -1 for some reason.
+                if (runSize > 0) {
+                    mPreviousRunSize = runSize;
+                }
+                return;
             }
 
-        } else {
-            // The section is not a title
-
-            // If its empty, flush the previous section (if it has body or extractedImages)
-            if (formatted.isEmpty() && mSectionInProgress != null &&
-                    (!mSectionInProgress.getBody().isEmpty() || !mSectionInProgress.getExtractedImages().isEmpty())) {
-                mSectionInProgress.addExtractedImages(extractedImages);
-                mExtractedText.addSection(mSectionInProgress);
-                mSectionInProgress = null;
-            } else if (!formatted.isEmpty() || !extractedImages.isEmpty()) {
-                // It is not empty
+            // A Header is encountered -> start a new Section and flush the previous one if it exists
+            if (paragraphLevel >= 0 || mPreviousRunSize < runSize) {
+                // Flush the previous section, a title will always create a new section
+                if (mSectionInProgress != null) {
+                    mSink.onSection(mSectionInProgress);
+                }
 
-                if (mSectionInProgress == null) {
-                    // Create a new Section
-                    mSectionInProgress = new Section();
-                    mSectionInProgress.setLevel(mLastSeenParagraphLevel);
+                // Create a new Section
+                mSectionInProgress = new Section();
+                mSectionInProgress.setTitle(formatted);
+                mSectionInProgress.setExtractedImages(extractedImages);
+
+                // If the default headers of word are used, we can extract a paragraph level, non
+                // header sections will get the last seen paragraph level.
+                if (paragraphLevel >= 0) {
+                    mSectionInProgress.setLevel(paragraphLevel);
+                    mLastSeenParagraphLevel = paragraphLevel;
+                } else {
+                    // In case the default headers are not used, it is to hard to determine the
+                    // level of a paragraph. Just set them all to default level 0.
+                    mSectionInProgress.setLevel(0);
+                    mLastSeenParagraphLevel = 0;
+                    mPreviousRunSize = runSize;
                 }
 
-                mSectionInProgress.addExtractedImages(extractedImages);
-                mSectionInProgress.concatBody(formatted + "\n");
+            } else {
+                // The section is not a title
+
+                // If its empty, flush the previous section (if it has body or extractedImages)
+                if (formatted.isEmpty() && mSectionInProgress != null
+                        && (!mSectionInProgress.getBody().isEmpty()
+                        || !mSectionInProgress.getExtractedImages().isEmpty())) {
+                    mSectionInProgress.addExtractedImages(extractedImages);
+                    mSink.onSection(mSectionInProgress);
+                    mSectionInProgress = null;
+                } else if (!formatted.isEmpty() || !extractedImages.isEmpty()) {
+                    // It is not empty
+
+                    if (mSectionInProgress == null) {
+                        // Create a new Section
+                        mSectionInProgress = new Section();
+                        mSectionInProgress.setLevel(mLastSeenParagraphLevel);
+                    }
 
-                mPreviousRunSize = runSize;
+                    mSectionInProgress.addExtractedImages(extractedImages);
+                    mSectionInProgress.concatBody(formatted + "\n");
+
+                    mPreviousRunSize = runSize;
+                }
             }
         }
-    }
 
-    /**
-     * Private method that is used to add the different runs of a paragraph to the extractedText
-     * object. Runs in a paragraph can start and stop in the middle of words. So there is state
-     * maintained to add them back together. New sections are started when a tab or newline is
-     * found.
-     *
-     * @param paragraph     Object of Apache POI representing a docx paragraph.
-     * @param extractImages True if images need to be extracted, False otherwise
-     */
-    //I suppress these warnings because there is no easy way to simplify or split this logic into
-    // multiple methods without making it harder to understand.
-    @java.lang.SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S3776"})
-    private void appendParagraphText(XWPFParagraph paragraph, boolean extractImages) {
-        // For some reason runs can be split randomly, even in the middle of sentences or words.
-        // This code is an attempt to combine such runs to one coherent piece of text.
-
-        /* Text that has yet to be added */
-        StringBuilder textInProgress = null;
-        /* Parameters of the first run of textInProgress, assume the other runs have more or less
-         the same parameters */
-        XWPFRun runInProgress = null;
-
-        /* List of extractedImages that has yet to be added */
-        List<ExtractedImage> extractedImages = new ArrayList<>();
-
-        if (paragraph.getRuns().isEmpty()) {
-            addRun(paragraph.getText(), getLevel(paragraph), -1, new ArrayList<>());
-        }
+        /**
+         * Private method that is used to add the different runs of a paragraph to the extractedText
+         * object. Runs in a paragraph can start and stop in the middle of words. So there is state
+         * maintained to add them back together. New sections are started when a tab or newline is
+         * found.
+         *
+         * @param paragraph a paragraph of the docx with its runs
+         */
+        //I suppress these warnings because there is no easy way to simplify or split this logic into
+        // multiple methods without making it harder to understand.
+        @java.lang.SuppressWarnings({"squid:MethodCyclomaticComplexity", "squid:S3776"})
+        private void appendParagraphText(DOCXStreamReader.Paragraph paragraph) {
+            // For some reason runs can be split randomly, even in the middle of sentences or words.
+            // This code is an attempt to combine such runs to one coherent piece of text.
+
+            /* Text that has yet to be added */
+            StringBuilder textInProgress = null;
+            /* Parameters of the first run of textInProgress, assume the other runs have more or less
+             the same parameters */
+            DOCXStreamReader.Run runInProgress = null;
+
+            /* List of extractedImages that has yet to be added */
+            List<ExtractedImage> extractedImages = new ArrayList<>();
+
+            int level = getLevel(paragraph);
+
+            if (paragraph.getRuns().isEmpty()) {
+                addRun(paragraph.getText(), level, -1, new ArrayList<>());
+            }
 
-        // Loop over all the runs in a single paragraph.
-        for (IRunElement run : paragraph.getRuns()) {
-            // Normal flow
-            if (run instanceof XWPFRun) {
-                // Extract the extractedImages from the run and add them to the list of yet to process extractedImages
-                List<XWPFPicture> piclist = ((XWPFRun) run).getEmbeddedPictures();
-                for (XWPFPicture image : piclist) {
-                    if (extractImages) {
-                        ExtractedImage imageObject =
-                                new ExtractedImage(Base64.encodeToString(image.getPictureData().getData(),
-                                        Base64.DEFAULT));
-                        extractedImages.add(imageObject);
+            // Loop over all the runs in a single paragraph.
+            for (DOCXStreamReader.Run currentRun : paragraph.getRuns()) {
+                // Extract the extractedImages from the run and add them to the list of yet to process extractedImages.
+                // The images are only read from the file when they are needed.
+                if (mExtractImages) {
+                    for (String pictureId : currentRun.getPictureIds()) {
+                        addImage(pictureId, extractedImages);
                     }
                 }
 
-                XWPFRun currentRun = (XWPFRun) run;
-
                 //Loop over all breaks and tabs. This certainly signifies the end of a section.
                 for (String text : currentRun.text().split("(?<=[\n\t])")) {
                     // A section ends with a tab or an newline.
@@ -257,8 +414,7 @@ public class TextExtractorDOCX implements TextExtractor {
                         }
 
                         // Add the section and reset the state variables
-                        addRun(textInProgress.toString(), getLevel(paragraph)
-                                , runInProgress.getFontSize(), extractedImages);
+                        addRun(textInProgress.toString(), level, runInProgress.getFontSize(), extractedImages);
 
                         extractedImages = new ArrayList<>();
                         textInProgress = null;
@@ -272,79 +428,37 @@ public class TextExtractorDOCX implements TextExtractor {
                         textInProgress = new StringBuilder(text);
                     } else {
                         // The String is whitespace and immediately added, state is maintained.
-                        addRun(currentRun.text(), getLevel(paragraph), currentRun.getFontSize(),
-                                new ArrayList<>());
+                        addRun(currentRun.text(), level, currentRun.getFontSize(), new ArrayList<>());
                     }
                 }
-            } else {
-                // The paragraph does not consist of runs. Not much can be done except the adding
-                // the raw text of the paragraph.
-                addRun(run.toString(), getLevel(paragraph), -1, new ArrayList<>());
             }
-        }
-        // Flush the last run and any extractedImages that are not yet pushed.
-        if (runInProgress != null) {
-            addRun(textInProgress.toString(), getLevel(paragraph)
-                    , runInProgress.getFontSize(), extractedImages);
-        } else if (!extractedImages.isEmpty()) {
-            addRun("", getLevel(paragraph), -1, extractedImages);
-        }
-    }
-
-    /**
-     * Private method to get heading level of a paragraph. Style of paragraph is used because
-     * there is no easy way to get the style of a run and only in very specific cases is the heading
-     * style specified in the run.
-     *
-     * @param paragraph paragraph to determine level of
-     * @return -1 if no level is found, otherwise level starting at 0 for title
-     */
-    private int getLevel(XWPFParagraph paragraph) {
-        String paragraphStyle = paragraph.getStyle();
-
-        int level = -1;
-
-        if (paragraphStyle == null) {
-            return -1;
-        } else if ("Titel".equals(paragraphStyle) || "Title".equals(paragraphStyle)) {
-            level = 0;
-        } else if (paragraphStyle.contains("Heading") || paragraphStyle.contains("Kop")) {
-            Pattern p = Pattern.compile("[0-9]+$");
-            Matcher m = p.matcher(paragraphStyle);
-            if (m.find()) {
-                level = Integer.parseInt(m.group());
+            // Flush the last run and any extractedImages that are not yet pushed.
+            if (runInProgress != null) {
+                addRun(textInProgress.toString(), level, runInProgress.getFontSize(), extractedImages);
+            } else if (!extractedImages.isEmpty()) {
+                addRun("", level, -1, extractedImages);
             }
         }
-        return level;
-    }
 
-    /**
-     * Private method with very basic approach to extract all text from a table row by row. Every
-     * row is a new section and information extracted from rows is tab separated.
-     *
-     * @param table The table that needs to be extracted
-     */
-    private void appendTableText(XWPFTable table) {
-        //this works recursively to pull embedded tables from tables
-        StringBuilder extractedTable = new StringBuilder();
-        for (XWPFTableRow row : table.getRows()) {
-            List<ICell> cells = row.getTableICells();
-
-
-            for (int i = 0; i < cells.size(); i++) {
-                ICell cell = cells.get(i);
-
-                if (cell instanceof XWPFTableCell) {
-                    extractedTable.append(((XWPFTableCell) cell).getTextRecursively());
-                } else if (cell instanceof XWPFSDTCell) {
-                    extractedTable.append(((XWPFSDTCell) cell).getContent().getText());
-                }
-                if (i < cells.size() - 1) {
-                    extractedTable.append("\t");
+        /**
+         * Private method that reads an image of a run from the document and adds it to the images that have yet to
+         * be added. An image that cannot be read is left out.
+         *
+         * @param pictureId       the relationship id of the image
+         * @param extractedImages the images that have yet to be added
+         */
+        private void addImage(String pictureId, List<ExtractedImage> extractedImages) {
+            mCancellationToken.startPhase(ProcessingPhase.IMAGES);
+            try {
+                byte[] data = mReader.readPicture(pictureId);
+                if (data != null) {
+                    extractedImages.add(new ExtractedImage(Base64.encodeToString(data, Base64.DEFAULT)));
+                    mEncodedImages++;
+                    mCancellationToken.reportProgress(ProcessingPhase.IMAGES, mEncodedImages, -1);
                 }
+            } catch (IOException e) {
+                Log.e(CLASS_TAG, "Failed to read an image of the docx", e);
             }
-            extractedTable.append("\n");
         }
-        mExtractedText.addSimpleSection(extractedTable.toString());
     }
 }
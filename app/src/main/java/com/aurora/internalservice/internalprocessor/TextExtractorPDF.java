@@ -3,14 +3,35 @@ package com.aurora.internalservice.internalprocessor;
 import android.util.Log;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.pdfparsing.FileChannelPdfSource;
 import com.aurora.internalservice.internalprocessor.pdfparsing.PDFContentExtractor;
 import com.aurora.internalservice.internalprocessor.pdfparsing.ParsedPDF;
 import com.itextpdf.text.pdf.PdfReader;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import io.reactivex.Observable;
 
 public class TextExtractorPDF implements TextExtractor {
+    /**
+     * The number of pages of a document that are interpreted at the same time
+     */
+    private volatile int mParallelism = 1;
+
+    /**
+     * Sets how many pages of a document are interpreted at the same time, for the documents that are extracted
+     * from now on. The pages share one pool with the other documents, so this should be the share of the cores
+     * one document may use.
+     *
+     * @param parallelism the number of pages at the same time, 1 to interpret them on the extracting thread
+     */
+    public void setParallelism(int parallelism) {
+        mParallelism = Math.max(1, parallelism);
+    }
 
     /**
      * @param file          InputStream to the file
@@ -23,17 +44,90 @@ public class TextExtractorPDF implements TextExtractor {
     @Override
     public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages)
             throws DocumentNotSupportedException {
-        PDFContentExtractor reader = new PDFContentExtractor();
+        return extract(file, fileUri, fileRef, extractImages, new CancellationToken());
+    }
+
+    /**
+     * @param file          InputStream to the file
+     * @param fileUri       the uri of the file to be processed
+     * @param fileRef       the name of the file to be processed
+     * @param extractImages True if images need to be extracted, false otherwise
+     * @param cancellationToken token that is checked before every structure element of the file
+     * @return the extracted text from the file on fileRef
+     * @throws DocumentNotSupportedException if the document cannot be processed
+     */
+    @Override
+    public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages,
+                                 CancellationToken cancellationToken)
+            throws DocumentNotSupportedException {
+        ExtractedText extractedText = new ExtractedText(fileUri, fileRef);
+        extract(file, new TextCollector(extractedText), cancellationToken);
+        return extractedText;
+    }
+
+    /**
+     * Extracts the text of a pdf file section by section. A section is emitted when the header of the next section
+     * is found, the sections of a pdf without headers are only emitted when the whole file was parsed.
+     *
+     * @param file              InputStream to the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param extractImages     True if images need to be extracted, false otherwise
+     * @param cancellationToken token that is checked before every structure element of the file
+     * @return an Observable of the title and the sections, in the order of the document
+     */
+    @Override
+    public Observable<ExtractedPart> extractParts(InputStream file, String fileUri, String fileRef,
+                                                  boolean extractImages, CancellationToken cancellationToken) {
+        return PartEmitter.stream((TextSink sink) -> extract(file, sink, cancellationToken));
+    }
+
+    /**
+     * Private method that parses a pdf file and hands the title and the sections over to a sink. A file is read at
+     * random positions through its channel when it can be, so only the pages that are being interpreted are in
+     * memory. Other streams, like pipes, are read into memory as a whole first.
+     *
+     * @param file              InputStream to the file
+     * @param sink              the sink that receives the title and the sections
+     * @param cancellationToken token that is checked before every structure element of the file
+     * @throws DocumentNotSupportedException if the document cannot be processed
+     */
+    private void extract(InputStream file, TextSink sink, CancellationToken cancellationToken)
+            throws DocumentNotSupportedException {
+        PDFContentExtractor reader = new PDFContentExtractor(mParallelism);
         PdfReader pdfreader;
-        ParsedPDF parsedPDF = new ParsedPDF();
+        ParsedPDF parsedPDF = new ParsedPDF(sink);
         try {
-            pdfreader = new PdfReader(file);
-            //This will convert a Tagged PDF to XML
-            reader.extractContent(pdfreader, parsedPDF);
+            FileChannel channel = getChannel(file);
+            FileChannelPdfSource source = channel == null ? null : FileChannelPdfSource.open(channel);
+            if (source != null) {
+                reader.extractContent(source, parsedPDF, cancellationToken);
+            } else {
+                pdfreader = new PdfReader(file);
+                //This will convert a Tagged PDF to XML
+                reader.extractContent(pdfreader, parsedPDF, cancellationToken);
+            }
         } catch (IOException e) {
             Log.e("IOexception PDF Reader:",
                     "Error opening and reading the pdf file: " + e.getLocalizedMessage(), e);
         }
-        return parsedPDF.toExtractedText(fileUri, fileRef);
+        parsedPDF.finish();
+    }
+
+    /**
+     * Private method that gets the channel of a stream that reads from a file, like the streams of a
+     * ParcelFileDescriptor
+     *
+     * @param file InputStream to the file
+     * @return the channel of the file, or null if the stream does not read from a file
+     */
+    private static FileChannel getChannel(InputStream file) {
+        if (file instanceof ProgressInputStream) {
+            return ((ProgressInputStream) file).getChannel();
+        }
+        if (file instanceof FileInputStream) {
+            return ((FileInputStream) file).getChannel();
+        }
+        return null;
     }
 }
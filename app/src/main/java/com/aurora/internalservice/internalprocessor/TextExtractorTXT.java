@@ -3,6 +3,9 @@ package com.aurora.internalservice.internalprocessor;
 import android.util.Log;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
 
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
@@ -11,6 +14,8 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
+import io.reactivex.Observable;
+
 public class TextExtractorTXT implements TextExtractor {
 
     /**
@@ -24,52 +29,204 @@ public class TextExtractorTXT implements TextExtractor {
      */
     @Override
     public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages) {
+        return extract(file, fileUri, fileRef, extractImages, new CancellationToken());
+    }
+
+    /**
+     * Extracts the text from a .txt file, unless the token is cancelled.
+     *
+     * @param file          the InputStream to the file
+     * @param fileUri       the uri of the file to be processed
+     * @param fileRef       a reference to where the file can be found
+     * @param extractImages useless parameter for .TXT
+     * @param cancellationToken token that is checked after every paragraph, and told how many paragraphs are done
+     * @return an ExtractedText object without title and one line per paragraph.
+     */
+    @Override
+    public ExtractedText extract(InputStream file, String fileUri, String fileRef, boolean extractImages,
+                                 CancellationToken cancellationToken) {
         ExtractedText extractedText = new ExtractedText(fileUri, fileRef);
-        String content = extractStringFromTXT(file, fileRef);
-        String[] splitContent = new String[0];
-        if (content != null) {
-            splitContent = content.split("\\r?\\n\\r?\\n");
-        }
-        if (splitContent.length > 1) {
-            extractedText.setTitle(splitContent[0]);
-            for (int i = 1; i < splitContent.length; i++) {
-                extractedText.addSimpleSection(splitContent[i]);
-            }
-        } else if (splitContent.length == 1) {
-            extractedText.addSimpleSection(splitContent[0]);
-        }
+        extract(file, fileRef, new TextCollector(extractedText), cancellationToken);
         return extractedText;
     }
 
+    /**
+     * Extracts the text from a .txt file paragraph by paragraph, while the file is read.
+     *
+     * @param file              the InputStream to the file
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           a reference to where the file can be found
+     * @param extractImages     useless parameter for .TXT
+     * @param cancellationToken token that is checked after every paragraph, and told how many paragraphs are done
+     * @return an Observable of the title and one section per paragraph
+     */
+    @Override
+    public Observable<ExtractedPart> extractParts(InputStream file, String fileUri, String fileRef,
+                                                  boolean extractImages, CancellationToken cancellationToken) {
+        return PartEmitter.stream((TextSink sink) -> extract(file, fileRef, sink, cancellationToken));
+    }
 
     /**
-     * This method reads a txt file and puts all the content in a string
+     * Private method that reads a txt file and splits it in paragraphs on the blank lines. The first paragraph is
+     * the title if there is more than one paragraph.
      *
-     * @param inputStream this stream will be used to read the text
-     * @param fileRef     the filename for error handling
-     * @return the extracted plain text
+     * @param inputStream       this stream will be used to read the text
+     * @param fileRef           the filename for error handling
+     * @param sink              the sink that receives the title and the paragraphs
+     * @param cancellationToken token that is checked after every paragraph
      */
-    private String extractStringFromTXT(InputStream inputStream, String fileRef) {
+    private static void extract(InputStream inputStream, String fileRef, TextSink sink,
+                                CancellationToken cancellationToken) {
+        ParagraphSplitter splitter = new ParagraphSplitter(sink, cancellationToken);
+        cancellationToken.startPhase(ProcessingPhase.PARAGRAPHS);
         try {
             // read fills buffer with data and returns
             Reader reader = new InputStreamReader(inputStream);
             BufferedReader br = new BufferedReader(reader);
 
-            StringBuilder outcome = new StringBuilder();
             String line;
             while ((line = br.readLine()) != null) {
-                outcome.append(line);
-                outcome.append('\n');
+                splitter.addLine(line);
             }
             br.close();
-            Log.d("TXT", outcome.toString());
-            return outcome.toString();
         } catch (FileNotFoundException ex) {
             Log.e("Unable to open file", "Unable to open file '" + fileRef + "'" + ex.getLocalizedMessage());
+            return;
         } catch (IOException ex) {
             Log.e("Error reading file", "Error reading file'" + fileRef + "' " + ex.getLocalizedMessage());
+            return;
         }
-        return null;
+        splitter.finish();
+    }
+
+    /**
+     * Splits the lines of a text in paragraphs in the same way as splitting the whole text on blank lines, but
+     * hands every paragraph over as soon as the blank line after it is read
+     */
+    private static final class ParagraphSplitter {
+        /**
+         * The sink that receives the title and the paragraphs
+         */
+        private final TextSink mSink;
+
+        /**
+         * The token that is checked after every paragraph
+         */
+        private final CancellationToken mCancellationToken;
+
+        /**
+         * The lines of the paragraph that is being read, every line ends with a newline
+         */
+        private final StringBuilder mParagraph = new StringBuilder();
+
+        /**
+         * The first paragraph, which is kept until it is known whether it is the title
+         */
+        private String mFirstParagraph = null;
 
+        /**
+         * The number of paragraphs that were handed over, including the first one
+         */
+        private int mParagraphs = 0;
+
+        /**
+         * The number of empty paragraphs that were read but not handed over yet, they are dropped at the end of the
+         * text
+         */
+        private int mEmptyParagraphs = 0;
+
+        /**
+         * Whether a line was read at all
+         */
+        private boolean mEmptyText = true;
+
+        /**
+         * Creates a splitter
+         *
+         * @param sink              the sink that receives the title and the paragraphs
+         * @param cancellationToken the token that is checked after every paragraph
+         */
+        private ParagraphSplitter(TextSink sink, CancellationToken cancellationToken) {
+            mSink = sink;
+            mCancellationToken = cancellationToken;
+        }
+
+        /**
+         * Adds a line of the text, which ends the paragraph if it is the second newline in a row
+         *
+         * @param line the line, without newline
+         */
+        private void addLine(String line) {
+            mEmptyText = false;
+            mParagraph.append(line).append('\n');
+
+            int length = mParagraph.length();
+            if (length >= 2 && mParagraph.charAt(length - 2) == '\n') {
+                mParagraph.setLength(length - 2);
+                endParagraph(mParagraph.toString());
+                mParagraph.setLength(0);
+            }
+        }
+
+        /**
+         * Hands over the last paragraph, or the first one as a section if it is the only one
+         */
+        private void finish() {
+            if (mParagraph.length() > 0) {
+                endParagraph(mParagraph.toString());
+            }
+
+            if (mParagraphs == 0 && mEmptyText) {
+                // An empty file still has one empty paragraph
+                handOver("");
+            }
+            if (mParagraphs == 1) {
+                mSink.onSection(new Section(mFirstParagraph));
+            }
+
+            int sections = mParagraphs > 1 ? mParagraphs - 1 : mParagraphs;
+            mCancellationToken.reportProgress(ProcessingPhase.PARAGRAPHS, sections, sections);
+        }
+
+        /**
+         * Private helper method that ends a paragraph. Empty paragraphs are only handed over when a paragraph with
+         * text follows them.
+         *
+         * @param paragraph the text of the paragraph
+         */
+        private void endParagraph(String paragraph) {
+            if (paragraph.isEmpty()) {
+                mEmptyParagraphs++;
+                return;
+            }
+
+            for (; mEmptyParagraphs > 0; mEmptyParagraphs--) {
+                handOver("");
+            }
+            handOver(paragraph);
+        }
+
+        /**
+         * Private helper method that hands a paragraph over to the sink. The first paragraph becomes the title when
+         * the second one is handed over.
+         *
+         * @param paragraph the text of the paragraph
+         */
+        private void handOver(String paragraph) {
+            mCancellationToken.throwIfCancelled();
+
+            mParagraphs++;
+            if (mParagraphs == 1) {
+                mFirstParagraph = paragraph;
+                return;
+            }
+            if (mParagraphs == 2) {
+                mSink.onTitle(mFirstParagraph);
+                mFirstParagraph = null;
+            }
+
+            mSink.onSection(new Section(paragraph));
+            mCancellationToken.reportProgress(ProcessingPhase.PARAGRAPHS, mParagraphs - 1L, -1);
+        }
     }
 }
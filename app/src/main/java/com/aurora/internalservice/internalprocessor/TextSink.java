@@ -0,0 +1,23 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.auroralib.Section;
+
+/**
+ * Receives the parts of a text while it is extracted. The extractors hand every section over as soon as it is
+ * complete, so the receiver decides whether the whole text is kept in memory.
+ */
+public interface TextSink {
+    /**
+     * Called once when the title of the text is found, which is normally before the first section
+     *
+     * @param title the title of the text
+     */
+    void onTitle(String title);
+
+    /**
+     * Called for every section of the text, in the order of the document, when the section is complete
+     *
+     * @param section the section, which is not changed by the extractor anymore
+     */
+    void onSection(Section section);
+}
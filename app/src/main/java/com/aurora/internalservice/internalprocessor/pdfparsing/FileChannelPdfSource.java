@@ -0,0 +1,116 @@
+package com.aurora.internalservice.internalprocessor.pdfparsing;
+
+import com.itextpdf.text.io.GetBufferedRandomAccessSource;
+import com.itextpdf.text.io.RandomAccessSource;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Gives random access to a PDF file through its FileChannel, so the file is never read into memory as a whole.
+ * The readers that are opened on it read the document partially, and only read the objects they need.
+ * <p>
+ * The file is read with positional reads, which do not move the position of the channel, so any number of readers
+ * can read from the same channel at the same time. Every reader buffers its own reads. The channel belongs to the
+ * stream it came from: closing a reader does not close it.
+ */
+public final class FileChannelPdfSource {
+    /**
+     * The channel of the file
+     */
+    private final FileChannel mChannel;
+
+    /**
+     * The size of the file in bytes
+     */
+    private final long mLength;
+
+    /**
+     * Creates a source on a channel
+     *
+     * @param channel the channel of the file
+     * @param length  the size of the file in bytes
+     */
+    private FileChannelPdfSource(FileChannel channel, long length) {
+        mChannel = channel;
+        mLength = length;
+    }
+
+    /**
+     * Creates a source on the channel of a file, if the file can be read at random positions. The channel of a pipe
+     * or of a stream that was already read from cannot be used.
+     *
+     * @param channel the channel of the file
+     * @return the source, or null if the channel is not a regular file at its start
+     */
+    public static FileChannelPdfSource open(FileChannel channel) {
+        try {
+            long length = channel.size();
+            if (length > 0 && channel.position() == 0) {
+                return new FileChannelPdfSource(channel, length);
+            }
+        } catch (IOException e) {
+            // A pipe has no size or position, the document has to be read as a stream
+        }
+        return null;
+    }
+
+    /**
+     * Opens a reader that reads the document partially
+     *
+     * @return the reader
+     * @throws IOException when the document cannot be read
+     */
+    public PdfReader openReader() throws IOException {
+        return new PdfReader(new RandomAccessFileOrArray(new GetBufferedRandomAccessSource(new ChannelSource())),
+                null);
+    }
+
+    /**
+     * Reads the file with positional reads on the channel
+     */
+    private final class ChannelSource implements RandomAccessSource {
+        @Override
+        public int get(long position) throws IOException {
+            byte[] bytes = new byte[1];
+            return get(position, bytes, 0, 1) == 1 ? bytes[0] & 0xff : -1;
+        }
+
+        @Override
+        public int get(long position, byte[] bytes, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= mLength) {
+                return -1;
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, off, (int) Math.min(len, mLength - position));
+            int read = 0;
+            while (buffer.hasRemaining()) {
+                int count = mChannel.read(buffer, position + read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        @Override
+        public long length() {
+            return mLength;
+        }
+
+        /**
+         * The channel is closed together with the stream it came from
+         */
+        @Override
+        public void close() {
+            // The channel is shared by every reader of the document
+        }
+    }
+}
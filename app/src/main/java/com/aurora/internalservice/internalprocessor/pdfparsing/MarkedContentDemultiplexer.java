@@ -0,0 +1,275 @@
+package com.aurora.internalservice.internalprocessor.pdfparsing;
+
+import android.util.Log;
+
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfLiteral;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.ContentOperator;
+import com.itextpdf.text.pdf.parser.ImageRenderInfo;
+import com.itextpdf.text.pdf.parser.PdfContentStreamProcessor;
+import com.itextpdf.text.pdf.parser.RenderListener;
+import com.itextpdf.text.pdf.parser.SimpleTextExtractionStrategy;
+import com.itextpdf.text.pdf.parser.TextRenderInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interprets the content stream of a page once and sorts its text and images by the marked-content id (MCID) they
+ * belong to, so the structure elements of the page can be looked up without reading the page again.
+ */
+final class MarkedContentDemultiplexer implements RenderListener {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "MarkedContentDemux";
+
+    /**
+     * The resources of the page, used to look up marked-content properties that are given by name
+     */
+    private final PdfDictionary mResources;
+
+    /**
+     * The MCIDs of the marked-content sequences that are open, innermost last. A sequence without an MCID is null.
+     */
+    private final List<Integer> mOpenSequences = new ArrayList<>();
+
+    /**
+     * The text of the page, by MCID. Every MCID has its own strategy, so the text is joined exactly like it was
+     * when only that MCID was extracted.
+     */
+    private final Map<Integer, SimpleTextExtractionStrategy> mText = new HashMap<>();
+
+    /**
+     * The last image of every MCID of the page
+     */
+    private final Map<Integer, ImageRenderInfo> mImages = new HashMap<>();
+
+    /**
+     * The last image of the page, used for figures whose image is not marked with their MCID
+     */
+    private ImageRenderInfo mLastImage = null;
+
+    /**
+     * The images that were already encoded in Base64, by MCID
+     */
+    private final Map<Integer, String> mEncodedImages = new HashMap<>();
+
+    /**
+     * Creates a demultiplexer for a page
+     *
+     * @param resources the resources of the page
+     */
+    private MarkedContentDemultiplexer(PdfDictionary resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Interprets the content stream of a page
+     *
+     * @param page the page dictionary
+     * @return the text and images of the page, by MCID
+     */
+    static MarkedContentDemultiplexer process(PdfDictionary page) {
+        PdfDictionary resources = page.getAsDict(PdfName.RESOURCES);
+        MarkedContentDemultiplexer demultiplexer = new MarkedContentDemultiplexer(resources);
+        PdfContentStreamProcessor processor = new PdfContentStreamProcessor(demultiplexer);
+        demultiplexer.trackMarkedContent(processor);
+        try {
+            processor.processContent(PdfReader.getPageContent(page), resources);
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Fail to get the page content: " + e.getLocalizedMessage());
+        }
+        return demultiplexer;
+    }
+
+    /**
+     * Gets the text of a marked-content sequence
+     *
+     * @param mcid the MCID of the sequence
+     * @return the text of the sequence, or an empty string if the page has no text with this MCID
+     */
+    String getText(int mcid) {
+        SimpleTextExtractionStrategy strategy = mText.get(mcid);
+        return strategy == null ? "" : strategy.getResultantText();
+    }
+
+    /**
+     * Gets the image of a marked-content sequence, encoded in Base64. The image is only decoded now, so images of
+     * sequences that are never asked for are not decoded at all.
+     *
+     * @param mcid the MCID of the sequence
+     * @return the last image with this MCID, or else the last image of the page, or an empty string if the page
+     * has no images
+     */
+    String getImage(int mcid) {
+        String encodedImage = mEncodedImages.get(mcid);
+        if (encodedImage != null) {
+            return encodedImage;
+        }
+
+        ImageRenderInfo image = mImages.get(mcid);
+        if (image == null) {
+            image = mLastImage;
+        }
+
+        ImageExtractionStrategy strategy = new ImageExtractionStrategy();
+        if (image != null) {
+            strategy.renderImage(image);
+        }
+        return strategy.getResultantText();
+    }
+
+    /**
+     * Encodes the images of a number of marked-content sequences now, so they do not have to be decoded when they
+     * are asked for
+     *
+     * @param mcids the MCIDs of the sequences, or null if no images are needed
+     */
+    void encodeImages(Collection<Integer> mcids) {
+        if (mcids == null) {
+            return;
+        }
+
+        for (Integer mcid : mcids) {
+            if (!mEncodedImages.containsKey(mcid)) {
+                mEncodedImages.put(mcid, getImage(mcid));
+            }
+        }
+    }
+
+    /**
+     * Wraps the marked-content operators of a processor, so the open sequences are known when an image is rendered.
+     * Unlike text, images do not carry their marked-content information.
+     *
+     * @param processor the processor that interprets the page
+     */
+    private void trackMarkedContent(PdfContentStreamProcessor processor) {
+        TrackingOperator.register(processor, "BDC",
+                (p, operator, operands) -> mOpenSequences.add(getMcid(operands.get(1))));
+        TrackingOperator.register(processor, "BMC", (p, operator, operands) -> mOpenSequences.add(null));
+        TrackingOperator.register(processor, "EMC", (p, operator, operands) -> {
+            if (!mOpenSequences.isEmpty()) {
+                mOpenSequences.remove(mOpenSequences.size() - 1);
+            }
+        });
+    }
+
+    /**
+     * Gets the MCID from the properties of a marked-content sequence
+     *
+     * @param properties the properties, either inline or the name of an entry in the resources of the page
+     * @return the MCID, or null if the sequence has none
+     */
+    private Integer getMcid(PdfObject properties) {
+        PdfDictionary dictionary = null;
+        if (properties instanceof PdfDictionary) {
+            dictionary = (PdfDictionary) properties;
+        } else if (properties instanceof PdfName && mResources != null) {
+            PdfDictionary named = mResources.getAsDict(PdfName.PROPERTIES);
+            dictionary = named == null ? null : named.getAsDict((PdfName) properties);
+        }
+
+        PdfNumber mcid = dictionary == null ? null : dictionary.getAsNumber(PdfName.MCID);
+        return mcid == null ? null : mcid.intValue();
+    }
+
+    @Override
+    public void beginTextBlock() {
+        // Text blocks do not matter for the marked content
+    }
+
+    /**
+     * Adds text to every open marked-content sequence with an MCID, like a MarkedContentRenderFilter per MCID did
+     *
+     * @param renderInfo the text that is rendered
+     */
+    @Override
+    public void renderText(TextRenderInfo renderInfo) {
+        for (Integer mcid : mOpenSequences) {
+            if (mcid != null) {
+                SimpleTextExtractionStrategy strategy = mText.get(mcid);
+                if (strategy == null) {
+                    strategy = new SimpleTextExtractionStrategy();
+                    mText.put(mcid, strategy);
+                }
+                strategy.renderText(renderInfo);
+            }
+        }
+    }
+
+    @Override
+    public void endTextBlock() {
+        // Text blocks do not matter for the marked content
+    }
+
+    /**
+     * Remembers an image for the innermost open marked-content sequence with an MCID
+     *
+     * @param renderInfo the image that is rendered
+     */
+    @Override
+    public void renderImage(ImageRenderInfo renderInfo) {
+        mLastImage = renderInfo;
+        for (int i = mOpenSequences.size() - 1; i >= 0; i--) {
+            Integer mcid = mOpenSequences.get(i);
+            if (mcid != null) {
+                mImages.put(mcid, renderInfo);
+                return;
+            }
+        }
+    }
+
+    /**
+     * An operator that runs the operator it replaces first, and then keeps track of the marked content
+     */
+    private static final class TrackingOperator implements ContentOperator {
+        /**
+         * The operator of the processor that is replaced
+         */
+        private ContentOperator mOriginal = null;
+
+        /**
+         * The operator that keeps track of the marked content
+         */
+        private final ContentOperator mTracker;
+
+        /**
+         * Creates a tracking operator
+         *
+         * @param tracker the operator that keeps track of the marked content
+         */
+        private TrackingOperator(ContentOperator tracker) {
+            mTracker = tracker;
+        }
+
+        /**
+         * Replaces an operator of a processor by a tracking operator
+         *
+         * @param processor      the processor that interprets the page
+         * @param operatorString the operator that is replaced
+         * @param tracker        the operator that keeps track of the marked content
+         */
+        static void register(PdfContentStreamProcessor processor, String operatorString, ContentOperator tracker) {
+            TrackingOperator trackingOperator = new TrackingOperator(tracker);
+            trackingOperator.mOriginal = processor.registerContentOperator(operatorString, trackingOperator);
+        }
+
+        @Override
+        public void invoke(PdfContentStreamProcessor processor, PdfLiteral operator, ArrayList<PdfObject> operands)
+                throws Exception {
+            if (mOriginal != null) {
+                mOriginal.invoke(processor, operator, operands);
+            }
+            mTracker.invoke(processor, operator, operands);
+        }
+    }
+}
@@ -9,39 +9,120 @@ package com.aurora.internalservice.internalprocessor.pdfparsing;
  * Jonas Cuypers adapted this code on 23/04
  */
 
-import android.util.Log;
-
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
 import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
 import com.itextpdf.text.pdf.PdfArray;
 import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
 import com.itextpdf.text.pdf.PdfName;
 import com.itextpdf.text.pdf.PdfNumber;
 import com.itextpdf.text.pdf.PdfObject;
 import com.itextpdf.text.pdf.PdfReader;
-import com.itextpdf.text.pdf.parser.FilteredTextRenderListener;
-import com.itextpdf.text.pdf.parser.MarkedContentRenderFilter;
-import com.itextpdf.text.pdf.parser.PdfContentStreamProcessor;
-import com.itextpdf.text.pdf.parser.RenderFilter;
-import com.itextpdf.text.pdf.parser.SimpleTextExtractionStrategy;
-import com.itextpdf.text.pdf.parser.TextExtractionStrategy;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
- * Converts a tagged PDF document into a ParsedPDF.
+ * Converts a tagged PDF document into a ParsedPDF. The structure tree is walked on the calling thread, while the
+ * content streams of the pages it points to are interpreted in batches on a {@link ParallelPageInterpreter}. The
+ * content of the structure elements is added to the ParsedPDF in the order of the structure tree.
  */
 public class PDFContentExtractor {
 
     private ParsedPDF mParsedPDF;
 
+    /**
+     * Token that is checked before every structure element, the extraction stops when it is cancelled
+     */
+    private CancellationToken mCancellationToken = new CancellationToken();
+
+    /**
+     * The page numbers of the pages of the document, by the object number of their page dictionary
+     */
+    private Map<Integer, Integer> mPageNumbers = new HashMap<>();
+
+    /**
+     * The number of pages of the document
+     */
+    private int mPages = 0;
+
+    /**
+     * The highest page number on which a structure element was found so far
+     */
+    private int mLastPage = 0;
+
+    /**
+     * The number of figures that were extracted so far
+     */
+    private int mFigures = 0;
+
+    /**
+     * The number of pages that are interpreted at the same time
+     */
+    private final int mParallelism;
+
+    /**
+     * Interprets the pages of the document that is extracted
+     */
+    private ParallelPageInterpreter mInterpreter = null;
+
+    /**
+     * The structure elements whose pages were not interpreted yet, in the order of the structure tree
+     */
+    private List<PendingElement> mPendingElements = new ArrayList<>();
+
+    /**
+     * The pages the pending elements need that were not interpreted yet, by page number, with the MCIDs of the
+     * figures on every page
+     */
+    private Map<Integer, Set<Integer>> mPendingPages = new TreeMap<>();
+
+    /**
+     * The pages that were interpreted most recently, by page number. The structure elements are mostly in the order
+     * of the pages, so the last batches are enough to interpret almost every page only once.
+     */
+    private Map<Integer, MarkedContentDemultiplexer> mPageContents = new PageContentCache(1);
+
+    /**
+     * The smallest number of interpreted pages that are kept
+     */
+    private static final int CACHED_PAGES = 8;
+
+    /**
+     * The number of pages every thread interprets in a batch
+     */
+    private static final int PAGES_PER_THREAD = 4;
+
     /**
      * Subtract 48 from a char to get the number in int
      */
     private static final int CHAR_TO_INT = 48;
 
+    /**
+     * Creates an extractor that interprets as many pages at the same time as there are cores
+     */
     public PDFContentExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an extractor that interprets a number of pages at the same time
+     *
+     * @param parallelism the number of pages that are interpreted at the same time, 1 to interpret them on the
+     *                    calling thread
+     */
+    public PDFContentExtractor(int parallelism) {
         mParsedPDF = new ParsedPDF();
+        mParallelism = Math.max(1, parallelism);
     }
 
     /**
@@ -56,7 +137,63 @@ public class PDFContentExtractor {
      */
     public void extractContent(PdfReader reader, ParsedPDF parsedPDF)
             throws IOException, DocumentNotSupportedException {
+        extractContent(reader, parsedPDF, new CancellationToken());
+    }
+
+    /**
+     * Parses a string with structured content, and stops early when the given token is cancelled. The structure
+     * elements are mostly in the order of the pages, so the page of the last element is reported as the progress.
+     *
+     * @param reader            the PdfReader that has access to the PDF file
+     * @param parsedPDF         the ParsedPDF to which the content is added
+     * @param cancellationToken token that is checked before every structure element and page, and told how many
+     *                          pages and figures are done
+     * @throws DocumentNotSupportedException when the pdf is not tagged
+     * @throws IOException                   when there is a fault reading the document
+     * @throws java.util.concurrent.CancellationException when the token was cancelled
+     */
+    public void extractContent(final PdfReader reader, ParsedPDF parsedPDF, CancellationToken cancellationToken)
+            throws IOException, DocumentNotSupportedException {
+        extractContent(reader, () -> new PdfReader(reader.getSafeFile(), null), parsedPDF, cancellationToken);
+    }
+
+    /**
+     * Parses a string with structured content from a file that is read partially, so only the pages that are being
+     * interpreted are in memory.
+     *
+     * @param source            the source that gives access to the PDF file
+     * @param parsedPDF         the ParsedPDF to which the content is added
+     * @param cancellationToken token that is checked before every structure element and page, and told how many
+     *                          pages and figures are done
+     * @throws DocumentNotSupportedException when the pdf is not tagged
+     * @throws IOException                   when there is a fault reading the document
+     * @throws java.util.concurrent.CancellationException when the token was cancelled
+     */
+    public void extractContent(FileChannelPdfSource source, ParsedPDF parsedPDF, CancellationToken cancellationToken)
+            throws IOException, DocumentNotSupportedException {
+        PdfReader reader = source.openReader();
+        try {
+            extractContent(reader, source::openReader, parsedPDF, cancellationToken);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Private method that parses a string with structured content
+     *
+     * @param reader            the PdfReader that has access to the PDF file
+     * @param readerFactory     opens the readers on which pages are interpreted in parallel
+     * @param parsedPDF         the ParsedPDF to which the content is added
+     * @param cancellationToken token that is checked before every structure element and page
+     * @throws DocumentNotSupportedException when the pdf is not tagged
+     * @throws IOException                   when there is a fault reading the document
+     */
+    private void extractContent(PdfReader reader, ParallelPageInterpreter.ReaderFactory readerFactory,
+                                ParsedPDF parsedPDF, CancellationToken cancellationToken)
+            throws IOException, DocumentNotSupportedException {
         this.mParsedPDF = parsedPDF;
+        this.mCancellationToken = cancellationToken;
         PdfDictionary catalog = reader.getCatalog();
         // get the StructTreeRoot from the root object
         PdfDictionary struct = catalog.getAsDict(PdfName.STRUCTTREEROOT);
@@ -64,11 +201,40 @@ public class PDFContentExtractor {
             throw new DocumentNotSupportedException("The opened PDF document is not supported " +
                     "because it is not tagged");
         } else {
-            // Inspect the child or children of the StructTreeRoot
-            inspectChild(struct.getDirectObject(PdfName.K), "");
+            mPages = reader.getNumberOfPages();
+            mPageNumbers = new HashMap<>();
+            for (int page = 1; page <= mPages; page++) {
+                mPageNumbers.put(reader.getPageOrigRef(page).getNumber(), page);
+            }
+            mLastPage = 0;
+            mFigures = 0;
+            mPendingElements = new ArrayList<>();
+            mPendingPages = new TreeMap<>();
+            mPageContents = new PageContentCache(Math.max(CACHED_PAGES, getBatchSize()));
+            mInterpreter = new ParallelPageInterpreter(reader, readerFactory, mParallelism, cancellationToken);
+
+            try {
+                cancellationToken.startPhase(ProcessingPhase.PAGES);
+                // Inspect the child or children of the StructTreeRoot
+                inspectChild(struct.getDirectObject(PdfName.K), "");
+                addPendingElements();
+                cancellationToken.reportProgress(ProcessingPhase.PAGES, mPages, mPages);
+            } finally {
+                mInterpreter.close();
+                mPageContents.clear();
+                mPendingElements.clear();
+                mPendingPages.clear();
+            }
         }
     }
 
+    /**
+     * @return the number of pages that are interpreted in one batch
+     */
+    private int getBatchSize() {
+        return mParallelism == 1 ? 1 : mParallelism * PAGES_PER_THREAD;
+    }
+
 
     /**
      * Inspects a child of a structured element. This can be an array or a
@@ -108,7 +274,7 @@ public class PDFContentExtractor {
 
     /**
      * If the child of a structured element is a dictionary, we inspect the
-     * child;
+     * child; its content is added once the pages it is on are interpreted.
      *
      * @param k         the child dictionary to inspect
      * @param tagParent the tag of the parent
@@ -118,6 +284,7 @@ public class PDFContentExtractor {
         if (k == null) {
             return;
         }
+        mCancellationToken.throwIfCancelled();
         String tag = tagParent;
         PdfName s = k.getAsName(PdfName.S);
         if (s != null) {
@@ -126,18 +293,13 @@ public class PDFContentExtractor {
             if (!Pattern.matches(TagConverter.MAIN_SUPPORTED_TAGS, tag)) {
                 tag = tagParent;
             }
-            PdfDictionary dict = k.getAsDict(PdfName.PG);
-            if (dict != null) {
-                if ("Figure".equals(tag)) {
-                    String content = parseTag(k.getDirectObject(PdfName.K), dict, true);
-                    mParsedPDF.addImage(content);
-                } else {
-                    String content = parseTag(k.getDirectObject(PdfName.K), dict, false);
-                    if (Pattern.matches("H[0-9]+", tag)) {
-                        mParsedPDF.addHeader(content, tag.charAt(1) - CHAR_TO_INT);
-                    } else {
-                        mParsedPDF.addParagraph(content);
-                    }
+            PdfObject page = k.get(PdfName.PG);
+            if (k.getAsDict(PdfName.PG) != null) {
+                PendingElement element = new PendingElement(tag, getPageNumber(page));
+                parseTag(k.getDirectObject(PdfName.K), page, element);
+                mPendingElements.add(element);
+                if (mPendingPages.size() >= getBatchSize()) {
+                    addPendingElements();
                 }
             }
         }
@@ -145,55 +307,236 @@ public class PDFContentExtractor {
     }
 
     /**
-     * Searches for a tag in a page.
+     * Interprets the pages the pending elements need, and adds the content of the elements to the ParsedPDF in the
+     * order in which they were found
+     */
+    private void addPendingElements() {
+        Map<Integer, MarkedContentDemultiplexer> batch = mInterpreter.interpret(mPendingPages);
+        for (PendingElement element : mPendingElements) {
+            mCancellationToken.throwIfCancelled();
+            reportPage(element.mPage);
+            StringBuilder content = new StringBuilder();
+            for (MarkedContent markedContent : element.mMarkedContent) {
+                MarkedContentDemultiplexer pageContent = batch.get(markedContent.mPage);
+                if (pageContent == null) {
+                    pageContent = getPageContent(markedContent.mPage);
+                }
+                content.append(element.isFigure() ? pageContent.getImage(markedContent.mMcid)
+                        : pageContent.getText(markedContent.mMcid));
+            }
+            addElement(element, content.toString());
+        }
+        mPageContents.putAll(batch);
+        mPendingElements.clear();
+        mPendingPages.clear();
+    }
+
+    /**
+     * Adds the content of a structure element to the ParsedPDF
      *
-     * @param object an identifier to find the marked content
-     * @param page   a page dictionary
+     * @param element the structure element
+     * @param content the text of the element, or its image for a figure
      */
-    private String parseTag(PdfObject object, PdfDictionary page, boolean image) {
-        // if the identifier is a number, we can extract the content right away
-        String parsed;
+    private void addElement(PendingElement element, String content) {
+        if (element.isFigure()) {
+            mCancellationToken.startPhase(ProcessingPhase.IMAGES);
+            mParsedPDF.addImage(content);
+            mFigures++;
+            mCancellationToken.reportProgress(ProcessingPhase.IMAGES, mFigures, -1);
+        } else if (Pattern.matches("H[0-9]+", element.mTag)) {
+            mParsedPDF.addHeader(content, element.mTag.charAt(1) - CHAR_TO_INT);
+        } else {
+            mParsedPDF.addParagraph(content);
+        }
+    }
+
+    /**
+     * Reports the page of a structure element as the progress, if it is further than the pages reported before
+     *
+     * @param pageNumber the number of the page of the structure element, or null if it is unknown
+     */
+    private void reportPage(Integer pageNumber) {
+        if (pageNumber != null && pageNumber > mLastPage) {
+            // The time between the previous report and this one is spent on the pages before this one
+            mCancellationToken.reportProgress(ProcessingPhase.PAGES, pageNumber - 1L, mPages);
+            mLastPage = pageNumber;
+        }
+    }
+
+    /**
+     * Gets the number of a page
+     *
+     * @param page the reference to the page dictionary
+     * @return the page number, or null if the object is not a reference to a page of the document
+     */
+    private Integer getPageNumber(PdfObject page) {
+        if (!(page instanceof PdfIndirectReference)) {
+            return null;
+        }
+        return mPageNumbers.get(((PdfIndirectReference) page).getNumber());
+    }
+
+    /**
+     * Searches for the marked content of a tag, and remembers on which pages it has to be looked up.
+     *
+     * @param object  an identifier to find the marked content
+     * @param page    the reference to the page dictionary
+     * @param element the structure element the marked content belongs to
+     */
+    private void parseTag(PdfObject object, PdfObject page, PendingElement element) {
         if (object instanceof PdfNumber) {
-            PdfNumber mcid = (PdfNumber) object;
-            RenderFilter filter = new MarkedContentRenderFilter(mcid.intValue());
-            TextExtractionStrategy strategy;
-            if (image) {
-                strategy = new ImageExtractionStrategy();
-            } else {
-                strategy = new SimpleTextExtractionStrategy();
-            }
-            FilteredTextRenderListener listener = new FilteredTextRenderListener(
-                    strategy, filter);
-            PdfContentStreamProcessor processor = new PdfContentStreamProcessor(
-                    listener);
-            try {
-                processor.processContent(PdfReader.getPageContent(page), page
-                        .getAsDict(PdfName.RESOURCES));
-            } catch (IOException e) {
-                Log.e("GetPageContent", "Fail to getpagecontent: " + e.getLocalizedMessage());
+            // if the identifier is a number, the content is on the page right away
+            Integer pageNumber = getPageNumber(page);
+            if (pageNumber == null) {
+                return;
             }
-            parsed = listener.getResultantText();
+            int mcid = ((PdfNumber) object).intValue();
+            element.mMarkedContent.add(new MarkedContent(pageNumber, mcid));
+            requestPage(pageNumber, element.isFigure() ? mcid : null);
         } else if (object instanceof PdfArray) {
             // if the identifier is an array, we call the parseTag method
             // recursively
             PdfArray arr = (PdfArray) object;
             int n = arr.size();
-            StringBuilder stringBuilder = new StringBuilder();
             for (int i = 0; i < n; i++) {
-                stringBuilder.append(parseTag(arr.getPdfObject(i), page, image));
+                parseTag(arr.getDirectObject(i), page, element);
             }
-            parsed = stringBuilder.toString();
         } else if (object instanceof PdfDictionary) {
-            // if the identifier is a dictionary, we get the resources from the
-            // dictionary
+            // if the identifier is a marked-content reference, it is on its own page or on the page of its parent
             PdfDictionary mcr = (PdfDictionary) object;
-            parsed = parseTag(mcr.getDirectObject(PdfName.MCID), mcr
-                    .getAsDict(PdfName.PG), image);
-        } else {
-            parsed = "";
+            PdfObject mcrPage = mcr.get(PdfName.PG);
+            parseTag(mcr.getDirectObject(PdfName.MCID), mcrPage == null ? page : mcrPage, element);
         }
-        return parsed;
     }
 
-}
+    /**
+     * Remembers that a page has to be interpreted for the pending elements, unless it was interpreted in the last
+     * batch
+     *
+     * @param pageNumber the number of the page
+     * @param figure     the MCID of a figure on the page, or null if the marked content is text
+     */
+    private void requestPage(int pageNumber, Integer figure) {
+        if (mPageContents.containsKey(pageNumber)) {
+            return;
+        }
+
+        Set<Integer> figures = mPendingPages.get(pageNumber);
+        if (figures == null) {
+            figures = new HashSet<>();
+            mPendingPages.put(pageNumber, figures);
+        }
+        if (figure != null) {
+            figures.add(figure);
+        }
+    }
 
+    /**
+     * Gets the text and images of a page by MCID. The content stream of a page is only interpreted again when the
+     * page was dropped from the cache.
+     *
+     * @param pageNumber the number of the page
+     * @return the content of the page
+     */
+    private MarkedContentDemultiplexer getPageContent(int pageNumber) {
+        MarkedContentDemultiplexer pageContent = mPageContents.get(pageNumber);
+        if (pageContent == null) {
+            Map<Integer, Set<Integer>> page = new HashMap<>();
+            page.put(pageNumber, new HashSet<Integer>());
+            pageContent = mInterpreter.interpret(page).get(pageNumber);
+            mPageContents.put(pageNumber, pageContent);
+        }
+        return pageContent;
+    }
+
+    /**
+     * A structure element whose content is added once the pages it is on are interpreted
+     */
+    private static final class PendingElement {
+        /**
+         * The tag of the element
+         */
+        private final String mTag;
+
+        /**
+         * The number of the page of the element, or null if it is unknown
+         */
+        private final Integer mPage;
+
+        /**
+         * The marked content of the element, in order
+         */
+        private final List<MarkedContent> mMarkedContent = new ArrayList<>();
+
+        /**
+         * Creates a pending element
+         *
+         * @param tag  the tag of the element
+         * @param page the number of the page of the element, or null if it is unknown
+         */
+        PendingElement(String tag, Integer page) {
+            mTag = tag;
+            mPage = page;
+        }
+
+        /**
+         * @return true if the content of the element is an image
+         */
+        boolean isFigure() {
+            return "Figure".equals(mTag);
+        }
+    }
+
+    /**
+     * A marked-content sequence on a page
+     */
+    private static final class MarkedContent {
+        /**
+         * The number of the page
+         */
+        private final int mPage;
+
+        /**
+         * The marked-content id of the sequence
+         */
+        private final int mMcid;
+
+        /**
+         * Creates a reference to a marked-content sequence
+         *
+         * @param page the number of the page
+         * @param mcid the marked-content id of the sequence
+         */
+        MarkedContent(int page, int mcid) {
+            mPage = page;
+            mMcid = mcid;
+        }
+    }
+
+    /**
+     * Keeps the pages that were used most recently, so the memory does not grow with the size of the document
+     */
+    private static final class PageContentCache extends LinkedHashMap<Integer, MarkedContentDemultiplexer> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The number of pages that are kept
+         */
+        private final int mCapacity;
+
+        /**
+         * Creates an empty cache that is ordered by access
+         *
+         * @param capacity the number of pages that are kept
+         */
+        PageContentCache(int capacity) {
+            super(capacity + 1, 1f, true);
+            mCapacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, MarkedContentDemultiplexer> eldest) {
+            return size() > mCapacity;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.aurora.internalservice.internalprocessor.pdfparsing;
+
+import android.util.Log;
+
+import com.aurora.internalservice.CancellationToken;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Interprets the content streams of a number of pages at the same time. The calling thread takes pages too, and is
+ * helped by threads of one pool that is shared by every document, so documents that are processed at the same time
+ * do not each start threads of their own. A PdfReader reads its objects through one shared file position, so every
+ * helper reads its pages through a partial PdfReader on the same file. Opening a reader reads the cross-reference
+ * table again, so the readers are handed from batch to batch, and there are never more than the parallelism of the
+ * document. They are kept open until the interpreter is closed, because the images of a page are read from them
+ * when a figure asks for an image that was not encoded yet.
+ */
+final class ParallelPageInterpreter {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "ParallelPageInterpreter";
+
+    /**
+     * The number of pages below which the pages are interpreted on the calling thread
+     */
+    private static final int MIN_PARALLEL_PAGES = 2;
+
+    /**
+     * The number of seconds after which an idle thread of the shared pool stops
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The pool that is shared by all documents, with at most a thread for every core. A document that finds every
+     * thread busy interprets its pages on the calling thread.
+     */
+    private static final ExecutorService sPool = createPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The reader of the document, which is used by the calling thread
+     */
+    private final PdfReader mReader;
+
+    /**
+     * Opens the readers of the helpers from the pool
+     */
+    private final ReaderFactory mReaderFactory;
+
+    /**
+     * The number of pages that are interpreted at the same time, including the calling thread
+     */
+    private final int mParallelism;
+
+    /**
+     * Token that is checked before every page
+     */
+    private final CancellationToken mCancellationToken;
+
+    /**
+     * The readers that were opened for the helpers, also the lock that guards whether the interpreter is closed
+     */
+    private final List<PdfReader> mViews = new ArrayList<>();
+
+    /**
+     * The readers that no helper is using right now
+     */
+    private final Queue<PdfReader> mIdleViews = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether the interpreter was closed, after which no readers are opened anymore
+     */
+    private boolean mClosed = false;
+
+    /**
+     * Creates an interpreter for a document
+     *
+     * @param reader            the reader of the document
+     * @param readerFactory     opens the readers of the helpers from the pool
+     * @param parallelism       the number of pages that are interpreted at the same time, including the calling
+     *                          thread
+     * @param cancellationToken token that is checked before every page
+     */
+    ParallelPageInterpreter(PdfReader reader, ReaderFactory readerFactory, int parallelism,
+                            CancellationToken cancellationToken) {
+        mReader = reader;
+        mReaderFactory = readerFactory;
+        mParallelism = Math.max(1, parallelism);
+        mCancellationToken = cancellationToken;
+    }
+
+    /**
+     * Interprets pages and encodes the images of their figures
+     *
+     * @param pages the page numbers of the pages, with the MCIDs of the figures on every page
+     * @return the text and images of every page, by page number. Pages that could not be read are missing.
+     */
+    Map<Integer, MarkedContentDemultiplexer> interpret(Map<Integer, ? extends Collection<Integer>> pages) {
+        Map<Integer, MarkedContentDemultiplexer> contents = new HashMap<>();
+        List<Integer> pageNumbers = new ArrayList<>(pages.keySet());
+        if (mParallelism == 1 || pageNumbers.size() < MIN_PARALLEL_PAGES) {
+            for (Integer pageNumber : pageNumbers) {
+                contents.put(pageNumber, interpret(mReader, pageNumber, pages.get(pageNumber)));
+            }
+            return contents;
+        }
+
+        Batch batch = new Batch(pageNumbers, pages);
+        int helpers = Math.min(mParallelism, pageNumbers.size()) - 1;
+        for (int i = 0; i < helpers; i++) {
+            sPool.execute(batch::help);
+        }
+        try {
+            batch.interpretPages(mReader);
+        } catch (RuntimeException e) {
+            // The helpers may still be reading pages through readers that are closed next
+            batch.abandon();
+            throw e;
+        }
+        batch.await();
+
+        for (int i = 0; i < batch.mResults.length; i++) {
+            if (batch.mResults[i] != null) {
+                contents.put(pageNumbers.get(i), batch.mResults[i]);
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Interprets a single page, and releases the page from the reader again
+     *
+     * @param reader     the reader through which the page is read
+     * @param pageNumber the number of the page
+     * @param figures    the MCIDs of the figures on the page, whose images are encoded right away
+     * @return the text and images of the page
+     */
+    private MarkedContentDemultiplexer interpret(PdfReader reader, int pageNumber, Collection<Integer> figures) {
+        mCancellationToken.throwIfCancelled();
+        PdfDictionary page = reader.getPageN(pageNumber);
+        MarkedContentDemultiplexer content = MarkedContentDemultiplexer.process(page);
+        content.encodeImages(figures);
+        reader.releasePage(pageNumber);
+        return content;
+    }
+
+    /**
+     * Private helper method that takes a reader no helper is using, or opens a new one
+     *
+     * @return the reader, or null if it could not be opened or the interpreter is closed
+     */
+    private PdfReader takeView() {
+        PdfReader view = mIdleViews.poll();
+        if (view != null) {
+            return view;
+        }
+
+        try {
+            view = mReaderFactory.openReader();
+        } catch (IOException e) {
+            // The pages this helper would have taken are interpreted by the others
+            Log.e(CLASS_TAG, "Could not open a view on the document: " + e.getLocalizedMessage());
+            return null;
+        }
+
+        synchronized (mViews) {
+            if (!mClosed) {
+                mViews.add(view);
+                return view;
+            }
+        }
+        view.close();
+        return null;
+    }
+
+    /**
+     * Closes the readers of the helpers. Helpers from the pool that start afterwards find no pages to interpret.
+     */
+    void close() {
+        synchronized (mViews) {
+            mClosed = true;
+            for (PdfReader view : mViews) {
+                view.close();
+            }
+            mViews.clear();
+            mIdleViews.clear();
+        }
+    }
+
+    /**
+     * Private helper method that creates the pool that is shared by all documents
+     *
+     * @param threads the maximum number of threads of the pool
+     * @return the pool, whose threads stop when they were idle for a while
+     */
+    private static ExecutorService createPool(int threads) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, "aurora-pdf-pages-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), threadFactory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * The pages of one call to {@link #interpret(Map)}. The calling thread and the helpers take the next page
+     * that nobody took yet, until every page is taken, so a helper that starts late has nothing left to do.
+     */
+    private final class Batch {
+        /**
+         * The page numbers of all pages that are interpreted
+         */
+        private final List<Integer> mPageNumbers;
+
+        /**
+         * The MCIDs of the figures on every page
+         */
+        private final Map<Integer, ? extends Collection<Integer>> mFigures;
+
+        /**
+         * The interpreted pages, in the same order as the page numbers
+         */
+        private final MarkedContentDemultiplexer[] mResults;
+
+        /**
+         * The index of the next page that nobody took yet
+         */
+        private final AtomicInteger mNextPage = new AtomicInteger();
+
+        /**
+         * Counts down when a page is done, whether it was interpreted or not
+         */
+        private final CountDownLatch mDonePages;
+
+        /**
+         * The first error of a helper, which is thrown on the calling thread
+         */
+        private final AtomicReference<RuntimeException> mFailure = new AtomicReference<>();
+
+        /**
+         * Creates the batch of pages
+         *
+         * @param pageNumbers the page numbers of all pages that are interpreted
+         * @param figures     the MCIDs of the figures on every page
+         */
+        Batch(List<Integer> pageNumbers, Map<Integer, ? extends Collection<Integer>> figures) {
+            mPageNumbers = pageNumbers;
+            mFigures = figures;
+            mResults = new MarkedContentDemultiplexer[pageNumbers.size()];
+            mDonePages = new CountDownLatch(pageNumbers.size());
+        }
+
+        /**
+         * Interprets pages on a thread of the pool, through a reader that no other thread uses at the same time
+         */
+        void help() {
+            if (mNextPage.get() >= mPageNumbers.size()) {
+                return;
+            }
+
+            PdfReader view = takeView();
+            if (view == null) {
+                return;
+            }
+
+            try {
+                interpretPages(view);
+            } catch (RuntimeException e) {
+                mFailure.compareAndSet(null, e);
+            } finally {
+                mIdleViews.offer(view);
+            }
+        }
+
+        /**
+         * Interprets the pages nobody took yet, one by one
+         *
+         * @param reader the reader through which the pages are read
+         */
+        void interpretPages(PdfReader reader) {
+            int index = mNextPage.getAndIncrement();
+            while (index < mPageNumbers.size()) {
+                try {
+                    Integer pageNumber = mPageNumbers.get(index);
+                    mResults[index] = interpret(reader, pageNumber, mFigures.get(pageNumber));
+                } finally {
+                    mDonePages.countDown();
+                }
+                index = mNextPage.getAndIncrement();
+            }
+        }
+
+        /**
+         * Lets nobody take another page, and waits until the pages that were taken are done
+         */
+        void abandon() {
+            int taken = Math.min(mNextPage.getAndSet(mPageNumbers.size()), mPageNumbers.size());
+            for (int i = taken; i < mPageNumbers.size(); i++) {
+                mDonePages.countDown();
+            }
+
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mDonePages.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits until every page that was taken is done, and throws the error of a helper if there was one
+         */
+        void await() {
+            try {
+                mDonePages.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while the pages were interpreted");
+            }
+
+            RuntimeException failure = mFailure.get();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Opens a new reader on the document that is interpreted
+     */
+    interface ReaderFactory {
+        /**
+         * @return a new reader, which reads the document independently of the other readers
+         * @throws IOException when the document cannot be read
+         */
+        PdfReader openReader() throws IOException;
+    }
+}
@@ -4,24 +4,41 @@ package com.aurora.internalservice.internalprocessor.pdfparsing;
 import com.aurora.auroralib.ExtractedImage;
 import com.aurora.auroralib.ExtractedText;
 import com.aurora.auroralib.Section;
+import com.aurora.internalservice.internalprocessor.TextSink;
 
 import java.util.ArrayList;
 
 /**
  * This class will represent a PDF parsed by the {@link PDFContentExtractor}
- * It has a list of {@link PDFStructureElement} and it can be converted to an {@link ExtractedText}
+ * It has a list of {@link PDFStructureElement} and it can be converted to an {@link ExtractedText}.
+ * When it is created with a {@link TextSink}, every section is handed over as soon as the next header is found, so
+ * only the elements of the current section are kept. A PDF without headers is only split in sections at the end.
  */
 public class ParsedPDF {
-    // Contains all the extracted content from the file in an array
+    // Contains the extracted content from the file that was not handed over yet in an array
     private ArrayList<PDFStructureElement> mPDFElements;
     // If a header was ever added, the parsing strategy changes
     private boolean mContainsHeaders;
-    // The extracted text (instantiated after call toExtractedText)
-    private ExtractedText mExtractedText;
+    // Whether the start of the file was already searched for a title
+    private boolean mTitleSearched;
+    // Receives the title and the sections, or null if everything is kept until toExtractedText is called
+    private TextSink mSink;
 
     public ParsedPDF() {
+        this(null);
+    }
+
+    /**
+     * Creates a ParsedPDF that hands every section over to a sink as soon as it is complete
+     *
+     * @param sink the sink that receives the title and the sections, or null to keep everything until
+     *             {@link #toExtractedText(String, String)} is called
+     */
+    public ParsedPDF(TextSink sink) {
         mPDFElements = new ArrayList<>();
         mContainsHeaders = false;
+        mTitleSearched = false;
+        mSink = sink;
     }
 
     /**
@@ -32,20 +49,44 @@ public class ParsedPDF {
      * @return the same ExtractedText but now filled with text
      */
     public ExtractedText toExtractedText(String fileUri, String fileRef) {
-        mExtractedText = new ExtractedText(fileUri, fileRef);
+        final ExtractedText extractedText = new ExtractedText(fileUri, fileRef);
+        mSink = new TextSink() {
+            @Override
+            public void onTitle(String title) {
+                extractedText.setTitle(title);
+            }
+
+            @Override
+            public void onSection(Section section) {
+                extractedText.addSection(section);
+            }
+        };
+        finish();
+        return extractedText;
+    }
+
+    /**
+     * Hands the content that is left over to the sink, when the whole file was parsed
+     */
+    public void finish() {
         if (mContainsHeaders) {
-            toExtractedTextWithHeaders();
+            handOverWithHeaders();
         } else {
-            toExtractedTextWithoutHeaders();
+            handOverWithoutHeaders();
         }
-        return mExtractedText;
     }
 
     /**
-     * This will convert the text to an ExtractedText if Headers where found during extraction
+     * This will hand the content over to the sink if Headers where found during extraction. Every header starts a
+     * new section, the content before the first header starts with the title.
      */
-    private void toExtractedTextWithHeaders() {
-        int index = searchTitle();
+    private void handOverWithHeaders() {
+        int index = 0;
+        if (!mTitleSearched) {
+            mTitleSearched = true;
+            index = searchTitle();
+        }
+
         while (index < mPDFElements.size()) {
             Section section = new Section();
             if (mPDFElements.get(index).getType().equals(HeadingFromPDF.TYPE)) {
@@ -59,9 +100,10 @@ public class ParsedPDF {
                 addElementToSection(mPDFElements.get(index), section);
                 index++;
             }
-            mExtractedText.addSection(section);
+            mSink.onSection(section);
             index = skipEmptyLines(index);
         }
+        mPDFElements.clear();
     }
 
     /**
@@ -79,25 +121,27 @@ public class ParsedPDF {
     }
 
     /**
-     * This will convert the text to an ExtractedText when no headers where found during extraction
-     * Since there are no headers, no title is found
+     * This will hand the content over to the sink when no headers where found during extraction.
+     * Since there are no headers, no title is found. A line that is followed by an empty line is the title of a
+     * section, and a section ends at an empty line.
      */
-    private void toExtractedTextWithoutHeaders() {
+    private void handOverWithoutHeaders() {
         int index = skipEmptyLines(0);
 
         while (index < mPDFElements.size()) {
             Section section = new Section();
-            StringBuilder body = new StringBuilder();
             if (index + 1 < mPDFElements.size() && mPDFElements.get(index + 1).getContent().trim().isEmpty()) {
                 section.setTitle(mPDFElements.get(index).getContent());
                 index = skipEmptyLines(index + 1);
             }
-            while (!mPDFElements.get(index).getContent().trim().isEmpty() && index < mPDFElements.size()) {
-                body.append(mPDFElements.get(index).getContent());
+            while (index < mPDFElements.size() && !isEmptyLine(mPDFElements.get(index))) {
+                addElementToSection(mPDFElements.get(index), section);
                 index++;
             }
-            mExtractedText.getSections().add(section);
+            mSink.onSection(section);
+            index = skipEmptyLines(index);
         }
+        mPDFElements.clear();
     }
 
     /**
@@ -107,9 +151,10 @@ public class ParsedPDF {
      */
     private int searchTitle() {
         int currentLine = skipEmptyLines(0);
-        if (mPDFElements.get(currentLine).getType().equals(ParagraphFromPDF.TYPE)) {
+        if (currentLine < mPDFElements.size()
+                && mPDFElements.get(currentLine).getType().equals(ParagraphFromPDF.TYPE)) {
             int nextline = skipEmptyLines(currentLine + 1);
-            mExtractedText.setTitle(mPDFElements.get(currentLine).getContent());
+            mSink.onTitle(mPDFElements.get(currentLine).getContent());
             return nextline;
 
         }
@@ -123,20 +168,26 @@ public class ParsedPDF {
      * @return index of list containing content
      */
     private int skipEmptyLines(int startIndex) {
-        if (startIndex < mPDFElements.size()) {
-            String line = mPDFElements.get(startIndex).getContent();
-            while (startIndex < mPDFElements.size() &&
-                    (!mPDFElements.get(startIndex).getType().equals(ImageFromPDF.TYPE)) &&
-                    line.trim().isEmpty()) {
-                startIndex++;
-                line = mPDFElements.get(startIndex).getContent();
-            }
+        while (startIndex < mPDFElements.size() && isEmptyLine(mPDFElements.get(startIndex))) {
+            startIndex++;
         }
         return startIndex;
     }
 
+    /**
+     * @param element an element of the file
+     * @return true if the element is not an image and only contains whitespace
+     */
+    private static boolean isEmptyLine(PDFStructureElement element) {
+        return !element.getType().equals(ImageFromPDF.TYPE) && element.getContent().trim().isEmpty();
+    }
+
 
     void addHeader(String text, int level) {
+        // The content before this header is complete, so it can be handed over already
+        if (mSink != null && (mContainsHeaders || !mPDFElements.isEmpty())) {
+            handOverWithHeaders();
+        }
         mContainsHeaders = true;
         mPDFElements.add(new HeadingFromPDF(text, level));
     }
@@ -3,36 +3,62 @@ package com.aurora.kernel;
 import android.annotation.SuppressLint;
 import android.arch.lifecycle.MutableLiveData;
 import android.content.Context;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.Toast;
 
 import com.aurora.aurora.R;
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 import com.aurora.internalservice.internalcache.CachedFileInfo;
 import com.aurora.internalservice.internalcache.CachedProcessedFile;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
 import com.aurora.kernel.event.DocumentNotSupportedEvent;
+import com.aurora.kernel.event.ExecutionProfileChangedEvent;
 import com.aurora.kernel.event.InternalProcessorRequest;
 import com.aurora.kernel.event.InternalProcessorResponse;
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
 import com.aurora.kernel.event.OpenCachedFileWithPluginRequest;
 import com.aurora.kernel.event.OpenFileWithPluginRequest;
+import com.aurora.kernel.event.ProcessingPreviewEvent;
+import com.aurora.kernel.event.ProcessingProgressEvent;
 import com.aurora.kernel.event.QueryCacheRequest;
 import com.aurora.kernel.event.QueryCacheResponse;
 import com.aurora.kernel.event.RemoveFromCacheRequest;
 import com.aurora.kernel.event.RetrieveFileFromCacheRequest;
 import com.aurora.kernel.event.RetrieveFileFromCacheResponse;
 import com.aurora.kernel.event.UpdateCachedFileDateRequest;
+import com.aurora.plugin.InternalServices;
 import com.aurora.plugin.Plugin;
 import com.google.firebase.analytics.FirebaseAnalytics;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 
 /**
  * Communicator class that communicates to Aurora app environment
@@ -44,18 +70,80 @@ public class AuroraCommunicator extends Communicator {
     private static final String CLASS_TAG = "AuroraCommunicator";
 
     /**
-     * The android application context
+     * The maximum number of minutes to wait for a file to be processed internally
      */
-    private Context mContext;
+    private static final long PROCESSING_TIMEOUT_MINUTES = 5;
+
+    /**
+     * The maximum number of seconds a file of a batch may take from when its processing starts, so one slow file
+     * cannot hold up the batch. The time the file waits for other documents to be done is not counted.
+     */
+    private static final long BATCH_FILE_TIMEOUT_SECONDS = 60;
+
     /**
-     * Keeps track of the starting timestamp of processing.
+     * The maximum number of seconds to wait for a response of the cache
      */
-    private long mStartTime;
+    private static final long CACHE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * The number of sections of a long file that are opened with the plugin before the rest of the file is extracted
+     */
+    private static final int PREVIEW_SECTIONS = 5;
+
+    /**
+     * The android application context
+     */
+    private Context mContext;
     /**
      * Indicates whether or not the text is being extracted.
      */
     private MutableLiveData<Boolean> mLoading;
 
+    /**
+     * The progress of the processing of the file that is being opened, or null if no progress was reported yet
+     */
+    private MutableLiveData<ProcessingProgressEvent> mProgress;
+
+    /**
+     * The uri of the file that is being opened, or null if no file is being opened
+     */
+    private volatile String mOpeningFileUri = null;
+
+    /**
+     * The subscription waiting for the file that is currently being opened, or null if no file is being opened
+     */
+    private Disposable mPendingOpen = null;
+
+    /**
+     * The token to stop processing the file that is currently being opened, or null if no file is being opened
+     */
+    private CancellationToken mPendingOpenToken = null;
+
+    /**
+     * The extraction of the file the user is picking a plugin for, or null if no file is being extracted ahead
+     */
+    private SpeculativeExtraction mPreparedFile = null;
+
+    /**
+     * The queue of files that still have to be processed, which survives when the process is killed
+     */
+    private final ProcessingJobQueue mJobQueue;
+
+    /**
+     * The profile that sets how many files of a batch are processed at the same time
+     */
+    private volatile ExecutionProfile mExecutionProfile = ExecutionProfile.BALANCED;
+
+    /**
+     * The scheduler on which the job queue is used when a file is opened, so the caller does not wait on the disk
+     */
+    private final Scheduler mJobQueueScheduler;
+
+    /**
+     * The ids of the jobs that are being processed in this process, so they are not started twice
+     */
+    private final Set<String> mActiveJobIds = Collections.synchronizedSet(new HashSet<>());
+
     /**
      * Creates an AuroraCommunicator. There should be only one AuroraCommunicator at a time
      *
@@ -64,17 +152,34 @@ public class AuroraCommunicator extends Communicator {
      * @param applicationContext the android context
      */
     AuroraCommunicator(@NonNull final Bus bus, @NonNull final Context applicationContext) {
+        this(bus, applicationContext, Schedulers.io());
+    }
+
+    /**
+     * Creates an AuroraCommunicator that reads and writes the job queue on a given scheduler
+     *
+     * @param bus                A reference to the unique bus instance over which
+     *                           the communicators will communicate events
+     * @param applicationContext the android context
+     * @param jobQueueScheduler  the scheduler on which the job queue is used when a file is opened, which should
+     *                           not be the main thread since the queue may read from disk
+     */
+    AuroraCommunicator(@NonNull final Bus bus, @NonNull final Context applicationContext,
+                       @NonNull final Scheduler jobQueueScheduler) {
         super(bus);
 
         mContext = applicationContext;
+        mJobQueueScheduler = jobQueueScheduler;
+        mJobQueue = new ProcessingJobQueue(applicationContext.getFilesDir());
         mLoading = new MutableLiveData<>();
         mLoading.postValue(false);
+        mProgress = new MutableLiveData<>();
 
         /*
          * Observable keeping track of events indicating that a document is not supported
          */
         Observable<DocumentNotSupportedEvent> mDocumentNotSupportedEventObservable =
-                mBus.register(DocumentNotSupportedEvent.class);
+                mBus.register(this, DocumentNotSupportedEvent.class);
         // Register for incoming events
 
         // Call right method when event comes in
@@ -82,12 +187,42 @@ public class AuroraCommunicator extends Communicator {
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(event -> showDocumentNotSupportedMessage(event.getReason()),
                         error -> Log.e(CLASS_TAG, "Something went wrong showing the message", error));
+
+        // The jobs can be read from disk again, so they are not kept in memory when memory runs low. The prepared
+        // file is only given up when the pressure is high enough to unload the models too, because the user
+        // is probably about to open it.
+        mBus.register(this, MemoryPressureEvent.class)
+                .filter(event -> event.getDegradation().isAtLeast(Degradation.DROP_CACHES))
+                .subscribe(event -> {
+                    mJobQueue.trimMemory();
+                    if (event.getDegradation().isAtLeast(Degradation.UNLOAD_NLP_MODELS)) {
+                        cancelPreparedFile();
+                    }
+                }, error -> Log.e(CLASS_TAG, "Something went wrong dropping the processing jobs", error));
+
+        mBus.register(this, ExecutionProfileChangedEvent.class)
+                .subscribe((ExecutionProfileChangedEvent event) -> mExecutionProfile = event.getProfile(),
+                        error -> Log.e(CLASS_TAG, "Something went wrong changing the execution profile", error));
+
+        // Only the progress of the file the user is waiting for is shown, not the progress of background jobs
+        mBus.register(this, ProcessingProgressEvent.class)
+                .filter(event -> event.getFileUri().equals(mOpeningFileUri))
+                .subscribe(mProgress::postValue,
+                        error -> Log.e(CLASS_TAG, "Something went wrong showing the progress", error));
     }
 
     /**
      * Open file with a given plugin. This method will first extract
      * the text from the given file reference,
      * then it will send a request to let the plugin make the representation.
+     * If the file was already processed in the background for the same internal services, that text is used.
+     * If the file was extracted while the user picked the plugin with {@link #prepareFile}, only the internal
+     * services that work on the extracted text are run. Otherwise the file is queued as a job until it is processed,
+     * so it can be resumed if the process is killed. The job queue is only read and written on the io scheduler, so
+     * this method does not touch the disk on the thread that calls it.
+     * If the plugin only needs the extracted text and images, a long file is opened with its first sections as soon
+     * as they are extracted, and the plugin gets the whole file as an update when the rest is extracted.
+     * If another file was still being opened, that one is cancelled.
      *
      * @param fileUri  The uri of the file that needs to be opened
      * @param fileRef  The name of the file that needs to be opened
@@ -95,44 +230,505 @@ public class AuroraCommunicator extends Communicator {
      * @param file     the input stream of the file
      * @param plugin   the plugin to open the file with.
      */
-    @SuppressLint("CheckResult")
-    public void openFileWithPlugin(String fileUri, String fileRef, String fileType, InputStream file,
-                                   Plugin plugin) {
+    public synchronized void openFileWithPlugin(String fileUri, String fileRef, String fileType, InputStream file,
+                                                Plugin plugin) {
+        // The user is no longer interested in the file that was being opened
+        cancelOpenFile();
 
         // mark starting time
-        mStartTime = System.currentTimeMillis();
+        final long startTime = System.currentTimeMillis();
         // Set the state to loading.
+        mOpeningFileUri = fileUri;
+        mProgress.postValue(null);
         mLoading.postValue(true);
 
-        // Register observable
-        Observable<InternalProcessorResponse> internalProcessorResponseObservable =
-                mBus.register(InternalProcessorResponse.class);
-        // Subscribe to observable
-        // The subscribe will only be triggered after the file was processed internally
-        internalProcessorResponseObservable
-                .map(InternalProcessorResponse::getExtractedText)
-                .take(1)
-                .subscribe((ExtractedText extractedText) -> {
-                            Bundle params = new Bundle();
-                            params.putInt("extracted_text_length", extractedText.toString().length());
-                            params.putLong("processing_time", System.currentTimeMillis() - mStartTime);
-                            FirebaseAnalytics.getInstance(mContext).logEvent("processing_performance", params);
-                            mLoading.postValue(false);
-                            sendOpenFileRequest(extractedText, plugin.getUniqueName());
+        InternalProcessorRequest internalProcessorRequest =
+                new InternalProcessorRequest(fileUri, fileRef, fileType, file, plugin.getInternalServices());
+
+        // The other internal services need the whole text, so a plugin that asks for them waits for the whole file
+        boolean preview = SpeculativeExtraction.getRemainingServices(plugin.getInternalServices()).isEmpty();
+        if (preview) {
+            internalProcessorRequest.setPreviewSections(PREVIEW_SECTIONS);
+        }
+        ProcessingJob job = new ProcessingJob(fileUri, fileRef, fileType, plugin.getUniqueName(),
+                plugin.getInternalServices(), true);
+
+        // Process the file while it is queued as a job the user is waiting for
+        // A background job for the same work is only dropped when this one succeeds
+        Single<ExtractedText> processing = Single.defer(() -> {
+            ProcessingJob queued = mJobQueue.add(job);
+            mActiveJobIds.add(queued.getId());
+
+            return requestProcessing(internalProcessorRequest)
+                    .doOnSuccess((ExtractedText extractedText) -> mJobQueue.remove(queued))
+                    .doFinally(() -> {
+                        mActiveJobIds.remove(queued.getId());
+                        if (queued == job) {
+                            mJobQueue.remove(job);
+                        }
+                    });
+        }).subscribeOn(mJobQueueScheduler);
+
+        // A file that was extracted while the user picked the plugin does not have to be extracted again
+        SpeculativeExtraction preparedFile = takePreparedFile(fileUri, plugin.getInternalServices());
+        Single<ExtractedText> unprocessed = preparedFile == null ? processing
+                : extendPreparedFile(preparedFile, internalProcessorRequest, plugin, processing);
+
+        // A file that was processed in the background does not have to be processed at all. The queue is looked up
+        // on the job queue scheduler, since it may have to be read from disk first.
+        Single<ExtractedText> extraction = Maybe.fromCallable(() ->
+                mJobQueue.findReady(fileUri, plugin.getInternalServices()))
+                .subscribeOn(mJobQueueScheduler)
+                .flatMapSingleElement((ProcessingJob readyJob) -> {
+                    if (preparedFile != null) {
+                        preparedFile.cancel();
+                    }
+
+                    return Single.fromCallable(() -> mJobQueue.readResult(readyJob))
+                            .doOnError((Throwable e) ->
+                                    Log.e(CLASS_TAG, "The file processed in the background could not be read", e))
+                            .doFinally(() -> mJobQueue.remove(readyJob))
+                            .onErrorResumeNext(processing);
+                })
+                .switchIfEmpty(unprocessed);
+
+        // The preview of the file comes before the whole file, and is dropped if the whole file comes first
+        Observable<ExtractedText> previews = preview ? receivePreview(internalProcessorRequest) : Observable.empty();
+        Observable<PluginInput> inputs = extraction.toObservable()
+                .publish((Observable<ExtractedText> result) -> Observable.merge(
+                        previews.takeUntil(result).map((ExtractedText text) -> new PluginInput(text, true)),
+                        result.map((ExtractedText text) -> new PluginInput(text, false))));
+
+        // The subscribe will only be triggered after the start or the whole of the file was processed internally
+        final AtomicBoolean previewOpened = new AtomicBoolean(false);
+        mPendingOpenToken = internalProcessorRequest.getCancellationToken();
+        mPendingOpen = inputs
+                .subscribe((PluginInput input) -> {
+                            boolean update = previewOpened.getAndSet(input.mPreview);
+                            if (!update) {
+                                Bundle params = new Bundle();
+                                params.putInt("extracted_text_length", input.mExtractedText.toString().length());
+                                params.putLong("processing_time", System.currentTimeMillis() - startTime);
+                                FirebaseAnalytics.getInstance(mContext).logEvent("processing_performance", params);
+                                mLoading.postValue(false);
+                            }
+                            sendOpenFileRequest(input.mExtractedText, plugin.getUniqueName(), input.mPreview,
+                                    update);
                         }
-                        , (Throwable e) ->
+                        , (Throwable e) -> {
+                            // If the document was not supported, the user has already been notified
+                            if (!(e instanceof DocumentNotSupportedException)) {
                                 Log.e(CLASS_TAG,
-                                        "Something went wrong when receiving the internally processed file.", e)
+                                        "Something went wrong when receiving the internally processed file.", e);
+                                mLoading.postValue(false);
+                            }
+                        }
                 );
+    }
 
+    /**
+     * Starts extracting a file while the user picks the plugin to open it with, so that part of the work is done
+     * when the plugin is picked. The images are only extracted if one of the plugins asks for them. The extraction is
+     * used by the next {@link #openFileWithPlugin} of the same file, and discarded when another file is prepared,
+     * when {@link #cancelPreparedFile} is called or when memory runs low.
+     *
+     * @param fileUri  the uri of the file
+     * @param fileRef  the name of the file
+     * @param fileType the file type
+     * @param file     the input stream of the file, which is only used for the extraction
+     * @param plugins  the plugins the user can pick from
+     */
+    public synchronized void prepareFile(@NonNull final String fileUri, @NonNull final String fileRef,
+                                         @NonNull final String fileType, @NonNull final InputStream file,
+                                         @NonNull final List<Plugin> plugins) {
+        cancelPreparedFile();
+
+        List<InternalServices> extractionServices = SpeculativeExtraction.getExtractionServices(plugins);
+        if (extractionServices.isEmpty()) {
+            closeQuietly(file);
+            return;
+        }
+
+        InternalProcessorRequest request = new InternalProcessorRequest(fileUri, fileRef, fileType, file,
+                extractionServices);
+        mPreparedFile = new SpeculativeExtraction(fileUri, extractionServices, request.getCancellationToken(),
+                requestProcessing(request)
+                        .doOnError((Throwable e) -> Log.i(CLASS_TAG, "Could not extract " + fileRef + " ahead", e)));
+    }
 
-        InternalProcessorRequest internalProcessorRequest =
-                new InternalProcessorRequest(fileUri, fileRef, fileType, file, plugin.getInternalServices());
+    /**
+     * Stops extracting the file that was prepared with {@link #prepareFile}, because the user did not pick a plugin.
+     * Nothing happens if no file is being prepared.
+     */
+    public synchronized void cancelPreparedFile() {
+        if (mPreparedFile != null) {
+            mPreparedFile.cancel();
+            mPreparedFile = null;
+        }
+    }
+
+    /**
+     * Private helper method that takes the prepared file if it can be used to open a file with a plugin. A prepared
+     * file that cannot be used is discarded.
+     *
+     * @param fileUri          the uri of the file that is opened
+     * @param internalServices the internal services the plugin asks for
+     * @return the extraction of the file, or null if there is none that can be used
+     */
+    @Nullable
+    private synchronized SpeculativeExtraction takePreparedFile(@NonNull final String fileUri,
+                                                                @NonNull final List<InternalServices>
+                                                                        internalServices) {
+        SpeculativeExtraction preparedFile = mPreparedFile;
+        mPreparedFile = null;
+
+        if (preparedFile != null && !preparedFile.covers(fileUri, internalServices)) {
+            preparedFile.cancel();
+            return null;
+        }
+
+        return preparedFile;
+    }
+
+    /**
+     * Private helper method that runs the internal services a plugin asks for on a file that was prepared. Images
+     * that were extracted for another plugin are dropped. When the prepared file could not be extracted for another
+     * reason than that it is not supported, the file is processed from the start instead.
+     *
+     * @param preparedFile the extraction of the file
+     * @param request      the request to process the file from the start, of which the token cancels the work
+     * @param plugin       the plugin that the file is opened with
+     * @param processing   a Single that processes the file from the start
+     * @return a Single with the text the plugin asks for
+     */
+    private Single<ExtractedText> extendPreparedFile(@NonNull final SpeculativeExtraction preparedFile,
+                                                     @NonNull final InternalProcessorRequest request,
+                                                     @NonNull final Plugin plugin,
+                                                     @NonNull final Single<ExtractedText> processing) {
+        final CancellationToken cancellationToken = request.getCancellationToken();
+        final List<InternalServices> remainingServices =
+                SpeculativeExtraction.getRemainingServices(plugin.getInternalServices());
+        cancellationToken.addListener(preparedFile::cancel);
+
+        return preparedFile.getResult()
+                .flatMap((ExtractedText extractedText) -> {
+                    // The file does not have to be read again
+                    closeQuietly(request.getFile());
+
+                    if (preparedFile.hasImages()
+                            && !plugin.getInternalServices().contains(InternalServices.IMAGE_EXTRACTION)) {
+                        for (Section section : extractedText.getSections()) {
+                            section.setExtractedImages(new ArrayList<>());
+                        }
+                    }
+
+                    if (remainingServices.isEmpty()) {
+                        return Single.just(extractedText);
+                    }
+
+                    InternalProcessorRequest extension = new InternalProcessorRequest(request.getFileUri(),
+                            request.getFileRef(), extractedText, remainingServices);
+                    cancellationToken.addListener(extension.getCancellationToken()::cancel);
+                    return requestProcessing(extension);
+                })
+                .onErrorResumeNext((Throwable e) -> {
+                    // If the document is not supported, processing it again will not help
+                    if (e instanceof DocumentNotSupportedException) {
+                        closeQuietly(request.getFile());
+                        return Single.error(e);
+                    }
+
+                    return processing;
+                });
+    }
 
-        // Post request on the bus
-        mBus.post(internalProcessorRequest);
+    /**
+     * Private helper method that closes the stream of a file, and only logs when that fails
+     *
+     * @param file the stream to close, or null if there is no stream
+     */
+    private static void closeQuietly(@Nullable final InputStream file) {
+        if (file == null) {
+            return;
+        }
+
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Could not close a file", e);
+        }
     }
 
+    /**
+     * Processes a file in the background, so it opens immediately when the user opens it with the plugin later.
+     * The file is queued as a job that only runs when the device is charging and idle, and that survives when the
+     * process is killed. Nothing happens if the file is already queued for the same internal services.
+     *
+     * @param fileUri  the uri of the file, which should stay readable after the process is killed
+     * @param fileRef  the name of the file
+     * @param fileType the file type
+     * @param plugin   the plugin that the file will be opened with
+     */
+    public void processFileInBackground(@NonNull final String fileUri, @NonNull final String fileRef,
+                                        @NonNull final String fileType, @NonNull final Plugin plugin) {
+        Completable.fromAction(() -> {
+            ProcessingJob job = mJobQueue.add(new ProcessingJob(fileUri, fileRef, fileType, plugin.getUniqueName(),
+                    plugin.getInternalServices(), false));
+
+            if (!job.isReady()) {
+                ProcessingJobService.schedule(mContext, job.isInteractive());
+            }
+        })
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> Log.i(CLASS_TAG, "Queued " + fileRef + " to be processed in the background"),
+                        (Throwable e) -> Log.e(CLASS_TAG, "Something went wrong queueing " + fileRef, e));
+    }
+
+    /**
+     * Imports a batch of files for one plugin. The files are processed as many at a time as the execution profile
+     * allows when the batch starts, so no file of the batch waits for another one while its time runs. Their
+     * extracted texts are kept, so they open immediately when they are opened with the plugin later. A file that
+     * cannot be read or processed, or that takes too long, fails on its own while the rest of the batch goes on.
+     * Disposing the returned Observable stops the batch, files that were being processed stay queued for the
+     * background.
+     *
+     * @param files  the files to import
+     * @param plugin the plugin that the files will be opened with
+     * @return an Observable that reports the progress every time a file is done, and completes when all are done
+     */
+    public Observable<BatchProgress> importFiles(@NonNull final List<BatchFile> files, @NonNull final Plugin plugin) {
+        return Observable.defer(() -> {
+            final long startTime = System.nanoTime();
+            final int parallelism = mExecutionProfile.getMaxConcurrentDocuments();
+
+            return Observable.fromIterable(files)
+                    .flatMap((BatchFile file) -> importFile(file, plugin).toObservable(), parallelism)
+                    .scan(new BatchProgress(files.size(), 0, 0, 0, 0, null, null),
+                            (BatchProgress progress, BatchResult result) -> progress.next(result.mFileRef,
+                                    result.mFailure, result.mPending, System.nanoTime() - startTime))
+                    .skip(1);
+        })
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Private helper method that processes one file of a batch and keeps its extracted text as a finished job
+     *
+     * @param file   the file to import
+     * @param plugin the plugin that the file will be opened with
+     * @return a Single with the result of the file, which never fails
+     */
+    private Single<BatchResult> importFile(@NonNull final BatchFile file, @NonNull final Plugin plugin) {
+        return Single.defer(() -> {
+            ProcessingJob job = mJobQueue.add(new ProcessingJob(file.getFileUri(), file.getFileRef(),
+                    file.getFileType(), plugin.getUniqueName(), plugin.getInternalServices(), false));
+
+            // The file was imported before
+            if (job.isReady()) {
+                return Single.just(new BatchResult(file.getFileRef(), null, false));
+            }
+
+            // The file is being processed for another reason right now, which may still fail
+            if (!mActiveJobIds.add(job.getId())) {
+                return Single.just(new BatchResult(file.getFileRef(), null, true));
+            }
+
+            return Single.fromCallable(() -> openJobFile(job))
+                    .flatMap((InputStream stream) -> {
+                        InternalProcessorRequest request = new InternalProcessorRequest(job.getFileUri(),
+                                job.getFileRef(), job.getFileType(), stream, job.getInternalServices());
+
+                        // The processing stops when the file takes too long or the batch is stopped. The time only
+                        // runs from the first progress of the file, so waiting for other files is not counted.
+                        Observable<Long> timeout = receiveProcessingStarted(request)
+                                .andThen(Observable.timer(BATCH_FILE_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+                        return requestProcessing(request)
+                                .toObservable()
+                                .timeout(timeout, (ExtractedText extractedText) -> Observable.never())
+                                .singleOrError()
+                                .doOnError((Throwable e) -> request.getCancellationToken().cancel())
+                                .doOnDispose(request.getCancellationToken()::cancel)
+                                .doFinally(stream::close);
+                    })
+                    .doOnSuccess((ExtractedText extractedText) -> mJobQueue.markReady(job, extractedText))
+                    .map((ExtractedText extractedText) -> new BatchResult(file.getFileRef(), null, false))
+                    .doOnError((Throwable e) -> {
+                        Log.e(CLASS_TAG, "Could not import " + file.getFileRef(), e);
+                        mJobQueue.remove(job);
+                    })
+                    .doFinally(() -> mActiveJobIds.remove(job.getId()));
+        })
+                .onErrorReturn((Throwable e) -> new BatchResult(file.getFileRef(), getFailureReason(e), false));
+    }
+
+    /**
+     * Private helper method that describes why a file of a batch failed
+     *
+     * @param e the error with which the file failed
+     * @return a short reason that can be shown to the user
+     */
+    private static String getFailureReason(@NonNull final Throwable e) {
+        if (e instanceof DocumentNotSupportedException) {
+            return "The document is not supported";
+        } else if (e instanceof TimeoutException) {
+            return "The document took too long to process";
+        } else if (e instanceof FileNotFoundException || e instanceof SecurityException) {
+            return "The document could not be read";
+        }
+
+        return "The document could not be processed";
+    }
+
+    /**
+     * Schedules the jobs that are still in the queue from a previous run of the app. Jobs the user was waiting
+     * for when the process was killed are resumed now, the other ones when the device is charging and idle.
+     * Nothing is scheduled when the queue is empty. Results that were processed but not opened for a long time are
+     * evicted first. This reads the queue from disk, so it should not be called on the main thread.
+     */
+    void resumePendingJobs() {
+        mJobQueue.evictResults();
+
+        if (!mJobQueue.getPendingJobs(true).isEmpty()) {
+            ProcessingJobService.schedule(mContext, true);
+        }
+
+        if (!mJobQueue.getPendingJobs(false).isEmpty()) {
+            ProcessingJobService.schedule(mContext, false);
+        }
+    }
+
+    /**
+     * Runs the jobs in the queue that are not done yet, one after the other. Every file is opened again from its
+     * uri and its extracted text is kept until the file is opened with {@link #openFileWithPlugin}. Jobs of which
+     * the file can no longer be read or processed are dropped. Jobs that are still running when the work is
+     * disposed stay in the queue.
+     *
+     * @param interactive true to run the jobs the user was waiting for, false to run the jobs nobody waits for
+     * @return a Completable that completes when all jobs were run
+     */
+    Completable runPendingJobs(final boolean interactive) {
+        return Completable.defer(() -> Observable.fromIterable(mJobQueue.getPendingJobs(interactive))
+                .concatMapCompletable(this::runJob))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Private helper method that processes the file of a job and keeps its extracted text
+     *
+     * @param job the job to run
+     * @return a Completable that completes when the job was run, whether the file could be processed or not
+     */
+    private Completable runJob(@NonNull final ProcessingJob job) {
+        // The job is already being processed in this process
+        if (!mActiveJobIds.add(job.getId())) {
+            return Completable.complete();
+        }
+
+        return Single.fromCallable(() -> openJobFile(job))
+                .flatMap((InputStream file) -> requestProcessing(new InternalProcessorRequest(job.getFileUri(),
+                        job.getFileRef(), job.getFileType(), file, job.getInternalServices()))
+                        .doFinally(file::close))
+                .doOnSuccess((ExtractedText extractedText) -> mJobQueue.markReady(job, extractedText))
+                .ignoreElement()
+                .doOnError((Throwable e) -> {
+                    Log.e(CLASS_TAG, "Dropping the processing job of " + job.getFileRef(), e);
+                    mJobQueue.remove(job);
+                })
+                .onErrorComplete()
+                .doFinally(() -> mActiveJobIds.remove(job.getId()));
+    }
+
+    /**
+     * Private helper method that opens the file of a job again
+     *
+     * @param job the job of which the file should be opened
+     * @return the input stream of the file
+     * @throws FileNotFoundException when the file no longer exists
+     * @throws SecurityException     when the app is no longer allowed to read the file
+     */
+    private InputStream openJobFile(@NonNull final ProcessingJob job) throws FileNotFoundException {
+        InputStream file = mContext.getContentResolver().openInputStream(Uri.parse(job.getFileUri()));
+        if (file == null) {
+            throw new FileNotFoundException("Could not open " + job.getFileUri());
+        }
+
+        return file;
+    }
+
+    /**
+     * Private helper method that posts a request to process a file, and waits for the response to that request
+     *
+     * @param internalProcessorRequest the request to process the file
+     * @return a Single with the extracted text, which fails with a {@link DocumentNotSupportedException} when the
+     * document is not supported
+     */
+    private Single<ExtractedText> requestProcessing(@NonNull final InternalProcessorRequest internalProcessorRequest) {
+        // Fails when this request could not be processed because the document is not supported
+        Single<ExtractedText> documentNotSupported = mBus.register(this, DocumentNotSupportedEvent.class)
+                .filter((DocumentNotSupportedEvent event) ->
+                        event.getCorrelationId() == internalProcessorRequest.getCorrelationId())
+                .firstOrError()
+                .flatMap((DocumentNotSupportedEvent event) ->
+                        Single.error(new DocumentNotSupportedException(event.getReason())));
+
+        // Post request on the bus and wait for the response to this request. The event is listened for first, so
+        // it cannot be missed when the request fails right away.
+        Single<ExtractedText> response = mBus.request(internalProcessorRequest, InternalProcessorResponse.class,
+                PROCESSING_TIMEOUT_MINUTES, TimeUnit.MINUTES)
+                .map(InternalProcessorResponse::getExtractedText);
+
+        return Single.ambArray(documentNotSupported, response);
+    }
+
+    /**
+     * Private helper method that waits until the processing of a file starts, which is when its first progress is
+     * reported. A file can wait before that until other documents are done.
+     *
+     * @param internalProcessorRequest the request to process the file
+     * @return a Completable that completes when the processing of the file started. It has to be subscribed to
+     * before the request is posted.
+     */
+    private Completable receiveProcessingStarted(@NonNull final InternalProcessorRequest internalProcessorRequest) {
+        return mBus.register(this, ProcessingProgressEvent.class)
+                .filter((ProcessingProgressEvent event) ->
+                        event.getCorrelationId() == internalProcessorRequest.getCorrelationId())
+                .take(1)
+                .ignoreElements();
+    }
+
+    /**
+     * Private helper method that waits for the preview of a file that was asked for in a request
+     *
+     * @param internalProcessorRequest the request to process the file, which asks for a preview
+     * @return an Observable that emits the title and the first sections of the file, if the file is longer than the
+     * preview. It has to be subscribed to before the request is posted.
+     */
+    private Observable<ExtractedText> receivePreview(@NonNull final InternalProcessorRequest
+                                                             internalProcessorRequest) {
+        return mBus.register(this, ProcessingPreviewEvent.class)
+                .filter((ProcessingPreviewEvent event) ->
+                        event.getCorrelationId() == internalProcessorRequest.getCorrelationId())
+                .take(1)
+                .map(ProcessingPreviewEvent::getExtractedText);
+    }
+
+    /**
+     * Cancels opening the file that is currently being opened with {@link #openFileWithPlugin}. The internal
+     * processing of the file stops at the next page, paragraph or section, and the plugin is not opened.
+     * Nothing happens if no file is being opened.
+     */
+    public synchronized void cancelOpenFile() {
+        if (mPendingOpen != null && !mPendingOpen.isDisposed()) {
+            mPendingOpenToken.cancel();
+            mPendingOpen.dispose();
+            mLoading.postValue(false);
+        }
+
+        mPendingOpen = null;
+        mPendingOpenToken = null;
+        mOpeningFileUri = null;
+    }
 
     /**
      * Method to open an already cached file with the plugin
@@ -142,15 +738,12 @@ public class AuroraCommunicator extends Communicator {
      */
     @SuppressLint("CheckResult")
     public void openFileWithCache(String fileRef, String uniquePluginName) {
-        // Create observable to listen to
-        Observable<RetrieveFileFromCacheResponse> retrieveFileFromCacheResponse =
-                mBus.register(RetrieveFileFromCacheResponse.class);
+        RetrieveFileFromCacheRequest request = new RetrieveFileFromCacheRequest(fileRef, uniquePluginName);
 
-        // Subscribe to observable
-        retrieveFileFromCacheResponse
+        // Post request and wait for the response to this request
+        mBus.request(request, RetrieveFileFromCacheResponse.class, CACHE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .map(RetrieveFileFromCacheResponse::getProcessedFile)
                 .observeOn(AndroidSchedulers.mainThread())
-                .take(1)
                 .subscribe((CachedProcessedFile processedFile) -> {
                             if ("{}".equals(processedFile.getJsonRepresentation())) {
                                 Toast.makeText(mContext,
@@ -165,9 +758,6 @@ public class AuroraCommunicator extends Communicator {
                         }, (Throwable e) ->
                                 Log.e(CLASS_TAG, "Something went wrong while retrieving a file from the cache!", e)
                 );
-
-        RetrieveFileFromCacheRequest request = new RetrieveFileFromCacheRequest(fileRef, uniquePluginName);
-        mBus.post(request);
     }
 
     /**
@@ -178,19 +768,15 @@ public class AuroraCommunicator extends Communicator {
      */
     public void getListOfCachedFiles(final int maxLength,
                                      @NonNull final Observer<List<CachedFileInfo>> observer) {
-        // Create observable to listen to
-        Observable<QueryCacheResponse> queryCacheResponseObservable = mBus.register(QueryCacheResponse.class);
+        // Create request, post it on the bus and wait for the response to this request
+        QueryCacheRequest request = new QueryCacheRequest(maxLength);
 
-        queryCacheResponseObservable
+        mBus.request(request, QueryCacheResponse.class, CACHE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                 .map(QueryCacheResponse::getResults)
-                .take(1)
                 .observeOn(AndroidSchedulers.mainThread())
+                .toObservable()
                 .subscribe(observer);
 
-        // Create request and post on bus
-        QueryCacheRequest request = new QueryCacheRequest(maxLength);
-        mBus.post(request);
-
     }
 
     /**
@@ -210,12 +796,15 @@ public class AuroraCommunicator extends Communicator {
      *
      * @param extractedText    the extracted text of the file that was internally processed
      * @param uniquePluginName the (unique) name of the plugin to open the file with
+     * @param preview          true if the text only has the first sections of the file
+     * @param update           true if the plugin already shows the preview of the file
      */
-    private void sendOpenFileRequest(final ExtractedText extractedText, final String uniquePluginName) {
+    private void sendOpenFileRequest(final ExtractedText extractedText, final String uniquePluginName,
+                                     final boolean preview, final boolean update) {
 
         // Create request and post it on bus
         OpenFileWithPluginRequest openFileWithPluginRequest =
-                new OpenFileWithPluginRequest(extractedText, uniquePluginName, mContext);
+                new OpenFileWithPluginRequest(extractedText, uniquePluginName, mContext, preview, update);
         mBus.post(openFileWithPluginRequest);
     }
 
@@ -258,4 +847,73 @@ public class AuroraCommunicator extends Communicator {
     public MutableLiveData<Boolean> getLoadingData() {
         return mLoading;
     }
+
+    /**
+     * Getter for the progress of the file that is being opened. The progress is reset to null when another file is
+     * opened, and it is not reported for files that are processed in a separate process.
+     *
+     * @return LiveData that changes when the processing of the file that is being opened makes progress
+     */
+    public MutableLiveData<ProcessingProgressEvent> getProgressData() {
+        return mProgress;
+    }
+
+    /**
+     * The text that a file is opened with in a plugin
+     */
+    private static final class PluginInput {
+        /**
+         * The extracted text of the file
+         */
+        private final ExtractedText mExtractedText;
+
+        /**
+         * Whether the text only has the first sections of the file
+         */
+        private final boolean mPreview;
+
+        /**
+         * Creates the text that a file is opened with
+         *
+         * @param extractedText the extracted text of the file
+         * @param preview       whether the text only has the first sections of the file
+         */
+        PluginInput(@NonNull final ExtractedText extractedText, final boolean preview) {
+            mExtractedText = extractedText;
+            mPreview = preview;
+        }
+    }
+
+    /**
+     * The result of one file of a batch
+     */
+    private static final class BatchResult {
+        /**
+         * The name of the file
+         */
+        private final String mFileRef;
+
+        /**
+         * Why the file failed, or null if it was processed or is pending
+         */
+        private final String mFailure;
+
+        /**
+         * Whether the file was already being processed for another reason, so it is not known yet if it succeeds
+         */
+        private final boolean mPending;
+
+        /**
+         * Creates the result of a file of a batch
+         *
+         * @param fileRef the name of the file
+         * @param failure why the file failed, or null if it was processed or is pending
+         * @param pending whether the file was already being processed for another reason
+         */
+        BatchResult(@NonNull final String fileRef, @Nullable final String failure, final boolean pending) {
+            mFileRef = fileRef;
+            mFailure = failure;
+            mPending = pending;
+        }
+    }
 }
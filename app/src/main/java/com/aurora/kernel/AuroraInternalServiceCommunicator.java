@@ -21,6 +21,7 @@ import java.util.Date;
 import java.util.List;
 
 import io.reactivex.Observable;
+import io.reactivex.Single;
 
 /**
  * Communicator that communicates with internal services offered to Aurora
@@ -32,9 +33,10 @@ public class AuroraInternalServiceCommunicator extends Communicator {
     private static final String LOG_TAG = "AuroraIntrnlSvcComm";
 
     /**
-     * reference to internal cache instance
+     * The internal cache instance. It becomes available when the cache index has been loaded, which happens in the
+     * background when the kernel starts.
      */
-    private InternalCache mInternalCache;
+    private Single<InternalCache> mInternalCache;
 
     /**
      * Observable keeping track of incoming requests to cache files
@@ -68,54 +70,67 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * @param internalCache a reference to the internal cache
      */
     AuroraInternalServiceCommunicator(@NonNull final Bus bus, @NonNull final InternalCache internalCache) {
+        this(bus, Single.just(internalCache));
+    }
+
+    /**
+     * Creates an AuroraInternalServiceCommunicator with an internal cache that may not be loaded yet. Requests
+     * that come in before the cache is loaded wait for it. There should be only one instance at a time
+     *
+     * @param bus           a reference to the unique bus instance over which the communicators will communicate events
+     * @param internalCache a Single that succeeds with the internal cache when it is loaded
+     */
+    AuroraInternalServiceCommunicator(@NonNull final Bus bus, @NonNull final Single<InternalCache> internalCache) {
         super(bus);
         mInternalCache = internalCache;
 
         // Subscribe to incoming cache requests
-        mCacheFileRequestObservable = mBus.register(CacheFileRequest.class);
+        mCacheFileRequestObservable = mBus.register(this, CacheFileRequest.class);
 
         // When event comes in, call the appropriate handle method
         mCacheFileRequestObservable.subscribe(cacheFileRequest -> cacheFile(cacheFileRequest.getFileRef(),
-                cacheFileRequest.getPluginObject(), cacheFileRequest.getUniquePluginName()),
+                cacheFileRequest.getPluginObject(), cacheFileRequest.getUniquePluginName(),
+                cacheFileRequest.getCorrelationId()),
                 error -> Log.e(LOG_TAG, "Something went wrong caching the file", error));
 
         // Subscribe to incoming query requests
-        mQueryCacheRequestObservable = mBus.register(QueryCacheRequest.class);
+        mQueryCacheRequestObservable = mBus.register(this, QueryCacheRequest.class);
 
         // Call appropriate handle method when request comes in
         mQueryCacheRequestObservable.subscribe((QueryCacheRequest queryCacheRequest) -> {
             if (queryCacheRequest.isFullCacheRequest()) {
-                queryFullCache(queryCacheRequest.getMaxEntries());
+                queryFullCache(queryCacheRequest.getMaxEntries(), queryCacheRequest.getCorrelationId());
             } else {
-                queryCache(queryCacheRequest.getFileRef(), queryCacheRequest.getUniquePluginName());
+                queryCache(queryCacheRequest.getFileRef(), queryCacheRequest.getUniquePluginName(),
+                        queryCacheRequest.getCorrelationId());
             }
         });
 
         // Subscribe to incoming retrieve requests
-        mRetrieveFileFromCacheRequestObservable = mBus.register(RetrieveFileFromCacheRequest.class);
+        mRetrieveFileFromCacheRequestObservable = mBus.register(this, RetrieveFileFromCacheRequest.class);
 
         // Call appropriate handle method when request comes in
         mRetrieveFileFromCacheRequestObservable.subscribe(
                 cacheRequest -> retrieveFileFromCache(cacheRequest.getFileRef(),
-                        cacheRequest.getUniquePluginName())
+                        cacheRequest.getUniquePluginName(), cacheRequest.getCorrelationId())
         );
 
         // Subscribe to incoming requests to remove files from the cache
-        mRemoveFromCacheRequestObservable = mBus.register(RemoveFromCacheRequest.class);
+        mRemoveFromCacheRequestObservable = mBus.register(this, RemoveFromCacheRequest.class);
 
         // Call appropriate handle method when request comes in
         mRemoveFromCacheRequestObservable.subscribe((RemoveFromCacheRequest request) -> {
             if (request.isClearCache()) {
-                clearCache();
+                clearCache(request.getCorrelationId());
             } else if (request.getFileRef() == null) {
-                clearPluginCache(request.getUniquePluginName());
+                clearPluginCache(request.getUniquePluginName(), request.getCorrelationId());
             } else {
-                removeFileFromCache(request.getFileRef(), request.getUniquePluginName());
+                removeFileFromCache(request.getFileRef(), request.getUniquePluginName(), request.getCorrelationId());
             }
         });
 
         // Subscribe to incoming requests to update the date of files
-        mUpdateCachedFileDateRequestObservable = mBus.register(UpdateCachedFileDateRequest.class);
+        mUpdateCachedFileDateRequestObservable = mBus.register(this, UpdateCachedFileDateRequest.class);
 
         // Call appropriate method when request comes in
         mUpdateCachedFileDateRequestObservable.subscribe(request -> updateDate(request.getFileRef(),
@@ -128,28 +143,32 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * @param fileRef          a reference to the file that needs to be cached
      * @param pluginObject     the processed text representation that needs to be cached
      * @param uniquePluginName the name of the plugin that built the representation
+     * @param correlationId    the correlation id of the request, which is copied to the response
      */
     private void cacheFile(@NonNull final String fileRef, @NonNull final String pluginObject,
-                           @NonNull final String uniquePluginName) {
+                           @NonNull final String uniquePluginName, final long correlationId) {
         // Cache file
-        boolean cacheSuccess = mInternalCache.cacheFile(fileRef, pluginObject, uniquePluginName);
+        boolean cacheSuccess = getInternalCache().cacheFile(fileRef, pluginObject, uniquePluginName);
 
         // Create response and post it
         CacheFileResponse response = new CacheFileResponse(cacheSuccess);
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
     /**
      * Private handle method to query the cache for all files
      *
-     * @param maxEntries maximum number of entries that should be queried
+     * @param maxEntries    maximum number of entries that should be queried
+     * @param correlationId the correlation id of the request, which is copied to the response
      */
-    private void queryFullCache(final int maxEntries) {
+    private void queryFullCache(final int maxEntries, final long correlationId) {
         // Get all files from cache
-        List<CachedFileInfo> processedFiles = mInternalCache.getFullCache(maxEntries);
+        List<CachedFileInfo> processedFiles = getInternalCache().getFullCache(maxEntries);
 
         // Wrap in response and post on the bus
         QueryCacheResponse response = new QueryCacheResponse(processedFiles);
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
@@ -159,9 +178,11 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * @param fileRef          a reference to the file to check if it was already cached (should be hash_displayName)
      *                         Check the getFileName method from MainActivity.
      * @param uniquePluginName the plugin that the file should be processed with
+     * @param correlationId    the correlation id of the request, which is copied to the response
      */
-    private void queryCache(@NonNull final String fileRef, @NonNull final String uniquePluginName) {
-        CachedFileInfo processedFile = mInternalCache.checkCacheForProcessedFile(fileRef, uniquePluginName);
+    private void queryCache(@NonNull final String fileRef, @NonNull final String uniquePluginName,
+                            final long correlationId) {
+        CachedFileInfo processedFile = getInternalCache().checkCacheForProcessedFile(fileRef, uniquePluginName);
 
         // Create response event with result in list, or empty list if result was null
         List<CachedFileInfo> cachedProcessedFiles = new ArrayList<>();
@@ -170,6 +191,7 @@ public class AuroraInternalServiceCommunicator extends Communicator {
         }
 
         QueryCacheResponse response = new QueryCacheResponse(cachedProcessedFiles);
+        response.setCorrelationId(correlationId);
 
         // post response on bus
         mBus.post(response);
@@ -181,9 +203,11 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * @param fileRef          a reference to the file to retrieve (should be hash_displayName)
      *                         Check the getFileName method from MainActivity.
      * @param uniquePluginName the plugin that the file was processed with
+     * @param correlationId    the correlation id of the request, which is copied to the response
      */
-    private void retrieveFileFromCache(@NonNull final String fileRef, @NonNull final String uniquePluginName) {
-        CachedProcessedFile processedFile = mInternalCache.retrieveFile(fileRef, uniquePluginName);
+    private void retrieveFileFromCache(@NonNull final String fileRef, @NonNull final String uniquePluginName,
+                                       final long correlationId) {
+        CachedProcessedFile processedFile = getInternalCache().retrieveFile(fileRef, uniquePluginName);
 
         // Create response event and post on bus
         RetrieveFileFromCacheResponse response;
@@ -196,6 +220,7 @@ public class AuroraInternalServiceCommunicator extends Communicator {
         }
 
         // Post response on bus
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
@@ -205,12 +230,15 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * @param fileRef          a reference to the file to remove (should be hash_displayName)
      *                         Check the getFileName method from MainActivity.
      * @param uniquePluginName the name of the plugin that the file was processed with
+     * @param correlationId    the correlation id of the request, which is copied to the response
      */
-    private void removeFileFromCache(@NonNull final String fileRef, @NonNull final String uniquePluginName) {
-        boolean success = mInternalCache.removeFile(fileRef, uniquePluginName);
+    private void removeFileFromCache(@NonNull final String fileRef, @NonNull final String uniquePluginName,
+                                     final long correlationId) {
+        boolean success = getInternalCache().removeFile(fileRef, uniquePluginName);
 
         // Create response and post on bus
         RemoveFromCacheResponse response = new RemoveFromCacheResponse(success);
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
@@ -218,23 +246,28 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      * Private handle method that removes all files from a given plugin from the cache
      *
      * @param uniquePluginName the name of the plugin to remove the files from
+     * @param correlationId    the correlation id of the request, which is copied to the response
      */
-    private void clearPluginCache(@NonNull final String uniquePluginName) {
-        boolean success = mInternalCache.removeFilesByPlugin(uniquePluginName);
+    private void clearPluginCache(@NonNull final String uniquePluginName, final long correlationId) {
+        boolean success = getInternalCache().removeFilesByPlugin(uniquePluginName);
 
         // Create response and post on bus
         RemoveFromCacheResponse response = new RemoveFromCacheResponse(success);
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
     /**
      * Private handle method that clears the enire cache
+     *
+     * @param correlationId the correlation id of the request, which is copied to the response
      */
-    private void clearCache() {
-        boolean success = mInternalCache.clear();
+    private void clearCache(final long correlationId) {
+        boolean success = getInternalCache().clear();
 
         // Create response and post on bus
         RemoveFromCacheResponse response = new RemoveFromCacheResponse(success);
+        response.setCorrelationId(correlationId);
         mBus.post(response);
     }
 
@@ -246,6 +279,15 @@ public class AuroraInternalServiceCommunicator extends Communicator {
      */
     private void updateDate(@NonNull final String fileRef, @NonNull final String uniquePluginName,
                             @NonNull final Date newDate) {
-        mInternalCache.updateCachedFileDate(fileRef, uniquePluginName, newDate);
+        getInternalCache().updateCachedFileDate(fileRef, uniquePluginName, newDate);
+    }
+
+    /**
+     * Private helper method that gets the internal cache, and waits for it if it is still being loaded
+     *
+     * @return the internal cache
+     */
+    private InternalCache getInternalCache() {
+        return mInternalCache.blockingGet();
     }
 }
@@ -0,0 +1,60 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A file that is imported as part of a batch with {@link AuroraCommunicator#importFiles}
+ */
+public final class BatchFile {
+    /**
+     * The uri of the file, which should stay readable while the batch runs
+     */
+    private final String mFileUri;
+
+    /**
+     * The name of the file
+     */
+    private final String mFileRef;
+
+    /**
+     * The file type (extension)
+     */
+    private final String mFileType;
+
+    /**
+     * Creates a file of a batch
+     *
+     * @param fileUri  the uri of the file, which should stay readable while the batch runs
+     * @param fileRef  the name of the file
+     * @param fileType the file type (extension)
+     */
+    public BatchFile(@NonNull final String fileUri, @NonNull final String fileRef, @NonNull final String fileType) {
+        mFileUri = fileUri;
+        mFileRef = fileRef;
+        mFileType = fileType;
+    }
+
+    /**
+     * @return the uri of the file
+     */
+    @NonNull
+    public String getFileUri() {
+        return mFileUri;
+    }
+
+    /**
+     * @return the name of the file
+     */
+    @NonNull
+    public String getFileRef() {
+        return mFileRef;
+    }
+
+    /**
+     * @return the file type (extension)
+     */
+    @NonNull
+    public String getFileType() {
+        return mFileType;
+    }
+}
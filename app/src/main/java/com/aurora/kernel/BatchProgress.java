@@ -0,0 +1,161 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The progress of a batch of files that is imported with {@link AuroraCommunicator#importFiles}. A new progress is
+ * reported every time a file is done, whether it succeeded or failed, or was left to processing that was already
+ * running for it.
+ */
+public final class BatchProgress {
+    /**
+     * The number of files in the batch
+     */
+    private final int mTotal;
+
+    /**
+     * The number of files that were processed
+     */
+    private final int mSucceeded;
+
+    /**
+     * The number of files that could not be processed
+     */
+    private final int mFailed;
+
+    /**
+     * The number of files that were already being processed for another reason, so it is not known yet whether
+     * they succeed
+     */
+    private final int mPending;
+
+    /**
+     * The time since the batch started, in nanoseconds
+     */
+    private final long mElapsedNanos;
+
+    /**
+     * The name of the file that was done last, or null if no file is done yet
+     */
+    private final String mLastFileRef;
+
+    /**
+     * Why the file that was done last failed, or null if it succeeded or no file is done yet
+     */
+    private final String mLastFailure;
+
+    /**
+     * Creates the progress of a batch
+     *
+     * @param total        the number of files in the batch
+     * @param succeeded    the number of files that were processed
+     * @param failed       the number of files that could not be processed
+     * @param pending      the number of files that were already being processed for another reason
+     * @param elapsedNanos the time since the batch started, in nanoseconds
+     * @param lastFileRef  the name of the file that was done last, or null if no file is done yet
+     * @param lastFailure  why the file that was done last failed, or null if it succeeded
+     */
+    BatchProgress(final int total, final int succeeded, final int failed, final int pending,
+                  final long elapsedNanos, @Nullable final String lastFileRef, @Nullable final String lastFailure) {
+        mTotal = total;
+        mSucceeded = succeeded;
+        mFailed = failed;
+        mPending = pending;
+        mElapsedNanos = elapsedNanos;
+        mLastFileRef = lastFileRef;
+        mLastFailure = lastFailure;
+    }
+
+    /**
+     * Creates the progress after one more file is done
+     *
+     * @param fileRef      the name of the file that is done
+     * @param failure      why the file failed, or null if it succeeded or is pending
+     * @param pending      true if the file was already being processed for another reason
+     * @param elapsedNanos the time since the batch started, in nanoseconds
+     * @return the new progress
+     */
+    @NonNull
+    BatchProgress next(@NonNull final String fileRef, @Nullable final String failure, final boolean pending,
+                       final long elapsedNanos) {
+        return new BatchProgress(mTotal, failure == null && !pending ? mSucceeded + 1 : mSucceeded,
+                failure == null ? mFailed : mFailed + 1, pending ? mPending + 1 : mPending, elapsedNanos, fileRef,
+                failure);
+    }
+
+    /**
+     * @return the number of files in the batch
+     */
+    public int getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * @return the number of files that were processed
+     */
+    public int getSucceeded() {
+        return mSucceeded;
+    }
+
+    /**
+     * @return the number of files that could not be processed
+     */
+    public int getFailed() {
+        return mFailed;
+    }
+
+    /**
+     * @return the number of files that were already being processed for another reason when the batch got to them,
+     * so it is not known yet whether they succeed
+     */
+    public int getPending() {
+        return mPending;
+    }
+
+    /**
+     * @return the number of files that are done, whether they succeeded, failed or are pending
+     */
+    public int getDone() {
+        return mSucceeded + mFailed + mPending;
+    }
+
+    /**
+     * @return true if all files of the batch are done
+     */
+    public boolean isFinished() {
+        return getDone() == mTotal;
+    }
+
+    /**
+     * @return the time since the batch started, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(mElapsedNanos);
+    }
+
+    /**
+     * @return the number of files that are done per second, or 0 if no time has passed yet
+     */
+    public double getThroughput() {
+        return mElapsedNanos == 0 ? 0 : getDone() / (mElapsedNanos / 1e9);
+    }
+
+    /**
+     * @return the name of the file that was done last, or null if no file is done yet
+     */
+    @Nullable
+    public String getLastFileRef() {
+        return mLastFileRef;
+    }
+
+    /**
+     * @return why the file that was done last failed, or null if it succeeded, is pending or no file is done yet
+     */
+    @Nullable
+    public String getLastFailure() {
+        return mLastFailure;
+    }
+}
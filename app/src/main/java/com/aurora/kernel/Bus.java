@@ -1,29 +1,54 @@
 package com.aurora.kernel;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
+import com.aurora.kernel.event.CorrelatedEvent;
 import com.aurora.kernel.event.Event;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
-import io.reactivex.subjects.PublishSubject;
-import io.reactivex.subjects.Subject;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
 
 /**
  * Communication bus that is used in the kernel. All communicators should use the same bus instance
  */
 class Bus {
     /**
-     * The bus subject is an observable and observer of events at the same time.
-     * It acts as a link between the different communicating parties.
+     * Map that keeps one channel per event class. Each channel acts as a link between the different communicating
+     * parties for events of exactly that class. Posting an event only reaches the channel of its own class, so the
+     * cost of a post does not depend on the number of subscribers to other event types.
      */
-    private final Subject<Event> mBusSubject = PublishSubject.create();
+    private final ConcurrentMap<Class<? extends Event>, EventChannel> mChannels = new ConcurrentHashMap<>();
 
     /**
-     * A scheduler for deciding how the threading should be handled
+     * The default scheduler for deciding how the threading should be handled. It is used for every class of events
+     * that is not routed to another scheduler with {@link #setScheduler(Class, Scheduler)}.
      */
     private Scheduler mScheduler;
 
+    /**
+     * Recorder of the last posted and handled events, to reconstruct what happened on the bus afterwards
+     */
+    private final FlightRecorder mFlightRecorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
+
+    /**
+     * Tracker of the live subscriptions on this bus and their owners
+     */
+    private final SubscriptionTracker mSubscriptionTracker = new SubscriptionTracker();
+
     /**
      * Constructs a new bus instance
      *
@@ -41,25 +66,72 @@ class Bus {
      */
     <T extends Event>
     Observable<T> register(@NonNull final Class<T> eventClass) {
-        // observeOn function is used to set the thread on which the result is observed
-        // Filter events based on class
-        // Finally, a map is used to cast it to the right type
-        return mBusSubject
-                .observeOn(mScheduler)
-                .filter((Event event) -> event.getClass().equals(eventClass))
-                .map((Event obj) -> {
-                    if (eventClass.isInstance(obj)) {
-                        // This is an 'unsafe type cast' but it is because of how generics work
-                        // in Java. In reality, it will always be possible to cast an
-                        // Event to the type T (which is a sub class of the event)
-                        @SuppressWarnings("unchecked")
-                        T res = (T) obj;
-                        return res;
-                    }
+        return register(null, eventClass);
+    }
+
+    /**
+     * Register for a particular type of events on behalf of an owner. The subscriptions are tracked per owner, so
+     * owners that never dispose their subscriptions show up in the leak report.
+     *
+     * @param owner      the object that owns the subscriptions, usually a communicator, or null if it is unknown
+     * @param eventClass the class of the events you want to subscribe to
+     * @return an Observable of events
+     */
+    <T extends Event>
+    Observable<T> register(@Nullable final Object owner, @NonNull final Class<T> eventClass) {
+        Scheduler scheduler = getChannel(eventClass).getScheduler();
+
+        return register(owner, eventClass, scheduler == null ? mScheduler : scheduler);
+    }
+
+    /**
+     * Register for a particular type of events, and handle them on a specific scheduler. This ignores the scheduler
+     * that the class of events is routed to.
+     *
+     * @param eventClass the class of the events you want to subscribe to
+     * @param scheduler  the scheduler on which the events should be handled
+     * @return an Observable of events
+     */
+    <T extends Event>
+    Observable<T> register(@NonNull final Class<T> eventClass, @NonNull final Scheduler scheduler) {
+        return register(null, eventClass, scheduler);
+    }
+
+    /**
+     * Private helper method that registers for a particular type of events on behalf of an owner, and handles them
+     * on a specific scheduler
+     *
+     * @param owner      the object that owns the subscriptions, or null if it is unknown
+     * @param eventClass the class of the events to subscribe to
+     * @param scheduler  the scheduler on which the events should be handled
+     * @return an Observable of events
+     */
+    private <T extends Event>
+    Observable<T> register(@Nullable final Object owner, @NonNull final Class<T> eventClass,
+                           @NonNull final Scheduler scheduler) {
+        EventChannel channel = getChannel(eventClass);
 
-                    // This should not happen
-                    return null;
-                });
+        // On a priority scheduler, the events wait in the lane of their class
+        final Scheduler laneScheduler = scheduler instanceof PriorityScheduler
+                ? ((PriorityScheduler) scheduler).lane(channel.getPriority())
+                : scheduler;
+
+        // The observable may be subscribed to more than once, every subscription is created separately
+        return Observable.defer(() -> {
+            SubscriptionTracker.Subscription subscription = mSubscriptionTracker.add(owner, eventClass);
+
+            // Every subscriber gets its own bounded queue, which is emptied on the given scheduler
+            // Only events of exactly this class are posted on the channel, so no filtering is needed
+            // Then, a map is used to cast it to the right type
+            // The time the subscriber takes to handle each event is measured
+            // Finally, the subscription is no longer tracked when it is disposed, completes or fails
+            return channel
+                    .subscribe(laneScheduler)
+                    .map(eventClass::cast)
+                    .toObservable()
+                    .lift(new HandlerTimer<>(channel.getMetrics().getHandlerTime(), mFlightRecorder))
+                    .doFinally(() -> mSubscriptionTracker.remove(subscription));
+        });
     }
 
 
@@ -69,6 +141,208 @@ class Bus {
      * @param event the event to post
      */
     void post(@NonNull final Event event) {
-        mBusSubject.onNext(event);
+        mFlightRecorder.recordPost(event);
+
+        // Some events indicate that something went wrong, keep a trace of what led up to it
+        if (mFlightRecorder.isDumpTrigger(event)) {
+            Schedulers.io().scheduleDirect(mFlightRecorder::dump);
+        }
+
+        EventChannel channel = mChannels.get(event.getClass());
+
+        // If nobody ever registered for this class of events, there is no one to deliver it to
+        if (channel != null) {
+            channel.post(event);
+        }
+    }
+
+    /**
+     * Sets what happens when an event is posted while the queue of a subscriber to that class of events is full.
+     * This only applies to subscribers that register afterwards, so it should be called before the communicators
+     * are created. By default, every class of events uses {@link OverflowPolicy#UNBOUNDED}, so no event is lost
+     * and posting never waits. Only events that replace each other, like progress updates, should be allowed to
+     * drop. {@link OverflowPolicy#BLOCK} should only be used for classes that are never posted from the main thread
+     * or from a handler on the same pool.
+     *
+     * @param eventClass     the class of events to configure
+     * @param overflowPolicy what should happen when the queue of a subscriber is full
+     * @param capacity       the maximum number of events that can wait in the queue of a single subscriber
+     */
+    void setOverflowPolicy(@NonNull final Class<? extends Event> eventClass,
+                           @NonNull final OverflowPolicy overflowPolicy, final int capacity) {
+        getChannel(eventClass).setOverflowPolicy(overflowPolicy, capacity);
+    }
+
+    /**
+     * Routes a class of events to a scheduler. Handlers that block on disk or network should be routed to a
+     * scheduler meant for I/O, so they do not take the threads needed for work that keeps the processor busy.
+     * This only applies to subscribers that register afterwards, so it should be called before the communicators
+     * are created.
+     *
+     * @param eventClass the class of events to route
+     * @param scheduler  the scheduler on which the events should be handled, or null to use the default scheduler
+     */
+    void setScheduler(@NonNull final Class<? extends Event> eventClass, final Scheduler scheduler) {
+        getChannel(eventClass).setScheduler(scheduler);
+    }
+
+    /**
+     * Gets the scheduler on which a class of events is handled by subscribers that do not pass their own scheduler.
+     * On a {@link PriorityScheduler}, this is the lane of the class.
+     *
+     * @param eventClass the class of events
+     * @return the scheduler that the class is routed to, or the default scheduler
+     */
+    @NonNull
+    Scheduler getScheduler(@NonNull final Class<? extends Event> eventClass) {
+        EventChannel channel = getChannel(eventClass);
+        Scheduler scheduler = channel.getScheduler() == null ? mScheduler : channel.getScheduler();
+
+        return scheduler instanceof PriorityScheduler
+                ? ((PriorityScheduler) scheduler).lane(channel.getPriority())
+                : scheduler;
+    }
+
+    /**
+     * Sets the priority of a class of events. When the events are handled on a {@link PriorityScheduler}, events
+     * with a higher priority are always handled before waiting events with a lower priority.
+     * This only applies to subscribers that register afterwards, so it should be called before the communicators
+     * are created. By default, every class of events has {@link Priority#NORMAL}.
+     *
+     * @param eventClass the class of events
+     * @param priority   the priority of the events
+     */
+    void setPriority(@NonNull final Class<? extends Event> eventClass, @NonNull final Priority priority) {
+        getChannel(eventClass).setPriority(priority);
+    }
+
+    /**
+     * Gets the number of events of a class that are currently waiting to be handled
+     *
+     * @param eventClass the class of events
+     * @return the number of events waiting in the queues of all subscribers to that class together
+     */
+    int getQueueDepth(@NonNull final Class<? extends Event> eventClass) {
+        EventChannel channel = mChannels.get(eventClass);
+        return channel == null ? 0 : channel.getQueueDepth();
+    }
+
+    /**
+     * Gets the number of events of a class that were dropped because the queue of a subscriber was full
+     *
+     * @param eventClass the class of events
+     * @return the number of dropped events, counted once for every subscriber that missed it
+     */
+    long getDroppedEvents(@NonNull final Class<? extends Event> eventClass) {
+        EventChannel channel = mChannels.get(eventClass);
+        return channel == null ? 0 : channel.getDroppedEvents();
+    }
+
+    /**
+     * @return the tracker of the live subscriptions on this bus and their owners
+     */
+    SubscriptionTracker getSubscriptionTracker() {
+        return mSubscriptionTracker;
+    }
+
+    /**
+     * @return the recorder of the last posted and handled events on this bus
+     */
+    FlightRecorder getFlightRecorder() {
+        return mFlightRecorder;
+    }
+
+    /**
+     * Gets the metrics of every class of events that was registered for or posted
+     *
+     * @return a map from the class of events to its metrics
+     */
+    Map<Class<? extends Event>, EventMetrics> getMetrics() {
+        Map<Class<? extends Event>, EventMetrics> metrics = new HashMap<>();
+        for (Map.Entry<Class<? extends Event>, EventChannel> entry : mChannels.entrySet()) {
+            metrics.put(entry.getKey(), entry.getValue().getMetrics());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * Creates a readable report of the metrics of every class of events, the busiest classes first
+     *
+     * @return the report, with a few lines per class of events
+     */
+    String getMetricsReport() {
+        List<Map.Entry<Class<? extends Event>, EventChannel>> channels = new ArrayList<>(mChannels.entrySet());
+        Collections.sort(channels, (Map.Entry<Class<? extends Event>, EventChannel> first,
+                                    Map.Entry<Class<? extends Event>, EventChannel> second) ->
+                Long.compare(second.getValue().getMetrics().getPosts(), first.getValue().getMetrics().getPosts()));
+
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<Class<? extends Event>, EventChannel> entry : channels) {
+            EventChannel channel = entry.getValue();
+            report.append(entry.getKey().getSimpleName())
+                    .append(" (waiting: ").append(channel.getQueueDepth())
+                    .append(", dropped: ").append(channel.getDroppedEvents()).append(")\n")
+                    .append(channel.getMetrics()).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Posts a request on the bus and waits for the response to that specific request.
+     * Only a response with the same correlation id as the request is accepted, so several requests of the same
+     * kind can be in flight at the same time. The request is posted (again) every time the returned Single is
+     * subscribed to.
+     *
+     * @param request       the request to post
+     * @param responseClass the class of the response to wait for
+     * @param timeout       the maximum time to wait for the response
+     * @param unit          the time unit of the timeout
+     * @return a Single that succeeds with the matching response, or fails with a TimeoutException when no matching
+     * response came in on time
+     */
+    <R extends CorrelatedEvent>
+    Single<R> request(@NonNull final CorrelatedEvent request, @NonNull final Class<R> responseClass,
+                      final long timeout, @NonNull final TimeUnit unit) {
+        return Single.defer(() -> {
+            final long correlationId = request.getCorrelationId();
+            SingleSubject<R> reply = SingleSubject.create();
+
+            // Subscribe for the response before posting the request, so a fast response cannot be missed
+            // The subscription ends when the response came in, when it timed out or when the caller disposes it
+            Disposable subscription = register(request, responseClass)
+                    .filter((R response) -> response.getCorrelationId() == correlationId)
+                    .firstOrError()
+                    .timeout(timeout, unit)
+                    .subscribe(reply::onSuccess, reply::onError);
+
+            post(request);
+
+            // Stop waiting for the response when the caller is no longer interested in it
+            return reply.doOnDispose(subscription::dispose);
+        });
+    }
+
+    /**
+     * Private helper method that gets the channel for a class of events, and creates it if it does not exist yet
+     *
+     * @param eventClass the class of the events
+     * @return the unique channel on which events of the given class are posted
+     */
+    private EventChannel getChannel(@NonNull final Class<? extends Event> eventClass) {
+        EventChannel channel = mChannels.get(eventClass);
+
+        if (channel == null) {
+            EventChannel newChannel = new EventChannel();
+
+            // Another thread may have created a channel in the meantime, in that case use that one
+            channel = mChannels.putIfAbsent(eventClass, newChannel);
+            if (channel == null) {
+                channel = newChannel;
+            }
+        }
+
+        return channel;
     }
 }
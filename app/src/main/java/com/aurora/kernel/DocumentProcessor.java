@@ -0,0 +1,98 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.internalservice.internalprocessor.PreviewListener;
+import com.aurora.plugin.InternalServices;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the internal services on a document, either in the process of the app or in a separate process
+ */
+interface DocumentProcessor {
+
+    /**
+     * Runs internal services on a document
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param cancellationToken token that is checked during the processing
+     * @return the extracted text, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason
+     * @throws java.util.concurrent.CancellationException when the processing was cancelled
+     */
+    @NonNull
+    ExtractedText process(@NonNull String fileUri, @NonNull String fileRef, @NonNull String type,
+                          @NonNull InputStream file, @NonNull List<InternalServices> internalServices,
+                          @NonNull CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException;
+
+    /**
+     * Runs internal services on a document, and hands a preview with the title and the first sections of the
+     * document to a listener while the rest of the document is extracted. The preview only has the extracted text
+     * and images, the other internal services are only run on the complete text. A document that is not longer than
+     * the preview is only returned as a whole.
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param previewSections   the number of sections in the preview
+     * @param previewListener   the listener that receives the preview on the extracting thread
+     * @param cancellationToken token that is checked during the processing
+     * @return the extracted text of the whole document, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason
+     * @throws java.util.concurrent.CancellationException when the processing was cancelled
+     */
+    @NonNull
+    ExtractedText process(@NonNull String fileUri, @NonNull String fileRef, @NonNull String type,
+                          @NonNull InputStream file, @NonNull List<InternalServices> internalServices,
+                          int previewSections, @NonNull PreviewListener previewListener,
+                          @NonNull CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException;
+
+    /**
+     * Runs the internal services that work on an extracted text, like NLP, on a text that was already extracted.
+     * The internal services that need the document itself are skipped.
+     *
+     * @param fileRef           the name of the file the text was extracted from
+     * @param extractedText     the text that was already extracted
+     * @param internalServices  the internal services that should be run on the text
+     * @param cancellationToken token that is checked during the processing
+     * @return the extended text
+     * @throws DocumentNotSupportedException when the text could not be extended
+     * @throws java.util.concurrent.CancellationException when the processing was cancelled
+     */
+    @NonNull
+    ExtractedText extend(@NonNull String fileRef, @NonNull ExtractedText extractedText,
+                         @NonNull List<InternalServices> internalServices,
+                         @NonNull CancellationToken cancellationToken)
+            throws DocumentNotSupportedException;
+
+    /**
+     * Changes the resources that are used for the documents that are processed from now on
+     *
+     * @param profile the profile that sets the number of threads, the number of documents at the same time and
+     *                whether the NLP models are loaded eagerly
+     */
+    void setExecutionProfile(@NonNull ExecutionProfile profile);
+
+    /**
+     * @return the time every stage took when the last file was processed in this process, in nanoseconds
+     */
+    @NonNull
+    Map<String, Long> getLastStageTimings();
+}
@@ -0,0 +1,332 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.kernel.event.Event;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Keeps everything the bus needs for one class of events: the processor on which the events are posted, how the
+ * queues of the subscribers are bounded and counters about those queues.
+ */
+class EventChannel {
+    /**
+     * The default maximum number of events that can wait in the queue of a single subscriber, for the policies that
+     * bound the queue
+     */
+    static final int DEFAULT_CAPACITY = 128;
+
+    /**
+     * The processor on which all events of this class are posted
+     */
+    private final FlowableProcessor<PostedEvent> mProcessor = PublishProcessor.create();
+
+    /**
+     * What happens when the queue of a subscriber is full
+     */
+    private volatile OverflowPolicy mOverflowPolicy = OverflowPolicy.UNBOUNDED;
+
+    /**
+     * The maximum number of events that can wait in the queue of a single subscriber
+     */
+    private volatile int mCapacity = DEFAULT_CAPACITY;
+
+    /**
+     * The scheduler on which subscribers to this channel handle their events, or null to use the default scheduler
+     * of the bus
+     */
+    private volatile Scheduler mScheduler;
+
+    /**
+     * The lane in which events of this channel wait when they are handled on a {@link PriorityScheduler}
+     */
+    private volatile Priority mPriority = Priority.NORMAL;
+
+    /**
+     * The number of events that are currently waiting in the queues of all subscribers together
+     */
+    private final AtomicInteger mQueueDepth = new AtomicInteger();
+
+    /**
+     * The number of events that were dropped because a queue was full
+     */
+    private final AtomicLong mDroppedEvents = new AtomicLong();
+
+    /**
+     * Metrics about posting, delivering and handling the events of this channel
+     */
+    private final EventMetrics mMetrics = new EventMetrics();
+
+    /**
+     * Posts an event to all subscribers of this channel
+     *
+     * @param event the event to post
+     */
+    void post(@NonNull final Event event) {
+        long now = System.nanoTime();
+        mMetrics.recordPost(now);
+        mProcessor.onNext(new PostedEvent(event, now));
+    }
+
+    /**
+     * Sets how the queues of the subscribers are bounded. This only applies to subscribers that register afterwards.
+     *
+     * @param overflowPolicy what should happen when the queue of a subscriber is full
+     * @param capacity       the maximum number of events that can wait in the queue of a single subscriber.
+     *                       This is ignored for {@link OverflowPolicy#UNBOUNDED} and {@link OverflowPolicy#LATEST}.
+     */
+    void setOverflowPolicy(@NonNull final OverflowPolicy overflowPolicy, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of a queue should be positive, but was " + capacity);
+        }
+
+        mOverflowPolicy = overflowPolicy;
+        mCapacity = capacity;
+    }
+
+    /**
+     * @return the scheduler on which subscribers to this channel handle their events, or null if the default
+     * scheduler of the bus should be used
+     */
+    Scheduler getScheduler() {
+        return mScheduler;
+    }
+
+    /**
+     * Sets the scheduler on which subscribers to this channel handle their events. This only applies to subscribers
+     * that register afterwards.
+     *
+     * @param scheduler the scheduler to use, or null to use the default scheduler of the bus
+     */
+    void setScheduler(final Scheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @return the lane in which events of this channel wait when they are handled on a {@link PriorityScheduler}
+     */
+    Priority getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * Sets the lane in which events of this channel wait when they are handled on a {@link PriorityScheduler}.
+     * This only applies to subscribers that register afterwards.
+     *
+     * @param priority the priority of the events of this channel
+     */
+    void setPriority(@NonNull final Priority priority) {
+        mPriority = priority;
+    }
+
+    /**
+     * Creates a queue for a new subscriber of this channel, bounded as set by the overflow policy
+     *
+     * @param scheduler the scheduler on which the events are taken out of the queue
+     * @return a Flowable that emits the events of this channel on the given scheduler
+     */
+    Flowable<Event> subscribe(@NonNull final Scheduler scheduler) {
+        final int capacity = mCapacity;
+        Flowable<PostedEvent> queue;
+
+        if (scheduler == Schedulers.trampoline()) {
+            // Events are handled on the posting thread, so they never wait and no queue is needed
+            queue = mProcessor;
+        } else if (mOverflowPolicy == OverflowPolicy.UNBOUNDED) {
+            queue = unboundedQueue(scheduler);
+        } else if (mOverflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            queue = droppingQueue(scheduler, capacity);
+        } else if (mOverflowPolicy == OverflowPolicy.LATEST) {
+            queue = droppingQueue(scheduler, 1);
+        } else {
+            queue = blockingQueue(scheduler, capacity);
+        }
+
+        // The event is about to be handed to the handler, so its time in the queue is over
+        return queue.map((PostedEvent event) -> {
+            mMetrics.getQueueLatency().record(System.nanoTime() - event.getPostNanos());
+            return event.getEvent();
+        });
+    }
+
+    /**
+     * Private helper method that creates a queue that grows as long as needed, so no event is lost
+     *
+     * @param scheduler the scheduler on which the events are taken out of the queue
+     * @return a Flowable that emits the events of this channel on the given scheduler
+     */
+    private Flowable<PostedEvent> unboundedQueue(@NonNull final Scheduler scheduler) {
+        return Flowable.defer(() -> {
+            final QueueDepth depth = new QueueDepth();
+
+            return mProcessor
+                    .doOnNext((PostedEvent event) -> depth.increment())
+                    .onBackpressureBuffer()
+                    // Only take one event at a time, so the waiting events are counted in the buffer
+                    .observeOn(scheduler, false, 1)
+                    .doOnNext((PostedEvent event) -> depth.decrement())
+                    .doFinally(depth::release);
+        });
+    }
+
+    /**
+     * Private helper method that creates a queue that drops the oldest event when it is full
+     *
+     * @param scheduler the scheduler on which the events are taken out of the queue
+     * @param capacity  the maximum number of events in the queue
+     * @return a Flowable that emits the events of this channel on the given scheduler
+     */
+    private Flowable<PostedEvent> droppingQueue(@NonNull final Scheduler scheduler, final int capacity) {
+        return Flowable.defer(() -> {
+            final QueueDepth depth = new QueueDepth();
+
+            return mProcessor
+                    .doOnNext((PostedEvent event) -> depth.increment())
+                    .onBackpressureBuffer(capacity, () -> {
+                        depth.decrement();
+                        mDroppedEvents.incrementAndGet();
+                    }, BackpressureOverflowStrategy.DROP_OLDEST)
+                    // Only take one event at a time, so the events wait in the bounded buffer
+                    .observeOn(scheduler, false, 1)
+                    .doOnNext((PostedEvent event) -> depth.decrement())
+                    // The events that are still waiting when the subscriber leaves are never handled
+                    .doFinally(depth::release);
+        });
+    }
+
+    /**
+     * Private helper method that creates a queue that blocks the posting thread when it is full
+     *
+     * @param scheduler the scheduler on which the events are taken out of the queue
+     * @param capacity  the maximum number of events in the queue
+     * @return a Flowable that emits the events of this channel on the given scheduler
+     */
+    private Flowable<PostedEvent> blockingQueue(@NonNull final Scheduler scheduler, final int capacity) {
+        return Flowable.defer(() -> {
+            final QueueDepth depth = new QueueDepth();
+            final Semaphore freeSlots = new Semaphore(capacity);
+
+            return mProcessor
+                    .filter((PostedEvent event) -> {
+                        try {
+                            freeSlots.acquire();
+                        } catch (InterruptedException e) {
+                            // The posting thread was interrupted while waiting, so the event can not be queued
+                            Thread.currentThread().interrupt();
+                            mDroppedEvents.incrementAndGet();
+                            return false;
+                        }
+
+                        if (!depth.increment()) {
+                            // The subscriber left while the poster was waiting, let the next waiting poster go
+                            freeSlots.release();
+                            return false;
+                        }
+                        return true;
+                    })
+                    // The semaphore bounds the number of events in this buffer
+                    .onBackpressureBuffer()
+                    .observeOn(scheduler, false, capacity)
+                    .doOnNext((PostedEvent event) -> {
+                        depth.decrement();
+                        freeSlots.release();
+                    })
+                    .doFinally(() -> {
+                        // Wake up the posters that are waiting for a subscriber that is gone
+                        depth.release();
+                        freeSlots.release(capacity);
+                    });
+        });
+    }
+
+    /**
+     * @return the number of events that are currently waiting in the queues of all subscribers together
+     */
+    int getQueueDepth() {
+        return mQueueDepth.get();
+    }
+
+    /**
+     * @return the number of events that were dropped because a queue was full
+     */
+    long getDroppedEvents() {
+        return mDroppedEvents.get();
+    }
+
+    /**
+     * @return the metrics about posting, delivering and handling the events of this channel
+     */
+    EventMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * The number of events waiting in the queue of a single subscriber. Its events are also counted in the depth of
+     * the channel, until they are handled or dropped, or until the subscriber leaves.
+     */
+    private class QueueDepth {
+        /**
+         * The depth of a queue whose subscriber left, which no longer counts events
+         */
+        private static final int RELEASED = -1;
+
+        /**
+         * The number of waiting events, or {@link #RELEASED} once the subscriber left
+         */
+        private final AtomicInteger mDepth = new AtomicInteger();
+
+        /**
+         * Counts an event that is put in the queue
+         *
+         * @return false if the subscriber already left, so the event is not counted
+         */
+        boolean increment() {
+            while (true) {
+                int depth = mDepth.get();
+                if (depth == RELEASED) {
+                    return false;
+                }
+                if (mDepth.compareAndSet(depth, depth + 1)) {
+                    mQueueDepth.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Counts an event that is taken out of the queue, because it is handled or dropped
+         */
+        void decrement() {
+            while (true) {
+                int depth = mDepth.get();
+                if (depth <= 0) {
+                    return;
+                }
+                if (mDepth.compareAndSet(depth, depth - 1)) {
+                    mQueueDepth.decrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Stops counting when the subscriber leaves, and removes its waiting events from the depth of the channel
+         */
+        void release() {
+            int depth = mDepth.getAndSet(RELEASED);
+            if (depth > 0) {
+                mQueueDepth.addAndGet(-depth);
+            }
+        }
+    }
+}
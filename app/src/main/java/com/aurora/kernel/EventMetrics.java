@@ -0,0 +1,87 @@
+package com.aurora.kernel;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics that the bus keeps for one class of events: how often it is posted, how long events wait between being
+ * posted and being delivered, and how long the handlers take
+ */
+class EventMetrics {
+    /**
+     * The number of events that were posted
+     */
+    private final AtomicLong mPosts = new AtomicLong();
+
+    /**
+     * The time at which the first event was posted, in nanoseconds, or 0 if no event was posted yet
+     */
+    private final AtomicLong mFirstPostNanos = new AtomicLong();
+
+    /**
+     * The time between posting an event and delivering it to a handler
+     */
+    private final LatencyHistogram mQueueLatency = new LatencyHistogram();
+
+    /**
+     * The time a handler takes to handle an event
+     */
+    private final LatencyHistogram mHandlerTime = new LatencyHistogram();
+
+    /**
+     * Records that an event was posted
+     *
+     * @param postNanos the time at which the event was posted, in nanoseconds
+     */
+    void recordPost(final long postNanos) {
+        if (mPosts.getAndIncrement() == 0) {
+            mFirstPostNanos.compareAndSet(0, postNanos);
+        }
+    }
+
+    /**
+     * @return the number of events that were posted
+     */
+    long getPosts() {
+        return mPosts.get();
+    }
+
+    /**
+     * @return the average number of events posted per second since the first one, or 0 if no event was posted
+     */
+    double getPostRate() {
+        long posts = mPosts.get();
+        long first = mFirstPostNanos.get();
+        if (posts == 0 || first == 0) {
+            return 0;
+        }
+
+        // Avoid dividing by zero when all events were posted at once
+        long elapsed = Math.max(System.nanoTime() - first, TimeUnit.MILLISECONDS.toNanos(1));
+        return posts * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * @return the histogram of the time between posting an event and delivering it to a handler
+     */
+    LatencyHistogram getQueueLatency() {
+        return mQueueLatency;
+    }
+
+    /**
+     * @return the histogram of the time a handler takes to handle an event
+     */
+    LatencyHistogram getHandlerTime() {
+        return mHandlerTime;
+    }
+
+    /**
+     * @return a summary of the metrics, one line per kind of measurement
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "  posts: %d (%.2f/s)%n  queue latency: %s%n  handler time: %s",
+                getPosts(), getPostRate(), mQueueLatency, mHandlerTime);
+    }
+}
@@ -0,0 +1,123 @@
+package com.aurora.kernel;
+
+/**
+ * The amount of resources the kernel may use to process documents. The profile sets the number of threads of the
+ * pools, how many documents are processed at the same time, how large extracted images may be and whether the NLP
+ * models are loaded while a document is still being extracted. The {@link ExecutionProfileMonitor} switches between
+ * the profiles when power save mode is turned on or off, and when the device heats up or cools down.
+ */
+public enum ExecutionProfile {
+    /**
+     * Uses all cores and processes two documents at the same time, while the device is charging and cool
+     */
+    PERFORMANCE(1, 4, 2, 0, true),
+    /**
+     * Uses all cores for one document at a time
+     */
+    BALANCED(1, 4, 1, 0, true),
+    /**
+     * Uses half of the cores, caps the size of images and only loads the NLP models when the text is extracted, so
+     * no work is wasted on documents that cannot be extracted
+     */
+    BATTERY(2, 2, 1, 1024, false);
+
+    /**
+     * The number of cores is divided by this to get the number of threads that handle events
+     */
+    private final int mCoreDivisor;
+
+    /**
+     * The number of threads that handle events which block on disk or network
+     */
+    private final int mIoThreads;
+
+    /**
+     * The maximum number of documents that are processed at the same time
+     */
+    private final int mMaxConcurrentDocuments;
+
+    /**
+     * The largest side that extracted images may have in pixels, or 0 if the size of images is not capped
+     */
+    private final int mMaxImageSize;
+
+    /**
+     * Whether the NLP models are loaded while the document is extracted, instead of after it was extracted
+     */
+    private final boolean mEagerNlp;
+
+    /**
+     * Creates a profile
+     *
+     * @param coreDivisor            the number of cores is divided by this to get the number of threads that handle
+     *                               events
+     * @param ioThreads              the number of threads that handle events which block on disk or network
+     * @param maxConcurrentDocuments the maximum number of documents that are processed at the same time
+     * @param maxImageSize           the largest side that extracted images may have in pixels, or 0 for no cap
+     * @param eagerNlp               whether the NLP models are loaded while the document is extracted
+     */
+    ExecutionProfile(final int coreDivisor, final int ioThreads, final int maxConcurrentDocuments,
+                     final int maxImageSize, final boolean eagerNlp) {
+        mCoreDivisor = coreDivisor;
+        mIoThreads = ioThreads;
+        mMaxConcurrentDocuments = maxConcurrentDocuments;
+        mMaxImageSize = maxImageSize;
+        mEagerNlp = eagerNlp;
+    }
+
+    /**
+     * @return the number of threads that handle the events on the bus
+     */
+    public int getComputationThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / mCoreDivisor);
+    }
+
+    /**
+     * @return the number of threads that handle events which block on disk or network
+     */
+    public int getIoThreads() {
+        return mIoThreads;
+    }
+
+    /**
+     * Gets the number of threads on which the stages of the internal services run. When the NLP models are loaded
+     * eagerly, there are at least two, so loading the models and extracting the document happen at the same time
+     * even on a single core.
+     *
+     * @return the number of threads for the stages
+     */
+    public int getStageThreads() {
+        return mEagerNlp ? Math.max(2, getComputationThreads()) : getComputationThreads();
+    }
+
+    /**
+     * Gets the number of pages of one document that are interpreted at the same time. The cores are shared by the
+     * documents that may be processed at the same time.
+     *
+     * @return the number of pages of a document at the same time
+     */
+    public int getPageThreads() {
+        return Math.max(1, getComputationThreads() / mMaxConcurrentDocuments);
+    }
+
+    /**
+     * @return the maximum number of documents that are processed at the same time
+     */
+    public int getMaxConcurrentDocuments() {
+        return mMaxConcurrentDocuments;
+    }
+
+    /**
+     * @return the largest side that extracted images may have in pixels, or 0 if the size of images is not capped
+     */
+    public int getMaxImageSize() {
+        return mMaxImageSize;
+    }
+
+    /**
+     * @return true if the NLP models are loaded while the document is extracted, false if they are loaded after
+     */
+    public boolean isEagerNlp() {
+        return mEagerNlp;
+    }
+}
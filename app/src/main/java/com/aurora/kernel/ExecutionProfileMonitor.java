@@ -0,0 +1,155 @@
+package com.aurora.kernel;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.aurora.kernel.event.ExecutionProfileChangedEvent;
+
+import java.util.Locale;
+
+/**
+ * Picks the {@link ExecutionProfile} of the kernel from the power save mode, the battery temperature and whether
+ * the device is charging. The thermal status of the device is only available from API level 29, so the battery
+ * temperature is used to tell when the device gets hot. Every switch is posted on the bus as an
+ * {@link ExecutionProfileChangedEvent}.
+ */
+final class ExecutionProfileMonitor extends BroadcastReceiver {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "ExecutionProfileMonitor";
+
+    /**
+     * The battery temperature from which the device is too hot for anything but {@link ExecutionProfile#BATTERY},
+     * in tenths of a degree Celsius
+     */
+    static final int HOT_TEMPERATURE = 450;
+
+    /**
+     * The battery temperature below which a hot device has cooled down again, in tenths of a degree Celsius. It is
+     * lower than {@link #HOT_TEMPERATURE}, so the profile does not keep switching around one temperature.
+     */
+    static final int COOL_TEMPERATURE = 420;
+
+    /**
+     * The battery temperature from which the device is too warm for {@link ExecutionProfile#PERFORMANCE}, in
+     * tenths of a degree Celsius
+     */
+    static final int WARM_TEMPERATURE = 380;
+
+    /**
+     * The bus on which the switches are posted
+     */
+    private final Bus mBus;
+
+    /**
+     * The profile the kernel uses
+     */
+    private volatile ExecutionProfile mProfile = ExecutionProfile.BALANCED;
+
+    /**
+     * Whether power save mode is on
+     */
+    private boolean mPowerSave = false;
+
+    /**
+     * The last battery temperature, in tenths of a degree Celsius
+     */
+    private int mTemperature = 0;
+
+    /**
+     * Whether the device is plugged in
+     */
+    private boolean mCharging = false;
+
+    /**
+     * Creates a monitor that starts with {@link ExecutionProfile#BALANCED}
+     *
+     * @param bus the bus on which the switches are posted
+     */
+    ExecutionProfileMonitor(@NonNull final Bus bus) {
+        mBus = bus;
+    }
+
+    /**
+     * Starts listening to the power save mode and the battery. The battery state is sticky, so the profile is
+     * picked right away.
+     *
+     * @param context the android application context
+     */
+    void register(@NonNull final Context context) {
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+
+        Intent battery = context.registerReceiver(this, filter);
+        if (battery != null) {
+            onReceive(context, battery);
+        }
+    }
+
+    /**
+     * @return the profile the kernel uses
+     */
+    @NonNull
+    ExecutionProfile getProfile() {
+        return mProfile;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        ExecutionProfile profile;
+        String reason;
+
+        synchronized (this) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                mTemperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, mTemperature);
+                mCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            }
+
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            mPowerSave = powerManager != null && powerManager.isPowerSaveMode();
+
+            profile = select(mProfile, mPowerSave, mTemperature, mCharging);
+            if (profile == mProfile) {
+                return;
+            }
+
+            mProfile = profile;
+            reason = String.format(Locale.US, "power save %b, battery %.1f degrees, charging %b", mPowerSave,
+                    mTemperature / 10.0, mCharging);
+        }
+
+        Log.i(CLASS_TAG, "Switching to " + profile + " because of " + reason);
+        mBus.post(new ExecutionProfileChangedEvent(profile, reason));
+    }
+
+    /**
+     * Picks the profile for the state of the device
+     *
+     * @param current     the profile the kernel uses now
+     * @param powerSave   whether power save mode is on
+     * @param temperature the battery temperature, in tenths of a degree Celsius
+     * @param charging    whether the device is plugged in
+     * @return the profile the kernel should use
+     */
+    @NonNull
+    static ExecutionProfile select(@NonNull final ExecutionProfile current, final boolean powerSave,
+                                   final int temperature, final boolean charging) {
+        // A device that was hot has to cool down a bit more before it gets more work again
+        int hotTemperature = current == ExecutionProfile.BATTERY ? COOL_TEMPERATURE : HOT_TEMPERATURE;
+
+        if (powerSave || temperature >= hotTemperature) {
+            return ExecutionProfile.BATTERY;
+        } else if (charging && temperature < WARM_TEMPERATURE) {
+            return ExecutionProfile.PERFORMANCE;
+        }
+
+        return ExecutionProfile.BALANCED;
+    }
+}
@@ -0,0 +1,324 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.aurora.kernel.event.CorrelatedEvent;
+import com.aurora.kernel.event.Event;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Always-on recorder of the last events on the bus, so it can be reconstructed afterwards what happened, for
+ * example when a user reports that opening a document was slow.
+ * <p>
+ * Every post and every handled event is written in a ring buffer of fixed size. The buffer consists of arrays that
+ * are allocated once, so recording does not allocate and does not lock. Every slot has a sequence number that is
+ * cleared before the record is written and set after it, so a dump skips slots that are being overwritten instead of
+ * writing half of one record and half of another.
+ * <p>
+ * The buffer can be dumped in the Chrome trace format, which can be opened in chrome://tracing or Perfetto.
+ */
+class FlightRecorder {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "FlightRecorder";
+
+    /**
+     * The default number of records that are kept
+     */
+    static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Kind of record for an event that was posted
+     */
+    private static final byte KIND_POST = 1;
+
+    /**
+     * Kind of record for an event that was handled
+     */
+    private static final byte KIND_HANDLE = 2;
+
+    /**
+     * Sequence number of a slot that was never written or that is being written
+     */
+    private static final long NO_SEQUENCE = -1;
+
+    /**
+     * The name of every thread that recorded, asked once per thread because asking the name can allocate
+     */
+    private static final ThreadLocal<String> sThreadNames = new ThreadLocal<String>() {
+        @Override
+        protected String initialValue() {
+            return Thread.currentThread().getName();
+        }
+    };
+
+    /**
+     * Mask to turn the sequence number of a record in its slot, the capacity is a power of two
+     */
+    private final int mMask;
+
+    /**
+     * The sequence number of the next record
+     */
+    private final AtomicLong mNext = new AtomicLong();
+
+    /**
+     * The sequence number of the record in every slot, or NO_SEQUENCE if the slot holds no complete record
+     */
+    private final AtomicLongArray mSequences;
+
+    /**
+     * The kind of every record, 0 for a slot that was never written
+     */
+    private final byte[] mKinds;
+
+    /**
+     * The class of the event of every record
+     */
+    private final Class<?>[] mEventClasses;
+
+    /**
+     * The moment every record started, in nanoseconds
+     */
+    private final long[] mStartNanos;
+
+    /**
+     * How long the handler took for every handle record, in nanoseconds
+     */
+    private final long[] mDurationNanos;
+
+    /**
+     * The correlation id of the event of every record, or 0 if the event has none
+     */
+    private final long[] mCorrelationIds;
+
+    /**
+     * The id of the thread on which every record happened. The thread itself is not kept, so threads that have
+     * finished can be collected.
+     */
+    private final long[] mThreadIds;
+
+    /**
+     * The name of the thread on which every record happened
+     */
+    private final String[] mThreadNames;
+
+    /**
+     * The classes of events that cause a dump to be written when they are posted
+     */
+    private final Set<Class<? extends Event>> mDumpTriggers = new CopyOnWriteArraySet<>();
+
+    /**
+     * The directory in which dumps are written, or null if dumps should not be written to files
+     */
+    private volatile File mDumpDirectory = null;
+
+    /**
+     * Creates a new flight recorder
+     *
+     * @param capacity the minimum number of records to keep, rounded up to a power of two
+     */
+    FlightRecorder(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity should be positive, but was " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        for (int slot = 0; slot < size; slot++) {
+            mSequences.set(slot, NO_SEQUENCE);
+        }
+        mKinds = new byte[size];
+        mEventClasses = new Class<?>[size];
+        mStartNanos = new long[size];
+        mDurationNanos = new long[size];
+        mCorrelationIds = new long[size];
+        mThreadIds = new long[size];
+        mThreadNames = new String[size];
+    }
+
+    /**
+     * Records that an event was posted
+     *
+     * @param event the event that was posted
+     */
+    void recordPost(@NonNull final Event event) {
+        record(KIND_POST, event, System.nanoTime(), 0);
+    }
+
+    /**
+     * Records that a handler has handled an event
+     *
+     * @param event         the event that was handled
+     * @param startNanos    the moment the handler started, in nanoseconds
+     * @param durationNanos how long the handler took, in nanoseconds
+     */
+    void recordHandled(@NonNull final Event event, final long startNanos, final long durationNanos) {
+        record(KIND_HANDLE, event, startNanos, durationNanos);
+    }
+
+    /**
+     * Sets the directory in which dumps are written
+     *
+     * @param dumpDirectory the directory, or null to not write dumps to files
+     */
+    void setDumpDirectory(@Nullable final File dumpDirectory) {
+        mDumpDirectory = dumpDirectory;
+    }
+
+    /**
+     * Makes the recorder write a dump every time an event of the given class is posted, for example an event that
+     * reports an error
+     *
+     * @param eventClass the class of events that triggers a dump
+     */
+    void addDumpTrigger(@NonNull final Class<? extends Event> eventClass) {
+        mDumpTriggers.add(eventClass);
+    }
+
+    /**
+     * Checks if posting an event should trigger a dump
+     *
+     * @param event the event that is posted
+     * @return true if a dump should be written
+     */
+    boolean isDumpTrigger(@NonNull final Event event) {
+        return !mDumpTriggers.isEmpty() && mDumpTriggers.contains(event.getClass());
+    }
+
+    /**
+     * Writes the records to a new file in the dump directory
+     *
+     * @return the file that was written, or null if there is no dump directory or writing failed
+     */
+    @Nullable
+    File dump() {
+        File directory = mDumpDirectory;
+        if (directory == null || (!directory.isDirectory() && !directory.mkdirs())) {
+            return null;
+        }
+
+        File file = new File(directory, "bus-trace-" + System.currentTimeMillis() + ".json");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Something went wrong writing the trace to " + file, e);
+            return null;
+        }
+
+        return file;
+    }
+
+    /**
+     * Writes the records, oldest first, in the Chrome trace format. Posts are instant events and handled events
+     * are complete events with their duration. Both carry the correlation id of the event.
+     *
+     * @param writer the writer to write the trace to, it is not closed
+     * @throws IOException if writing fails
+     */
+    void writeChromeTrace(@NonNull final Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("displayTimeUnit").value("ms");
+        json.name("traceEvents").beginArray();
+
+        long next = mNext.get();
+        long first = Math.max(0, next - mKinds.length);
+        for (long sequence = first; sequence < next; sequence++) {
+            int slot = (int) (sequence & mMask);
+            if (mSequences.get(slot) != sequence) {
+                // The record was overwritten already or is still being written
+                continue;
+            }
+
+            byte kind = mKinds[slot];
+            Class<?> eventClass = mEventClasses[slot];
+            long startNanos = mStartNanos[slot];
+            long durationNanos = mDurationNanos[slot];
+            long correlationId = mCorrelationIds[slot];
+            long threadId = mThreadIds[slot];
+            String threadName = mThreadNames[slot];
+
+            // Compare and set has the ordering of a full fence, so the fields above are read before it. If the
+            // sequence number changed in the meantime, another record was written in the slot while reading.
+            if (!mSequences.compareAndSet(slot, sequence, sequence)) {
+                continue;
+            }
+
+            json.beginObject();
+            json.name("name").value(eventClass.getSimpleName());
+            json.name("cat").value(kind == KIND_POST ? "post" : "handle");
+            json.name("ph").value(kind == KIND_POST ? "i" : "X");
+            json.name("ts").value(TimeUnit.NANOSECONDS.toMicros(startNanos));
+            if (kind == KIND_POST) {
+                // Show the post only on the thread that posted it
+                json.name("s").value("t");
+            } else {
+                json.name("dur").value(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            }
+            json.name("pid").value(0);
+            json.name("tid").value(threadId);
+            json.name("args").beginObject()
+                    .name("correlationId").value(correlationId)
+                    .name("thread").value(threadName)
+                    .endObject();
+            json.endObject();
+        }
+
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Private helper method that writes a record in the next slot of the ring buffer
+     *
+     * @param kind          the kind of the record
+     * @param event         the event of the record
+     * @param startNanos    the moment the record started, in nanoseconds
+     * @param durationNanos the duration of the record, in nanoseconds
+     */
+    private void record(final byte kind, @NonNull final Event event, final long startNanos,
+                        final long durationNanos) {
+        long sequence = mNext.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+
+        // Clear the sequence number first, with the ordering of a full fence, so a dump cannot see the fields below
+        // change while the slot still has the number of the previous record
+        mSequences.getAndSet(slot, NO_SEQUENCE);
+
+        Thread thread = Thread.currentThread();
+        mKinds[slot] = kind;
+        mEventClasses[slot] = event.getClass();
+        mStartNanos[slot] = startNanos;
+        mDurationNanos[slot] = durationNanos;
+        mCorrelationIds[slot] = event instanceof CorrelatedEvent ? ((CorrelatedEvent) event).getCorrelationId() : 0;
+        mThreadIds[slot] = thread.getId();
+        mThreadNames[slot] = sThreadNames.get();
+
+        // Publish the record last, the volatile write makes the fields above visible to a dump that sees it
+        mSequences.set(slot, sequence);
+    }
+}
@@ -0,0 +1,105 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.kernel.event.Event;
+
+import io.reactivex.ObservableOperator;
+import io.reactivex.Observer;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Operator that measures how long the subscriber downstream takes to handle every event, and writes it in the
+ * metrics and the flight recorder of the bus
+ *
+ * @param <T> the type of the events
+ */
+class HandlerTimer<T extends Event> implements ObservableOperator<T, T> {
+    /**
+     * The histogram in which the handler times are recorded
+     */
+    private final LatencyHistogram mHandlerTime;
+
+    /**
+     * The flight recorder in which every handled event is recorded
+     */
+    private final FlightRecorder mFlightRecorder;
+
+    /**
+     * Creates a new handler timer
+     *
+     * @param handlerTime    the histogram in which the handler times are recorded
+     * @param flightRecorder the flight recorder in which every handled event is recorded
+     */
+    HandlerTimer(@NonNull final LatencyHistogram handlerTime, @NonNull final FlightRecorder flightRecorder) {
+        mHandlerTime = handlerTime;
+        mFlightRecorder = flightRecorder;
+    }
+
+    @Override
+    public Observer<? super T> apply(@NonNull final Observer<? super T> observer) {
+        return new TimedObserver(observer);
+    }
+
+    /**
+     * Observer that passes everything to the downstream observer and records how long its onNext takes
+     */
+    private class TimedObserver implements Observer<T>, Disposable {
+        /**
+         * The observer that handles the events
+         */
+        private final Observer<? super T> mDownstream;
+
+        /**
+         * The subscription to the events
+         */
+        private Disposable mUpstream;
+
+        /**
+         * Creates a new timed observer
+         *
+         * @param downstream the observer that handles the events
+         */
+        TimedObserver(@NonNull final Observer<? super T> downstream) {
+            mDownstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(@NonNull final Disposable disposable) {
+            mUpstream = disposable;
+            mDownstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(@NonNull final T event) {
+            long start = System.nanoTime();
+            try {
+                mDownstream.onNext(event);
+            } finally {
+                long duration = System.nanoTime() - start;
+                mHandlerTime.record(duration);
+                mFlightRecorder.recordHandled(event, start, duration);
+            }
+        }
+
+        @Override
+        public void onError(@NonNull final Throwable error) {
+            mDownstream.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            mDownstream.onComplete();
+        }
+
+        @Override
+        public void dispose() {
+            mUpstream.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return mUpstream.isDisposed();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.aurora.kernel;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalnlp.InternalNLP;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
+import com.aurora.plugin.InternalServices;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service that runs the internal services in its own process. Extracting documents and loading the NLP models use a
+ * lot of memory, so their garbage collection does not slow down the user interface and running out of memory does
+ * not crash the app. The documents and the extracted texts are passed through file descriptors instead of through
+ * the binder, which cannot carry large objects.
+ */
+public class IsolatedProcessingService extends Service {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "IsolatedProcessing";
+
+    /**
+     * The size of the buffer with which an extracted text is read
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of cancellations that are remembered for requests that did not arrive yet
+     */
+    private static final int MAX_EARLY_CANCELLATIONS = 64;
+
+    /**
+     * Runs the internal services in the process of this service
+     */
+    private DocumentProcessor mDocumentProcessor;
+
+    /**
+     * The tokens of the documents that are being processed, by the id the app gave them
+     */
+    private final Map<Long, CancellationToken> mCancellationTokens = new ConcurrentHashMap<>();
+
+    /**
+     * The ids of requests that were cancelled before they arrived, oldest first. A cancellation can also arrive
+     * after its request was done, so only the most recent ones are remembered. This is also the lock that makes
+     * starting and cancelling a request atomic.
+     */
+    private final Set<Long> mEarlyCancellations = new LinkedHashSet<>();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mDocumentProcessor = new LocalDocumentProcessor(new InternalTextProcessor());
+    }
+
+    /**
+     * Unloads the NLP models of this process when the system asks for memory, in the same way as the kernel does
+     * in the process of the app
+     *
+     * @param level the trim level, one of the TRIM_MEMORY constants
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if (MemoryGovernor.getDegradation(level).isAtLeast(Degradation.UNLOAD_NLP_MODELS)) {
+            InternalNLP.unloadModels();
+        }
+    }
+
+    /**
+     * Required function for Service usage. Gets called by the Android platform.
+     *
+     * @param intent Service Intent for the processing service
+     * @return a ProcessingBinder to be used by the kernel in the process of the app
+     */
+    @Override
+    public IBinder onBind(Intent intent) {
+        return new ProcessingBinder();
+    }
+
+    /**
+     * Private helper method that writes an extracted text to a file that is only reachable through the returned
+     * file descriptor
+     *
+     * @param extractedText the extracted text
+     * @return a file descriptor from which the extracted text can be read as JSON
+     * @throws IOException when the extracted text could not be written
+     */
+    private ParcelFileDescriptor writeResult(ExtractedText extractedText) throws IOException {
+        File result = File.createTempFile("extracted-text", ".json", getCacheDir());
+
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(result),
+                    StandardCharsets.UTF_8))) {
+                writer.write(extractedText.toJSON());
+            }
+
+            return ParcelFileDescriptor.open(result, ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            // The open file descriptor keeps the contents readable
+            if (!result.delete()) {
+                Log.e(CLASS_TAG, "Could not delete " + result);
+            }
+        }
+    }
+
+    /**
+     * Private helper method that reads an extracted text that the app passed on as JSON
+     *
+     * @param extractedText the file descriptor from which the extracted text is read, which is closed afterwards
+     * @return the extracted text
+     * @throws IOException when the extracted text could not be read
+     */
+    private static ExtractedText readExtractedText(ParcelFileDescriptor extractedText) throws IOException {
+        try (Reader reader = new InputStreamReader(new ParcelFileDescriptor.AutoCloseInputStream(extractedText),
+                StandardCharsets.UTF_8)) {
+            StringBuilder json = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, read);
+            }
+
+            return ExtractedText.fromJson(json.toString());
+        }
+    }
+
+    /**
+     * Binder for the service, makes use of AIDL file
+     */
+    private class ProcessingBinder extends IProcessingService.Stub {
+        /**
+         * Runs internal services on a document. The errors of the internal services are turned into exceptions
+         * that the binder passes on to the app.
+         *
+         * @param id               the id of the request, with which it can be cancelled
+         * @param document         the file descriptor from which the document is read
+         * @param fileUri          the uri of the file to be processed
+         * @param fileRef          the name of the file to be processed
+         * @param fileType         the file type (extension)
+         * @param internalServices the names of the internal services that should be run on the file
+         * @return a file descriptor from which the extracted text is read as JSON
+         */
+        @Override
+        public ParcelFileDescriptor process(long id, ParcelFileDescriptor document, String fileUri, String fileRef,
+                                            String fileType, List<String> internalServices) {
+            CancellationToken cancellationToken = startRequest(id);
+
+            List<InternalServices> services = new ArrayList<>();
+            for (String internalService : internalServices) {
+                services.add(InternalServices.valueOf(internalService));
+            }
+
+            try (InputStream file = new ParcelFileDescriptor.AutoCloseInputStream(document)) {
+                return writeResult(mDocumentProcessor.process(fileUri, fileRef, fileType, file, services,
+                        cancellationToken));
+            } catch (FileTypeNotSupportedException e) {
+                throw new UnsupportedOperationException(e.getMessage());
+            } catch (DocumentNotSupportedException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Processing of " + fileRef + " was cancelled");
+            } catch (IOException e) {
+                Log.e(CLASS_TAG, "Something went wrong passing on the extracted text of " + fileRef, e);
+                throw new IllegalArgumentException("The document could not be read");
+            } finally {
+                mCancellationTokens.remove(id);
+            }
+        }
+
+        /**
+         * Runs the internal services that work on an extracted text on a text that was already extracted
+         *
+         * @param id               the id of the request, with which it can be cancelled
+         * @param extractedText    the file descriptor from which the extracted text is read as JSON
+         * @param fileRef          the name of the file the text was extracted from
+         * @param internalServices the names of the internal services that should be run on the text
+         * @return a file descriptor from which the extended text is read as JSON
+         */
+        @Override
+        public ParcelFileDescriptor extend(long id, ParcelFileDescriptor extractedText, String fileRef,
+                                           List<String> internalServices) {
+            CancellationToken cancellationToken = startRequest(id);
+
+            List<InternalServices> services = new ArrayList<>();
+            for (String internalService : internalServices) {
+                services.add(InternalServices.valueOf(internalService));
+            }
+
+            try {
+                return writeResult(mDocumentProcessor.extend(fileRef, readExtractedText(extractedText), services,
+                        cancellationToken));
+            } catch (DocumentNotSupportedException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Processing of " + fileRef + " was cancelled");
+            } catch (IOException e) {
+                Log.e(CLASS_TAG, "Something went wrong passing on the extended text of " + fileRef, e);
+                throw new IllegalArgumentException("The extracted text could not be read");
+            } finally {
+                mCancellationTokens.remove(id);
+            }
+        }
+
+        /**
+         * Changes the execution profile of the documents that are processed from now on
+         *
+         * @param profile the name of the profile
+         */
+        @Override
+        public void setExecutionProfile(String profile) {
+            mDocumentProcessor.setExecutionProfile(ExecutionProfile.valueOf(profile));
+        }
+
+        /**
+         * Cancels the processing of a document
+         *
+         * @param id the id of the request to cancel
+         */
+        @Override
+        public void cancel(long id) {
+            CancellationToken cancellationToken;
+            synchronized (mEarlyCancellations) {
+                cancellationToken = mCancellationTokens.get(id);
+
+                // The cancellation can arrive before the request itself, which then stops immediately
+                if (cancellationToken == null) {
+                    mEarlyCancellations.add(id);
+                    if (mEarlyCancellations.size() > MAX_EARLY_CANCELLATIONS) {
+                        Iterator<Long> oldest = mEarlyCancellations.iterator();
+                        oldest.next();
+                        oldest.remove();
+                    }
+                    return;
+                }
+            }
+
+            cancellationToken.cancel();
+        }
+
+        /**
+         * Private helper method that creates the token of a request that arrived, which is cancelled already if
+         * the cancellation arrived first
+         *
+         * @param id the id of the request
+         * @return the unique token of the request
+         */
+        private CancellationToken startRequest(long id) {
+            CancellationToken cancellationToken = new CancellationToken();
+            boolean cancelled;
+            synchronized (mEarlyCancellations) {
+                mCancellationTokens.put(id, cancellationToken);
+                cancelled = mEarlyCancellations.remove(id);
+            }
+
+            if (cancelled) {
+                cancellationToken.cancel();
+            }
+            return cancellationToken;
+        }
+    }
+}
@@ -2,12 +2,29 @@ package com.aurora.kernel;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import com.android.volley.toolbox.Volley;
+import com.aurora.aurora.BuildConfig;
 import com.aurora.internalservice.internalcache.InternalCache;
 import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
 import com.aurora.internalservice.internaltranslation.Translator;
+import com.aurora.kernel.event.CacheFileRequest;
+import com.aurora.kernel.event.CacheFileResponse;
+import com.aurora.kernel.event.DocumentNotSupportedEvent;
+import com.aurora.kernel.event.Event;
+import com.aurora.kernel.event.ExecutionProfileChangedEvent;
+import com.aurora.kernel.event.OpenCachedFileWithPluginRequest;
+import com.aurora.kernel.event.ProcessingPreviewEvent;
+import com.aurora.kernel.event.ProcessingProgressEvent;
+import com.aurora.kernel.event.QueryCacheRequest;
+import com.aurora.kernel.event.QueryCacheResponse;
+import com.aurora.kernel.event.RemoveFromCacheRequest;
+import com.aurora.kernel.event.RetrieveFileFromCacheRequest;
+import com.aurora.kernel.event.RetrieveFileFromCacheResponse;
+import com.aurora.kernel.event.TranslationRequest;
+import com.aurora.kernel.event.UpdateCachedFileDateRequest;
 import com.aurora.plugin.Plugin;
 import com.google.gson.Gson;
 
@@ -16,7 +33,11 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
 /**
@@ -33,11 +54,46 @@ public final class Kernel {
      */
     private static final String PLUGINS_CFG = "plugin-config.json";
 
+    /**
+     * The maximum number of files that can wait to be cached before plugins have to wait
+     */
+    private static final int CACHE_QUEUE_CAPACITY = 16;
+
+    /**
+     * The name of the directory in the cache directory in which traces of the bus are written
+     */
+    private static final String TRACES_DIRECTORY = "traces";
+
     /**
      * A static reference to the Kernel if it has been created
      */
     private static Kernel sKernel = null;
 
+    /**
+     * A reference to the bus that is shared among all communicators
+     */
+    private static Bus sBus;
+
+    /**
+     * The scheduler on which the bus handles events by default, kept for its lane statistics
+     */
+    private static PriorityScheduler sComputationScheduler;
+
+    /**
+     * The scheduler of the handlers that wait on disk or network, kept for its lane statistics
+     */
+    private static PriorityScheduler sIoScheduler;
+
+    /**
+     * The scheduler on which the documents are processed, kept for its lane statistics
+     */
+    private static PriorityScheduler sDocumentScheduler;
+
+    /**
+     * Completes when the services behind the communicators have started
+     */
+    private static Completable sReady;
+
     /**
      * A reference to the AuroraCommunicator
      */
@@ -79,13 +135,15 @@ public final class Kernel {
     /**
      * Returns the singleton kernel instance after it has been created.
      * If no instance exists yet, this method will take care of it, but the applicationContext may not be null in that
-     * case. If the instance already exists the applicationContext argument will not be used
+     * case. If the instance already exists the applicationContext argument will not be used.
+     * This is synchronized because the services that plugins bind to can ask for the kernel from several binder
+     * threads at once, and only one kernel may be created.
      *
      * @param applicationContext the android application context
      * @return the singleton kernel instance
      * @throws IllegalArgumentException when the kernel has not yet been initialized and the applicationContext is null
      */
-    public static @NonNull Kernel getInstance(Context applicationContext) throws ContextNullException {
+    public static synchronized @NonNull Kernel getInstance(Context applicationContext) throws ContextNullException {
         if (sKernel == null && applicationContext != null) {
             // Initialize kernel
             return initialize(applicationContext);
@@ -100,38 +158,151 @@ public final class Kernel {
     }
 
     /**
-     * Private method that creates the singleton kernel instance with all the communicators.
+     * Method that creates the singleton kernel instance with all the communicators. The communicators can be used
+     * as soon as this method returns, the services behind them are still starting in the background until
+     * {@link #whenReady()} completes. It is not private so the startup benchmark can measure it.
      *
      * @param applicationContext the android application context needed for some communicators
      * @return the singleton kernel instance
      */
-    private static @NonNull Kernel initialize(@NonNull final Context applicationContext) {
+    static @NonNull Kernel initialize(@NonNull final Context applicationContext) {
         sKernel = new Kernel();
 
         // Create 1 bus to be shared among all communicators
-        Bus bus = new Bus(Schedulers.computation());
+        // The computation threads always handle the events the user is waiting for first. The number of threads
+        // follows the execution profile, which starts balanced until the state of the device is known.
+        ExecutionProfile profile = ExecutionProfile.BALANCED;
+        PriorityScheduler computationScheduler = new PriorityScheduler(profile.getComputationThreads(),
+                "aurora-computation");
+        Bus bus = new Bus(computationScheduler);
+        sBus = bus;
+        sComputationScheduler = computationScheduler;
+
+        // Keep a trace of what happened on the bus when a document could not be opened
+        bus.getFlightRecorder().setDumpDirectory(new File(applicationContext.getCacheDir(), TRACES_DIRECTORY));
+        bus.getFlightRecorder().addDumpTrigger(DocumentNotSupportedEvent.class);
+        setPriority(bus, Priority.INTERACTIVE, QueryCacheRequest.class, QueryCacheResponse.class,
+                RetrieveFileFromCacheRequest.class, RetrieveFileFromCacheResponse.class,
+                OpenCachedFileWithPluginRequest.class);
+        setPriority(bus, Priority.BACKGROUND, CacheFileRequest.class, CacheFileResponse.class,
+                UpdateCachedFileDateRequest.class);
+
+        // Caching is slow, so bound the number of files that can wait to be cached. Plugins that cache faster than
+        // the cache can keep up will be slowed down instead of filling the heap with waiting results.
+        bus.setOverflowPolicy(CacheFileRequest.class, OverflowPolicy.BLOCK, CACHE_QUEUE_CAPACITY);
+
+        // Progress and previews are only shown while a file is processed and the response follows anyway, so a slow
+        // screen may miss some of them. Every other class of events is kept until it is handled.
+        bus.setOverflowPolicy(ProcessingProgressEvent.class, OverflowPolicy.DROP_OLDEST, EventChannel.DEFAULT_CAPACITY);
+        bus.setOverflowPolicy(ProcessingPreviewEvent.class, OverflowPolicy.DROP_OLDEST, EventChannel.DEFAULT_CAPACITY);
+
+        // Handlers that wait on disk or network get their own bounded pool, so they cannot starve the
+        // computation threads that do the extraction and NLP
+        PriorityScheduler ioScheduler = new PriorityScheduler(profile.getIoThreads(), "aurora-io");
+        sIoScheduler = ioScheduler;
+        routeToScheduler(bus, ioScheduler,
+                CacheFileRequest.class, QueryCacheRequest.class, RetrieveFileFromCacheRequest.class,
+                RemoveFromCacheRequest.class, UpdateCachedFileDateRequest.class, TranslationRequest.class);
+
+        // Documents run from start to end on a pool of their own, with a thread for every document the profile
+        // allows at the same time, so the computation threads keep delivering the events the user waits for
+        PriorityScheduler documentScheduler = new PriorityScheduler(profile.getMaxConcurrentDocuments(),
+                "aurora-documents");
+        sDocumentScheduler = documentScheduler;
+
+        // Resize the pools when power save mode is turned on or off, or the device heats up or cools down
+        bus.register(sKernel, ExecutionProfileChangedEvent.class)
+                .subscribe((ExecutionProfileChangedEvent event) -> {
+                    computationScheduler.setThreads(event.getProfile().getComputationThreads());
+                    ioScheduler.setThreads(event.getProfile().getIoThreads());
+                    documentScheduler.setThreads(event.getProfile().getMaxConcurrentDocuments());
+                }, error -> Log.e("Kernel", "Something went wrong changing the execution profile", error));
 
-        // Initialize plugin config
-        initializePluginConfig(applicationContext);
+        // The services below read from disk or set up the network stack, which takes longer the more files are
+        // cached. They are started in the background, so the communicators can be handed out immediately. Requests
+        // that need a service before it is ready wait for it on the thread that handles them.
+        final long startTime = System.nanoTime();
+        Completable pluginConfig = Completable.fromAction(() -> initializePluginConfig(applicationContext))
+                .subscribeOn(Schedulers.io());
+        Single<Translator> translator = Single.fromCallable(() ->
+                new Translator(Volley.newRequestQueue(applicationContext)))
+                .subscribeOn(Schedulers.io())
+                .cache();
+        Single<InternalCache> internalCache = Single.fromCallable(() -> new InternalCache(applicationContext))
+                .subscribeOn(Schedulers.io())
+                .cache();
+
+        sReady = Completable.mergeArray(pluginConfig, translator.ignoreElement(), internalCache.ignoreElement())
+                .cache();
+        sReady.subscribe(() -> Log.i("Kernel", "Kernel services ready after "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms"),
+                error -> Log.e("Kernel", "Something went wrong initializing the kernel services", error));
+
+        // Shed work and caches when the system reports that memory runs low
+        MemoryGovernor memoryGovernor = new MemoryGovernor(bus);
+        ExecutionProfileMonitor executionProfileMonitor = new ExecutionProfileMonitor(bus);
+        Context context = applicationContext.getApplicationContext();
 
         // Create the different communicators
         sAuroraCommunicator = new AuroraCommunicator(bus, applicationContext);
         sProcessingCommunicator = new ProcessingCommunicator(bus);
-        sPluginCommunicator = new PluginCommunicator(bus);
+        sPluginCommunicator = new PluginCommunicator(bus, memoryGovernor);
 
-        // Create internal text processor for the PluginInternalServiceCommunicator
-        InternalTextProcessor internalTextProcessing = new InternalTextProcessor();
+        // The internal services run in the processing process when the build isolates them from the user
+        // interface, otherwise they run in this process with a new internal text processor
+        DocumentProcessor documentProcessor = BuildConfig.ISOLATED_PROCESSING
+                ? new RemoteDocumentProcessor(applicationContext)
+                : new LocalDocumentProcessor(new InternalTextProcessor());
 
         sPluginInternalServiceCommunicator = new PluginInternalServiceCommunicator(bus,
-                internalTextProcessing, new Translator(Volley.newRequestQueue(applicationContext)));
+                documentProcessor, translator, memoryGovernor, documentScheduler);
+        sAuroraInternalServiceCommunicator = new AuroraInternalServiceCommunicator(bus, internalCache);
 
+        // Only start listening to the device when the communicators can react to it
+        if (context != null) {
+            context.registerComponentCallbacks(memoryGovernor);
+            executionProfileMonitor.register(context);
+        }
 
-        // Create cache
-        InternalCache internalCache = new InternalCache(applicationContext);
-        sAuroraInternalServiceCommunicator = new AuroraInternalServiceCommunicator(bus, internalCache);
+        // Files that were still being processed when the process was killed are picked up again
+        final AuroraCommunicator auroraCommunicator = sAuroraCommunicator;
+        Completable.fromAction(auroraCommunicator::resumePendingJobs)
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> Log.d("Kernel", "Pending processing jobs checked"),
+                        error -> Log.e("Kernel", "Something went wrong resuming the processing jobs", error));
         return sKernel;
     }
 
+    /**
+     * Private helper method that gives several classes of events the same priority
+     *
+     * @param bus          the bus on which the events are posted
+     * @param priority     the priority of the events
+     * @param eventClasses the classes of events
+     */
+    @SafeVarargs
+    private static void setPriority(@NonNull final Bus bus, @NonNull final Priority priority,
+                                    @NonNull final Class<? extends Event>... eventClasses) {
+        for (Class<? extends Event> eventClass : eventClasses) {
+            bus.setPriority(eventClass, priority);
+        }
+    }
+
+    /**
+     * Private helper method that routes several classes of events to the same scheduler
+     *
+     * @param bus          the bus on which the events are posted
+     * @param scheduler    the scheduler on which the events should be handled
+     * @param eventClasses the classes of events to route
+     */
+    @SafeVarargs
+    private static void routeToScheduler(@NonNull final Bus bus, @NonNull final Scheduler scheduler,
+                                         @NonNull final Class<? extends Event>... eventClasses) {
+        for (Class<? extends Event> eventClass : eventClasses) {
+            bus.setScheduler(eventClass, scheduler);
+        }
+    }
+
     /**
      * Private helper method that checks if the plugin-config file already exists, and creates one when necessary
      *
@@ -155,6 +326,64 @@ public final class Kernel {
         }
     }
 
+    /**
+     * Gets a Completable that completes when the services behind the communicators, like the cache and the
+     * translator, have started. The communicators can be used before that, requests that need a service that is not
+     * ready yet just take longer.
+     *
+     * @return a Completable that completes when the kernel has fully started, or fails if a service could not start
+     */
+    public @NonNull Completable whenReady() {
+        return sReady;
+    }
+
+    /**
+     * Creates a report of the metrics the bus keeps per class of events: how often events are posted, how long
+     * they wait before they are delivered and how long their handlers take. It is followed by how long tasks waited
+     * in every lane of the computation, io and document schedulers, and ends with the time the files spent in every
+     * phase of their processing.
+     *
+     * @return a readable report, with a few lines per class of events, a line per lane and a line per processing
+     * phase
+     */
+    public @NonNull String getMetricsReport() {
+        return sBus.getMetricsReport() + sComputationScheduler.getLaneReport() + sIoScheduler.getLaneReport()
+                + sDocumentScheduler.getLaneReport() + sPluginInternalServiceCommunicator.getPhaseTimingReport();
+    }
+
+    /**
+     * Writes the metrics report of the bus to the debug log, so it can be read with logcat on a real device
+     */
+    public void dumpMetrics() {
+        for (String line : getMetricsReport().split("\n")) {
+            Log.d("Kernel", line);
+        }
+    }
+
+    /**
+     * Creates a report of the owners that keep adding subscriptions on the bus without disposing them. This is
+     * only available in debug builds.
+     *
+     * @return one line per suspected leak, or an empty string if no leaks are suspected or this is a release build
+     */
+    public @NonNull String getSubscriptionLeakReport() {
+        if (!BuildConfig.DEBUG) {
+            return "";
+        }
+
+        return sBus.getSubscriptionTracker().getLeakReport();
+    }
+
+    /**
+     * Writes the last events that were posted and handled on the bus to a trace file in the Chrome trace format,
+     * which can be opened in chrome://tracing or Perfetto
+     *
+     * @return the trace file, or null if it could not be written
+     */
+    public @Nullable File dumpTrace() {
+        return sBus.getFlightRecorder().dump();
+    }
+
     /**
      * gets a reference to the aurora communicator
      *
@@ -0,0 +1,71 @@
+package com.aurora.kernel;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how long tasks in one lane of a {@link PriorityScheduler} waited before they could run
+ */
+class LaneStatistics {
+    /**
+     * The number of tasks that have started running
+     */
+    private final AtomicLong mCount = new AtomicLong();
+
+    /**
+     * The sum of the waiting times of all tasks, in nanoseconds
+     */
+    private final AtomicLong mTotalWaitNanos = new AtomicLong();
+
+    /**
+     * The longest waiting time of a task, in nanoseconds
+     */
+    private final AtomicLong mMaxWaitNanos = new AtomicLong();
+
+    /**
+     * Records the waiting time of a task that starts running
+     *
+     * @param waitNanos the time the task waited in the queue, in nanoseconds
+     */
+    void record(final long waitNanos) {
+        mCount.incrementAndGet();
+        mTotalWaitNanos.addAndGet(waitNanos);
+
+        long max = mMaxWaitNanos.get();
+        while (waitNanos > max && !mMaxWaitNanos.compareAndSet(max, waitNanos)) {
+            max = mMaxWaitNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of tasks that have started running
+     */
+    long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * @param unit the unit in which the waiting time should be returned
+     * @return the average time a task waited before it could run, or 0 if no task has run yet
+     */
+    long getAverageWait(final TimeUnit unit) {
+        long count = mCount.get();
+        return count == 0 ? 0 : unit.convert(mTotalWaitNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit in which the waiting time should be returned
+     * @return the longest time a task waited before it could run
+     */
+    long getMaxWait(final TimeUnit unit) {
+        return unit.convert(mMaxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        TimeUnit unit = TimeUnit.MICROSECONDS;
+        return String.format(Locale.ENGLISH, "count=%d mean wait=%dus max wait=%dus",
+                getCount(), getAverageWait(unit), getMaxWait(unit));
+    }
+}
@@ -0,0 +1,161 @@
+package com.aurora.kernel;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in the style of an HDR histogram. Durations are counted in buckets that grow exponentially,
+ * and every power of two is split in {@link #SUB_BUCKETS} linear sub-buckets. This keeps the relative error below
+ * 12.5% for every duration between a nanosecond and centuries, in a fixed amount of memory.
+ * Recording a duration does not allocate and does not lock, so it can be done on every event.
+ */
+class LatencyHistogram {
+    /**
+     * The number of bits of a duration, after its highest bit, that decide its sub-bucket
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of sub-buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of buckets needed to count every positive long
+     */
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of recorded durations per bucket
+     */
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The total number of recorded durations
+     */
+    private final AtomicLong mTotalCount = new AtomicLong();
+
+    /**
+     * The sum of all recorded durations, in nanoseconds
+     */
+    private final AtomicLong mTotalNanos = new AtomicLong();
+
+    /**
+     * The longest recorded duration, in nanoseconds
+     */
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    /**
+     * Records a duration
+     *
+     * @param nanos the duration in nanoseconds, negative durations are recorded as 0
+     */
+    void record(final long nanos) {
+        long value = Math.max(0, nanos);
+
+        mCounts.incrementAndGet(bucketOf(value));
+        mTotalCount.incrementAndGet();
+        mTotalNanos.addAndGet(value);
+
+        long max = mMaxNanos.get();
+        while (value > max && !mMaxNanos.compareAndSet(max, value)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @param unit the unit in which the duration should be returned
+     * @return the mean of the recorded durations, or 0 if nothing was recorded
+     */
+    long getMean(final TimeUnit unit) {
+        long count = mTotalCount.get();
+        return count == 0 ? 0 : unit.convert(mTotalNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit in which the duration should be returned
+     * @return the longest recorded duration
+     */
+    long getMax(final TimeUnit unit) {
+        return unit.convert(mMaxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the duration below which a given percentage of the recorded durations lie. Like in an HDR histogram,
+     * the highest duration that falls in the same bucket is returned.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @param unit       the unit in which the duration should be returned
+     * @return the duration at the given percentile, or 0 if nothing was recorded
+     */
+    long getValueAtPercentile(final double percentile, final TimeUnit unit) {
+        long count = mTotalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+
+        long wanted = Math.max(1, (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mCounts.get(bucket);
+            if (seen >= wanted) {
+                // The maximum is exact, so never report more than that
+                return unit.convert(Math.min(highestValueIn(bucket), mMaxNanos.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+
+        return getMax(unit);
+    }
+
+    /**
+     * @return a one line summary of the histogram, with durations in microseconds
+     */
+    @Override
+    public String toString() {
+        TimeUnit unit = TimeUnit.MICROSECONDS;
+        return String.format(Locale.ENGLISH, "count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus",
+                getCount(), getMean(unit), getValueAtPercentile(50, unit), getValueAtPercentile(90, unit),
+                getValueAtPercentile(99, unit), getMax(unit));
+    }
+
+    /**
+     * Private helper method that finds the bucket of a duration
+     *
+     * @param value the duration in nanoseconds, not negative
+     * @return the index of the bucket
+     */
+    private static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Private helper method that finds the highest duration that is counted in a bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the highest duration in nanoseconds
+     */
+    private static long highestValueIn(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
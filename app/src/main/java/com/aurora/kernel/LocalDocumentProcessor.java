@@ -0,0 +1,444 @@
+package com.aurora.kernel;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
+import com.aurora.internalservice.internalnlp.InternalNLP;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
+import com.aurora.internalservice.internalprocessor.PreviewListener;
+import com.aurora.plugin.InternalServices;
+import com.aurora.plugin.ServiceArtifact;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the internal services on a document in the current process. The internal services run in a graph of stages,
+ * so stages that do not depend on each other run at the same time.
+ */
+final class LocalDocumentProcessor implements DocumentProcessor {
+
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "LocalDocumentProcessor";
+
+    /**
+     * Name of the stage that extracts the text and images of a document
+     */
+    private static final String EXTRACTION_STAGE = "extraction";
+
+    /**
+     * Name of the stage that loads the NLP models and builds the annotation pipeline
+     */
+    private static final String NLP_MODELS_STAGE = "nlp-models";
+
+    /**
+     * Prefix of the names of the stages that annotate the sections of a document
+     */
+    private static final String NLP_ANNOTATION_STAGE = "nlp-annotation-";
+
+    /**
+     * The maximum number of stages that annotate the sections of a document at the same time
+     */
+    private static final int NLP_SHARDS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * internal text processor
+     */
+    private final InternalTextProcessor mInternalTextProcessor;
+
+    /**
+     * Scheduler on which the stages of the internal services run. This is not the scheduler that handles the
+     * requests, because the handler waits for the stages. Its threads share one queue, so a stage never waits
+     * behind another stage while a thread is free.
+     */
+    private final PriorityScheduler mStageScheduler =
+            new PriorityScheduler(ExecutionProfile.BALANCED.getStageThreads(), "aurora-stages");
+
+    /**
+     * The profile that sets the number of stage threads and whether the NLP models are loaded eagerly
+     */
+    private volatile ExecutionProfile mExecutionProfile = ExecutionProfile.BALANCED;
+
+    /**
+     * The time every stage took when the last file was processed, in nanoseconds
+     */
+    private volatile Map<String, Long> mLastStageTimings = Collections.emptyMap();
+
+    /**
+     * Creates a processor that runs the internal services in the current process
+     *
+     * @param processor a reference to the InternalTextProcessor
+     */
+    LocalDocumentProcessor(@NonNull final InternalTextProcessor processor) {
+        mInternalTextProcessor = processor;
+        mInternalTextProcessor.setPageParallelism(mExecutionProfile.getPageThreads());
+    }
+
+    /**
+     * Runs internal services on a document. NLP internal services are only used if the API level is at least 26.
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param cancellationToken token that is checked during the processing
+     * @return the extracted text, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason
+     */
+    @NonNull
+    @Override
+    public ExtractedText process(@NonNull final String fileUri, @NonNull final String fileRef,
+                                 @NonNull final String type, @NonNull final InputStream file,
+                                 @NonNull final List<InternalServices> internalServices,
+                                 @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        AtomicReference<ExtractedText> extractedText = new AtomicReference<>();
+        ServiceGraph graph = createServiceGraph(fileUri, fileRef, type, file, internalServices, 0, null,
+                cancellationToken, extractedText, mExecutionProfile);
+
+        return execute(graph, fileRef, extractedText, cancellationToken);
+    }
+
+    /**
+     * Runs internal services on a document, and hands a preview with the title and the first sections to a listener
+     * as soon as the extraction stage found them. The stages after the extraction only run on the complete text.
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param previewSections   the number of sections in the preview
+     * @param previewListener   the listener that receives the preview on the thread of the extraction stage
+     * @param cancellationToken token that is checked during the processing
+     * @return the extracted text of the whole document, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason
+     */
+    @NonNull
+    @Override
+    public ExtractedText process(@NonNull final String fileUri, @NonNull final String fileRef,
+                                 @NonNull final String type, @NonNull final InputStream file,
+                                 @NonNull final List<InternalServices> internalServices,
+                                 final int previewSections, @NonNull final PreviewListener previewListener,
+                                 @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        AtomicReference<ExtractedText> extractedText = new AtomicReference<>();
+        ServiceGraph graph = createServiceGraph(fileUri, fileRef, type, file, internalServices, previewSections,
+                previewListener, cancellationToken, extractedText, mExecutionProfile);
+
+        return execute(graph, fileRef, extractedText, cancellationToken);
+    }
+
+    /**
+     * Runs the NLP internal services on a text that was already extracted. The text takes the place of the
+     * extraction stage, so the NLP models are loaded and the sections annotated as if the document was extracted.
+     *
+     * @param fileRef           the name of the file the text was extracted from
+     * @param extractedText     the text that was already extracted
+     * @param internalServices  the internal services that should be run on the text
+     * @param cancellationToken token that is checked during the annotation
+     * @return the extended text
+     * @throws DocumentNotSupportedException when a stage could not extend the text
+     */
+    @NonNull
+    @Override
+    public ExtractedText extend(@NonNull final String fileRef, @NonNull final ExtractedText extractedText,
+                                @NonNull final List<InternalServices> internalServices,
+                                @NonNull final CancellationToken cancellationToken)
+            throws DocumentNotSupportedException {
+        List<InternalServices> services = new ArrayList<>(internalServices);
+        if (!services.contains(InternalServices.TEXT_EXTRACTION)) {
+            services.add(0, InternalServices.TEXT_EXTRACTION);
+        }
+
+        AtomicReference<ExtractedText> result = new AtomicReference<>();
+        ServiceGraph graph = createServiceGraph(extractedText, fileRef, services, cancellationToken, result,
+                mExecutionProfile);
+
+        try {
+            return execute(graph, fileRef, result, cancellationToken);
+        } catch (FileTypeNotSupportedException e) {
+            // Only the extraction of a document checks its file type
+            throw new DocumentNotSupportedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Private method that executes a graph of stages. The caller decides how many documents are processed at the
+     * same time.
+     *
+     * @param graph             the graph of stages
+     * @param fileRef           the name of the file that is processed, for logging
+     * @param extractedText     reference in which the extraction stage puts the extracted text
+     * @param cancellationToken token that is checked during the processing
+     * @return the extracted text, which is empty if no text was extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when a stage could not read the document
+     */
+    @NonNull
+    private ExtractedText execute(@NonNull final ServiceGraph graph, @NonNull final String fileRef,
+                                  @NonNull final AtomicReference<ExtractedText> extractedText,
+                                  @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        Map<String, Long> stageTimings = graph.execute(mStageScheduler, cancellationToken);
+        mLastStageTimings = stageTimings;
+
+        for (Map.Entry<String, Long> stageTiming : stageTimings.entrySet()) {
+            Log.i(CLASS_TAG, "Stage " + stageTiming.getKey() + " of " + fileRef + " took "
+                    + TimeUnit.NANOSECONDS.toMillis(stageTiming.getValue()) + " ms");
+        }
+
+        // If nothing was extracted, respond with an empty text instead
+        ExtractedText result = extractedText.get();
+        return result == null ? new ExtractedText("", "") : result;
+    }
+
+    /**
+     * Changes the number of stage threads, the number of pages that are interpreted at the same time and whether
+     * the NLP models are loaded eagerly, for the documents that are processed from now on. The number of documents
+     * at the same time is kept by the caller.
+     *
+     * @param profile the new execution profile
+     */
+    @Override
+    public void setExecutionProfile(@NonNull final ExecutionProfile profile) {
+        mExecutionProfile = profile;
+        mStageScheduler.setThreads(profile.getStageThreads());
+        mInternalTextProcessor.setPageParallelism(profile.getPageThreads());
+    }
+
+    /**
+     * @return the time every stage took when the last file was processed, in nanoseconds
+     */
+    @NonNull
+    @Override
+    public Map<String, Long> getLastStageTimings() {
+        return mLastStageTimings;
+    }
+
+    /**
+     * Private method that creates the graph of stages that run the requested internal services.
+     * The extractors find the text and the images in one pass over the document, so text and image extraction are
+     * one stage, which the NLP stages depend on.
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           a reference to the file that should be processed
+     * @param type              the file type (extension)
+     * @param file              the file inputstream
+     * @param internalServices  the set of internal services that should be run on the file
+     * @param previewSections   the number of sections in the preview
+     * @param previewListener   the listener that receives the preview, or null if no preview is needed
+     * @param cancellationToken token that is checked during the extraction and annotation
+     * @param extractedText     reference in which the extraction stage puts the extracted text
+     * @param profile           the profile that decides when the NLP models are loaded and how many stages annotate
+     * @return the graph of stages
+     */
+    private ServiceGraph createServiceGraph(@NonNull final String fileUri, @NonNull final String fileRef,
+                                            @NonNull final String type, final InputStream file,
+                                            @NonNull final List<InternalServices> internalServices,
+                                            final int previewSections,
+                                            @Nullable final PreviewListener previewListener,
+                                            @NonNull final CancellationToken cancellationToken,
+                                            @NonNull final AtomicReference<ExtractedText> extractedText,
+                                            @NonNull final ExecutionProfile profile) {
+        ServiceGraph graph = new ServiceGraph();
+
+        if (!internalServices.contains(InternalServices.TEXT_EXTRACTION)) {
+            return graph;
+        }
+
+        // STEP ONE: extract the text, and the images in the same pass if they are requested
+        final boolean extractImages = internalServices.contains(InternalServices.IMAGE_EXTRACTION);
+        ServiceGraph.Node extraction = graph.addStage(EXTRACTION_STAGE, getExtractionServices(extractImages), () ->
+                extractedText.set(previewListener == null
+                        ? mInternalTextProcessor.processFile(file, fileUri, fileRef, type, extractImages,
+                        cancellationToken)
+                        : mInternalTextProcessor.processFile(file, fileUri, fileRef, type, extractImages,
+                        previewSections, previewListener, cancellationToken)));
+
+        addNlpStages(graph, extraction, internalServices, cancellationToken, extractedText, profile);
+        return graph;
+    }
+
+    /**
+     * Private method that creates the graph of stages that run the requested NLP internal services on a text that
+     * was already extracted. The extraction stage only hands over the text.
+     *
+     * @param alreadyExtracted  the text that was already extracted
+     * @param fileRef           a reference to the file the text was extracted from
+     * @param internalServices  the set of internal services that should be run on the text
+     * @param cancellationToken token that is checked during the annotation
+     * @param extractedText     reference in which the extraction stage puts the text
+     * @param profile           the profile that decides when the NLP models are loaded and how many stages annotate
+     * @return the graph of stages
+     */
+    private static ServiceGraph createServiceGraph(@NonNull final ExtractedText alreadyExtracted,
+                                                   @NonNull final String fileRef,
+                                                   @NonNull final List<InternalServices> internalServices,
+                                                   @NonNull final CancellationToken cancellationToken,
+                                                   @NonNull final AtomicReference<ExtractedText> extractedText,
+                                                   @NonNull final ExecutionProfile profile) {
+        ServiceGraph graph = new ServiceGraph();
+
+        Log.d(CLASS_TAG, "Reusing the text that was already extracted from " + fileRef);
+        ServiceGraph.Node extraction = graph.addStage(EXTRACTION_STAGE,
+                getExtractionServices(internalServices.contains(InternalServices.IMAGE_EXTRACTION)), () ->
+                        extractedText.set(alreadyExtracted));
+
+        addNlpStages(graph, extraction, internalServices, cancellationToken, extractedText, profile);
+        return graph;
+    }
+
+    /**
+     * Private helper method that lists the internal services that the extraction stage provides
+     *
+     * @param extractImages whether the images are extracted together with the text
+     * @return the text extraction service, and the image extraction service if the images are extracted
+     */
+    private static List<InternalServices> getExtractionServices(final boolean extractImages) {
+        List<InternalServices> extractionServices = new ArrayList<>();
+        extractionServices.add(InternalServices.TEXT_EXTRACTION);
+        if (extractImages) {
+            extractionServices.add(InternalServices.IMAGE_EXTRACTION);
+        }
+
+        return extractionServices;
+    }
+
+    /**
+     * Private method that adds the stages that run the requested NLP internal services after the extraction stage.
+     * The NLP models are loaded while the document is extracted if the profile loads them eagerly, and after it was
+     * extracted otherwise. The sections are then annotated by several stages at the same time.
+     *
+     * @param graph             the graph to add the stages to
+     * @param extraction        the extraction stage of the graph
+     * @param internalServices  the set of internal services that should be run on the file
+     * @param cancellationToken token that is checked during the annotation
+     * @param extractedText     reference in which the extraction stage puts the extracted text
+     * @param profile           the profile that decides when the NLP models are loaded and how many stages annotate
+     */
+    private static void addNlpStages(@NonNull final ServiceGraph graph, @NonNull final ServiceGraph.Node extraction,
+                                     @NonNull final List<InternalServices> internalServices,
+                                     @NonNull final CancellationToken cancellationToken,
+                                     @NonNull final AtomicReference<ExtractedText> extractedText,
+                                     @NonNull final ExecutionProfile profile) {
+        // STEP TWO: Perform NLP services, only if API level is at least 26
+        final List<InternalServices> nlpServices = new ArrayList<>();
+        for (InternalServices internalService : internalServices) {
+            if (internalService.name().startsWith("NLP_")) {
+                nlpServices.add(internalService);
+            }
+        }
+
+        if (nlpServices.isEmpty() || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        Set<ServiceArtifact> missingInputs = graph.getMissingInputs(nlpServices);
+        if (!missingInputs.isEmpty()) {
+            Log.e(CLASS_TAG, "The NLP services are skipped, none of the requested services produces "
+                    + missingInputs);
+            return;
+        }
+
+        // Loading the models does not need the text, so it can happen while the document is extracted. Waiting for
+        // the extraction instead saves loading them for documents that cannot be extracted.
+        AtomicReference<InternalNLP> internalNLP = new AtomicReference<>();
+        ServiceGraph.Node[] modelDependencies = profile.isEagerNlp()
+                ? new ServiceGraph.Node[0] : new ServiceGraph.Node[]{extraction};
+        ServiceGraph.Node models = graph.addStage(NLP_MODELS_STAGE, Collections.emptyList(), () ->
+                internalNLP.set(createInternalNLP(nlpServices)), modelDependencies);
+
+        // The sections do not depend on each other, so they are divided over stages that annotate at the same time
+        final int shards = Math.min(NLP_SHARDS, profile.getStageThreads());
+        final AtomicInteger annotatedSections = new AtomicInteger();
+        for (int shard = 0; shard < shards; shard++) {
+            final int firstSection = shard;
+            graph.addStage(NLP_ANNOTATION_STAGE + shard, nlpServices, () ->
+                    annotate(extractedText.get(), internalNLP.get(), firstSection, shards, annotatedSections,
+                            cancellationToken),
+                    models);
+        }
+    }
+
+    /**
+     * Private method that builds the InternalNLP annotation pipeline for the requested NLP services
+     *
+     * @param nlpServices the requested NLP services, in the order they should run
+     * @return the InternalNLP object, or null if none of the services could be added to the pipeline
+     */
+    @Nullable
+    private static InternalNLP createInternalNLP(@NonNull final List<InternalServices> nlpServices) {
+        InternalNLP internalNLP = new InternalNLP();
+        boolean doNLP = false;
+
+        // Add all NLP steps to the pipeline
+        for (InternalServices internalService : nlpServices) {
+            try {
+                internalNLP.addAnnotator(internalService);
+                doNLP = true;
+            } catch (NotImplementedException e) {
+                Log.e(CLASS_TAG, "Something went wrong when building the NLP pipeline", e);
+            }
+        }
+
+        return doNLP ? internalNLP : null;
+    }
+
+    /**
+     * Private method that annotates every shards-th section of an extracted text, starting from a given section.
+     * The stage that starts from the first section also annotates the title.
+     *
+     * @param extractedText     extractedText object that should be annotated, or null if nothing was extracted
+     * @param internalNLP       the annotation pipeline, or null if no pipeline could be built
+     * @param firstSection      the index of the first section to annotate
+     * @param shards            the number of stages that annotate the sections
+     * @param annotatedSections the number of sections that all stages together annotated so far
+     * @param cancellationToken token that is checked before every section is annotated, and told how many sections
+     *                          of the whole text are annotated
+     */
+    private static void annotate(@Nullable final ExtractedText extractedText, @Nullable final InternalNLP internalNLP,
+                                 final int firstSection, final int shards,
+                                 @NonNull final AtomicInteger annotatedSections,
+                                 @NonNull final CancellationToken cancellationToken) {
+        if (extractedText == null || internalNLP == null) {
+            return;
+        }
+
+        cancellationToken.startPhase(ProcessingPhase.ANNOTATION);
+        if (firstSection == 0) {
+            internalNLP.annotateTitle(extractedText);
+        }
+
+        List<Section> sections = extractedText.getSections();
+        for (int i = firstSection; i < sections.size(); i += shards) {
+            cancellationToken.throwIfCancelled();
+
+            internalNLP.annotateSection(sections.get(i));
+            cancellationToken.reportProgress(ProcessingPhase.ANNOTATION, annotatedSections.incrementAndGet(),
+                    sections.size());
+        }
+    }
+}
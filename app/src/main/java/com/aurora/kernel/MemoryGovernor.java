@@ -0,0 +1,266 @@
+package com.aurora.kernel;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how much work the kernel sheds when the app runs low on memory. It listens to the trim levels the system
+ * reports, and looks at how much of the heap is used every time it is asked. Garbage that was not collected yet
+ * counts as used until the collector runs, so a full heap is only believed after the collector was asked to run.
+ * The kernel only sheds more work while the pressure lasts, and goes back to doing everything once the heap has
+ * stayed below the lowest watermark for a while. Every decision is posted on the bus as a
+ * {@link MemoryPressureEvent}, so the communicators can act on it.
+ */
+final class MemoryGovernor implements ComponentCallbacks2 {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "MemoryGovernor";
+
+    /**
+     * The fraction of the maximum heap from which every level of degradation applies, starting with
+     * {@link Degradation#DROP_CACHES}. A heap that is half full is normal while a document is processed.
+     */
+    private static final double[] HEAP_WATERMARKS = {0.75, 0.8, 0.85, 0.9, 0.95};
+
+    /**
+     * The minimum number of milliseconds between two times the collector is asked to run. In between, the heap
+     * usage that was measured right after the last collection is trusted.
+     */
+    private static final long GC_HINT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * The default number of milliseconds without memory pressure after which everything is done again
+     */
+    private static final long DEFAULT_RECOVERY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * The bus on which the decisions are posted
+     */
+    private final Bus mBus;
+
+    /**
+     * The number of milliseconds without memory pressure after which everything is done again
+     */
+    private final long mRecoveryMillis;
+
+    /**
+     * The way in which the kernel currently sheds work
+     */
+    private Degradation mDegradation = Degradation.NONE;
+
+    /**
+     * The time of the last memory pressure, in nanoseconds
+     */
+    private long mLastPressureNanos = 0;
+
+    /**
+     * The time at which the collector was last asked to run, in nanoseconds
+     */
+    private long mLastGcHintNanos = 0;
+
+    /**
+     * The fraction of the maximum heap that was used right after the collector was last asked to run
+     */
+    private double mCollectedUsage = 0;
+
+    /**
+     * Creates a governor that does everything again after a minute without memory pressure
+     *
+     * @param bus the bus on which the decisions are posted
+     */
+    MemoryGovernor(@NonNull final Bus bus) {
+        this(bus, DEFAULT_RECOVERY_MILLIS);
+    }
+
+    /**
+     * Creates a governor
+     *
+     * @param bus            the bus on which the decisions are posted
+     * @param recoveryMillis the number of milliseconds without memory pressure after which everything is done again
+     */
+    MemoryGovernor(@NonNull final Bus bus, final long recoveryMillis) {
+        mBus = bus;
+        mRecoveryMillis = recoveryMillis;
+    }
+
+    /**
+     * Gets the way in which the kernel should shed work right now. This also looks at how much of the heap is
+     * used, so it should be asked right before work is started.
+     *
+     * @return the current level of degradation
+     */
+    @NonNull
+    Degradation getDegradation() {
+        double usage = getHeapUsage();
+
+        if (usage >= HEAP_WATERMARKS[0]) {
+            usage = getCollectedHeapUsage(usage);
+        }
+
+        return onHeapUsage(usage);
+    }
+
+    /**
+     * Private helper method that gets the fraction of the maximum heap that is used, including garbage that was
+     * not collected yet
+     *
+     * @return the fraction of the maximum heap that is used
+     */
+    private static double getHeapUsage() {
+        Runtime runtime = Runtime.getRuntime();
+
+        return (runtime.totalMemory() - runtime.freeMemory()) / (double) runtime.maxMemory();
+    }
+
+    /**
+     * Private helper method that leaves out the garbage from a heap usage that looks too high. The collector is
+     * asked to run at most once every {@link #GC_HINT_INTERVAL_MILLIS}, in between the usage measured after the
+     * last collection is used.
+     *
+     * @param usage the fraction of the maximum heap that is used, including garbage
+     * @return the fraction of the maximum heap that is used after the garbage is collected
+     */
+    private double getCollectedHeapUsage(final double usage) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (mLastGcHintNanos != 0
+                    && now - mLastGcHintNanos < TimeUnit.MILLISECONDS.toNanos(GC_HINT_INTERVAL_MILLIS)) {
+                // The heap can only have filled up with garbage since then, the live objects were measured
+                return Math.min(usage, mCollectedUsage);
+            }
+
+            mLastGcHintNanos = now;
+        }
+
+        System.gc();
+        double collectedUsage = getHeapUsage();
+
+        synchronized (this) {
+            mCollectedUsage = collectedUsage;
+        }
+
+        return collectedUsage;
+    }
+
+    /**
+     * Sheds more work if the heap is fuller than one of the watermarks, and does everything again if it has not
+     * been full for a while. It is not private so tests can use it without filling the heap.
+     *
+     * @param usage the fraction of the maximum heap that is used
+     * @return the level of degradation after the heap usage was taken into account
+     */
+    @NonNull
+    Degradation onHeapUsage(final double usage) {
+        Degradation target = Degradation.NONE;
+        for (int i = 0; i < HEAP_WATERMARKS.length; i++) {
+            if (usage >= HEAP_WATERMARKS[i]) {
+                target = Degradation.values()[i + 1];
+            }
+        }
+
+        String reason = String.format(Locale.US, "heap %d%% used", Math.round(usage * 100));
+        if (target != Degradation.NONE) {
+            degrade(target, reason);
+        } else {
+            recover(reason);
+        }
+
+        synchronized (this) {
+            return mDegradation;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Degradation target = getDegradation(level);
+
+        if (target != Degradation.NONE) {
+            degrade(target, "trim level " + level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        degrade(Degradation.STREAM_RESULTS, "low memory");
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // The configuration does not change how much memory is used
+    }
+
+    /**
+     * Gets the level of degradation that belongs to a trim level the system reported. The levels while the app is
+     * in the background only drop caches or models, because no document is shown then.
+     *
+     * @param trimLevel the trim level, one of the TRIM_MEMORY constants in {@link ComponentCallbacks2}
+     * @return the level of degradation
+     */
+    @NonNull
+    static Degradation getDegradation(final int trimLevel) {
+        if (trimLevel >= TRIM_MEMORY_MODERATE) {
+            return Degradation.UNLOAD_NLP_MODELS;
+        } else if (trimLevel >= TRIM_MEMORY_UI_HIDDEN) {
+            return Degradation.DROP_CACHES;
+        } else if (trimLevel >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return Degradation.STREAM_RESULTS;
+        } else if (trimLevel >= TRIM_MEMORY_RUNNING_LOW) {
+            return Degradation.UNLOAD_NLP_MODELS;
+        } else if (trimLevel >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return Degradation.DROP_CACHES;
+        }
+
+        return Degradation.NONE;
+    }
+
+    /**
+     * Private helper method that sheds more work, and posts the decision on the bus. Nothing happens if at least
+     * as much work is already shed.
+     *
+     * @param target the level of degradation that the memory pressure calls for
+     * @param reason why the pressure calls for it
+     */
+    private void degrade(@NonNull final Degradation target, @NonNull final String reason) {
+        synchronized (this) {
+            mLastPressureNanos = System.nanoTime();
+
+            if (mDegradation.isAtLeast(target)) {
+                return;
+            }
+
+            mDegradation = target;
+        }
+
+        Log.i(CLASS_TAG, "Degrading to " + target + " because of " + reason);
+        mBus.post(new MemoryPressureEvent(target, reason));
+    }
+
+    /**
+     * Private helper method that does everything again if there was no memory pressure for a while, and posts the
+     * decision on the bus
+     *
+     * @param reason why there is no memory pressure anymore
+     */
+    private void recover(@NonNull final String reason) {
+        synchronized (this) {
+            if (mDegradation == Degradation.NONE
+                    || System.nanoTime() - mLastPressureNanos < TimeUnit.MILLISECONDS.toNanos(mRecoveryMillis)) {
+                return;
+            }
+
+            mDegradation = Degradation.NONE;
+        }
+
+        Log.i(CLASS_TAG, "Recovered from memory pressure, " + reason);
+        mBus.post(new MemoryPressureEvent(Degradation.NONE, reason));
+    }
+}
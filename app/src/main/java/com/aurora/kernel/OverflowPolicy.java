@@ -0,0 +1,28 @@
+package com.aurora.kernel;
+
+/**
+ * Policies that decide what happens when an event is posted on the bus while the queue of a subscriber to that
+ * type of events is full
+ */
+enum OverflowPolicy {
+    /**
+     * The queue is never full, it grows for as long as the subscriber lags behind. No events are lost and the
+     * posting thread never waits. This is the policy of every class of events that is not configured otherwise.
+     */
+    UNBOUNDED,
+
+    /**
+     * The posting thread waits until there is room in the queue again. No events are lost.
+     */
+    BLOCK,
+
+    /**
+     * The oldest event in the queue is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Only the most recent event is kept. Useful for events that replace each other, like progress updates.
+     */
+    LATEST
+}
@@ -14,12 +14,17 @@ import android.widget.Toast;
 import com.aurora.aurora.R;
 import com.aurora.auroralib.Constants;
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
 import com.aurora.kernel.event.OpenCachedFileWithPluginRequest;
 import com.aurora.kernel.event.OpenFileWithPluginRequest;
+import com.google.gson.JsonIOException;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 
 import io.reactivex.Observable;
 
@@ -67,6 +72,10 @@ public class PluginCommunicator extends Communicator {
      */
     private Toast mToast = null;
 
+    /**
+     * Decides how much work is shed when the app runs low on memory
+     */
+    private final MemoryGovernor mMemoryGovernor;
 
     /**
      * Creates a PluginCommunicator. There should be only one instance at a time
@@ -75,18 +84,32 @@ public class PluginCommunicator extends Communicator {
      *                       communicate events
      */
     PluginCommunicator(@NonNull Bus bus) {
+        this(bus, new MemoryGovernor(bus));
+    }
+
+    /**
+     * Creates a PluginCommunicator that sheds work as decided by a given memory governor. There should be only one
+     * instance at a time
+     *
+     * @param bus            a reference to the unique bus instances that all communicators should use to
+     *                       communicate events
+     * @param memoryGovernor decides how much work is shed when the app runs low on memory
+     */
+    PluginCommunicator(@NonNull Bus bus, @NonNull MemoryGovernor memoryGovernor) {
         super(bus);
+        mMemoryGovernor = memoryGovernor;
 
         // Register for requests to open file with plugin
-        mOpenFileWithPluginRequestObservable = mBus.register(OpenFileWithPluginRequest.class);
+        mOpenFileWithPluginRequestObservable = mBus.register(this, OpenFileWithPluginRequest.class);
 
         // When a request comes in, call appropriate function
         mOpenFileWithPluginRequestObservable.subscribe((OpenFileWithPluginRequest request) ->
-                openFileWithPlugin(request.getExtractedText(), request.getUniquePluginName(), request.getContext())
+                openFileWithPlugin(request.getExtractedText(), request.getUniquePluginName(), request.getContext(),
+                        request.isPreview(), request.isUpdate())
         );
 
         // Register for requests to open a cached file with plugin
-        mOpenCachedFileWithPluginRequestObservable = mBus.register(OpenCachedFileWithPluginRequest.class);
+        mOpenCachedFileWithPluginRequestObservable = mBus.register(this, OpenCachedFileWithPluginRequest.class);
 
         // When a request comes in, call appropriate function
         mOpenCachedFileWithPluginRequestObservable.subscribe((OpenCachedFileWithPluginRequest request) ->
@@ -97,32 +120,49 @@ public class PluginCommunicator extends Communicator {
 
 
     /**
-     * Opens a file with a given plugin
+     * Opens a file with a given plugin. The whole file that follows the preview of a file is delivered to the
+     * activity that shows the preview.
      *
      * @param extractedText    the extracted text of the file to open
      *                         TODO: add tests for this method
      * @param uniquePluginName the unique name of the plugin to open the file with
      * @param context          the android context
+     * @param preview          true if the extracted text only has the first sections of the file
+     * @param update           true if the plugin already shows the preview of the file
      */
-    private void openFileWithPlugin(ExtractedText extractedText, String uniquePluginName, Context context) {
+    private void openFileWithPlugin(ExtractedText extractedText, String uniquePluginName, Context context,
+                                    boolean preview, boolean update) {
         // Create intent to open plugin
         Intent launchIntent = new Intent();
         launchIntent.setAction(Constants.PLUGIN_ACTION);
         launchIntent.setPackage(uniquePluginName);
         launchIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        launchIntent.putExtra(Constants.PLUGIN_INPUT_PREVIEW, preview);
 
-        // Convert the extracted text to JSON
-        String extractedTextInJSON = extractedText.toJSON();
-        Log.v("JSON", extractedTextInJSON);
-
-        // Start by clearing the old transfer files
-        removeFilesThatStartWithFromDir(context.getCacheDir(), PROCESSED_PREFIX);
+        if (update) {
+            // The plugin may still be reading the preview, so its file is only cleared with the next file
+            launchIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        } else {
+            // Start by clearing the old transfer files
+            removeFilesThatStartWithFromDir(context.getCacheDir(), PROCESSED_PREFIX);
+        }
 
         Uri uri;
 
         try {
-            uri = writeToTempFile(context, extractedTextInJSON, PROCESSED_PREFIX);
-        } catch (IOException e) {
+            if (mMemoryGovernor.getDegradation().isAtLeast(Degradation.STREAM_RESULTS)) {
+                // The JSON of a large text can take as much memory as the text itself, so it is not built
+                uri = writeToTempFile(context, extractedText, PROCESSED_PREFIX);
+                mBus.post(new MemoryPressureEvent(Degradation.STREAM_RESULTS,
+                        "the extracted text is streamed to " + uniquePluginName));
+            } else {
+                // Convert the extracted text to JSON
+                String extractedTextInJSON = extractedText.toJSON();
+                Log.v("JSON", extractedTextInJSON);
+
+                uri = writeToTempFile(context, extractedTextInJSON, PROCESSED_PREFIX);
+            }
+        } catch (IOException | JsonIOException e) {
             showToastAndLogError(context, ERROR_LOG, e);
             return;
         }
@@ -260,6 +300,26 @@ public class PluginCommunicator extends Communicator {
         return FileProvider.getUriForFile(context, "com.aurora.aurora.provider", file);
     }
 
+    /**
+     * Private helper function that writes an extracted text as JSON to a file that is named like in
+     * {@link #writeToTempFile(Context, String, String)}, without building the JSON in memory first.
+     *
+     * @param context       the application context
+     * @param extractedText the extracted text that will be written
+     * @param prefix        name of the file
+     * @return Uri to the file on success
+     * @throws IOException on failure
+     */
+    private Uri writeToTempFile(Context context, ExtractedText extractedText, String prefix) throws IOException {
+        File file = File.createTempFile(prefix, PluginCommunicator.EXTENSION, context.getCacheDir());
+
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            extractedText.writeJSON(writer);
+        }
+
+        return FileProvider.getUriForFile(context, "com.aurora.aurora.provider", file);
+    }
+
     /**
      * Set all the data field and flags of the intent correctly for letting the receiver be able
      * to open the file.
@@ -1,29 +1,48 @@
 package com.aurora.kernel;
 
-import android.os.Build;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.util.Base64;
 import android.util.Log;
 
+import com.aurora.auroralib.ExtractedImage;
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
 import com.aurora.internalservice.internalnlp.InternalNLP;
 import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
 import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
 import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
 import com.aurora.internalservice.internaltranslation.Translator;
 import com.aurora.kernel.event.DocumentNotSupportedEvent;
+import com.aurora.kernel.event.ExecutionProfileChangedEvent;
 import com.aurora.kernel.event.InternalProcessorRequest;
 import com.aurora.kernel.event.InternalProcessorResponse;
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
+import com.aurora.kernel.event.ProcessingPreviewEvent;
 import com.aurora.kernel.event.TranslationRequest;
 import com.aurora.kernel.event.TranslationResponse;
 import com.aurora.plugin.InternalServices;
 
-import org.apache.commons.lang3.NotImplementedException;
-
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
 
 /**
  * Communicator that communicates with internal services offered to plugin processors
@@ -36,20 +55,61 @@ class PluginInternalServiceCommunicator extends Communicator {
     private static final String CLASS_TAG = "PIServiceCommunicator";
 
     /**
-     * internal text processor
+     * The largest side of the thumbnails that replace images when memory runs low, in pixels
+     */
+    private static final int THUMBNAIL_SIZE = 320;
+
+    /**
+     * The JPEG quality of images that were shrunk
+     */
+    private static final int SHRUNK_IMAGE_QUALITY = 80;
+
+    /**
+     * Runs the internal services on the documents, in this process or in a separate one
+     */
+    private final DocumentProcessor mDocumentProcessor;
+
+    /**
+     * Decides how much work is shed when the app runs low on memory
+     */
+    private final MemoryGovernor mMemoryGovernor;
+
+    /**
+     * The profile that caps the size of the extracted images
+     */
+    private volatile ExecutionProfile mExecutionProfile = ExecutionProfile.BALANCED;
+
+    /**
+     * The scheduler on which the documents run, so they do not hold the threads that deliver the events
+     */
+    private final Scheduler mDocumentScheduler;
+
+    /**
+     * Requests that wait until the profile allows another document to be processed, in the order they came in. This
+     * is also the lock of the number of running documents.
+     */
+    private final Deque<InternalProcessorRequest> mWaitingRequests = new ArrayDeque<>();
+
+    /**
+     * The number of documents that are being processed
+     */
+    private int mRunningDocuments = 0;
+
+    /**
+     * The time spent in every phase per processed file, over all files that were processed in this process
      */
-    private InternalTextProcessor mInternalTextProcessor;
+    private final Map<ProcessingPhase, LatencyHistogram> mPhaseTimes = createPhaseHistograms();
 
     /**
-     * InternalNLP object, loads some annotators statically so needs to keep living for
-     * performance
+     * The time spent in every phase when the last file was processed, in nanoseconds
      */
-    private InternalNLP mInternalNLP;
+    private volatile Map<ProcessingPhase, Long> mLastPhaseTimings = Collections.emptyMap();
 
     /**
-     * A reference to the translator for translating requests
+     * The translator for translating requests. It becomes available when its request queue has been set up, which
+     * happens in the background when the kernel starts.
      */
-    private Translator mTranslator;
+    private Single<Translator> mTranslator;
     /**
      * Observable keeping track of internal processor requests
      */
@@ -72,149 +132,484 @@ class PluginInternalServiceCommunicator extends Communicator {
     PluginInternalServiceCommunicator(@NonNull final Bus mBus,
                                       @NonNull final InternalTextProcessor processor,
                                       @NonNull final Translator translator) {
+        this(mBus, processor, Single.just(translator));
+    }
+
+    /**
+     * Creates a PluginInternalServiceCommunicator with a translator that may not be ready yet. Translation requests
+     * that come in before the translator is ready wait for it. There should be only one instance at a time
+     *
+     * @param mBus       a reference to the unique bus instance that all communicators should be
+     *                   using for
+     *                   communicating events
+     * @param processor  a reference to the InternalTextProcessor
+     * @param translator a Single that succeeds with the internal translator when it is ready
+     */
+    PluginInternalServiceCommunicator(@NonNull final Bus mBus,
+                                      @NonNull final InternalTextProcessor processor,
+                                      @NonNull final Single<Translator> translator) {
+        this(mBus, new LocalDocumentProcessor(processor), translator);
+    }
+
+    /**
+     * Creates a PluginInternalServiceCommunicator that runs the internal services with a given document processor,
+     * and with a translator that may not be ready yet. There should be only one instance at a time
+     *
+     * @param mBus              a reference to the unique bus instance that all communicators should be
+     *                          using for communicating events
+     * @param documentProcessor runs the internal services on the documents
+     * @param translator        a Single that succeeds with the internal translator when it is ready
+     */
+    PluginInternalServiceCommunicator(@NonNull final Bus mBus,
+                                      @NonNull final DocumentProcessor documentProcessor,
+                                      @NonNull final Single<Translator> translator) {
+        this(mBus, documentProcessor, translator, new MemoryGovernor(mBus));
+    }
+
+    /**
+     * Creates a PluginInternalServiceCommunicator that runs the internal services with a given document processor,
+     * and that sheds work as decided by a given memory governor. There should be only one instance at a time
+     *
+     * @param mBus              a reference to the unique bus instance that all communicators should be
+     *                          using for communicating events
+     * @param documentProcessor runs the internal services on the documents
+     * @param translator        a Single that succeeds with the internal translator when it is ready
+     * @param memoryGovernor    decides how much work is shed when the app runs low on memory
+     */
+    PluginInternalServiceCommunicator(@NonNull final Bus mBus,
+                                      @NonNull final DocumentProcessor documentProcessor,
+                                      @NonNull final Single<Translator> translator,
+                                      @NonNull final MemoryGovernor memoryGovernor) {
+        this(mBus, documentProcessor, translator, memoryGovernor,
+                mBus.getScheduler(InternalProcessorRequest.class));
+    }
+
+    /**
+     * Creates a PluginInternalServiceCommunicator that runs the documents on a scheduler of their own. The documents
+     * run from start to end on a thread of that scheduler, so it should not be the scheduler of the bus: the events
+     * the user waits for would then wait behind the documents. There should be only one instance at a time
+     *
+     * @param mBus              a reference to the unique bus instance that all communicators should be
+     *                          using for communicating events
+     * @param documentProcessor runs the internal services on the documents
+     * @param translator        a Single that succeeds with the internal translator when it is ready
+     * @param memoryGovernor    decides how much work is shed when the app runs low on memory
+     * @param documentScheduler the scheduler on which the documents run, with a thread for every document that the
+     *                          execution profile allows at the same time
+     */
+    PluginInternalServiceCommunicator(@NonNull final Bus mBus,
+                                      @NonNull final DocumentProcessor documentProcessor,
+                                      @NonNull final Single<Translator> translator,
+                                      @NonNull final MemoryGovernor memoryGovernor,
+                                      @NonNull final Scheduler documentScheduler) {
         super(mBus);
-        mInternalTextProcessor = processor;
+        mDocumentProcessor = documentProcessor;
+        mDocumentScheduler = documentScheduler;
         mTranslator = translator;
+        mMemoryGovernor = memoryGovernor;
 
 
-        mInternalProcessorRequestObservable = mBus.register(InternalProcessorRequest.class);
-        mInternalProcessorRequestObservable.subscribe((InternalProcessorRequest request) ->
-                processFileWithInternalProcessor(request.getFileUri(), request.getFileRef(), request.getFileType(),
-                        request.getFile(),
-                        request.getInternalServices()));
+        // Requests that come in while the profile allows no more documents wait in a queue instead of on a thread
+        mInternalProcessorRequestObservable = mBus.register(this, InternalProcessorRequest.class);
+        mInternalProcessorRequestObservable.subscribe(this::admitDocument);
 
-        mTranslationRequestObservable = mBus.register(TranslationRequest.class);
+        mTranslationRequestObservable = mBus.register(this, TranslationRequest.class);
         mTranslationRequestObservable.subscribe((TranslationRequest request) -> {
-            TranslationResponse response = mTranslator.translate(request);
-            if (response != null) {
-                mBus.post(response);
-            } else {
-                mBus.post(new TranslationResponse("Something went wrong in the translation"));
+            TranslationResponse response = mTranslator.blockingGet().translate(request);
+            if (response == null) {
+                response = new TranslationResponse("Something went wrong in the translation");
             }
+            response.setCorrelationId(request.getCorrelationId());
+            mBus.post(response);
         });
 
+        // The models are loaded again by the next document that needs them
+        mBus.register(this, MemoryPressureEvent.class)
+                .filter(event -> event.getDegradation().isAtLeast(Degradation.UNLOAD_NLP_MODELS))
+                .subscribe(event -> InternalNLP.unloadModels(),
+                        error -> Log.e(CLASS_TAG, "Something went wrong unloading the NLP models", error));
+
+        mBus.register(this, ExecutionProfileChangedEvent.class)
+                .subscribe((ExecutionProfileChangedEvent event) -> {
+                    mExecutionProfile = event.getProfile();
+                    mDocumentProcessor.setExecutionProfile(event.getProfile());
+
+                    // Documents that wait may be allowed to start now
+                    startWaitingDocuments();
+                }, error -> Log.e(CLASS_TAG, "Something went wrong changing the execution profile", error));
     }
 
+    /**
+     * Helper method that starts a request right away if the profile allows another document to be processed, and
+     * queues it otherwise. A queued request is started when a document finishes or the profile changes, or dropped
+     * when it is cancelled while it waits. The documents run as separate tasks, so the handler of the requests
+     * returns immediately, several documents can run at the same time and the bus keeps delivering other events.
+     *
+     * @param request the request to handle
+     */
+    private void admitDocument(@NonNull final InternalProcessorRequest request) {
+        synchronized (mWaitingRequests) {
+            // Requests that were queued earlier go first
+            if (!mWaitingRequests.isEmpty()
+                    || mRunningDocuments >= mExecutionProfile.getMaxConcurrentDocuments()) {
+                mWaitingRequests.add(request);
+                request.getCancellationToken().addListener(() -> dropWaitingDocument(request));
+                return;
+            }
+
+            mRunningDocuments++;
+        }
+
+        mDocumentScheduler.scheduleDirect(() -> runDocument(request));
+    }
 
     /**
-     * Helper method to process a file with the internal processor when a request comes in
-     * NLP internal services are only used if the API level is at least 26
+     * Helper method that handles a request that was given a document slot, and hands the slot to the next waiting
+     * request when it is done
+     *
+     * @param request the request to handle
+     */
+    private void runDocument(@NonNull final InternalProcessorRequest request) {
+        try {
+            if (request.getExtractedText() != null) {
+                extendWithInternalServices(request.getFileUri(), request.getFileRef(), request.getExtractedText(),
+                        request.getInternalServices(), request.getCorrelationId(), request.getCancellationToken());
+            } else {
+                processFileWithInternalProcessor(request.getFileUri(), request.getFileRef(), request.getFileType(),
+                        request.getFile(),
+                        request.getInternalServices(), request.getPreviewSections(), request.getCorrelationId(),
+                        request.getCancellationToken());
+            }
+        } finally {
+            synchronized (mWaitingRequests) {
+                mRunningDocuments--;
+            }
+            startWaitingDocuments();
+        }
+    }
+
+    /**
+     * Helper method that starts as many waiting requests as the profile allows, on the scheduler of the documents.
+     * The requests keep the order in which they came in.
+     */
+    private void startWaitingDocuments() {
+        List<InternalProcessorRequest> started = new ArrayList<>();
+        synchronized (mWaitingRequests) {
+            while (!mWaitingRequests.isEmpty()
+                    && mRunningDocuments < mExecutionProfile.getMaxConcurrentDocuments()) {
+                started.add(mWaitingRequests.poll());
+                mRunningDocuments++;
+            }
+        }
+
+        for (InternalProcessorRequest request : started) {
+            mDocumentScheduler.scheduleDirect(() -> runDocument(request));
+        }
+    }
+
+    /**
+     * Helper method that removes a request from the queue when it is cancelled while it waits for a document slot.
+     * Nothing happens if the request was already started, its processing then notices the cancellation itself.
+     *
+     * @param request the cancelled request
+     */
+    private void dropWaitingDocument(@NonNull final InternalProcessorRequest request) {
+        boolean dropped;
+        synchronized (mWaitingRequests) {
+            dropped = mWaitingRequests.remove(request);
+        }
+
+        if (dropped) {
+            Log.i(CLASS_TAG, "Processing of " + request.getFileRef() + " was cancelled");
+        }
+    }
+
+
+    /**
+     * Helper method to process a file with the internal processor when a request comes in.
+     * The internal services are run by the document processor, which may run them in another process.
      *
      * @param fileUri          the uri of the file to be processed
      * @param fileRef          the name of the file that should be processed
      * @param type             the file type
      * @param file             the file input stream
      * @param internalServices the set of internal services that should be run on the file
+     * @param previewSections  the number of sections that are posted ahead in a preview, or 0 if no preview is
+     *                         needed
+     * @param correlationId    the correlation id of the request, which is copied to the preview and the response
+     * @param cancellationToken token that is checked during the processing, no response is posted when it is
+     *                          cancelled
      */
     private void processFileWithInternalProcessor(@NonNull final String fileUri,
                                                   @NonNull final String fileRef,
                                                   @NonNull String type,
                                                   final InputStream file,
-                                                  @NonNull final List<InternalServices> internalServices) {
+                                                  @NonNull final List<InternalServices> internalServices,
+                                                  final int previewSections,
+                                                  final long correlationId,
+                                                  @NonNull final CancellationToken cancellationToken) {
+        // Images take the most memory, so they are shrunk or skipped first when memory runs low
+        Degradation degradation = mMemoryGovernor.getDegradation();
+        List<InternalServices> services = internalServices;
+        if (degradation.isAtLeast(Degradation.SKIP_IMAGES)
+                && internalServices.contains(InternalServices.IMAGE_EXTRACTION)) {
+            services = new ArrayList<>(internalServices);
+            services.remove(InternalServices.IMAGE_EXTRACTION);
+            mBus.post(new MemoryPressureEvent(degradation, "the images of " + fileRef + " are skipped"));
+        }
 
-        // STEP ONE
-        ExtractedText extractedText;
+        // The progress of the file is posted on the bus, and the time of every phase is measured from it
+        ProcessingProgressReporter reporter = new ProcessingProgressReporter(mBus, fileUri, fileRef, correlationId);
+        cancellationToken.setProgressListener(reporter);
+
+        final List<InternalServices> extractedServices = services;
+        ExtractedText result;
         try {
-            extractedText = doTextAndImageExtractionTasks(internalServices, file, fileUri, fileRef, type);
+            if (previewSections > 0) {
+                // The first sections are shown while the rest is extracted, with the same images as the whole file
+                result = mDocumentProcessor.process(fileUri, fileRef, type, file, services, previewSections,
+                        (ExtractedText preview) -> {
+                            if (extractedServices.contains(InternalServices.IMAGE_EXTRACTION)) {
+                                limitImageSizes(preview, degradation);
+                            }
+                            ProcessingPreviewEvent event = new ProcessingPreviewEvent(preview);
+                            event.setCorrelationId(correlationId);
+                            mBus.post(event);
+                        }, cancellationToken);
+            } else {
+                result = mDocumentProcessor.process(fileUri, fileRef, type, file, services, cancellationToken);
+            }
+        } catch (CancellationException e) {
+            Log.i(CLASS_TAG, "Processing of " + fileRef + " was cancelled");
+            return;
         } catch (DocumentNotSupportedException | FileTypeNotSupportedException e) {
             Log.e(CLASS_TAG, "Document is not supported", e);
 
-            // Create event to show error to user
-            DocumentNotSupportedEvent event = new DocumentNotSupportedEvent(e.getMessage());
+            // Show error to user
+            postDocumentNotSupported(e.getMessage(), correlationId);
+            return;
+        } catch (RuntimeException e) {
+            // A stage failed in an unexpected way, like an NLP model that could not be loaded. The file fails, but
+            // the next request is handled as usual.
+            Log.e(CLASS_TAG, "Something went wrong processing " + fileRef, e);
 
-            // Post on bus
-            mBus.post(event);
+            postDocumentNotSupported("The document could not be processed", correlationId);
             return;
+        } finally {
+            cancellationToken.setProgressListener(null);
         }
+        recordPhaseTimings(fileRef, reporter);
 
-        if (extractedText == null) {
-            mBus.post(new InternalProcessorResponse(new ExtractedText("","")));
+        // The images are capped by the profile, and shrunk to thumbnails when memory runs low
+        if (services.contains(InternalServices.IMAGE_EXTRACTION)) {
+            limitImageSizes(result, degradation);
+            if (degradation == Degradation.IMAGE_THUMBNAILS) {
+                mBus.post(new MemoryPressureEvent(degradation, "the images of " + fileRef + " are thumbnails"));
+            }
+        }
+
+        // Post response
+        InternalProcessorResponse response = new InternalProcessorResponse(result);
+        response.setCorrelationId(correlationId);
+        mBus.post(response);
+
+    }
+
+    /**
+     * Helper method to run the internal services that work on an extracted text, like NLP, on a text that was
+     * already extracted when a request comes in. The images were already handled when the text was extracted.
+     *
+     * @param fileUri           the uri of the file the text was extracted from
+     * @param fileRef           the name of the file the text was extracted from
+     * @param extractedText     the text that was already extracted
+     * @param internalServices  the set of internal services that should be run on the text
+     * @param correlationId     the correlation id of the request, which is copied to the response
+     * @param cancellationToken token that is checked during the processing, no response is posted when it is
+     *                          cancelled
+     */
+    private void extendWithInternalServices(@NonNull final String fileUri,
+                                            @NonNull final String fileRef,
+                                            @NonNull final ExtractedText extractedText,
+                                            @NonNull final List<InternalServices> internalServices,
+                                            final long correlationId,
+                                            @NonNull final CancellationToken cancellationToken) {
+        ProcessingProgressReporter reporter = new ProcessingProgressReporter(mBus, fileUri, fileRef, correlationId);
+        cancellationToken.setProgressListener(reporter);
+
+        ExtractedText result;
+        try {
+            result = mDocumentProcessor.extend(fileRef, extractedText, internalServices, cancellationToken);
+        } catch (CancellationException e) {
+            Log.i(CLASS_TAG, "Processing of " + fileRef + " was cancelled");
+            return;
+        } catch (DocumentNotSupportedException e) {
+            Log.e(CLASS_TAG, "Document is not supported", e);
+
+            postDocumentNotSupported(e.getMessage(), correlationId);
             return;
+        } catch (RuntimeException e) {
+            Log.e(CLASS_TAG, "Something went wrong processing " + fileRef, e);
+
+            postDocumentNotSupported("The document could not be processed", correlationId);
+            return;
+        } finally {
+            cancellationToken.setProgressListener(null);
         }
+        recordPhaseTimings(fileRef, reporter);
+
+        InternalProcessorResponse response = new InternalProcessorResponse(result);
+        response.setCorrelationId(correlationId);
+        mBus.post(response);
+    }
 
-        // STEP TWO: Perform NLP services, only if API level is at least 26
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            doNLPTask(extractedText, internalServices);
+    /**
+     * Private helper method that keeps the time every phase took for a file that was processed, and logs it
+     *
+     * @param fileRef  the name of the file that was processed
+     * @param reporter the reporter that measured the phases of the file
+     */
+    private void recordPhaseTimings(@NonNull final String fileRef, @NonNull final ProcessingProgressReporter reporter) {
+        Map<ProcessingPhase, Long> timings = reporter.getPhaseTimings();
+        StringBuilder log = new StringBuilder("Phase timings of ").append(fileRef).append(':');
+        for (Map.Entry<ProcessingPhase, Long> timing : timings.entrySet()) {
+            mPhaseTimes.get(timing.getKey()).record(timing.getValue());
+            log.append(' ').append(timing.getKey().name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(timing.getValue())).append("ms");
         }
 
-        // Post response
-        mBus.post(new InternalProcessorResponse(extractedText));
+        mLastPhaseTimings = timings;
+        Log.d(CLASS_TAG, log.toString());
+    }
+
+    /**
+     * Private helper method that posts an event to show the user why a document could not be processed
+     *
+     * @param reason        the reason why the document could not be processed
+     * @param correlationId the correlation id of the request that failed
+     */
+    private void postDocumentNotSupported(final String reason, final long correlationId) {
+        DocumentNotSupportedEvent event = new DocumentNotSupportedEvent(reason);
+        event.setCorrelationId(correlationId);
 
+        mBus.post(event);
     }
 
     /**
-     * Private method that does the ImageExtraction and TextExtraction tasks if requested
+     * Private helper method that caps the images of an extracted text to the size the profile allows, or shrinks
+     * them to thumbnails when memory runs low. Images that were already capped are kept as they are.
      *
-     * @param internalServices the set of internal services that should be run on the file
-     * @param file             the file inputstream
-     * @param fileUri          the uri of the file to be processed
-     * @param fileRef          a reference to the file that should be processed
-     * @param type             the file type (extension)
-     * @return ExtractedText object
-     * @throws FileTypeNotSupportedException When an unsupported file type is opened
-     * @throws DocumentNotSupportedException When the document could not be opened
-     */
-    @Nullable
-    private ExtractedText doTextAndImageExtractionTasks(List<InternalServices> internalServices,
-                                                        InputStream file, String fileUri, String fileRef,
-                                                        String type)
-            throws FileTypeNotSupportedException, DocumentNotSupportedException {
-        // Perform internal services that are in the given set
-
-        ExtractedText extractedText = null;
-
-        if (internalServices.contains(InternalServices.TEXT_EXTRACTION)) {
-            // Call internal text processor
-
-            boolean extractImages =
-                    internalServices.contains(InternalServices.IMAGE_EXTRACTION);
-
-            extractedText = mInternalTextProcessor.processFile(file, fileUri, fileRef, type,
-                    extractImages);
-
-            Log.i(CLASS_TAG,
-                    "Service completed: " + InternalServices.TEXT_EXTRACTION.name());
-            if (extractImages) {
-                Log.i(CLASS_TAG,
-                        "Service completed: " + InternalServices.IMAGE_EXTRACTION.name());
-            }
+     * @param extractedText the extracted text of which the images are capped
+     * @param degradation   how much work is shed because of the memory that is left
+     */
+    private void limitImageSizes(@NonNull final ExtractedText extractedText, @NonNull final Degradation degradation) {
+        if (degradation == Degradation.IMAGE_THUMBNAILS) {
+            shrinkImages(extractedText, THUMBNAIL_SIZE);
+        } else if (mExecutionProfile.getMaxImageSize() > 0) {
+            shrinkImages(extractedText, mExecutionProfile.getMaxImageSize());
+        }
+    }
 
+    /**
+     * Private helper method that shrinks the images of an extracted text. Images that are already small enough, or
+     * that cannot be decoded, are kept as they are.
+     *
+     * @param extractedText the extracted text of which the images are shrunk
+     * @param maxSize       the largest side the images may have, in pixels
+     */
+    private static void shrinkImages(@NonNull final ExtractedText extractedText, final int maxSize) {
+        for (Section section : extractedText.getSections()) {
+            for (ExtractedImage image : section.getExtractedImages()) {
+                image.setBase64EncodedImage(shrinkImage(image.getBase64EncodedImage(), maxSize));
+            }
         }
-        return extractedText;
     }
 
     /**
-     * Private method that does the InternalNLP annotation if requested
+     * Private helper method that shrinks an image. The image is decoded at a lower resolution straight away, so the
+     * full image is never decoded.
      *
-     * @param extractedText    extractedText object that should be annotated
-     * @param internalServices the services to determine if the NLP service is requested
+     * @param base64EncodedImage the base64 encoded image
+     * @param maxSize            the largest side the image may have, in pixels
+     * @return the base64 encoded smaller image, or the image itself if it is small enough or cannot be decoded
      */
-    private void doNLPTask(@NonNull ExtractedText extractedText,
-                           @NonNull List<InternalServices> internalServices) {
-        boolean doNLP = false;
+    @NonNull
+    private static String shrinkImage(@NonNull final String base64EncodedImage, final int maxSize) {
+        byte[] data = Base64.decode(base64EncodedImage, Base64.DEFAULT);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
 
-        // Add all NLP steps to the pipeline
-        for (InternalServices internalService : internalServices) {
+        int largestSide = Math.max(options.outWidth, options.outHeight);
+        if (largestSide <= maxSize) {
+            return base64EncodedImage;
+        }
+
+        // Only powers of two are decoded efficiently
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = 1;
+        while (largestSide / (options.inSampleSize * 2) >= maxSize) {
+            options.inSampleSize *= 2;
+        }
+
+        Bitmap shrunk = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (shrunk == null) {
+            return base64EncodedImage;
+        }
 
-            if (internalService.name().startsWith("NLP_")) {
-                // Only create internalNLP when NLP services requested
-                if (mInternalNLP == null) {
-                    mInternalNLP = new InternalNLP();
-                }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        shrunk.compress(Bitmap.CompressFormat.JPEG, SHRUNK_IMAGE_QUALITY, output);
+        shrunk.recycle();
 
-                try {
-                    mInternalNLP.addAnnotator(internalService);
-                    doNLP = true;
-                } catch (NotImplementedException e) {
-                    Log.e(CLASS_TAG, "Something went wrong when building the NLP pipeline", e);
-                }
+        return Base64.encodeToString(output.toByteArray(), Base64.DEFAULT);
+    }
+
+    /**
+     * @return the time every stage took when the last file was processed in this process, in nanoseconds
+     */
+    Map<String, Long> getLastStageTimings() {
+        return mDocumentProcessor.getLastStageTimings();
+    }
+
+    /**
+     * Gets the time spent in every phase, like parsing pages, encoding images or annotating sections, when the last
+     * file was processed. Files that were processed in another process do not report their phases.
+     *
+     * @return the time spent in every phase that was reported for the last file, in nanoseconds
+     */
+    Map<ProcessingPhase, Long> getLastPhaseTimings() {
+        return mLastPhaseTimings;
+    }
+
+    /**
+     * Creates a report of the time spent in every phase per file, over all files that were processed
+     *
+     * @return a readable report, with a line per phase that was reported at least once
+     */
+    @NonNull
+    String getPhaseTimingReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<ProcessingPhase, LatencyHistogram> entry : mPhaseTimes.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                report.append("Phase ").append(entry.getKey().name().toLowerCase(Locale.ROOT)).append(": ")
+                        .append(entry.getValue()).append('\n');
             }
         }
 
-        if (doNLP) {
-            mInternalNLP.annotate(extractedText);
-            Log.i(CLASS_TAG, "Service completed: " + "NLP ANNOTATION");
+        return report.toString();
+    }
+
+    /**
+     * Private helper method that creates an empty histogram for every phase
+     *
+     * @return the histograms by phase
+     */
+    private static Map<ProcessingPhase, LatencyHistogram> createPhaseHistograms() {
+        Map<ProcessingPhase, LatencyHistogram> histograms = new EnumMap<>(ProcessingPhase.class);
+        for (ProcessingPhase phase : ProcessingPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
         }
-        mInternalNLP = null;
+
+        return Collections.unmodifiableMap(histograms);
     }
 }
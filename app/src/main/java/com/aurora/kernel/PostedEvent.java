@@ -0,0 +1,45 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.kernel.event.Event;
+
+/**
+ * An event together with the moment it was posted on the bus, so the time until it is delivered can be measured
+ */
+final class PostedEvent {
+    /**
+     * The event that was posted
+     */
+    private final Event mEvent;
+
+    /**
+     * The time at which the event was posted, in nanoseconds
+     */
+    private final long mPostNanos;
+
+    /**
+     * Creates a new posted event
+     *
+     * @param event     the event that was posted
+     * @param postNanos the time at which the event was posted, in nanoseconds
+     */
+    PostedEvent(@NonNull final Event event, final long postNanos) {
+        mEvent = event;
+        mPostNanos = postNanos;
+    }
+
+    /**
+     * @return the event that was posted
+     */
+    Event getEvent() {
+        return mEvent;
+    }
+
+    /**
+     * @return the time at which the event was posted, in nanoseconds
+     */
+    long getPostNanos() {
+        return mPostNanos;
+    }
+}
@@ -0,0 +1,22 @@
+package com.aurora.kernel;
+
+/**
+ * The lanes in which events wait to be handled. Events in a higher lane are always handled before events in a lower
+ * lane that are waiting on the same {@link PriorityScheduler}.
+ */
+enum Priority {
+    /**
+     * Events the user is actively waiting for, like the list of cached files on the home screen
+     */
+    INTERACTIVE,
+
+    /**
+     * Events without special urgency. This is the default.
+     */
+    NORMAL,
+
+    /**
+     * Events that can wait until nothing more important is left, like caching a processed file
+     */
+    BACKGROUND
+}
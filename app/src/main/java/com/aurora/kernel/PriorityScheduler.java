@@ -0,0 +1,222 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Scheduler backed by a fixed pool of threads that always runs the waiting tasks of the most important
+ * {@link Priority} first. Tasks of the same priority run in the order in which they were scheduled.
+ * <p>
+ * Used as a scheduler directly, it schedules in the {@link Priority#NORMAL} lane. The scheduler for another lane is
+ * available through {@link #lane(Priority)}.
+ */
+class PriorityScheduler extends Scheduler {
+    /**
+     * The pool of threads that runs the tasks of all lanes
+     */
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * A scheduler per lane that schedules its tasks on the shared pool with the priority of that lane
+     */
+    private final Map<Priority, Scheduler> mLanes = new EnumMap<>(Priority.class);
+
+    /**
+     * Statistics about the waiting times per lane
+     */
+    private final Map<Priority, LaneStatistics> mStatistics = new EnumMap<>(Priority.class);
+
+    /**
+     * The prefix of the names of the threads, which also names the scheduler in reports
+     */
+    private final String mName;
+
+    /**
+     * Counter that keeps tasks of the same priority in the order in which they were scheduled
+     */
+    private final AtomicLong mSequence = new AtomicLong();
+
+    /**
+     * Creates a new priority scheduler
+     *
+     * @param threads the number of threads in the pool
+     * @param name    the prefix of the names of the threads
+     */
+    PriorityScheduler(final int threads, @NonNull final String name) {
+        mName = name;
+        final AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = (Runnable runnable) -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), threadFactory);
+
+        for (Priority priority : Priority.values()) {
+            mStatistics.put(priority, new LaneStatistics());
+            mLanes.put(priority, Schedulers.from(new LaneExecutor(priority)));
+        }
+    }
+
+    /**
+     * Gets the scheduler that schedules its tasks in one lane of this scheduler
+     *
+     * @param priority the priority of the lane
+     * @return a scheduler for the given lane
+     */
+    Scheduler lane(@NonNull final Priority priority) {
+        return mLanes.get(priority);
+    }
+
+    /**
+     * Gets the statistics about how long the tasks in a lane waited before they could run
+     *
+     * @param priority the priority of the lane
+     * @return the waiting time statistics of the lane
+     */
+    LaneStatistics getStatistics(@NonNull final Priority priority) {
+        return mStatistics.get(priority);
+    }
+
+    /**
+     * Creates a readable report of how long the tasks in every lane waited before they could run
+     *
+     * @return the report, with a line per lane
+     */
+    String getLaneReport() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<Priority, LaneStatistics> entry : mStatistics.entrySet()) {
+            report.append("Lane ").append(mName).append('/')
+                    .append(entry.getKey().name().toLowerCase(Locale.ROOT)).append(": ")
+                    .append(entry.getValue()).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Changes the number of threads in the pool. Tasks that are running are not interrupted, when there are fewer
+     * threads the extra threads stop after their current task.
+     *
+     * @param threads the new number of threads, at least 1
+     */
+    void setThreads(final int threads) {
+        synchronized (mExecutor) {
+            // The core size can never be larger than the maximum size
+            if (threads > mExecutor.getMaximumPoolSize()) {
+                mExecutor.setMaximumPoolSize(threads);
+                mExecutor.setCorePoolSize(threads);
+            } else {
+                mExecutor.setCorePoolSize(threads);
+                mExecutor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads in the pool
+     */
+    int getThreads() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    @NonNull
+    @Override
+    public Worker createWorker() {
+        return mLanes.get(Priority.NORMAL).createWorker();
+    }
+
+    @Override
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Executor that hands its tasks to the shared pool with the priority of one lane
+     */
+    private class LaneExecutor implements Executor {
+        /**
+         * The priority of the tasks of this executor
+         */
+        private final Priority mPriority;
+
+        /**
+         * Creates an executor for one lane
+         *
+         * @param priority the priority of the lane
+         */
+        LaneExecutor(@NonNull final Priority priority) {
+            mPriority = priority;
+        }
+
+        @Override
+        public void execute(@NonNull final Runnable command) {
+            mExecutor.execute(new PrioritizedTask(command, mPriority, mSequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * A task waiting in the pool, ordered by priority first and by the order in which it was scheduled second
+     */
+    private class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        /**
+         * The actual work
+         */
+        private final Runnable mRunnable;
+
+        /**
+         * The priority of the lane the task was scheduled in
+         */
+        private final Priority mPriority;
+
+        /**
+         * The position of the task among all tasks that were scheduled
+         */
+        private final long mSequence;
+
+        /**
+         * The time at which the task was scheduled, in nanoseconds
+         */
+        private final long mScheduledAt = System.nanoTime();
+
+        /**
+         * Creates a new prioritized task
+         *
+         * @param runnable the actual work
+         * @param priority the priority of the lane the task was scheduled in
+         * @param sequence the position of the task among all tasks that were scheduled
+         */
+        PrioritizedTask(@NonNull final Runnable runnable, @NonNull final Priority priority, final long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mStatistics.get(mPriority).record(System.nanoTime() - mScheduledAt);
+            mRunnable.run();
+        }
+
+        @Override
+        public int compareTo(@NonNull final PrioritizedTask other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            return byPriority != 0 ? byPriority : Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
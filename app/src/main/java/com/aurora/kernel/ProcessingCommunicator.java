@@ -4,7 +4,6 @@ import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.aurora.auroralib.cache.CacheResults;
-import com.aurora.auroralib.translation.TranslationErrorCodes;
 import com.aurora.kernel.event.CacheFileRequest;
 import com.aurora.kernel.event.CacheFileResponse;
 import com.aurora.kernel.event.TranslationRequest;
@@ -13,11 +12,9 @@ import com.aurora.kernel.event.TranslationResponse;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeUnit;
 
-import io.reactivex.Observable;
+import io.reactivex.Single;
 
 /**
  * Communicator that communicates with Plugin processors
@@ -30,13 +27,14 @@ public class ProcessingCommunicator extends Communicator {
     private static final String LOG_TAG = ProcessingCommunicator.class.getSimpleName();
 
     /**
-     * Observable for a Cache operation response
+     * The maximum number of seconds to wait for a file to be cached
      */
-    private Observable<CacheFileResponse> mCacheFileResponseObservable;
+    private static final long CACHE_TIMEOUT_SECONDS = 30;
+
     /**
-     * Observable for a Translation operation response
+     * The maximum number of seconds to wait for sentences to be translated
      */
-    private Observable<TranslationResponse> mTranslationResponseObservable;
+    private static final long TRANSLATION_TIMEOUT_SECONDS = 30;
 
     /**
      * Creates a ProcessingCommunicator. There should be only one instance at a time
@@ -45,118 +43,73 @@ public class ProcessingCommunicator extends Communicator {
      */
     ProcessingCommunicator(@NonNull final Bus mBus) {
         super(mBus);
-
-        // Subscribe to observable
-        mCacheFileResponseObservable = mBus.register(CacheFileResponse.class);
-        mTranslationResponseObservable = mBus.register(TranslationResponse.class);
     }
 
     /**
-     * Caches a json representation processed by a plugin
+     * Caches a json representation processed by a plugin. The request is posted when the returned Single is
+     * subscribed to, and only the response to that request is accepted, so many files can be cached at the same
+     * time without waiting on each other.
      *
      * @param fileRef          a reference to the original file
      * @param pluginObject     a json representation of the object that needs to be cached
      * @param uniquePluginName the name of the plugin that the file was processed with
-     * @return a status code indicating if the cache operation was successful (0) or not (-1)
+     * @return a Single with a status code indicating if the cache operation was successful (0) or not (-1)
      */
-    public int cacheFile(@NonNull final String fileRef, @NonNull final String pluginObject,
-                         @NonNull final String uniquePluginName) {
-        // response contains boolean, which is converted to a status code which is then synchronously returned
-        AtomicBoolean isSet = new AtomicBoolean(false);
-        AtomicInteger returnCode = new AtomicInteger(CacheResults.CACHE_FAIL);
+    public Single<Integer> cacheFile(@NonNull final String fileRef, @NonNull final String pluginObject,
+                                     @NonNull final String uniquePluginName) {
+        // Create request to cache the file
+        CacheFileRequest cacheFileRequest = new CacheFileRequest(fileRef, pluginObject, uniquePluginName);
 
-        mCacheFileResponseObservable
-                .take(1)
-                .map(CacheFileResponse::isSuccessful)
-                .map((Boolean successful) -> {
-                    if (successful) {
+        // Post on the bus and wait for the response to this request
+        // The subscription for the response ends when it came in, when it timed out or when it is disposed
+        return mBus.request(cacheFileRequest, CacheFileResponse.class, CACHE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .map((CacheFileResponse response) -> {
+                    if (response.isSuccessful()) {
                         return CacheResults.CACHE_SUCCESS;
                     } else {
                         return CacheResults.CACHE_FAIL;
                     }
                 })
-                .subscribe((Integer cacheResult) -> {
-                    synchronized (this) {
-                        returnCode.set(cacheResult);
-                        isSet.set(true);
-                        notifyAll();
-                    }
+                .onErrorReturn((Throwable e) -> {
+                    Log.e(LOG_TAG, "Something went wrong while caching " + fileRef, e);
+                    return CacheResults.CACHE_FAIL;
                 });
-        // Create request to cache the file
-        CacheFileRequest cacheFileRequest = new CacheFileRequest(fileRef, pluginObject, uniquePluginName);
-
-        // Post on the bus
-        mBus.post(cacheFileRequest);
-
-        synchronized (this) {
-            while (!isSet.get()) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    Log.e(LOG_TAG, "Interrupted in ProcessingCommunicator", e);
-
-                    Thread.currentThread().interrupt();
-                }
-            }
-
-            return returnCode.get();
-        }
     }
 
     /**
-     * Sentences to translate sent by a plugin
+     * Sentences to translate sent by a plugin. The request is posted when the returned Single is subscribed to,
+     * and only the response to that request is accepted, so many translations can run at the same time.
      *
      * @param sentences           the list of strings to be translated
      * @param sourceLanguage      the language of the input sentences in ISO code
      * @param destinationLanguage the desired language of the translations in ISO format
-     * @return the list of translated sentences or an empty list if the translate operation failed
+     * @return a Single with the list of translated sentences or an empty list if the translate operation failed
      */
-    public List<String> translateSentences(@NonNull List<String> sentences,
+    public Single<List<String>> translateSentences(@NonNull List<String> sentences,
                                            String sourceLanguage,
                                            @NonNull String destinationLanguage) {
-        // response contains boolean, which is converted to a status code which is then synchronously returned
-        AtomicBoolean isSet = new AtomicBoolean(false);
-        // errorCode is currently not being used. It is supposed to be retruned in a Bundle together
-        // with the translatedSentences but AIDL troubles need to be fixed for this.
-        final AtomicInteger errorCode = new AtomicInteger(TranslationErrorCodes.TRANSLATION_FAIL);
-        final AtomicReference<String[]> translatedSentences = new AtomicReference<>();
-
-        mTranslationResponseObservable.subscribe((TranslationResponse response) -> {
-            synchronized (this) {
-                isSet.set(true);
-                String errorMessage = response.getErrorMessage();
-                if (errorMessage == null) {
-                    errorCode.set(TranslationErrorCodes.TRANSLATION_SUCCESS);
-                    translatedSentences.set(response.getTranslatedSentences());
-                } else {
-                    errorCode.set(TranslationErrorCodes.TRANSLATION_FAIL);
-                    translatedSentences.set(new String[]{});
-                    Log.e(LOG_TAG, errorMessage);
-                }
-                notifyAll();
-            }
-        });
-
         // Create request to translate the sentences
         TranslationRequest translationRequest = new TranslationRequest(
                 sentences.toArray(new String[0]), sourceLanguage, destinationLanguage);
 
-        // Post on the bus
-        mBus.post(translationRequest);
-
-        synchronized (this) {
-            while (!isSet.get()) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    Log.e(LOG_TAG, "Interrupted in ProcessingCommunicator", e);
-
-                    Thread.currentThread().interrupt();
-                }
-            }
-
-            return new ArrayList<>(Arrays.asList(translatedSentences.get()));
-        }
+        // Post on the bus and wait for the response to this request
+        // The subscription for the response ends when it came in, when it timed out or when it is disposed
+        return mBus.request(translationRequest, TranslationResponse.class,
+                TRANSLATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .map((TranslationResponse response) -> {
+                    String errorMessage = response.getErrorMessage();
+                    if (errorMessage == null) {
+                        return response.getTranslatedSentences();
+                    } else {
+                        Log.e(LOG_TAG, errorMessage);
+                        return new String[]{};
+                    }
+                })
+                .onErrorReturn((Throwable e) -> {
+                    Log.e(LOG_TAG, "Something went wrong while translating", e);
+                    return new String[]{};
+                })
+                .map((String[] translatedSentences) -> new ArrayList<>(Arrays.asList(translatedSentences)));
     }
 
 }
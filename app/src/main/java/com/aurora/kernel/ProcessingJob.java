@@ -0,0 +1,195 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aurora.plugin.InternalServices;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A file that has to be processed by the internal services, as it is kept in the {@link ProcessingJobQueue}.
+ * It only holds what is needed to open the file again, so the job can be resumed after the process was killed.
+ */
+final class ProcessingJob {
+
+    /**
+     * The unique id of the job, which is also the name of the file its result is written to
+     */
+    private String mId;
+
+    /**
+     * The uri of the file to process
+     */
+    private String mFileUri;
+
+    /**
+     * The name of the file to process
+     */
+    private String mFileRef;
+
+    /**
+     * The type of the file to process
+     */
+    private String mFileType;
+
+    /**
+     * The name of the plugin that the file will be opened with
+     */
+    private String mUniquePluginName;
+
+    /**
+     * The internal services that have to be run on the file
+     */
+    private List<InternalServices> mInternalServices;
+
+    /**
+     * Whether the user is waiting for the file. Jobs that nobody waits for only run when the device is charging and
+     * idle.
+     */
+    private boolean mInteractive;
+
+    /**
+     * The moment the job was created
+     */
+    private Date mCreated;
+
+    /**
+     * The path of the file to which the extracted text was written, or null if the job is not done yet
+     */
+    private String mResultPath;
+
+    /**
+     * Creates a job for a file
+     *
+     * @param fileUri          the uri of the file to process
+     * @param fileRef          the name of the file to process
+     * @param fileType         the type of the file to process
+     * @param uniquePluginName the name of the plugin that the file will be opened with
+     * @param internalServices the internal services that have to be run on the file
+     * @param interactive      whether the user is waiting for the file
+     */
+    ProcessingJob(@NonNull final String fileUri, @NonNull final String fileRef, @NonNull final String fileType,
+                  @NonNull final String uniquePluginName, @NonNull final List<InternalServices> internalServices,
+                  final boolean interactive) {
+        mId = UUID.randomUUID().toString();
+        mFileUri = fileUri;
+        mFileRef = fileRef;
+        mFileType = fileType;
+        mUniquePluginName = uniquePluginName;
+        mInternalServices = new ArrayList<>(internalServices);
+        mInteractive = interactive;
+        mCreated = new Date();
+    }
+
+    /**
+     * Checks if another job processes the same file with the same internal services, in which case only one of
+     * them has to run
+     *
+     * @param other the other job
+     * @return true if both jobs would produce the same extracted text
+     */
+    boolean isSameWork(@NonNull final ProcessingJob other) {
+        return isSameWork(other.mFileUri, other.mInternalServices);
+    }
+
+    /**
+     * Checks if this job processes a file with some internal services
+     *
+     * @param fileUri          the uri of the file
+     * @param internalServices the internal services
+     * @return true if this job produces the extracted text of the file with the services
+     */
+    boolean isSameWork(@NonNull final String fileUri, @NonNull final List<InternalServices> internalServices) {
+        return mFileUri.equals(fileUri) && mInternalServices.size() == internalServices.size()
+                && mInternalServices.containsAll(internalServices);
+    }
+
+    /**
+     * @return the unique id of the job
+     */
+    @NonNull
+    String getId() {
+        return mId;
+    }
+
+    /**
+     * @return the uri of the file to process
+     */
+    @NonNull
+    String getFileUri() {
+        return mFileUri;
+    }
+
+    /**
+     * @return the name of the file to process
+     */
+    @NonNull
+    String getFileRef() {
+        return mFileRef;
+    }
+
+    /**
+     * @return the type of the file to process
+     */
+    @NonNull
+    String getFileType() {
+        return mFileType;
+    }
+
+    /**
+     * @return the name of the plugin that the file will be opened with
+     */
+    @NonNull
+    String getUniquePluginName() {
+        return mUniquePluginName;
+    }
+
+    /**
+     * @return the internal services that have to be run on the file
+     */
+    @NonNull
+    List<InternalServices> getInternalServices() {
+        return mInternalServices;
+    }
+
+    /**
+     * @return whether the user is waiting for the file
+     */
+    boolean isInteractive() {
+        return mInteractive;
+    }
+
+    /**
+     * @return the moment the job was created
+     */
+    @NonNull
+    Date getCreated() {
+        return mCreated;
+    }
+
+    /**
+     * @return the path of the file with the extracted text, or null if the job is not done yet
+     */
+    @Nullable
+    String getResultPath() {
+        return mResultPath;
+    }
+
+    /**
+     * @param resultPath the path of the file with the extracted text
+     */
+    void setResultPath(@Nullable final String resultPath) {
+        mResultPath = resultPath;
+    }
+
+    /**
+     * @return true if the file was processed and the extracted text can be used
+     */
+    boolean isReady() {
+        return mResultPath != null;
+    }
+}
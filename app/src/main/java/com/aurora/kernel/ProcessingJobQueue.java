@@ -0,0 +1,388 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.plugin.InternalServices;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of the files that still have to be processed by the internal services, and of the files that were processed
+ * in the background and have not been opened yet. The queue is written to disk every time it changes, so the jobs
+ * in it survive when the process is killed. The file is replaced as a whole, so a write that is interrupted never
+ * leaves half a queue behind. Jobs that do the same work are only added once. The results of jobs that are not
+ * opened are evicted when they get old or when all results together get too large.
+ */
+final class ProcessingJobQueue {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "ProcessingJobQueue";
+
+    /**
+     * The name of the file in which the jobs are kept
+     */
+    static final String JOBS_FILE = "processing-jobs.json";
+
+    /**
+     * The suffix of the file to which the jobs are written before it replaces the jobs file
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The name of the directory in which the extracted texts of finished jobs are kept
+     */
+    static final String RESULTS_DIRECTORY = "processed-files";
+
+    /**
+     * The age after which the result of a job that was not opened is evicted, in milliseconds
+     */
+    static final long MAX_RESULT_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * The number of bytes all results together may take, above which the oldest results are evicted
+     */
+    static final long MAX_RESULTS_BYTES = 50L * 1024 * 1024;
+
+    /**
+     * The directory in which the jobs and their results are kept
+     */
+    private final File mDirectory;
+
+    /**
+     * The jobs in the order they were added, or null if they were not read from disk yet
+     */
+    private List<ProcessingJob> mJobs = null;
+
+    /**
+     * Creates a queue. The jobs are only read from disk when the queue is first used.
+     *
+     * @param directory the directory in which the jobs and their results are kept, usually the files directory of
+     *                  the app
+     */
+    ProcessingJobQueue(@NonNull final File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Adds a job to the queue, unless a job that does the same work is already in it
+     *
+     * @param job the job to add
+     * @return the job that is in the queue, which is the existing job if there was one
+     */
+    synchronized @NonNull ProcessingJob add(@NonNull final ProcessingJob job) {
+        for (ProcessingJob existing : getJobs()) {
+            if (existing.isSameWork(job)) {
+                return existing;
+            }
+        }
+
+        mJobs.add(job);
+        writeJobs();
+
+        return job;
+    }
+
+    /**
+     * Removes a job from the queue, together with its result. Nothing happens if the job is not in the queue.
+     *
+     * @param job the job to remove
+     */
+    synchronized void remove(@NonNull final ProcessingJob job) {
+        ProcessingJob removed = find(job.getId());
+        if (removed == null) {
+            return;
+        }
+
+        mJobs.remove(removed);
+        writeJobs();
+
+        if (removed.getResultPath() != null && !new File(removed.getResultPath()).delete()) {
+            Log.e(CLASS_TAG, "Could not delete the result of job " + removed.getId());
+        }
+    }
+
+    /**
+     * Writes the extracted text of a job to disk and marks the job as ready. The text is thrown away if the job
+     * was removed in the meantime.
+     *
+     * @param job           the job that is done
+     * @param extractedText the extracted text of the file of the job
+     * @throws IOException when the extracted text could not be written
+     */
+    void markReady(@NonNull final ProcessingJob job, @NonNull final ExtractedText extractedText)
+            throws IOException {
+        File resultsDirectory = new File(mDirectory, RESULTS_DIRECTORY);
+        if (!resultsDirectory.isDirectory() && !resultsDirectory.mkdirs()) {
+            throw new IOException("Could not create " + resultsDirectory);
+        }
+
+        // Writing the text can take a while, the queue is not locked in the meantime
+        File result = new File(resultsDirectory, job.getId() + ".json");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(result), StandardCharsets.UTF_8))) {
+            writer.write(extractedText.toJSON());
+        }
+
+        synchronized (this) {
+            ProcessingJob queued = find(job.getId());
+
+            if (queued == null) {
+                if (!result.delete()) {
+                    Log.e(CLASS_TAG, "Could not delete the result of removed job " + job.getId());
+                }
+                return;
+            }
+
+            queued.setResultPath(result.getPath());
+            writeJobs();
+            evictResults();
+        }
+    }
+
+    /**
+     * Evicts the results of jobs that were not opened for {@link #MAX_RESULT_AGE_MILLIS}, and then the oldest
+     * results until all results together take at most {@link #MAX_RESULTS_BYTES}. The jobs of the evicted results
+     * are removed, so the files are processed again when they are opened.
+     */
+    synchronized void evictResults() {
+        evictResults(MAX_RESULT_AGE_MILLIS, MAX_RESULTS_BYTES);
+    }
+
+    /**
+     * Evicts the results that are too old, and then the oldest results until the rest is small enough. Files in
+     * the results directory that belong to no job, like the result of a job that was removed while the process
+     * was killed, are evicted when they are too old. It is not private so tests can use other limits.
+     *
+     * @param maxAgeMillis the age after which a result is evicted, in milliseconds
+     * @param maxBytes     the number of bytes all results together may take
+     */
+    synchronized void evictResults(final long maxAgeMillis, final long maxBytes) {
+        long now = System.currentTimeMillis();
+        List<ProcessingJob> readyJobs = new ArrayList<>();
+        Set<String> resultPaths = new HashSet<>();
+        for (ProcessingJob job : getJobs()) {
+            if (job.isReady()) {
+                readyJobs.add(job);
+                resultPaths.add(job.getResultPath());
+            }
+        }
+
+        // The oldest results are evicted first
+        Collections.sort(readyJobs, (ProcessingJob first, ProcessingJob second) ->
+                Long.compare(new File(first.getResultPath()).lastModified(),
+                        new File(second.getResultPath()).lastModified()));
+
+        long totalBytes = 0;
+        for (ProcessingJob job : readyJobs) {
+            totalBytes += new File(job.getResultPath()).length();
+        }
+
+        List<ProcessingJob> evicted = new ArrayList<>();
+        for (ProcessingJob job : readyJobs) {
+            File result = new File(job.getResultPath());
+            if (result.exists() && now - result.lastModified() <= maxAgeMillis && totalBytes <= maxBytes) {
+                break;
+            }
+
+            totalBytes -= result.length();
+            evicted.add(job);
+            if (result.exists() && !result.delete()) {
+                Log.e(CLASS_TAG, "Could not delete the result of job " + job.getId());
+            }
+        }
+
+        if (!evicted.isEmpty()) {
+            mJobs.removeAll(evicted);
+            writeJobs();
+            Log.i(CLASS_TAG, "Evicted the results of " + evicted.size() + " processed files that were not opened");
+        }
+
+        File[] results = new File(mDirectory, RESULTS_DIRECTORY).listFiles();
+        if (results == null) {
+            return;
+        }
+        for (File result : results) {
+            if (!resultPaths.contains(result.getPath()) && now - result.lastModified() > maxAgeMillis
+                    && !result.delete()) {
+                Log.e(CLASS_TAG, "Could not delete the result " + result.getName() + " of no job");
+            }
+        }
+    }
+
+    /**
+     * Forgets the jobs that were read from disk, because the app runs low on memory. They are read again when the
+     * queue is used next, since every change to them was already written to disk.
+     */
+    synchronized void trimMemory() {
+        mJobs = null;
+    }
+
+    /**
+     * Reads the extracted text of a job that is ready
+     *
+     * @param job the job that is ready
+     * @return the extracted text of the file of the job
+     * @throws IOException when the extracted text could not be read
+     */
+    @NonNull
+    ExtractedText readResult(@NonNull final ProcessingJob job) throws IOException {
+        String resultPath = job.getResultPath();
+        if (resultPath == null) {
+            throw new FileNotFoundException("Job " + job.getId() + " is not ready");
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(resultPath), StandardCharsets.UTF_8))) {
+            StringBuilder json = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                json.append(line).append('\n');
+            }
+
+            return ExtractedText.fromJson(json.toString());
+        } catch (JsonParseException e) {
+            throw new IOException("The result of job " + job.getId() + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Finds a job that processed a file with some internal services and is ready
+     *
+     * @param fileUri          the uri of the file
+     * @param internalServices the internal services that the file should have been processed with
+     * @return the job that is ready, or null if there is none
+     */
+    synchronized @Nullable ProcessingJob findReady(@NonNull final String fileUri,
+                                                   @NonNull final List<InternalServices> internalServices) {
+        for (ProcessingJob job : getJobs()) {
+            if (job.isReady() && job.isSameWork(fileUri, internalServices)) {
+                return job;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the jobs that still have to run
+     *
+     * @param interactive true to get the jobs the user was waiting for, false to get the jobs nobody waits for
+     * @return a copy of the jobs that are not ready, in the order they were added
+     */
+    synchronized @NonNull List<ProcessingJob> getPendingJobs(final boolean interactive) {
+        List<ProcessingJob> pending = new ArrayList<>();
+        for (ProcessingJob job : getJobs()) {
+            if (!job.isReady() && job.isInteractive() == interactive) {
+                pending.add(job);
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Private helper method that finds a job by its id
+     *
+     * @param id the id of the job
+     * @return the job in the queue, or null if it is not in the queue
+     */
+    private @Nullable ProcessingJob find(@NonNull final String id) {
+        for (ProcessingJob job : getJobs()) {
+            if (job.getId().equals(id)) {
+                return job;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Private helper method that gets the jobs, and reads them from disk the first time
+     *
+     * @return the jobs in the queue
+     */
+    private @NonNull List<ProcessingJob> getJobs() {
+        if (mJobs != null) {
+            return mJobs;
+        }
+
+        mJobs = new ArrayList<>();
+        File jobsFile = new File(mDirectory, JOBS_FILE);
+        if (!jobsFile.exists()) {
+            return mJobs;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(jobsFile), StandardCharsets.UTF_8))) {
+            ProcessingJob[] jobs = new Gson().fromJson(reader, ProcessingJob[].class);
+            if (jobs != null) {
+                for (ProcessingJob job : jobs) {
+                    // Entries without an id or a file cannot be run nor removed again
+                    if (job != null && job.getId() != null && job.getFileUri() != null) {
+                        mJobs.add(job);
+                    }
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            // The jobs are lost, but the files can still be opened again. The corrupt file is removed so the queue
+            // starts over empty instead of failing on every read.
+            Log.e(CLASS_TAG, "The processing jobs could not be read, starting with an empty queue", e);
+            mJobs.clear();
+            if (!jobsFile.delete()) {
+                Log.e(CLASS_TAG, "Could not delete the corrupt processing jobs");
+            }
+        }
+
+        return mJobs;
+    }
+
+    /**
+     * Private helper method that writes the jobs back to disk. This should be called when the jobs are changed.
+     * The jobs are written to a temporary file first, which then replaces the jobs file, so the jobs file always
+     * holds either the old or the new jobs.
+     */
+    private void writeJobs() {
+        File jobsFile = new File(mDirectory, JOBS_FILE);
+        File temporaryFile = new File(mDirectory, JOBS_FILE + TEMPORARY_SUFFIX);
+        try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            writer.write(new Gson().toJson(mJobs.toArray(new ProcessingJob[0]), ProcessingJob[].class));
+            writer.flush();
+            // Make sure the jobs are on disk before the rename makes them the jobs of the queue
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Something went wrong while writing the processing jobs", e);
+            if (!temporaryFile.delete()) {
+                Log.e(CLASS_TAG, "Could not delete the temporary processing jobs");
+            }
+            return;
+        }
+
+        if (!temporaryFile.renameTo(jobsFile)) {
+            Log.e(CLASS_TAG, "Could not replace the processing jobs");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.aurora.kernel;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.firebase.jobdispatcher.Constraint;
+import com.firebase.jobdispatcher.FirebaseJobDispatcher;
+import com.firebase.jobdispatcher.GooglePlayDriver;
+import com.firebase.jobdispatcher.Job;
+import com.firebase.jobdispatcher.JobParameters;
+import com.firebase.jobdispatcher.JobService;
+import com.firebase.jobdispatcher.Lifetime;
+import com.firebase.jobdispatcher.RetryStrategy;
+import com.firebase.jobdispatcher.Trigger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.disposables.Disposable;
+
+/**
+ * Service that runs the jobs in the {@link ProcessingJobQueue} when the system allows it. Jobs that were
+ * interrupted because the process was killed are resumed as soon as possible, jobs that nobody waits for only run
+ * when the device is charging and idle.
+ */
+public class ProcessingJobService extends JobService {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "ProcessingJobService";
+
+    /**
+     * The tag of the scheduled work that resumes the jobs the user was waiting for
+     */
+    static final String INTERRUPTED_JOBS_TAG = "com.aurora.kernel.interrupted-processing-jobs";
+
+    /**
+     * The tag of the scheduled work that runs the jobs nobody waits for
+     */
+    static final String BACKGROUND_JOBS_TAG = "com.aurora.kernel.background-processing-jobs";
+
+    /**
+     * The work that is running, by the tag it was scheduled with
+     */
+    private final Map<String, Disposable> mRunningWork = new ConcurrentHashMap<>();
+
+    /**
+     * Schedules the pending jobs of the queue to be run by this service
+     *
+     * @param context     the android application context
+     * @param interactive true to run the jobs the user was waiting for now, false to run the jobs nobody waits for
+     *                    when the device is charging and idle
+     */
+    static void schedule(@NonNull final Context context, final boolean interactive) {
+        FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(new GooglePlayDriver(context));
+
+        // The queue itself is kept on disk, so the kernel schedules the work again after a reboot
+        Job.Builder builder = dispatcher.newJobBuilder()
+                .setService(ProcessingJobService.class)
+                .setTag(interactive ? INTERRUPTED_JOBS_TAG : BACKGROUND_JOBS_TAG)
+                .setRecurring(false)
+                .setLifetime(Lifetime.UNTIL_NEXT_BOOT)
+                .setTrigger(Trigger.NOW)
+                .setReplaceCurrent(false)
+                .setRetryStrategy(RetryStrategy.DEFAULT_EXPONENTIAL);
+
+        if (!interactive) {
+            builder.setConstraints(Constraint.DEVICE_CHARGING, Constraint.DEVICE_IDLE);
+        }
+
+        if (dispatcher.schedule(builder.build()) != FirebaseJobDispatcher.SCHEDULE_RESULT_SUCCESS) {
+            Log.e(CLASS_TAG, "Could not schedule the processing jobs, they are retried on the next start");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(@NonNull final JobParameters job) {
+        AuroraCommunicator auroraCommunicator;
+        try {
+            auroraCommunicator = Kernel.getInstance(getApplicationContext()).getAuroraCommunicator();
+        } catch (ContextNullException e) {
+            Log.e(CLASS_TAG, "The kernel could not be started to run the processing jobs", e);
+            return false;
+        }
+
+        final String tag = job.getTag();
+        auroraCommunicator.runPendingJobs(INTERRUPTED_JOBS_TAG.equals(tag))
+                .doOnSubscribe((Disposable work) -> mRunningWork.put(tag, work))
+                .subscribe(() -> {
+                    mRunningWork.remove(tag);
+                    jobFinished(job, false);
+                }, (Throwable e) -> {
+                    Log.e(CLASS_TAG, "Something went wrong while running the processing jobs", e);
+                    mRunningWork.remove(tag);
+                    jobFinished(job, true);
+                });
+
+        // The jobs run on another thread
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(@NonNull final JobParameters job) {
+        Disposable work = mRunningWork.remove(job.getTag());
+        if (work != null) {
+            work.dispose();
+        }
+
+        // The jobs that did not finish are still in the queue, run them again later
+        return true;
+    }
+}
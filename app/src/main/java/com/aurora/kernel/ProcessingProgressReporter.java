@@ -0,0 +1,206 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.internalservice.ProcessingPhase;
+import com.aurora.internalservice.ProgressListener;
+import com.aurora.kernel.event.ProcessingProgressEvent;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Listener that turns the progress the internal services report for a file into {@link ProcessingProgressEvent}s on
+ * the bus, and that measures the time spent in every phase from the same reports.
+ * <p>
+ * The events are throttled, so a service that reports every byte or paragraph does not flood the bus. An event is
+ * always posted when a phase starts or is done, and otherwise at most once every {@link #MIN_POST_INTERVAL_NANOS}.
+ * <p>
+ * The time between two reports on the same thread is spent on the phase of the second report if it reports progress,
+ * and on the phase of the first report if the second one starts a new phase. A phase that reported it is done is not
+ * charged for the time after that, like the time a thread waits for the NLP models after the extraction. Phases that
+ * run on several threads at the same time, like the annotation of the sections, add up the time of every thread.
+ */
+class ProcessingProgressReporter implements ProgressListener {
+    /**
+     * The minimum time between two events of the same phase, in nanoseconds
+     */
+    private static final long MIN_POST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The bus the events are posted on
+     */
+    private final Bus mBus;
+
+    /**
+     * The uri of the file that is processed
+     */
+    private final String mFileUri;
+
+    /**
+     * The name of the file that is processed
+     */
+    private final String mFileRef;
+
+    /**
+     * The correlation id of the request of the file, which is copied to the events
+     */
+    private final long mCorrelationId;
+
+    /**
+     * The time spent in every phase, in nanoseconds, by the ordinal of the phase
+     */
+    private final AtomicLongArray mPhaseNanos = new AtomicLongArray(ProcessingPhase.values().length);
+
+    /**
+     * The phase of the last report of every thread and when it was made
+     */
+    private final ThreadLocal<PhaseMark> mLastMark = new ThreadLocal<>();
+
+    /**
+     * The phase of the last event that was posted, or null if no event was posted yet
+     */
+    private ProcessingPhase mLastPostedPhase = null;
+
+    /**
+     * When the last event was posted, in nanoseconds
+     */
+    private long mLastPostNanos = 0;
+
+    /**
+     * Creates a reporter for the processing of a file
+     *
+     * @param bus           the bus the events are posted on
+     * @param fileUri       the uri of the file that is processed
+     * @param fileRef       the name of the file that is processed
+     * @param correlationId the correlation id of the request of the file
+     */
+    ProcessingProgressReporter(@NonNull final Bus bus, @NonNull final String fileUri, @NonNull final String fileRef,
+                               final long correlationId) {
+        mBus = bus;
+        mFileUri = fileUri;
+        mFileRef = fileRef;
+        mCorrelationId = correlationId;
+    }
+
+    @Override
+    public void onPhaseStarted(final ProcessingPhase phase) {
+        long now = System.nanoTime();
+        mark(phase, now, true, true);
+
+        post(phase, 0, 0, now, true);
+    }
+
+    @Override
+    public void onProgress(final ProcessingPhase phase, final long done, final long total) {
+        long now = System.nanoTime();
+        boolean phaseDone = total > 0 && done >= total;
+        mark(phase, now, false, !phaseDone);
+
+        post(phase, done, total, now, phaseDone);
+    }
+
+    /**
+     * Gets the time spent in every phase so far. Phases that were not reported are left out.
+     *
+     * @return the time spent in every phase, in nanoseconds
+     */
+    @NonNull
+    Map<ProcessingPhase, Long> getPhaseTimings() {
+        Map<ProcessingPhase, Long> timings = new EnumMap<>(ProcessingPhase.class);
+        for (ProcessingPhase phase : ProcessingPhase.values()) {
+            long nanos = mPhaseNanos.get(phase.ordinal());
+            if (nanos > 0) {
+                timings.put(phase, nanos);
+            }
+        }
+
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * Private helper method that adds the time since the previous report of the current thread to a phase
+     *
+     * @param phase       the phase of the report
+     * @param now         the current time, in nanoseconds
+     * @param startsPhase true if the report starts the phase, so the time was spent on the previous phase
+     * @param open        false if the report says the phase is done, so the time after it is not spent on the phase
+     */
+    private void mark(final ProcessingPhase phase, final long now, final boolean startsPhase, final boolean open) {
+        PhaseMark last = mLastMark.get();
+        if (last == null) {
+            mLastMark.set(new PhaseMark(phase, now, open));
+            return;
+        }
+
+        if (!startsPhase) {
+            mPhaseNanos.addAndGet(phase.ordinal(), now - last.mNanos);
+        } else if (last.mOpen) {
+            mPhaseNanos.addAndGet(last.mPhase.ordinal(), now - last.mNanos);
+        }
+        last.mPhase = phase;
+        last.mNanos = now;
+        last.mOpen = open;
+    }
+
+    /**
+     * Private helper method that posts an event, unless an event of the same phase was posted very recently
+     *
+     * @param phase the phase the processing is in
+     * @param done  the number of parts of the phase that are done
+     * @param total the total number of parts of the phase
+     * @param now   the current time, in nanoseconds
+     * @param force true if the event should be posted anyway, because the phase starts or is done
+     */
+    private void post(final ProcessingPhase phase, final long done, final long total, final long now,
+                      final boolean force) {
+        synchronized (this) {
+            if (!force && phase == mLastPostedPhase && now - mLastPostNanos < MIN_POST_INTERVAL_NANOS) {
+                return;
+            }
+
+            mLastPostedPhase = phase;
+            mLastPostNanos = now;
+        }
+
+        ProcessingProgressEvent event = new ProcessingProgressEvent(mFileUri, mFileRef, phase, done, total);
+        event.setCorrelationId(mCorrelationId);
+        mBus.post(event);
+    }
+
+    /**
+     * The phase of the last report of a thread and when it was made, which is updated on every report
+     */
+    private static final class PhaseMark {
+        /**
+         * The phase of the report
+         */
+        private ProcessingPhase mPhase;
+
+        /**
+         * When the report was made, in nanoseconds
+         */
+        private long mNanos;
+
+        /**
+         * False if the report said the phase is done
+         */
+        private boolean mOpen;
+
+        /**
+         * Creates a mark of a report
+         *
+         * @param phase the phase of the report
+         * @param nanos when the report was made, in nanoseconds
+         * @param open  false if the report said the phase is done
+         */
+        private PhaseMark(final ProcessingPhase phase, final long nanos, final boolean open) {
+            mPhase = phase;
+            mNanos = nanos;
+            mOpen = open;
+        }
+    }
+}
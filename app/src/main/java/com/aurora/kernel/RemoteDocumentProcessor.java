@@ -0,0 +1,448 @@
+package com.aurora.kernel;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.internalservice.internalprocessor.PreviewListener;
+import com.aurora.plugin.InternalServices;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Runs the internal services on a document in the separate process of the {@link IsolatedProcessingService}.
+ * A document that is a file is passed on as a duplicate of its file descriptor, so the service can read it at random
+ * positions like in the process of the app. Other documents are streamed to the service through a pipe. The
+ * extracted text comes back through a file descriptor. When the processing process crashes, for example because it
+ * ran out of memory, only the document that was being processed fails. The system starts the service again for the
+ * next document.
+ */
+final class RemoteDocumentProcessor implements DocumentProcessor, ServiceConnection {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "RemoteDocumentProcessor";
+
+    /**
+     * The maximum number of seconds to wait for the processing process to start
+     */
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * The size of the buffer with which the document is copied to the processing process
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The android application context, with which the service is bound
+     */
+    private final Context mContext;
+
+    /**
+     * The id of the last request, so requests can be cancelled
+     */
+    private final AtomicLong mLastRequestId = new AtomicLong();
+
+    /**
+     * The profile with which the documents are processed, which is passed on with every document because the
+     * processing process can be restarted
+     */
+    private volatile ExecutionProfile mExecutionProfile = ExecutionProfile.BALANCED;
+
+    /**
+     * The interface of the service, or null if it is not connected
+     */
+    private IProcessingService mService = null;
+
+    /**
+     * Whether the service is bound, in which case the system reconnects it when the processing process restarts
+     */
+    private boolean mBound = false;
+
+    /**
+     * Creates a processor that runs the internal services in the processing process. The process is only started
+     * when the first document is processed.
+     *
+     * @param applicationContext the android application context
+     */
+    RemoteDocumentProcessor(@NonNull final Context applicationContext) {
+        mContext = applicationContext;
+    }
+
+    /**
+     * Runs internal services on a document in the processing process, and waits for the result
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param cancellationToken token that cancels the processing in the other process
+     * @return the extracted text, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason, also when the
+     *                                       processing process crashed
+     */
+    @NonNull
+    @Override
+    public ExtractedText process(@NonNull final String fileUri, @NonNull final String fileRef,
+                                 @NonNull final String type, @NonNull final InputStream file,
+                                 @NonNull final List<InternalServices> internalServices,
+                                 @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        List<String> serviceNames = getServiceNames(internalServices);
+
+        return call(file, fileRef, cancellationToken,
+                (IProcessingService service, long id, ParcelFileDescriptor input) ->
+                        service.process(id, input, fileUri, fileRef, type, serviceNames));
+    }
+
+    /**
+     * Runs internal services on a document in the processing process, and waits for the result. The result only comes
+     * back when the whole document was processed, so no preview is given.
+     *
+     * @param fileUri           the uri of the file to be processed
+     * @param fileRef           the name of the file to be processed
+     * @param type              the file type (extension)
+     * @param file              the stream containing the file, which is closed when it has been read
+     * @param internalServices  the internal services that should be run on the file
+     * @param previewSections   the number of sections in the preview, which is ignored
+     * @param previewListener   the listener that would receive the preview, which is never called
+     * @param cancellationToken token that cancels the processing in the other process
+     * @return the extracted text, which is empty if no text had to be extracted
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason, also when the
+     *                                       processing process crashed
+     */
+    @NonNull
+    @Override
+    public ExtractedText process(@NonNull final String fileUri, @NonNull final String fileRef,
+                                 @NonNull final String type, @NonNull final InputStream file,
+                                 @NonNull final List<InternalServices> internalServices,
+                                 final int previewSections, @NonNull final PreviewListener previewListener,
+                                 @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        return process(fileUri, fileRef, type, file, internalServices, cancellationToken);
+    }
+
+    /**
+     * Runs the internal services that work on an extracted text on a text that was already extracted, in the
+     * processing process. The text is passed on as JSON in the same way as a document.
+     *
+     * @param fileRef           the name of the file the text was extracted from
+     * @param extractedText     the text that was already extracted
+     * @param internalServices  the internal services that should be run on the text
+     * @param cancellationToken token that cancels the processing in the other process
+     * @return the extended text
+     * @throws DocumentNotSupportedException when the text could not be extended, also when the processing process
+     *                                       crashed
+     */
+    @NonNull
+    @Override
+    public ExtractedText extend(@NonNull final String fileRef, @NonNull final ExtractedText extractedText,
+                                @NonNull final List<InternalServices> internalServices,
+                                @NonNull final CancellationToken cancellationToken)
+            throws DocumentNotSupportedException {
+        List<String> serviceNames = getServiceNames(internalServices);
+        InputStream json = new ByteArrayInputStream(extractedText.toJSON().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            return call(json, fileRef, cancellationToken,
+                    (IProcessingService service, long id, ParcelFileDescriptor input) ->
+                            service.extend(id, input, fileRef, serviceNames));
+        } catch (FileTypeNotSupportedException e) {
+            // Only documents have a file type
+            throw new DocumentNotSupportedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Private helper method that passes an input on to the processing process, and waits for the result of a call
+     * to the service. The file descriptor of a file is passed on as is, other inputs are streamed through a pipe.
+     *
+     * @param file              the stream containing the input, which is closed when it has been read
+     * @param fileRef           the name of the file that is processed, for logging
+     * @param cancellationToken token that cancels the processing in the other process
+     * @param call              the call to the service, which reads the input from the file descriptor
+     * @return the extracted text
+     * @throws FileTypeNotSupportedException when the type of the file is not supported
+     * @throws DocumentNotSupportedException when the file could not be processed for another reason, also when the
+     *                                       processing process crashed
+     */
+    @NonNull
+    private ExtractedText call(@NonNull final InputStream file, @NonNull final String fileRef,
+                               @NonNull final CancellationToken cancellationToken, @NonNull final RemoteCall call)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        cancellationToken.throwIfCancelled();
+
+        final IProcessingService service = getService();
+        final long id = mLastRequestId.incrementAndGet();
+
+        ParcelFileDescriptor input = duplicateFile(file, fileRef);
+        Disposable copy;
+        if (input != null) {
+            // The other process reads the file through its own file descriptor
+            closeQuietly(file);
+            copy = Disposables.disposed();
+        } else {
+            ParcelFileDescriptor[] pipe;
+            try {
+                pipe = ParcelFileDescriptor.createPipe();
+            } catch (IOException e) {
+                closeQuietly(file);
+                throw new DocumentNotSupportedException("The document could not be passed on: " + e.getMessage());
+            }
+
+            // The document is written into the pipe while the other process reads it
+            input = pipe[0];
+            copy = Schedulers.io().scheduleDirect(() -> copy(file, pipe[1], fileRef));
+        }
+
+        Runnable cancel = () -> {
+            try {
+                service.cancel(id);
+            } catch (RemoteException e) {
+                Log.e(CLASS_TAG, "Could not cancel the processing of " + fileRef, e);
+            }
+        };
+        cancellationToken.addListener(cancel);
+
+        try {
+            service.setExecutionProfile(mExecutionProfile.name());
+            return readResult(call.call(service, id, input));
+        } catch (UnsupportedOperationException e) {
+            throw new FileTypeNotSupportedException(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new DocumentNotSupportedException(e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new CancellationException(e.getMessage());
+        } catch (RemoteException e) {
+            // Most likely the processing process ran out of memory, the app itself keeps running
+            Log.e(CLASS_TAG, "The processing process died while processing " + fileRef, e);
+            throw new DocumentNotSupportedException("The document is too large or complex to process");
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Something went wrong reading the extracted text of " + fileRef, e);
+            throw new DocumentNotSupportedException("The document could not be processed");
+        } finally {
+            cancellationToken.removeListener(cancel);
+            copy.dispose();
+            closeQuietly(input);
+        }
+    }
+
+    /**
+     * Private helper method that duplicates the file descriptor of a stream that reads a file, like the streams
+     * the content resolver opens
+     *
+     * @param file    the stream containing the input
+     * @param fileRef the name of the file, for logging
+     * @return a duplicate of the file descriptor, or null if the stream does not read from a file descriptor
+     */
+    private static ParcelFileDescriptor duplicateFile(@NonNull final InputStream file,
+                                                      @NonNull final String fileRef) {
+        if (!(file instanceof FileInputStream)) {
+            return null;
+        }
+
+        try {
+            return ParcelFileDescriptor.dup(((FileInputStream) file).getFD());
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Could not pass on the file descriptor of " + fileRef + ", streaming it instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Private helper method that gets the names of internal services, which can be passed to the other process
+     *
+     * @param internalServices the internal services
+     * @return the names of the internal services
+     */
+    private static List<String> getServiceNames(@NonNull final List<InternalServices> internalServices) {
+        List<String> serviceNames = new ArrayList<>();
+        for (InternalServices internalService : internalServices) {
+            serviceNames.add(internalService.name());
+        }
+
+        return serviceNames;
+    }
+
+    /**
+     * The time the stages take is logged by the processing process
+     *
+     * @return an empty map
+     */
+    @NonNull
+    @Override
+    public Map<String, Long> getLastStageTimings() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Changes the resources that the processing process uses for the documents that are processed from now on
+     *
+     * @param profile the profile that sets the number of threads, the number of documents at the same time and
+     *                whether the NLP models are loaded eagerly
+     */
+    @Override
+    public void setExecutionProfile(@NonNull final ExecutionProfile profile) {
+        mExecutionProfile = profile;
+    }
+
+    @Override
+    public synchronized void onServiceConnected(ComponentName name, IBinder binder) {
+        mService = IProcessingService.Stub.asInterface(binder);
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void onServiceDisconnected(ComponentName name) {
+        // The processing process died, the system connects again when it has restarted the service
+        Log.i(CLASS_TAG, "The processing process stopped, it will be restarted");
+        mService = null;
+    }
+
+    @Override
+    public synchronized void onBindingDied(ComponentName name) {
+        // The system will not reconnect this binding anymore, bind again for the next document
+        mService = null;
+        mBound = false;
+        mContext.unbindService(this);
+    }
+
+    /**
+     * Private helper method that binds to the service if needed, and waits until it is connected
+     *
+     * @return the interface of the service
+     * @throws DocumentNotSupportedException when the service could not be started
+     */
+    private synchronized IProcessingService getService() throws DocumentNotSupportedException {
+        if (!mBound) {
+            mBound = mContext.bindService(new Intent(mContext, IsolatedProcessingService.class), this,
+                    Context.BIND_AUTO_CREATE);
+
+            if (!mBound) {
+                throw new DocumentNotSupportedException("The processing service could not be started");
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECT_TIMEOUT_SECONDS);
+        while (mService == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new DocumentNotSupportedException("The processing service did not start in time");
+            }
+
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the processing service");
+            }
+        }
+
+        return mService;
+    }
+
+    /**
+     * Private helper method that copies a document into the pipe to the processing process, and closes both
+     *
+     * @param file    the stream containing the document
+     * @param pipe    the end of the pipe to write to
+     * @param fileRef the name of the file, for logging
+     */
+    private static void copy(@NonNull final InputStream file, @NonNull final ParcelFileDescriptor pipe,
+                             @NonNull final String fileRef) {
+        try (InputStream input = file;
+             OutputStream output = new ParcelFileDescriptor.AutoCloseOutputStream(pipe)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // The processing process stopped reading, it reports why itself
+            Log.i(CLASS_TAG, "Stopped passing on " + fileRef + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Private helper method that reads the extracted text from the file descriptor the service returned
+     *
+     * @param result the file descriptor with the extracted text as JSON
+     * @return the extracted text
+     * @throws IOException when the extracted text could not be read
+     */
+    private static ExtractedText readResult(@NonNull final ParcelFileDescriptor result) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(result), StandardCharsets.UTF_8))) {
+            StringBuilder json = new StringBuilder();
+            char[] buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                json.append(buffer, 0, read);
+            }
+
+            return ExtractedText.fromJson(json.toString());
+        }
+    }
+
+    /**
+     * Private helper method that closes a stream or a file descriptor, and only logs when that fails
+     *
+     * @param closeable the stream or file descriptor to close
+     */
+    private static void closeQuietly(@NonNull final Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(CLASS_TAG, "Could not close a file", e);
+        }
+    }
+
+    /**
+     * A call to the processing service that reads its input from a file descriptor
+     */
+    private interface RemoteCall {
+        /**
+         * Calls the processing service
+         *
+         * @param service the interface of the service
+         * @param id      the id of the request, with which it can be cancelled
+         * @param input   the file descriptor from which the service reads the input
+         * @return a file descriptor from which the result is read as JSON
+         * @throws RemoteException when the processing process died
+         */
+        ParcelFileDescriptor call(IProcessingService service, long id, ParcelFileDescriptor input)
+                throws RemoteException;
+    }
+}
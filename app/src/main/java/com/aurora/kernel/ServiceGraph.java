@@ -0,0 +1,339 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.plugin.InternalServices;
+import com.aurora.plugin.ServiceArtifact;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Scheduler;
+
+/**
+ * Dependency graph of the stages that run internal services on a document. A stage depends on the stages that
+ * produce the artifacts its internal services read, and on the stages it is explicitly given. When the graph is
+ * executed, every stage starts as soon as the stages it depends on are done, so stages that do not depend on each
+ * other run at the same time. A graph can only be executed once.
+ */
+final class ServiceGraph {
+
+    /**
+     * Work done by a stage of the graph
+     */
+    interface Stage {
+        /**
+         * Runs the stage
+         *
+         * @throws FileTypeNotSupportedException when the stage reads a document of an unsupported type
+         * @throws DocumentNotSupportedException when the stage could not read the document
+         */
+        void run() throws FileTypeNotSupportedException, DocumentNotSupportedException;
+    }
+
+    /**
+     * A stage in the graph, with the stages it depends on
+     */
+    static final class Node {
+        /**
+         * The name of the stage, under which its time is reported
+         */
+        private final String mName;
+
+        /**
+         * The work done by the stage
+         */
+        private final Stage mStage;
+
+        /**
+         * The stages that can only start when this stage is done
+         */
+        private final List<Node> mDependents = new ArrayList<>();
+
+        /**
+         * The number of stages this stage depends on
+         */
+        private int mDependencies;
+
+        /**
+         * The number of stages this stage depends on that are not done yet, while the graph is executed
+         */
+        private final AtomicInteger mRemainingDependencies = new AtomicInteger();
+
+        /**
+         * Creates a node
+         *
+         * @param name  the name of the stage
+         * @param stage the work done by the stage
+         */
+        private Node(@NonNull final String name, @NonNull final Stage stage) {
+            mName = name;
+            mStage = stage;
+        }
+
+        /**
+         * Private helper method that makes this stage wait for another stage
+         *
+         * @param dependency the stage that has to be done before this one starts
+         */
+        private void dependOn(@NonNull final Node dependency) {
+            if (!dependency.mDependents.contains(this)) {
+                dependency.mDependents.add(this);
+                mDependencies++;
+            }
+        }
+    }
+
+    /**
+     * The stages in the order they were added, which is always an order in which they can run one after the other
+     */
+    private final List<Node> mNodes = new ArrayList<>();
+
+    /**
+     * The stages that produce every artifact. Several stages can produce the same artifact when they each run the
+     * internal services on a part of the document.
+     */
+    private final Map<ServiceArtifact, List<Node>> mProducers = new EnumMap<>(ServiceArtifact.class);
+
+    /**
+     * The time every stage took in nanoseconds, while the graph is executed
+     */
+    private final Map<String, Long> mTimings = new ConcurrentHashMap<>();
+
+    /**
+     * The number of stages that are not done yet, while the graph is executed
+     */
+    private final AtomicInteger mPendingNodes = new AtomicInteger();
+
+    /**
+     * The first error that was thrown by a stage
+     */
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<>();
+
+    /**
+     * Released when all stages are done or a stage failed
+     */
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    /**
+     * Whether the graph has been executed
+     */
+    private boolean mExecuted;
+
+    /**
+     * Checks if the artifacts that some internal services read are produced by stages in the graph
+     *
+     * @param services the internal services
+     * @return the artifacts that the services read, that they do not produce themselves, and that no stage in the
+     * graph produces. This is empty when the services can be added to the graph.
+     */
+    Set<ServiceArtifact> getMissingInputs(@NonNull final Collection<InternalServices> services) {
+        Set<ServiceArtifact> missing = EnumSet.noneOf(ServiceArtifact.class);
+        Set<ServiceArtifact> produced = EnumSet.noneOf(ServiceArtifact.class);
+        for (InternalServices service : services) {
+            missing.addAll(service.getInputs());
+            produced.addAll(service.getOutputs());
+        }
+
+        // The document is always there
+        missing.remove(ServiceArtifact.DOCUMENT);
+        missing.removeAll(produced);
+        missing.removeAll(mProducers.keySet());
+
+        return missing;
+    }
+
+    /**
+     * Adds a stage that runs some internal services. It depends on the stages that produce the artifacts the
+     * services read, unless the services produce them themselves, and on the given stages. Stages have to be added
+     * after the stages they depend on.
+     *
+     * @param name         the name of the stage, under which its time is reported
+     * @param services     the internal services that the stage runs, which may be empty for preparatory work
+     * @param stage        the work done by the stage
+     * @param dependencies other stages that have to be done before this one starts
+     * @return the node of the stage, so later stages can depend on it
+     * @throws IllegalArgumentException when the services read an artifact that no stage produces
+     * @throws IllegalStateException    when the graph has already been executed
+     */
+    Node addStage(@NonNull final String name, @NonNull final Collection<InternalServices> services,
+                  @NonNull final Stage stage, @NonNull final Node... dependencies) {
+        if (mExecuted) {
+            throw new IllegalStateException("Stages cannot be added after the graph was executed");
+        }
+
+        Set<ServiceArtifact> missing = getMissingInputs(services);
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("No stage produces " + missing + ", which " + name + " needs");
+        }
+
+        Node node = new Node(name, stage);
+
+        Set<ServiceArtifact> inputs = EnumSet.noneOf(ServiceArtifact.class);
+        Set<ServiceArtifact> outputs = EnumSet.noneOf(ServiceArtifact.class);
+        for (InternalServices service : services) {
+            inputs.addAll(service.getInputs());
+            outputs.addAll(service.getOutputs());
+        }
+
+        // Artifacts that the services of the stage produce themselves do not come from other stages
+        inputs.removeAll(outputs);
+        for (ServiceArtifact input : inputs) {
+            List<Node> producers = mProducers.get(input);
+            if (producers != null) {
+                for (Node producer : producers) {
+                    node.dependOn(producer);
+                }
+            }
+        }
+
+        for (Node dependency : dependencies) {
+            node.dependOn(dependency);
+        }
+
+        for (ServiceArtifact output : outputs) {
+            List<Node> producers = mProducers.get(output);
+            if (producers == null) {
+                producers = new ArrayList<>();
+                mProducers.put(output, producers);
+            }
+            producers.add(node);
+        }
+
+        mNodes.add(node);
+        return node;
+    }
+
+    /**
+     * Runs all stages on a scheduler and waits until they are done. Every stage starts as soon as the stages it
+     * depends on are done. When a stage fails, no new stages are started and its error is thrown.
+     *
+     * @param scheduler         the scheduler on which the stages run, which should not be the one the calling
+     *                          thread belongs to
+     * @param cancellationToken token that is checked before every stage
+     * @return the time every stage took in nanoseconds, in the order the stages were added
+     * @throws FileTypeNotSupportedException when a stage reads a document of an unsupported type
+     * @throws DocumentNotSupportedException when a stage could not read the document
+     * @throws CancellationException         when the token was cancelled or the calling thread was interrupted
+     */
+    Map<String, Long> execute(@NonNull final Scheduler scheduler, @NonNull final CancellationToken cancellationToken)
+            throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        if (mExecuted) {
+            throw new IllegalStateException("A graph can only be executed once");
+        }
+        mExecuted = true;
+
+        if (mNodes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // Start with the stages that do not depend on anything
+        mPendingNodes.set(mNodes.size());
+        for (Node node : mNodes) {
+            node.mRemainingDependencies.set(node.mDependencies);
+        }
+        for (Node node : mNodes) {
+            if (node.mDependencies == 0) {
+                schedule(node, scheduler, cancellationToken);
+            }
+        }
+
+        try {
+            mDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            mFailure.compareAndSet(null, new CancellationException("Interrupted while running " + mNodes.size()
+                    + " stages"));
+        }
+
+        rethrowFailure();
+
+        Map<String, Long> timings = new LinkedHashMap<>();
+        for (Node node : mNodes) {
+            timings.put(node.mName, mTimings.get(node.mName));
+        }
+
+        return timings;
+    }
+
+    /**
+     * Private helper method that runs a stage on the scheduler, and starts the stages that were waiting for it
+     *
+     * @param node              the stage to run
+     * @param scheduler         the scheduler on which the stages run
+     * @param cancellationToken token that is checked before the stage starts
+     */
+    private void schedule(@NonNull final Node node, @NonNull final Scheduler scheduler,
+                          @NonNull final CancellationToken cancellationToken) {
+        scheduler.scheduleDirect(() -> {
+            // Another stage failed, the result will not be used
+            if (mFailure.get() != null) {
+                return;
+            }
+
+            try {
+                cancellationToken.throwIfCancelled();
+
+                long start = System.nanoTime();
+                node.mStage.run();
+                mTimings.put(node.mName, System.nanoTime() - start);
+            } catch (Throwable t) {
+                // Errors are passed on to the thread that waits for the graph as well
+                if (mFailure.compareAndSet(null, t)) {
+                    mDone.countDown();
+                }
+                return;
+            }
+
+            if (mPendingNodes.decrementAndGet() == 0) {
+                mDone.countDown();
+                return;
+            }
+
+            for (Node dependent : node.mDependents) {
+                if (dependent.mRemainingDependencies.decrementAndGet() == 0) {
+                    schedule(dependent, scheduler, cancellationToken);
+                }
+            }
+        });
+    }
+
+    /**
+     * Private helper method that throws the error of the stage that failed, if any
+     *
+     * @throws FileTypeNotSupportedException when a stage read a document of an unsupported type
+     * @throws DocumentNotSupportedException when a stage could not read the document
+     */
+    private void rethrowFailure() throws FileTypeNotSupportedException, DocumentNotSupportedException {
+        Throwable failure = mFailure.get();
+
+        if (failure == null) {
+            return;
+        } else if (failure instanceof FileTypeNotSupportedException) {
+            throw (FileTypeNotSupportedException) failure;
+        } else if (failure instanceof DocumentNotSupportedException) {
+            throw (DocumentNotSupportedException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+
+        throw new IllegalStateException("A stage failed", failure);
+    }
+}
@@ -0,0 +1,163 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.plugin.InternalServices;
+import com.aurora.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.SingleSubject;
+
+/**
+ * The extraction of a file that is started before the user picked the plugin to open it with. Every plugin needs the
+ * extracted text, so the file is extracted while the plugin chooser is open. The extraction is known by the uri of
+ * the file and the extraction services it runs, so it is only reused for a plugin that needs no other extraction.
+ */
+final class SpeculativeExtraction {
+    /**
+     * Tag for logging purposes
+     */
+    private static final String CLASS_TAG = "SpeculativeExtraction";
+
+    /**
+     * The internal services that need the document itself, the other ones only need the extracted text
+     */
+    private static final List<InternalServices> EXTRACTION_SERVICES = Collections.unmodifiableList(
+            Arrays.asList(InternalServices.TEXT_EXTRACTION, InternalServices.IMAGE_EXTRACTION));
+
+    /**
+     * The uri of the file that is extracted
+     */
+    private final String mFileUri;
+
+    /**
+     * The extraction services that are run on the file
+     */
+    private final List<InternalServices> mExtractionServices;
+
+    /**
+     * Token to stop the extraction when it is no longer needed
+     */
+    private final CancellationToken mCancellationToken;
+
+    /**
+     * The extracted text, which is kept until a plugin is picked
+     */
+    private final SingleSubject<ExtractedText> mResult = SingleSubject.create();
+
+    /**
+     * The subscription that waits for the extracted text
+     */
+    private final Disposable mExtraction;
+
+    /**
+     * Starts the extraction of a file
+     *
+     * @param fileUri            the uri of the file that is extracted
+     * @param extractionServices the extraction services that are run on the file
+     * @param cancellationToken  token that stops the extraction
+     * @param extraction         a Single that extracts the file when it is subscribed to
+     */
+    SpeculativeExtraction(@NonNull final String fileUri, @NonNull final List<InternalServices> extractionServices,
+                          @NonNull final CancellationToken cancellationToken,
+                          @NonNull final Single<ExtractedText> extraction) {
+        mFileUri = fileUri;
+        mExtractionServices = new ArrayList<>(extractionServices);
+        mCancellationToken = cancellationToken;
+        mExtraction = extraction.subscribe(mResult::onSuccess, mResult::onError);
+    }
+
+    /**
+     * Gets the extraction services that should be run on a file before the plugin is picked. The images are only
+     * extracted if one of the plugins asks for them. Nothing is extracted if none of the plugins asks for the text.
+     *
+     * @param plugins the plugins the user can pick from
+     * @return the extraction services that any of the plugins asks for
+     */
+    @NonNull
+    static List<InternalServices> getExtractionServices(@NonNull final List<Plugin> plugins) {
+        List<InternalServices> extractionServices = new ArrayList<>();
+        for (Plugin plugin : plugins) {
+            for (InternalServices internalService : EXTRACTION_SERVICES) {
+                if (plugin.getInternalServices().contains(internalService)
+                        && !extractionServices.contains(internalService)) {
+                    extractionServices.add(internalService);
+                }
+            }
+        }
+
+        if (!extractionServices.contains(InternalServices.TEXT_EXTRACTION)) {
+            return Collections.emptyList();
+        }
+
+        return extractionServices;
+    }
+
+    /**
+     * Gets the internal services that still have to be run on a text that was extracted before
+     *
+     * @param internalServices the internal services a plugin asks for
+     * @return the internal services that do not need the document itself, like NLP
+     */
+    @NonNull
+    static List<InternalServices> getRemainingServices(@NonNull final List<InternalServices> internalServices) {
+        List<InternalServices> remainingServices = new ArrayList<>(internalServices);
+        remainingServices.removeAll(EXTRACTION_SERVICES);
+
+        return remainingServices;
+    }
+
+    /**
+     * Checks whether this extraction can be reused for a plugin
+     *
+     * @param fileUri          the uri of the file that is opened
+     * @param internalServices the internal services the plugin asks for
+     * @return true if this extraction is of the same file and ran every extraction service the plugin asks for
+     */
+    boolean covers(@NonNull final String fileUri, @NonNull final List<InternalServices> internalServices) {
+        if (!mFileUri.equals(fileUri)) {
+            return false;
+        }
+
+        for (InternalServices internalService : EXTRACTION_SERVICES) {
+            if (internalServices.contains(internalService) && !mExtractionServices.contains(internalService)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the images were extracted together with the text
+     */
+    boolean hasImages() {
+        return mExtractionServices.contains(InternalServices.IMAGE_EXTRACTION);
+    }
+
+    /**
+     * @return a Single with the extracted text, which succeeds right away if the extraction is already done
+     */
+    @NonNull
+    Single<ExtractedText> getResult() {
+        return mResult.hide();
+    }
+
+    /**
+     * Stops the extraction and forgets its result, because no plugin will use it
+     */
+    void cancel() {
+        Log.d(CLASS_TAG, "Discarding the extraction of " + mFileUri);
+        mCancellationToken.cancel();
+        mExtraction.dispose();
+    }
+}
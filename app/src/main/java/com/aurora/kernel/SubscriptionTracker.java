@@ -0,0 +1,169 @@
+package com.aurora.kernel;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.aurora.kernel.event.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the live subscriptions on the bus and who owns them, to find subscriptions that are never disposed.
+ * Every owner is expected to need only a few subscriptions per class of events. An owner that keeps adding
+ * subscriptions for the same class without disposing them is leaking: every event of that class fans out to all of
+ * them, and they keep their closures alive.
+ */
+class SubscriptionTracker {
+    /**
+     * The name that is used for subscriptions without an owner
+     */
+    private static final String UNKNOWN_OWNER = "<unknown>";
+
+    /**
+     * The number of live subscriptions of one owner to one class of events from which it is reported as a leak
+     */
+    static final int LEAK_THRESHOLD = 8;
+
+    /**
+     * The subscriptions that are currently live
+     */
+    private final Set<Subscription> mLiveSubscriptions =
+            Collections.newSetFromMap(new ConcurrentHashMap<Subscription, Boolean>());
+
+    /**
+     * Starts tracking a subscription
+     *
+     * @param owner      the object that owns the subscription, or null if it is unknown
+     * @param eventClass the class of events that is subscribed to
+     * @return the tracked subscription, which should be passed to {@link #remove(Subscription)} when it ends
+     */
+    Subscription add(@Nullable final Object owner, @NonNull final Class<? extends Event> eventClass) {
+        String ownerName = owner == null ? UNKNOWN_OWNER : owner.getClass().getSimpleName();
+        Subscription subscription = new Subscription(ownerName, eventClass);
+        mLiveSubscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Stops tracking a subscription, because it was disposed, completed or failed
+     *
+     * @param subscription the subscription to stop tracking
+     */
+    void remove(@NonNull final Subscription subscription) {
+        mLiveSubscriptions.remove(subscription);
+    }
+
+    /**
+     * Counts the live subscriptions to a class of events
+     *
+     * @param eventClass the class of events
+     * @return the number of live subscriptions to that class of events
+     */
+    int getLiveSubscriptions(@NonNull final Class<? extends Event> eventClass) {
+        int count = 0;
+        for (Subscription subscription : mLiveSubscriptions) {
+            if (subscription.mEventClass == eventClass) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Counts the live subscriptions per owner and class of events
+     *
+     * @return a map from "owner -> event class" to the number of live subscriptions
+     */
+    Map<String, Integer> getLiveSubscriptionsPerOwner() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Subscription subscription : mLiveSubscriptions) {
+            String key = subscription.mOwnerName + " -> " + subscription.mEventClass.getSimpleName();
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Creates a report of the owners that have at least {@link #LEAK_THRESHOLD} live subscriptions to the same
+     * class of events
+     *
+     * @return the report, with one line per suspected leak, or an empty string if no leaks are suspected
+     */
+    String getLeakReport() {
+        List<String> leaks = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : getLiveSubscriptionsPerOwner().entrySet()) {
+            if (entry.getValue() >= LEAK_THRESHOLD) {
+                leaks.add(String.format(Locale.ENGLISH, "%s: %d live subscriptions, oldest %d ms ago",
+                        entry.getKey(), entry.getValue(), getOldestAgeMillis(entry.getKey())));
+            }
+        }
+
+        Collections.sort(leaks);
+        StringBuilder report = new StringBuilder();
+        for (String leak : leaks) {
+            report.append(leak).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Private helper method that finds how long the oldest live subscription of an owner and class exists
+     *
+     * @param key the owner and event class, as used in {@link #getLiveSubscriptionsPerOwner()}
+     * @return the age of the oldest subscription in milliseconds
+     */
+    private long getOldestAgeMillis(@NonNull final String key) {
+        long now = System.currentTimeMillis();
+        long oldest = now;
+        for (Subscription subscription : mLiveSubscriptions) {
+            String subscriptionKey = subscription.mOwnerName + " -> " + subscription.mEventClass.getSimpleName();
+            if (subscriptionKey.equals(key)) {
+                oldest = Math.min(oldest, subscription.mCreatedAtMillis);
+            }
+        }
+
+        return now - oldest;
+    }
+
+    /**
+     * A live subscription on the bus
+     */
+    static final class Subscription {
+        /**
+         * The name of the class of the owner of the subscription
+         */
+        private final String mOwnerName;
+
+        /**
+         * The class of events that is subscribed to
+         */
+        private final Class<? extends Event> mEventClass;
+
+        /**
+         * The moment the subscription was made, in milliseconds since the epoch
+         */
+        private final long mCreatedAtMillis = System.currentTimeMillis();
+
+        /**
+         * Creates a new subscription
+         *
+         * @param ownerName  the name of the class of the owner of the subscription
+         * @param eventClass the class of events that is subscribed to
+         */
+        private Subscription(@NonNull final String ownerName, @NonNull final Class<? extends Event> eventClass) {
+            mOwnerName = ownerName;
+            mEventClass = eventClass;
+        }
+    }
+}
@@ -5,7 +5,7 @@ package com.aurora.kernel.event;
  *
  * @see CacheFileResponse
  */
-public class CacheFileRequest implements Event {
+public class CacheFileRequest extends CorrelatedEvent {
     /**
      * A reference to the file that needs to be cached (should be hash_displayName)
      * Check the getFileName method from MainActivity.
@@ -4,7 +4,7 @@ package com.aurora.kernel.event;
  * Response event to indicate if a file was successfully cached or not
  * @see CacheFileRequest
  */
-public class CacheFileResponse implements Event {
+public class CacheFileResponse extends CorrelatedEvent {
     /**
      * A boolean indicating if the file was successfully cached
      */
@@ -0,0 +1,38 @@
+package com.aurora.kernel.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Common supertype of the events that are part of a request/response pair.
+ * Every request gets a unique correlation id when it is created, and the response to that request carries the
+ * same id. This way, a communicator that has several requests of the same kind in flight can tell which response
+ * belongs to which request.
+ */
+public abstract class CorrelatedEvent implements Event {
+
+    /**
+     * Counter used to hand out unique correlation ids
+     */
+    private static final AtomicLong sNextCorrelationId = new AtomicLong();
+
+    /**
+     * The correlation id of this event
+     */
+    private long mCorrelationId = sNextCorrelationId.incrementAndGet();
+
+    /**
+     * @return the correlation id of this event
+     */
+    public long getCorrelationId() {
+        return mCorrelationId;
+    }
+
+    /**
+     * Sets the correlation id of this event. Responses should get the correlation id of the request they answer.
+     *
+     * @param correlationId the correlation id of the request that this event is a response to
+     */
+    public void setCorrelationId(long correlationId) {
+        mCorrelationId = correlationId;
+    }
+}
@@ -1,9 +1,10 @@
 package com.aurora.kernel.event;
 
 /**
- * This event is sent to show the user something went wrong
+ * This event is sent to show the user something went wrong.
+ * It carries the correlation id of the {@link InternalProcessorRequest} that could not be processed.
  */
-public class DocumentNotSupportedEvent implements Event {
+public class DocumentNotSupportedEvent extends CorrelatedEvent {
     /**
      * The reason why the document could not be processed
      */
@@ -0,0 +1,38 @@
+package com.aurora.kernel.event;
+
+import com.aurora.kernel.ExecutionProfile;
+
+/**
+ * This event is sent when the kernel switches to another {@link ExecutionProfile}, for example because power save
+ * mode was turned on or the device got hot
+ */
+public class ExecutionProfileChangedEvent implements Event {
+    /**
+     * The profile the kernel uses from now on
+     */
+    private ExecutionProfile mProfile;
+
+    /**
+     * Why the kernel switched to the profile
+     */
+    private String mReason;
+
+    public ExecutionProfileChangedEvent(ExecutionProfile profile, String reason) {
+        mProfile = profile;
+        mReason = reason;
+    }
+
+    /**
+     * @return the profile the kernel uses from now on
+     */
+    public ExecutionProfile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * @return why the kernel switched to the profile
+     */
+    public String getReason() {
+        return mReason;
+    }
+}
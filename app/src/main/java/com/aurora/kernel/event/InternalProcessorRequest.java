@@ -1,5 +1,7 @@
 package com.aurora.kernel.event;
 
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
 import com.aurora.plugin.InternalServices;
 
 import java.io.InputStream;
@@ -10,7 +12,7 @@ import java.util.List;
  *
  * @see InternalProcessorResponse
  */
-public class InternalProcessorRequest implements Event {
+public class InternalProcessorRequest extends CorrelatedEvent {
 
     /**
      * The uri of the file to be opened
@@ -32,11 +34,26 @@ public class InternalProcessorRequest implements Event {
      */
     private InputStream mFile;
 
+    /**
+     * The text that was already extracted from the file, or null if the file still has to be extracted
+     */
+    private ExtractedText mExtractedText = null;
+
     /**
      * The internal services that should be run on the file
      */
     private List<InternalServices> mInternalServices;
 
+    /**
+     * Token to stop processing the file when nobody is waiting for the result anymore
+     */
+    private CancellationToken mCancellationToken = new CancellationToken();
+
+    /**
+     * The number of sections that are sent ahead in a {@link ProcessingPreviewEvent}, or 0 if no preview is needed
+     */
+    private int mPreviewSections = 0;
+
     /**
      * Creates a new InternalProcessorRequest
      *
@@ -55,6 +72,21 @@ public class InternalProcessorRequest implements Event {
         mInternalServices = internalServices;
     }
 
+    /**
+     * Creates a new InternalProcessorRequest for a file of which the text was already extracted. Only the internal
+     * services that work on the extracted text, like NLP, are run.
+     *
+     * @param fileUri          the uri of the file that was extracted
+     * @param fileRef          the name of the file that was extracted
+     * @param extractedText    the text that was already extracted from the file
+     * @param internalServices the set of internal services that should be run on the extracted text
+     */
+    public InternalProcessorRequest(String fileUri, String fileRef, ExtractedText extractedText,
+                                    List<InternalServices> internalServices) {
+        this(fileUri, fileRef, null, null, internalServices);
+        mExtractedText = extractedText;
+    }
+
     /**
      * @return the uri of the file to be opened
      */
@@ -83,10 +115,43 @@ public class InternalProcessorRequest implements Event {
         return mFile;
     }
 
+    /**
+     * @return the text that was already extracted from the file, or null if the file still has to be extracted
+     */
+    public ExtractedText getExtractedText() {
+        return mExtractedText;
+    }
+
     /**
      * @return The set of internal services that should be run on the file
      */
     public List<InternalServices> getInternalServices() {
         return mInternalServices;
     }
+
+    /**
+     * @return the token to stop processing the file when nobody is waiting for the result anymore
+     */
+    public CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
+    /**
+     * @return the number of sections that are sent ahead in a {@link ProcessingPreviewEvent}, or 0 if no preview is
+     * needed
+     */
+    public int getPreviewSections() {
+        return mPreviewSections;
+    }
+
+    /**
+     * Asks for a preview of the file. The preview only has the extracted text and images, and is only sent when the
+     * file is extracted from the start and has more sections than the preview.
+     *
+     * @param previewSections the number of sections that are sent ahead in a {@link ProcessingPreviewEvent}, or 0
+     *                        if no preview is needed
+     */
+    public void setPreviewSections(int previewSections) {
+        mPreviewSections = previewSections;
+    }
 }
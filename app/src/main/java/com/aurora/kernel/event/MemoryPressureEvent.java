@@ -0,0 +1,77 @@
+package com.aurora.kernel.event;
+
+/**
+ * This event is sent every time the kernel decides to do less work or keep less in memory, because the app is
+ * running low on memory. It is also sent when the memory pressure is over, with {@link Degradation#NONE}.
+ */
+public class MemoryPressureEvent implements Event {
+    /**
+     * The ways in which the kernel sheds work, from the least to the most drastic. Every level also includes the
+     * levels before it.
+     */
+    public enum Degradation {
+        /**
+         * Everything is done as requested
+         */
+        NONE,
+        /**
+         * Data that is kept in memory but can be read again from disk is dropped
+         */
+        DROP_CACHES,
+        /**
+         * The NLP models are unloaded, they are loaded again for the next document that needs them
+         */
+        UNLOAD_NLP_MODELS,
+        /**
+         * Extracted images are replaced by thumbnails
+         */
+        IMAGE_THUMBNAILS,
+        /**
+         * Images are not extracted at all
+         */
+        SKIP_IMAGES,
+        /**
+         * Extracted texts are written to the plugins without building them in memory first
+         */
+        STREAM_RESULTS;
+
+        /**
+         * Checks if this level includes another level
+         *
+         * @param other the other level
+         * @return true if this level is the same as or more drastic than the other level
+         */
+        public boolean isAtLeast(Degradation other) {
+            return compareTo(other) >= 0;
+        }
+    }
+
+    /**
+     * The way in which the kernel sheds work from now on
+     */
+    private Degradation mDegradation;
+
+    /**
+     * Why the kernel decided to shed work, like the trim level or how much of the heap is used
+     */
+    private String mReason;
+
+    public MemoryPressureEvent(Degradation degradation, String reason) {
+        mDegradation = degradation;
+        mReason = reason;
+    }
+
+    /**
+     * @return the way in which the kernel sheds work from now on
+     */
+    public Degradation getDegradation() {
+        return mDegradation;
+    }
+
+    /**
+     * @return why the kernel decided to shed work
+     */
+    public String getReason() {
+        return mReason;
+    }
+}
@@ -23,6 +23,16 @@ public class OpenFileWithPluginRequest implements Event {
      */
     private Context mContext;
 
+    /**
+     * Whether the extracted text only has the first sections of the file
+     */
+    private boolean mPreview;
+
+    /**
+     * Whether the plugin already shows the preview of the file, and the text replaces it
+     */
+    private boolean mUpdate;
+
     /**
      * Creates a new OpenFileWithPluginRequest
      *
@@ -31,9 +41,25 @@ public class OpenFileWithPluginRequest implements Event {
      * @param context       the android context
      */
     public OpenFileWithPluginRequest(ExtractedText extractedText, String uniquePluginName, Context context) {
+        this(extractedText, uniquePluginName, context, false, false);
+    }
+
+    /**
+     * Creates a new OpenFileWithPluginRequest for the preview of a file, or for the whole file after its preview
+     *
+     * @param extractedText    the extracted text from the file to represent
+     * @param uniquePluginName the unique name of the plugin to open the file with
+     * @param context          the android context
+     * @param preview          true if the extracted text only has the first sections of the file
+     * @param update           true if the plugin already shows the preview of the file, and the text replaces it
+     */
+    public OpenFileWithPluginRequest(ExtractedText extractedText, String uniquePluginName, Context context,
+                                     boolean preview, boolean update) {
         mExtractedText = extractedText;
         mUniquePluginName = uniquePluginName;
         mContext = context;
+        mPreview = preview;
+        mUpdate = update;
     }
 
     /**
@@ -57,4 +83,18 @@ public class OpenFileWithPluginRequest implements Event {
         return mContext;
     }
 
+    /**
+     * @return true if the extracted text only has the first sections of the file
+     */
+    public boolean isPreview() {
+        return mPreview;
+    }
+
+    /**
+     * @return true if the plugin already shows the preview of the file, and the text replaces it
+     */
+    public boolean isUpdate() {
+        return mUpdate;
+    }
+
 }
@@ -0,0 +1,32 @@
+package com.aurora.kernel.event;
+
+import com.aurora.auroralib.ExtractedText;
+
+/**
+ * Event that is sent while a file is processed internally, with the title and the first sections of the file, so
+ * they can be shown before the whole file is processed. It carries the correlation id of the
+ * {@link InternalProcessorRequest} of the file, which asked for the preview. The
+ * {@link InternalProcessorResponse} with the whole file follows.
+ */
+public class ProcessingPreviewEvent extends CorrelatedEvent {
+    /**
+     * The title and the first sections of the file
+     */
+    private ExtractedText mExtractedText;
+
+    /**
+     * Creates a new ProcessingPreviewEvent
+     *
+     * @param extractedText the title and the first sections of the file
+     */
+    public ProcessingPreviewEvent(ExtractedText extractedText) {
+        mExtractedText = extractedText;
+    }
+
+    /**
+     * @return the title and the first sections of the file
+     */
+    public ExtractedText getExtractedText() {
+        return mExtractedText;
+    }
+}
@@ -0,0 +1,94 @@
+package com.aurora.kernel.event;
+
+import com.aurora.internalservice.ProcessingPhase;
+
+/**
+ * Event that is sent while a file is processed internally, to tell how far the processing is. It carries the
+ * correlation id of the {@link InternalProcessorRequest} of the file. The events of a file are sent at most a few
+ * times per second, and always when a phase starts or is done.
+ */
+public class ProcessingProgressEvent extends CorrelatedEvent {
+    /**
+     * The uri of the file that is processed
+     */
+    private String mFileUri;
+
+    /**
+     * The name of the file that is processed
+     */
+    private String mFileRef;
+
+    /**
+     * The phase the processing is in
+     */
+    private ProcessingPhase mPhase;
+
+    /**
+     * The number of parts of the phase that are done
+     */
+    private long mDone;
+
+    /**
+     * The total number of parts of the phase, or a number below 1 if it is not known
+     */
+    private long mTotal;
+
+    /**
+     * Creates a new ProcessingProgressEvent
+     *
+     * @param fileUri the uri of the file that is processed
+     * @param fileRef the name of the file that is processed
+     * @param phase   the phase the processing is in
+     * @param done    the number of parts of the phase that are done, like pages, paragraphs, bytes or sections
+     * @param total   the total number of parts of the phase, or a number below 1 if it is not known
+     */
+    public ProcessingProgressEvent(String fileUri, String fileRef, ProcessingPhase phase, long done, long total) {
+        mFileUri = fileUri;
+        mFileRef = fileRef;
+        mPhase = phase;
+        mDone = done;
+        mTotal = total;
+    }
+
+    /**
+     * @return the uri of the file that is processed
+     */
+    public String getFileUri() {
+        return mFileUri;
+    }
+
+    /**
+     * @return the name of the file that is processed
+     */
+    public String getFileRef() {
+        return mFileRef;
+    }
+
+    /**
+     * @return the phase the processing is in
+     */
+    public ProcessingPhase getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * @return the number of parts of the phase that are done
+     */
+    public long getDone() {
+        return mDone;
+    }
+
+    /**
+     * @return the total number of parts of the phase, or a number below 1 if it is not known
+     */
+    public long getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * @return true if the total of the phase is known, so the progress can be shown as a fraction
+     */
+    public boolean isDeterminate() {
+        return mTotal > 0;
+    }
+}
@@ -7,7 +7,7 @@ package com.aurora.kernel.event;
  *
  * @see QueryCacheResponse
  */
-public class QueryCacheRequest implements Event {
+public class QueryCacheRequest extends CorrelatedEvent {
 
     /**
      * The maximum number of entries that should be retrieved.
@@ -11,7 +11,7 @@ import java.util.List;
  *
  * @see QueryCacheRequest
  */
-public class QueryCacheResponse implements Event {
+public class QueryCacheResponse extends CorrelatedEvent {
     /**
      * A list of info objects about the cached files
      */
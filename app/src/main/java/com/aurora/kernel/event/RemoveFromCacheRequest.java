@@ -7,7 +7,7 @@ import android.support.annotation.NonNull;
  *
  * @see RemoveFromCacheResponse
  */
-public class RemoveFromCacheRequest implements Event {
+public class RemoveFromCacheRequest extends CorrelatedEvent {
     /**
      * a reference to the file to be removed from the cache. If null, either all files from the specified plugin are
      * deleted, or if the plugin name is null too, clears the cache.
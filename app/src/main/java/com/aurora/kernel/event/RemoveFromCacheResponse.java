@@ -5,7 +5,7 @@ package com.aurora.kernel.event;
  *
  * @see RemoveFromCacheRequest
  */
-public class RemoveFromCacheResponse implements Event {
+public class RemoveFromCacheResponse extends CorrelatedEvent {
     /**
      * Indicates whether the file(s) were removed successfully from the cache
      */
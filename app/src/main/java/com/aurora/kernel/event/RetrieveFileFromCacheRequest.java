@@ -5,7 +5,7 @@ package com.aurora.kernel.event;
  *
  * @see RetrieveFileFromCacheResponse
  */
-public class RetrieveFileFromCacheRequest implements Event {
+public class RetrieveFileFromCacheRequest extends CorrelatedEvent {
     /**
      * A reference to the file to retrieve the representation from (should be hash_displayName)
      * Check the getFileName method from MainActivity.
@@ -7,7 +7,7 @@ import com.aurora.internalservice.internalcache.CachedProcessedFile;
  *
  * @see RetrieveFileFromCacheRequest
  */
-public class RetrieveFileFromCacheResponse implements Event {
+public class RetrieveFileFromCacheResponse extends CorrelatedEvent {
     /**
      * The processed file representation
      */
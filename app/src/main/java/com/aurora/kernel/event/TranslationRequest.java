@@ -6,7 +6,7 @@ package com.aurora.kernel.event;
  * {@link #mSourceLanguage} The source language of the sentences in ISO-639-1 Code
  * {@link #mTargetLanguage} The target language to translate to also in ISO-639-1 Code
  */
-public class TranslationRequest implements Event {
+public class TranslationRequest extends CorrelatedEvent {
 
     private String[] mSentencesToTranslate;
     private String mTargetLanguage;
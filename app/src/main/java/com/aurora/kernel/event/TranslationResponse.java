@@ -3,7 +3,7 @@ package com.aurora.kernel.event;
 /**
  * Response to {@link TranslationRequest}.
  */
-public class TranslationResponse implements Event {
+public class TranslationResponse extends CorrelatedEvent {
 
     /**
      * The translated sentences. Is null when {@link #getErrorMessage()} is true
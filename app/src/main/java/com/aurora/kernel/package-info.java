@@ -19,6 +19,25 @@
  * </p>
  *
  * <p>
+ * When a communicator needs an answer to a request, it uses {@link com.aurora.kernel.Bus#request}.
+ * Requests and responses are {@link com.aurora.kernel.event.CorrelatedEvent}s, and a response carries the
+ * correlation id of the request it answers. This way several requests of the same kind can be in flight at the
+ * same time without picking up each other's responses.
+ * </p>
+ *
+ * <p>
+ * Every subscriber on the bus gets its own bounded queue. What happens when such a queue is full is decided per
+ * class of events by an {@link com.aurora.kernel.OverflowPolicy}: the poster can wait, the oldest event can be
+ * dropped or only the latest event can be kept. The bus counts how many events are waiting and how many were dropped.
+ * </p>
+ *
+ * <p>
+ * Events are handled on a {@link com.aurora.kernel.PriorityScheduler}. Every class of events has a
+ * {@link com.aurora.kernel.Priority}, and events the user is waiting for are always handled before waiting events
+ * of a lower priority. Events that block on disk or network are routed to a separate pool of I/O threads.
+ * </p>
+ *
+ * <p>
  * Each of the communicators is responsible for communicating with one other part of the application.
  * This way, the other parts of the application are abstracted away for everyone, with the kernel
  * functioning as a decoupling link.
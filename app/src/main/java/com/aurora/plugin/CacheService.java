@@ -94,8 +94,9 @@ public class CacheService extends Service {
                 ProcessingCommunicator processingCommunicator = Kernel.getInstance(
                         CacheService.this.getApplicationContext()).getProcessingCommunicator();
 
+                // The binder call has to return the result, so this binder thread waits for its own request
                 cacheResult = processingCommunicator.cacheFile(fileRef, readFile(uri),
-                        uniquePluginName);
+                        uniquePluginName).blockingGet();
             } catch (ContextNullException e) {
                 Log.e(CLASS_TAG, "The kernel was not initialized with a valid context", e);
                 cacheResult = CacheResults.KERNEL_FAIL;
@@ -1,14 +1,55 @@
 package com.aurora.plugin;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 /**
  * Enum for the different internal services that the plugins can make use of.
+ * Every service declares what it reads and what it produces, so services that do not depend on each other can run
+ * at the same time.
  * NOTE: for now there is only text extraction, but when new services are added like OCR and parsing,
  * these services should be added to this enum
  */
 public enum InternalServices {
-    TEXT_EXTRACTION,
-    IMAGE_EXTRACTION,
-    NLP_TOKENIZE,
-    NLP_SSPLIT,
-    NLP_POS
+    TEXT_EXTRACTION(EnumSet.of(ServiceArtifact.DOCUMENT), EnumSet.of(ServiceArtifact.TEXT)),
+    IMAGE_EXTRACTION(EnumSet.of(ServiceArtifact.DOCUMENT), EnumSet.of(ServiceArtifact.IMAGES)),
+    NLP_TOKENIZE(EnumSet.of(ServiceArtifact.TEXT), EnumSet.of(ServiceArtifact.TOKENS)),
+    NLP_SSPLIT(EnumSet.of(ServiceArtifact.TOKENS), EnumSet.of(ServiceArtifact.SENTENCES)),
+    NLP_POS(EnumSet.of(ServiceArtifact.TOKENS, ServiceArtifact.SENTENCES), EnumSet.of(ServiceArtifact.POS_TAGS));
+
+    /**
+     * The artifacts that this service reads
+     */
+    private final Set<ServiceArtifact> mInputs;
+
+    /**
+     * The artifacts that this service produces
+     */
+    private final Set<ServiceArtifact> mOutputs;
+
+    /**
+     * Creates an internal service
+     *
+     * @param inputs  the artifacts that the service reads
+     * @param outputs the artifacts that the service produces
+     */
+    InternalServices(Set<ServiceArtifact> inputs, Set<ServiceArtifact> outputs) {
+        mInputs = Collections.unmodifiableSet(inputs);
+        mOutputs = Collections.unmodifiableSet(outputs);
+    }
+
+    /**
+     * @return the artifacts that this service reads
+     */
+    public Set<ServiceArtifact> getInputs() {
+        return mInputs;
+    }
+
+    /**
+     * @return the artifacts that this service produces
+     */
+    public Set<ServiceArtifact> getOutputs() {
+        return mOutputs;
+    }
 }
@@ -0,0 +1,32 @@
+package com.aurora.plugin;
+
+/**
+ * Enum for the things that internal services read and produce. The kernel uses them to find out which internal
+ * services depend on each other, and which ones can run at the same time.
+ */
+public enum ServiceArtifact {
+    /**
+     * The document that was opened, which is always available
+     */
+    DOCUMENT,
+    /**
+     * The title and sections of the document
+     */
+    TEXT,
+    /**
+     * The images in the document
+     */
+    IMAGES,
+    /**
+     * The tokens of the title and sections
+     */
+    TOKENS,
+    /**
+     * The sentences of the title and sections
+     */
+    SENTENCES,
+    /**
+     * The part of speech of every token
+     */
+    POS_TAGS
+}
@@ -51,7 +51,9 @@ public class TranslationService extends Service {
                 ProcessingCommunicator processingCommunicator = Kernel.getInstance(
                         TranslationService.this.getApplicationContext()).getProcessingCommunicator();
 
-                return processingCommunicator.translateSentences(sentences, sourceLanguage, destinationLanguage);
+                // The binder call has to return the result, so this binder thread waits for its own request
+                return processingCommunicator.translateSentences(sentences, sourceLanguage, destinationLanguage)
+                        .blockingGet();
             } catch (ContextNullException e) {
                 Log.e("TranslationService", "The kernel was not initialized with a valid context", e);
                 return new ArrayList<>();
@@ -1,13 +1,18 @@
 package com.aurora.internalservice.internalprocessor;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.CancellationToken;
 
 import org.junit.Test;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -80,4 +85,74 @@ public class InternalTextProcessorUnitTest {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    // Test if the parts of a 'txt'-file are emitted and the file is closed afterwards
+    @Test
+    public void processFileInParts_shouldEmitPartsAndCloseFile() throws FileNotFoundException {
+        String fileRef = RES_PATH + "Pasta.txt";
+        AtomicBoolean closed = new AtomicBoolean(false);
+        InputStream inputStream = new FileInputStream(new File(fileRef)) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        mInternalTextProcessor.processFileInParts(inputStream, "dummyUri", fileRef, "txt", false,
+                new CancellationToken())
+                .test()
+                .assertComplete()
+                .assertValueAt(0, ExtractedPart::isHeader);
+        assertTrue("The file was not closed after the extraction", closed.get());
+    }
+
+    // Test if the first sections of a 'txt'-file are handed over before the whole file is returned
+    @Test
+    public void processFile_shouldGivePreviewOfFirstSections() throws Exception {
+        String fileRef = RES_PATH + "Pasta.txt";
+        List<ExtractedText> previews = new ArrayList<>();
+
+        ExtractedText extractedText = mInternalTextProcessor.processFile(new FileInputStream(new File(fileRef)),
+                "dummyUri", fileRef, "txt", false, 1, previews::add, new CancellationToken());
+
+        assertEquals("The preview should be given once", 1, previews.size());
+        ExtractedText preview = previews.get(0);
+        assertEquals(1, preview.getSections().size());
+        assertEquals(extractedText.getTitle(), preview.getTitle());
+        assertEquals(extractedText.getSections().get(0), preview.getSections().get(0));
+        assertTrue("The whole file should have more sections than the preview",
+                extractedText.getSections().size() > 1);
+    }
+
+    // Test if a file that is not longer than the preview is only returned as a whole
+    @Test
+    public void processFile_shouldNotGivePreviewOfShortFile() throws Exception {
+        String fileRef = RES_PATH + "Pasta.txt";
+        ExtractedText expected = mInternalTextProcessor.processFile(new FileInputStream(new File(fileRef)),
+                "dummyUri", fileRef, "txt", false);
+        List<ExtractedText> previews = new ArrayList<>();
+
+        ExtractedText extractedText = mInternalTextProcessor.processFile(new FileInputStream(new File(fileRef)),
+                "dummyUri", fileRef, "txt", false, expected.getSections().size(), previews::add,
+                new CancellationToken());
+
+        assertTrue("A file that is not longer than the preview has no preview", previews.isEmpty());
+        assertEquals(expected.getSections(), extractedText.getSections());
+    }
+
+    // Test if the error of a wrong file type is thrown when a preview is asked for
+    @Test(expected = FileTypeNotSupportedException.class)
+    public void processFile_withPreview_shouldThrowErrorUnsupportedExtension() throws Exception {
+        mInternalTextProcessor.processFile(null, null, null, "jpg", false, 1, preview -> fail(),
+                new CancellationToken());
+    }
+
+    // Test if the error of a wrong file type is emitted instead of thrown
+    @Test
+    public void processFileInParts_shouldEmitErrorUnsupportedExtension() {
+        mInternalTextProcessor.processFileInParts(null, null, null, "jpg", false, new CancellationToken())
+                .test()
+                .assertError(FileTypeNotSupportedException.class);
+    }
+}
@@ -1,14 +1,30 @@
 package com.aurora.internalservice.internalprocessor;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFStyle;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
 import org.junit.Before;
 import org.junit.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTStyle;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -63,6 +79,95 @@ public class TextExtractorDOCXUnitTest {
                         "35 minutes\n", mExtractedText.getSections().get(0).getBody());
     }
 
+    @Test
+    public void extractParts_shouldEmitSameTextAsExtract() throws FileNotFoundException {
+        InputStream inputStream = new FileInputStream(new File(RES_PATH + "Pasta.docx"));
+        List<ExtractedPart> parts = new TextExtractorDOCX().extractParts(inputStream, "dummyUri", "Pasta.docx", false,
+                new CancellationToken()).toList().blockingGet();
+
+        // The title comes first, followed by the sections in the same order
+        assertTrue("DOCX text extraction: the title is not emitted first", parts.get(0).isHeader());
+        assertEquals(mExtractedText.getTitle(), parts.get(0).getTitle());
+        List<Section> sections = new ArrayList<>();
+        for (ExtractedPart part : parts.subList(1, parts.size())) {
+            sections.add(part.getSection());
+        }
+        assertEquals(mExtractedText.getSections(), sections);
+    }
 
+    // Checks if one extractor can extract several documents at the same time
+    @Test
+    public void extract_shouldExtractDocumentsAtTheSameTime() throws InterruptedException, ExecutionException {
+        TextExtractorDOCX textExtractorDOCX = new TextExtractorDOCX();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<ExtractedText>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> textExtractorDOCX.extract(
+                        new FileInputStream(new File(RES_PATH + "Pasta.docx")), "dummyUri",
+                        RES_PATH + "Pasta.docx", false)));
+            }
+
+            for (Future<ExtractedText> result : results) {
+                assertEquals(mExtractedText.getTitle(), result.get().getTitle());
+                assertEquals(mExtractedText.getSections(), result.get().getSections());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Checks if a heading whose style id is translated is found through the name of its style
+    @Test
+    public void extract_shouldUseStyleNameOfTranslatedHeading() throws IOException {
+        XWPFDocument document = new XWPFDocument();
+        CTStyle heading = CTStyle.Factory.newInstance();
+        heading.setStyleId("berschrift2");
+        heading.addNewName().setVal("heading 2");
+        document.createStyles().addStyle(new XWPFStyle(heading));
 
-}
\ No newline at end of file
+        document.createParagraph().createRun().setText("Rezept");
+        XWPFParagraph paragraph = document.createParagraph();
+        paragraph.setStyle("berschrift2");
+        paragraph.createRun().setText("Zutaten");
+        document.createParagraph().createRun().setText("Mehl");
+
+        ExtractedText extractedText = extract(document);
+        assertEquals("Rezept", extractedText.getTitle());
+        assertEquals("Zutaten", extractedText.getSections().get(0).getTitle());
+        assertEquals(2, extractedText.getSections().get(0).getLevel());
+        assertEquals("Mehl\n", extractedText.getSections().get(0).getBody());
+    }
+
+    // Checks if a table is extracted as a single section with tab separated cells
+    @Test
+    public void extract_shouldExtractTableAsSection() throws IOException {
+        XWPFDocument document = new XWPFDocument();
+        document.createParagraph().createRun().setText("Table");
+        XWPFTable table = document.createTable(2, 2);
+        table.getRow(0).getCell(0).setText("a");
+        table.getRow(0).getCell(1).setText("b");
+        table.getRow(1).getCell(0).setText("c");
+        table.getRow(1).getCell(1).setText("d");
+
+        ExtractedText extractedText = extract(document);
+        assertEquals("Table", extractedText.getTitle());
+        assertEquals(1, extractedText.getSections().size());
+        assertEquals("a\tb\nc\td\n", extractedText.getSections().get(0).getBody());
+    }
+
+    /**
+     * Writes a document and extracts its text
+     *
+     * @param document the document that is extracted
+     * @return the extracted text
+     * @throws IOException when the document cannot be written
+     */
+    private static ExtractedText extract(XWPFDocument document) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        document.write(outputStream);
+        document.close();
+        return new TextExtractorDOCX().extract(new ByteArrayInputStream(outputStream.toByteArray()), "dummyUri",
+                "generated.docx", false);
+    }
+}
@@ -0,0 +1,179 @@
+package com.aurora.internalservice.internalprocessor;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
+import com.aurora.internalservice.ProgressListener;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfFileSpecification;
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Benchmark for the memory that is used to extract a large PDF. A file should be read at random positions, so the
+ * heap does not grow with the size of the file.
+ */
+public class TextExtractorPDFLongTest {
+
+    /**
+     * The number of pages of the generated document
+     */
+    private static final int PAGES = 100;
+
+    /**
+     * The number of paragraphs on every page of the generated document
+     */
+    private static final int PARAGRAPHS_PER_PAGE = 20;
+
+    /**
+     * The size of the file that is embedded in the document, which is never needed to extract the text
+     */
+    private static final int ATTACHMENT_BYTES = 48 * 1024 * 1024;
+
+    /**
+     * The heap is measured every time this number of pages is done
+     */
+    private static final int PAGES_PER_SAMPLE = 10;
+
+    /**
+     * The largest part of the file that may be on the heap while the file is read at random positions
+     */
+    private static final double MAX_HEAP_PER_FILE_SIZE = 0.25;
+
+    @Test
+    public void TextExtractorPDF_extract_heapShouldNotGrowWithFileSize() throws Exception {
+        File pdf = File.createTempFile("large", ".pdf");
+        try {
+            createTaggedPDF(pdf);
+            long baseline = usedHeap();
+
+            // A buffered stream is not a file, so it is read into memory as a whole
+            long streamPeak;
+            ExtractedText streamed;
+            try (InputStream file = new BufferedInputStream(new FileInputStream(pdf))) {
+                HeapSampler sampler = new HeapSampler();
+                streamed = extract(file, sampler);
+                streamPeak = sampler.mPeak - baseline;
+            }
+
+            long channelPeak;
+            ExtractedText randomAccess;
+            try (InputStream file = new FileInputStream(pdf)) {
+                HeapSampler sampler = new HeapSampler();
+                randomAccess = extract(file, sampler);
+                channelPeak = sampler.mPeak - baseline;
+            }
+
+            System.out.println(String.format(Locale.US, "file of %.1f MB", pdf.length() / 1e6));
+            System.out.println(String.format(Locale.US, "stream:        %8.1f MB on the heap", streamPeak / 1e6));
+            System.out.println(String.format(Locale.US, "random access: %8.1f MB on the heap", channelPeak / 1e6));
+
+            Assert.assertEquals(streamed.getSections(), randomAccess.getSections());
+            Assert.assertEquals(PAGES * PARAGRAPHS_PER_PAGE, countParagraphs(randomAccess));
+            Assert.assertTrue("The heap grows with the size of the file",
+                    channelPeak < MAX_HEAP_PER_FILE_SIZE * pdf.length());
+        } finally {
+            Assert.assertTrue(pdf.delete());
+        }
+    }
+
+    /**
+     * Extracts a PDF and measures the heap while its pages are interpreted
+     *
+     * @param file    the stream of the PDF
+     * @param sampler measures the heap
+     * @return the extracted text
+     * @throws DocumentNotSupportedException when the PDF cannot be extracted
+     */
+    private static ExtractedText extract(InputStream file, HeapSampler sampler)
+            throws DocumentNotSupportedException {
+        CancellationToken cancellationToken = new CancellationToken();
+        cancellationToken.setProgressListener(sampler);
+        return new TextExtractorPDF().extract(file, "dummyUri", "large.pdf", false, cancellationToken);
+    }
+
+    /**
+     * @param extractedText the extracted text of the generated document
+     * @return the number of paragraphs that were extracted, as title, section title or in a body
+     */
+    private static int countParagraphs(ExtractedText extractedText) {
+        StringBuilder text = new StringBuilder().append(extractedText.getTitle());
+        for (Section section : extractedText.getSections()) {
+            text.append(section.getTitle()).append(section.getBody());
+        }
+        return text.toString().split("Paragraph ", -1).length - 1;
+    }
+
+    /**
+     * @return the number of bytes on the heap that are still in use after a garbage collection
+     */
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Creates a tagged PDF with a fixed number of paragraphs on every page, and a large embedded file
+     *
+     * @param pdf the file to write the PDF to
+     * @throws Exception when the PDF cannot be written
+     */
+    private static void createTaggedPDF(File pdf) throws Exception {
+        try (OutputStream outputStream = new FileOutputStream(pdf)) {
+            Document document = new Document();
+            PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+            writer.setTagged();
+            document.open();
+
+            byte[] attachment = new byte[ATTACHMENT_BYTES];
+            new Random(0).nextBytes(attachment);
+            writer.addFileAttachment(PdfFileSpecification.fileEmbedded(writer, null, "attachment.bin", attachment,
+                    PdfStream.NO_COMPRESSION));
+
+            for (int page = 1; page <= PAGES; page++) {
+                for (int i = 0; i < PARAGRAPHS_PER_PAGE; i++) {
+                    document.add(new Paragraph(String.format(Locale.US, "Paragraph %d on page %d", i, page)));
+                }
+                document.newPage();
+            }
+            document.close();
+        }
+    }
+
+    /**
+     * Measures the heap after a garbage collection every few pages, and keeps the largest measurement
+     */
+    private static class HeapSampler implements ProgressListener {
+        /**
+         * The largest number of bytes that was in use on the heap
+         */
+        private long mPeak = 0;
+
+        @Override
+        public void onPhaseStarted(ProcessingPhase phase) {
+            // Only the pages are sampled
+        }
+
+        @Override
+        public void onProgress(ProcessingPhase phase, long done, long total) {
+            if (phase == ProcessingPhase.PAGES && done % PAGES_PER_SAMPLE == 0) {
+                mPeak = Math.max(mPeak, usedHeap());
+            }
+        }
+    }
+}
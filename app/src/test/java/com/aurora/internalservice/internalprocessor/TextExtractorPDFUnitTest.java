@@ -1,6 +1,8 @@
 package com.aurora.internalservice.internalprocessor;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -10,6 +12,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -69,5 +73,19 @@ public class TextExtractorPDFUnitTest {
                 mExtractedText.getSections().get(0).getBody().split("\n")[1]);
     }
 
-
-}
\ No newline at end of file
+    @Test
+    public void extractParts_shouldEmitSameTextAsExtract() throws FileNotFoundException {
+        InputStream inputStream = new FileInputStream(new File(RES_PATH + "Pasta.pdf"));
+        List<ExtractedPart> parts = new TextExtractorPDF().extractParts(inputStream, "dummyUri", "Pasta.pdf", false,
+                new CancellationToken()).toList().blockingGet();
+
+        // The title comes first, followed by the sections in the same order
+        assertTrue("PDF text extraction: the title is not emitted first", parts.get(0).isHeader());
+        assertEquals(mExtractedText.getTitle(), parts.get(0).getTitle());
+        List<Section> sections = new ArrayList<>();
+        for (ExtractedPart part : parts.subList(1, parts.size())) {
+            sections.add(part.getSection());
+        }
+        assertEquals(mExtractedText.getSections(), sections);
+    }
+}
@@ -1,6 +1,8 @@
 package com.aurora.internalservice.internalprocessor;
 
 import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -9,9 +11,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class TextExtractorTXTUnitTest {
     private final static String RES_PATH = "src/test/res/";
@@ -57,6 +63,28 @@ public class TextExtractorTXTUnitTest {
                 mExtractedText.getSections().get(1).getBody());
     }
 
+    @Test(expected = CancellationException.class)
+    public void extract_shouldStopWhenCancelled() throws FileNotFoundException {
+        CancellationToken cancellationToken = new CancellationToken();
+        cancellationToken.cancel();
 
+        InputStream inputStream = new FileInputStream(new File(RES_PATH + "Pasta.txt"));
+        new TextExtractorTXT().extract(inputStream, "dummyUri", "Pasta.txt", false, cancellationToken);
+    }
+
+    @Test
+    public void extractParts_shouldEmitSameTextAsExtract() throws FileNotFoundException {
+        InputStream inputStream = new FileInputStream(new File(RES_PATH + "Pasta.txt"));
+        List<ExtractedPart> parts = new TextExtractorTXT().extractParts(inputStream, "dummyUri", "Pasta.txt", false,
+                new CancellationToken()).toList().blockingGet();
 
-}
\ No newline at end of file
+        // The title comes first, followed by the sections in the same order
+        assertTrue("TXT text extraction: the title is not emitted first", parts.get(0).isHeader());
+        assertEquals(mExtractedText.getTitle(), parts.get(0).getTitle());
+        List<Section> sections = new ArrayList<>();
+        for (ExtractedPart part : parts.subList(1, parts.size())) {
+            sections.add(part.getSection());
+        }
+        assertEquals(mExtractedText.getSections(), sections);
+    }
+}
@@ -0,0 +1,240 @@
+package com.aurora.internalservice.internalprocessor.pdfparsing;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.auroralib.Section;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.parser.FilteredTextRenderListener;
+import com.itextpdf.text.pdf.parser.ImageRenderInfo;
+import com.itextpdf.text.pdf.parser.MarkedContentRenderFilter;
+import com.itextpdf.text.pdf.parser.PdfContentStreamProcessor;
+import com.itextpdf.text.pdf.parser.RenderListener;
+import com.itextpdf.text.pdf.parser.SimpleTextExtractionStrategy;
+import com.itextpdf.text.pdf.parser.TextRenderInfo;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Benchmark for the extraction of large tagged PDFs. Every page should be interpreted once, instead of once for
+ * every paragraph on it, and the pages should be interpreted on all cores.
+ */
+public class PDFContentExtractorLongTest {
+
+    /**
+     * The number of pages of the generated document
+     */
+    private static final int PAGES = 30;
+
+    /**
+     * The number of pages of the generated document on which the parallel extraction is measured
+     */
+    private static final int LARGE_PAGES = 300;
+
+    /**
+     * The number of paragraphs on every page of the generated document
+     */
+    private static final int PARAGRAPHS_PER_PAGE = 40;
+
+    /**
+     * The number of rounds that are run before measuring, so the JIT has warmed up
+     */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /**
+     * The minimal speedup of one pass per page over one pass per paragraph
+     */
+    private static final double MIN_SPEEDUP = 5.0;
+
+    /**
+     * The minimal speedup of the parallel extraction per extra core, so two cores should be at least 1.5 times as
+     * fast as one
+     */
+    private static final double MIN_SPEEDUP_PER_CORE = 0.5;
+
+    @Test
+    public void PDFContentExtractor_extractContent_shouldInterpretEveryPageOnce() throws Exception {
+        byte[] pdf = createTaggedPDF(PAGES);
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            extractPerPage(pdf, 1);
+            extractPerMcid(pdf);
+        }
+
+        long start = System.nanoTime();
+        ExtractedText extractedText = extractPerPage(pdf, 1);
+        long perPage = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int mcids = extractPerMcid(pdf);
+        long perMcid = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US, "%d pages, %d marked-content sequences", PAGES, mcids));
+        System.out.println(String.format(Locale.US, "one pass per page: %8.1f ms", perPage / 1e6));
+        System.out.println(String.format(Locale.US, "one pass per MCID: %8.1f ms", perMcid / 1e6));
+
+        StringBuilder text = new StringBuilder();
+        for (Section section : extractedText.getSections()) {
+            text.append(section.getBody());
+        }
+        Assert.assertTrue("The first paragraph is missing", text.indexOf(paragraph(1, 0)) >= 0);
+        Assert.assertTrue("The last paragraph is missing",
+                text.indexOf(paragraph(PAGES, PARAGRAPHS_PER_PAGE - 1)) >= 0);
+        Assert.assertTrue("Interpreting every page once is not faster than once per paragraph",
+                perMcid > MIN_SPEEDUP * perPage);
+    }
+
+    @Test
+    public void PDFContentExtractor_extractContent_shouldScaleWithCores() throws Exception {
+        byte[] pdf = createTaggedPDF(LARGE_PAGES);
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Use more threads than there are cores, so the pages are interpreted on the pool even on a single core
+        int threads = Math.max(2, cores);
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            extractPerPage(pdf, 1);
+            extractPerPage(pdf, threads);
+        }
+
+        long start = System.nanoTime();
+        ExtractedText serial = extractPerPage(pdf, 1);
+        long serialNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        ExtractedText parallel = extractPerPage(pdf, threads);
+        long parallelNanos = System.nanoTime() - start;
+
+        System.out.println(String.format(Locale.US, "%d pages, %d cores", LARGE_PAGES, cores));
+        System.out.println(String.format(Locale.US, "1 thread:   %8.1f ms", serialNanos / 1e6));
+        System.out.println(String.format(Locale.US, "%d threads: %8.1f ms", threads, parallelNanos / 1e6));
+
+        // The content is merged in the order of the structure tree, whatever the order in which pages are done
+        Assert.assertEquals(serial.getTitle(), parallel.getTitle());
+        Assert.assertEquals(serial.getSections(), parallel.getSections());
+
+        Assume.assumeTrue("The speedup can only be measured on more than one core", cores > 1);
+        double minSpeedup = 1 + MIN_SPEEDUP_PER_CORE * (Math.min(cores, 4) - 1);
+        Assert.assertTrue("The extraction does not scale with the number of cores",
+                serialNanos > minSpeedup * parallelNanos);
+    }
+
+    /**
+     * Extracts a PDF with the PDFContentExtractor
+     *
+     * @param pdf         the tagged PDF
+     * @param parallelism the number of pages that are interpreted at the same time
+     * @return the extracted text
+     * @throws Exception when the PDF cannot be read
+     */
+    private static ExtractedText extractPerPage(byte[] pdf, int parallelism) throws Exception {
+        ParsedPDF parsedPDF = new ParsedPDF();
+        new PDFContentExtractor(parallelism).extractContent(new PdfReader(pdf), parsedPDF);
+        return parsedPDF.toExtractedText("dummyUri", "benchmark.pdf");
+    }
+
+    /**
+     * Extracts the text of every marked-content sequence of a PDF by interpreting its page once for every
+     * sequence, like the PDFContentExtractor did before
+     *
+     * @param pdf the tagged PDF
+     * @return the number of marked-content sequences
+     * @throws Exception when the PDF cannot be read
+     */
+    private static int extractPerMcid(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        int mcids = 0;
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            PdfDictionary pageDictionary = reader.getPageN(page);
+            for (int mcid : findMcids(pageDictionary)) {
+                FilteredTextRenderListener listener = new FilteredTextRenderListener(
+                        new SimpleTextExtractionStrategy(), new MarkedContentRenderFilter(mcid));
+                new PdfContentStreamProcessor(listener).processContent(PdfReader.getPageContent(pageDictionary),
+                        pageDictionary.getAsDict(PdfName.RESOURCES));
+                Assert.assertNotNull(listener.getResultantText());
+                mcids++;
+            }
+        }
+        return mcids;
+    }
+
+    /**
+     * Finds the MCIDs of the text on a page
+     *
+     * @param page the page dictionary
+     * @return the MCIDs of the page
+     * @throws Exception when the page cannot be read
+     */
+    private static Set<Integer> findMcids(PdfDictionary page) throws Exception {
+        final Set<Integer> mcids = new TreeSet<>();
+        RenderListener listener = new RenderListener() {
+            @Override
+            public void beginTextBlock() {
+                // Only the text is needed
+            }
+
+            @Override
+            public void renderText(TextRenderInfo renderInfo) {
+                if (renderInfo.getMcid() != null) {
+                    mcids.add(renderInfo.getMcid());
+                }
+            }
+
+            @Override
+            public void endTextBlock() {
+                // Only the text is needed
+            }
+
+            @Override
+            public void renderImage(ImageRenderInfo renderInfo) {
+                // Only the text is needed
+            }
+        };
+        new PdfContentStreamProcessor(listener).processContent(PdfReader.getPageContent(page),
+                page.getAsDict(PdfName.RESOURCES));
+        return mcids;
+    }
+
+    /**
+     * Creates a tagged PDF with a fixed number of paragraphs on every page
+     *
+     * @param pages the number of pages
+     * @return the PDF
+     * @throws Exception when the PDF cannot be written
+     */
+    private static byte[] createTaggedPDF(int pages) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Document document = new Document();
+        PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+        writer.setTagged();
+        document.open();
+        for (int page = 1; page <= pages; page++) {
+            for (int i = 0; i < PARAGRAPHS_PER_PAGE; i++) {
+                Paragraph paragraph = new Paragraph(paragraph(page, i));
+                paragraph.setLeading(0, 1);
+                document.add(paragraph);
+            }
+            document.newPage();
+        }
+        document.close();
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * @param page      the page of the paragraph
+     * @param paragraph the index of the paragraph on the page
+     * @return the text of the paragraph
+     */
+    private static String paragraph(int page, int paragraph) {
+        return String.format(Locale.US, "Paragraph %d on page %d", paragraph, page);
+    }
+}
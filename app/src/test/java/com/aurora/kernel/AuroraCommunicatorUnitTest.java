@@ -11,12 +11,16 @@ import com.aurora.internalservice.internalcache.CachedFileInfo;
 import com.aurora.internalservice.internalcache.CachedProcessedFile;
 import com.aurora.kernel.event.InternalProcessorRequest;
 import com.aurora.kernel.event.InternalProcessorResponse;
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
 import com.aurora.kernel.event.OpenCachedFileWithPluginRequest;
 import com.aurora.kernel.event.OpenFileWithPluginRequest;
+import com.aurora.kernel.event.QueryCacheRequest;
 import com.aurora.kernel.event.QueryCacheResponse;
 import com.aurora.kernel.event.RemoveFromCacheRequest;
 import com.aurora.kernel.event.RetrieveFileFromCacheRequest;
 import com.aurora.kernel.event.RetrieveFileFromCacheResponse;
+import com.aurora.plugin.InternalServices;
 import com.aurora.plugin.Plugin;
 import com.aurora.util.MockContext;
 
@@ -28,6 +32,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import io.reactivex.Observable;
@@ -49,7 +54,8 @@ public class AuroraCommunicatorUnitTest {
     public static void initialize() {
         sBus = new Bus(Schedulers.trampoline());
 
-        sAuroraCommunicator = new AuroraCommunicator(sBus, new MockContext());
+        // The job queue is used on the calling thread, so the requests are posted before openFileWithPlugin returns
+        sAuroraCommunicator = new AuroraCommunicator(sBus, new MockContext(), Schedulers.trampoline());
 
     }
 
@@ -78,6 +84,44 @@ public class AuroraCommunicatorUnitTest {
     }
 
 
+    @Test
+    public void AuroraCommunicator_cancelOpenFile_shouldCancelProcessingAndNotOpenPlugin() {
+        // Subscribe to requests, but do not respond yet
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+        TestObserver<OpenFileWithPluginRequest> openObserver = sBus.register(OpenFileWithPluginRequest.class).test();
+
+        sAuroraCommunicator.openFileWithPlugin("dummyUri", "Dummy/file/ref", "txt", new DummyInputStream(),
+                DUMMY_PLUGIN);
+        InternalProcessorRequest request = requestObserver.values().get(0);
+
+        // Call method under test
+        sAuroraCommunicator.cancelOpenFile();
+        Assert.assertTrue(request.getCancellationToken().isCancelled());
+
+        // A late response should not open the plugin anymore
+        InternalProcessorResponse response = new InternalProcessorResponse(new ExtractedText("", ""));
+        response.setCorrelationId(request.getCorrelationId());
+        sBus.post(response);
+
+        openObserver.assertNoValues();
+        requestObserver.dispose();
+        openObserver.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_openFileWithPlugin_shouldCancelFileThatWasBeingOpened() {
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+
+        sAuroraCommunicator.openFileWithPlugin("dummyUri", "first", "txt", new DummyInputStream(), DUMMY_PLUGIN);
+        sAuroraCommunicator.openFileWithPlugin("dummyUri", "second", "txt", new DummyInputStream(), DUMMY_PLUGIN);
+
+        Assert.assertTrue(requestObserver.values().get(0).getCancellationToken().isCancelled());
+        Assert.assertFalse(requestObserver.values().get(1).getCancellationToken().isCancelled());
+
+        sAuroraCommunicator.cancelOpenFile();
+        requestObserver.dispose();
+    }
+
     @Test
     public void AuroraCommunicator_openFileWithPlugin_shouldSendOpenFileWithPluginRequestAfterExtractingText() {
 
@@ -87,8 +131,11 @@ public class AuroraCommunicatorUnitTest {
         // Subscribe to observable to send response event
         ExtractedText dummyExtractedText = new ExtractedText("Bla", "Bla", Arrays.asList("Dummy", "Paragraph"));
         Disposable internalProccessorRequestDisposable =
-                internalProcessorRequestObservable.subscribe(internalProcessorRequest ->
-                        sBus.post(new InternalProcessorResponse(dummyExtractedText)));
+                internalProcessorRequestObservable.subscribe(internalProcessorRequest -> {
+                    InternalProcessorResponse response = new InternalProcessorResponse(dummyExtractedText);
+                    response.setCorrelationId(internalProcessorRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
         // Create observable of open file with plugin request
         Observable<OpenFileWithPluginRequest> openFileWithPluginRequestObservable =
@@ -137,7 +184,11 @@ public class AuroraCommunicatorUnitTest {
 
         // Subscribe to observable to send response event
         Disposable disposable = retrieveFileFromCacheRequestObservable
-                .subscribe(queryCacheRequest -> sBus.post(new RetrieveFileFromCacheResponse(cachedFile)));
+                .subscribe(retrieveFileFromCacheRequest -> {
+                    RetrieveFileFromCacheResponse response = new RetrieveFileFromCacheResponse(cachedFile);
+                    response.setCorrelationId(retrieveFileFromCacheRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
         // Create observable of OpenCachedFileWithPluginRequests
         Observable<OpenCachedFileWithPluginRequest> openCachedFileWithPluginRequestObservable =
@@ -174,23 +225,63 @@ public class AuroraCommunicatorUnitTest {
         // Create test observer
         TestObserver<List<CachedFileInfo>> testObserver = new TestObserver<>();
 
-        // Call method under test
-        sAuroraCommunicator.getListOfCachedFiles(0, testObserver);
-
-
         // Make dummy list
         List<CachedFileInfo> cachedFilesList = new ArrayList<>();
 
         // Add fake cached file
         cachedFilesList.add(new CachedFileInfo("dummyfileref", "com.aurora.dummyplugin"));
 
-        // Create response and post on bus
-        QueryCacheResponse response = new QueryCacheResponse(cachedFilesList);
-        sBus.post(response);
+        // Respond to the query with the dummy list
+        Disposable disposable = sBus.register(QueryCacheRequest.class).subscribe(queryCacheRequest -> {
+            QueryCacheResponse response = new QueryCacheResponse(cachedFilesList);
+            response.setCorrelationId(queryCacheRequest.getCorrelationId());
+            sBus.post(response);
+        });
+
+        // Call method under test
+        sAuroraCommunicator.getListOfCachedFiles(0, testObserver);
 
         // Assert values
         testObserver.assertSubscribed();
         testObserver.assertValue(cachedFilesList);
+
+        disposable.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_getListOfCachedFiles_overlappingRequestsShouldEachGetTheirOwnResponse() {
+        // Create test observers
+        TestObserver<List<CachedFileInfo>> firstObserver = new TestObserver<>();
+        TestObserver<List<CachedFileInfo>> secondObserver = new TestObserver<>();
+
+        // Keep track of the requests without responding yet
+        List<QueryCacheRequest> requests = new ArrayList<>();
+        Disposable disposable = sBus.register(QueryCacheRequest.class).subscribe(requests::add);
+
+        // Call method under test twice before any response comes in
+        sAuroraCommunicator.getListOfCachedFiles(1, firstObserver);
+        sAuroraCommunicator.getListOfCachedFiles(2, secondObserver);
+        Assert.assertEquals(2, requests.size());
+
+        // Respond to the requests in reverse order
+        List<CachedFileInfo> firstList = new ArrayList<>();
+        firstList.add(new CachedFileInfo("firstfileref", "com.aurora.dummyplugin"));
+        List<CachedFileInfo> secondList = new ArrayList<>();
+        secondList.add(new CachedFileInfo("secondfileref", "com.aurora.dummyplugin"));
+
+        QueryCacheResponse secondResponse = new QueryCacheResponse(secondList);
+        secondResponse.setCorrelationId(requests.get(1).getCorrelationId());
+        sBus.post(secondResponse);
+
+        QueryCacheResponse firstResponse = new QueryCacheResponse(firstList);
+        firstResponse.setCorrelationId(requests.get(0).getCorrelationId());
+        sBus.post(firstResponse);
+
+        // Assert that every request got its own response
+        firstObserver.assertValue(firstList);
+        secondObserver.assertValue(secondList);
+
+        disposable.dispose();
     }
 
     @Test
@@ -220,6 +311,153 @@ public class AuroraCommunicatorUnitTest {
         Assert.assertEquals(uniquePluginName, receivedRequest.getUniquePluginName());
     }
 
+    @Test
+    public void AuroraCommunicator_prepareFile_shouldExtractFileBeforePluginIsPicked() {
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+        TestObserver<OpenFileWithPluginRequest> openObserver = sBus.register(OpenFileWithPluginRequest.class).test();
+
+        // Call method under test
+        sAuroraCommunicator.prepareFile("preparedUri", "prepared", "txt", new DummyInputStream(),
+                Collections.singletonList(DUMMY_PLUGIN));
+
+        // Assert that only the text is extracted, because no plugin asks for the images
+        requestObserver.assertValueCount(1);
+        InternalProcessorRequest request = requestObserver.values().get(0);
+        Assert.assertEquals(Collections.singletonList(InternalServices.TEXT_EXTRACTION),
+                request.getInternalServices());
+
+        ExtractedText extractedText = new ExtractedText("preparedUri", "prepared");
+        InternalProcessorResponse response = new InternalProcessorResponse(extractedText);
+        response.setCorrelationId(request.getCorrelationId());
+        sBus.post(response);
+
+        // The plugin is picked after the file was extracted
+        sAuroraCommunicator.openFileWithPlugin("preparedUri", "prepared", "txt", new DummyInputStream(),
+                DUMMY_PLUGIN);
+
+        // Assert that the file was not extracted again
+        requestObserver.assertValueCount(1);
+        openObserver.assertValueCount(1);
+        Assert.assertEquals(extractedText, openObserver.values().get(0).getExtractedText());
+
+        requestObserver.dispose();
+        openObserver.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_openFileWithPlugin_shouldOnlyRunRemainingServicesOnPreparedFile() {
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+        Plugin nlpPlugin = new Plugin("com.aurora.nlpplugin", "NLPPlugin", null, "NLP plugin",
+                Arrays.asList(InternalServices.TEXT_EXTRACTION, InternalServices.NLP_TOKENIZE));
+
+        sAuroraCommunicator.prepareFile("nlpUri", "nlp", "txt", new DummyInputStream(),
+                Collections.singletonList(nlpPlugin));
+        InternalProcessorRequest request = requestObserver.values().get(0);
+
+        ExtractedText extractedText = new ExtractedText("nlpUri", "nlp");
+        InternalProcessorResponse response = new InternalProcessorResponse(extractedText);
+        response.setCorrelationId(request.getCorrelationId());
+        sBus.post(response);
+
+        // Call method under test
+        sAuroraCommunicator.openFileWithPlugin("nlpUri", "nlp", "txt", new DummyInputStream(), nlpPlugin);
+
+        // Assert that only NLP is run, on the text that was already extracted
+        requestObserver.assertValueCount(2);
+        InternalProcessorRequest extension = requestObserver.values().get(1);
+        Assert.assertEquals(extractedText, extension.getExtractedText());
+        Assert.assertEquals(Collections.singletonList(InternalServices.NLP_TOKENIZE),
+                extension.getInternalServices());
+
+        sAuroraCommunicator.cancelOpenFile();
+        Assert.assertTrue(extension.getCancellationToken().isCancelled());
+        requestObserver.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_cancelPreparedFile_shouldDiscardExtraction() {
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+
+        sAuroraCommunicator.prepareFile("cancelledUri", "cancelled", "txt", new DummyInputStream(),
+                Collections.singletonList(DUMMY_PLUGIN));
+        InternalProcessorRequest request = requestObserver.values().get(0);
+
+        // Call method under test
+        sAuroraCommunicator.cancelPreparedFile();
+        Assert.assertTrue(request.getCancellationToken().isCancelled());
+
+        // Assert that the file is extracted from the start when it is opened after all
+        sAuroraCommunicator.openFileWithPlugin("cancelledUri", "cancelled", "txt", new DummyInputStream(),
+                DUMMY_PLUGIN);
+        requestObserver.assertValueCount(2);
+        Assert.assertNull(requestObserver.values().get(1).getExtractedText());
+
+        sAuroraCommunicator.cancelOpenFile();
+        requestObserver.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_memoryPressure_shouldOnlyCancelPreparedFileWhenUnloadingModels() {
+        TestObserver<InternalProcessorRequest> requestObserver = sBus.register(InternalProcessorRequest.class).test();
+
+        sAuroraCommunicator.prepareFile("pressureUri", "pressure", "txt", new DummyInputStream(),
+                Collections.singletonList(DUMMY_PLUGIN));
+        InternalProcessorRequest request = requestObserver.values().get(0);
+
+        // Dropping the caches keeps the file the user is about to open
+        sBus.post(new MemoryPressureEvent(Degradation.DROP_CACHES, "test"));
+        Assert.assertFalse(request.getCancellationToken().isCancelled());
+
+        sBus.post(new MemoryPressureEvent(Degradation.UNLOAD_NLP_MODELS, "test"));
+        Assert.assertTrue(request.getCancellationToken().isCancelled());
+
+        sBus.post(new MemoryPressureEvent(Degradation.NONE, "test"));
+        requestObserver.dispose();
+    }
+
+    @Test
+    public void AuroraCommunicator_importFiles_shouldReportEveryFileEvenWhenFilesFail() {
+        // The mock context cannot open any of these files, so every file fails
+        List<BatchFile> files = Arrays.asList(new BatchFile("dummyUri1", "first.txt", "txt"),
+                new BatchFile("dummyUri2", "second.txt", "txt"),
+                new BatchFile("dummyUri3", "third.txt", "txt"));
+
+        // Call method under test
+        TestObserver<BatchProgress> testObserver = sAuroraCommunicator.importFiles(files, DUMMY_PLUGIN).test();
+        testObserver.awaitTerminalEvent();
+
+        // Assert that a failing file did not stop the rest of the batch
+        testObserver.assertComplete();
+        testObserver.assertValueCount(files.size());
+
+        BatchProgress progress = testObserver.values().get(files.size() - 1);
+        Assert.assertTrue(progress.isFinished());
+        Assert.assertEquals(files.size(), progress.getFailed());
+        Assert.assertEquals(0, progress.getSucceeded());
+        Assert.assertNotNull(progress.getLastFailure());
+    }
+
+    @Test
+    public void AuroraCommunicator_importFiles_shouldReportFileThatIsBeingOpenedAsPending() {
+        // Nobody responds, so the file stays in processing while the batch gets to it
+        sAuroraCommunicator.openFileWithPlugin("openingUri", "opening.txt", "txt", new DummyInputStream(),
+                DUMMY_PLUGIN);
+
+        // Call method under test
+        TestObserver<BatchProgress> testObserver = sAuroraCommunicator.importFiles(
+                Collections.singletonList(new BatchFile("openingUri", "opening.txt", "txt")), DUMMY_PLUGIN).test();
+        testObserver.awaitTerminalEvent();
+
+        // Assert that the file is not reported as imported before its processing is done
+        BatchProgress progress = testObserver.values().get(0);
+        Assert.assertTrue(progress.isFinished());
+        Assert.assertEquals(1, progress.getPending());
+        Assert.assertEquals(0, progress.getSucceeded());
+        Assert.assertNull(progress.getLastFailure());
+
+        sAuroraCommunicator.cancelOpenFile();
+    }
+
 
     /**
      * Dummy stub class for testing purposes
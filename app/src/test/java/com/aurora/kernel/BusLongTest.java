@@ -0,0 +1,112 @@
+package com.aurora.kernel;
+
+import com.aurora.kernel.event.Event;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Benchmark for the dispatch cost of the bus. The cost of posting an event should not depend on the number of
+ * subscribers to other types of events.
+ */
+public class BusLongTest {
+
+    /**
+     * The number of events that are posted per measurement
+     */
+    private static final int EVENTS = 200_000;
+
+    /**
+     * The number of rounds that are run before measuring, so the JIT has warmed up
+     */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /**
+     * The maximal allowed ratio between the per event cost with the most and the least subscribers
+     */
+    private static final double MAX_COST_RATIO = 3.0;
+
+    @Test
+    public void Bus_post_costShouldBeFlatInNumberOfSubscribers() {
+        int[] subscriberCounts = new int[]{10, 100, 1000};
+        double[] nanosPerEvent = new double[subscriberCounts.length];
+
+        for (int i = 0; i < subscriberCounts.length; i++) {
+            nanosPerEvent[i] = measureNanosPerEvent(subscriberCounts[i]);
+            System.out.println(String.format(Locale.US, "%5d subscribers: %8.1f ns/event",
+                    subscriberCounts[i], nanosPerEvent[i]));
+        }
+
+        Assert.assertTrue("The cost per event grows with the number of subscribers",
+                nanosPerEvent[subscriberCounts.length - 1] < MAX_COST_RATIO * nanosPerEvent[0]);
+    }
+
+    /**
+     * Measures the average cost of posting an event to a single subscriber, while a given number of subscribers
+     * are registered for another type of events
+     *
+     * @param otherSubscribers the number of subscribers to other types of events
+     * @return the average time in nanoseconds it took to post and deliver one event
+     */
+    private static double measureNanosPerEvent(int otherSubscribers) {
+        Bus bus = new Bus(Schedulers.trampoline());
+        List<Disposable> disposables = new ArrayList<>();
+
+        // Register the subscribers that should not influence the cost
+        for (int i = 0; i < otherSubscribers; i++) {
+            disposables.add(bus.register(OtherEvent.class).subscribe(event -> event.mCount++));
+        }
+
+        // Register the single subscriber that receives the posted events
+        long[] received = new long[1];
+        disposables.add(bus.register(MeasuredEvent.class).subscribe(event -> received[0]++));
+
+        MeasuredEvent event = new MeasuredEvent();
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            postEvents(bus, event);
+        }
+
+        long start = System.nanoTime();
+        postEvents(bus, event);
+        long duration = System.nanoTime() - start;
+
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+
+        Assert.assertEquals((WARMUP_ROUNDS + 1L) * EVENTS, received[0]);
+        return (double) duration / EVENTS;
+    }
+
+    /**
+     * Posts the same event a number of times on the bus
+     *
+     * @param bus   the bus to post on
+     * @param event the event to post
+     */
+    private static void postEvents(Bus bus, Event event) {
+        for (int i = 0; i < EVENTS; i++) {
+            bus.post(event);
+        }
+    }
+
+    /**
+     * Event that is posted during the measurements
+     */
+    private static class MeasuredEvent implements Event {
+    }
+
+    /**
+     * Event that is registered for, but never posted during the measurements
+     */
+    private static class OtherEvent implements Event {
+        private int mCount = 0;
+    }
+}
@@ -1,14 +1,25 @@
 package com.aurora.kernel;
 
+import com.aurora.kernel.event.CorrelatedEvent;
 import com.aurora.kernel.event.Event;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.schedulers.TestScheduler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BusUnitTest {
 
@@ -38,6 +49,298 @@ public class BusUnitTest {
         mBus.post(testEvent);
     }
 
+    @Test
+    public void Bus_post_shouldOnlyDeliverEventsOfRegisteredClass() {
+        // Register for both types of events
+        TestObserver<TestEvent> testEventObserver = new TestObserver<>();
+        TestObserver<OtherTestEvent> otherTestEventObserver = new TestObserver<>();
+        mBus.register(TestEvent.class).subscribe(testEventObserver);
+        mBus.register(OtherTestEvent.class).subscribe(otherTestEventObserver);
+
+        // Post an event of only one type
+        TestEvent testEvent = new TestEvent("Only for the TestEvent subscribers");
+        mBus.post(testEvent);
+
+        // Assert that only the subscriber of that type received it
+        testEventObserver.assertValue(testEvent);
+        otherTestEventObserver.assertNoValues();
+
+        testEventObserver.dispose();
+        otherTestEventObserver.dispose();
+    }
+
+    @Test
+    public void Bus_post_shouldNotFailWithoutSubscribers() {
+        TestObserver<OtherTestEvent> testObserver = new TestObserver<>();
+
+        // Post an event nobody registered for yet, then register
+        mBus.post(new UnregisteredTestEvent());
+        mBus.register(OtherTestEvent.class).subscribe(testObserver);
+
+        testObserver.assertNoValues();
+        testObserver.dispose();
+    }
+
+
+    @Test
+    public void Bus_request_shouldOnlyAcceptMatchingResponse() {
+        // Respond to every request with an unrelated response first, and then with the matching one
+        Disposable disposable = mBus.register(TestRequest.class).subscribe((TestRequest request) -> {
+            mBus.post(new TestResponse("Not for this request"));
+
+            TestResponse response = new TestResponse("For this request");
+            response.setCorrelationId(request.getCorrelationId());
+            mBus.post(response);
+        });
+
+        // Call method under test
+        TestObserver<String> testObserver = new TestObserver<>();
+        mBus.request(new TestRequest(), TestResponse.class, 1, TimeUnit.SECONDS)
+                .map(response -> response.mMessage)
+                .subscribe(testObserver);
+
+        testObserver.assertValue("For this request");
+        disposable.dispose();
+    }
+
+    @Test
+    public void Bus_request_shouldTimeOutWithoutResponse() {
+        // Call method under test without anyone responding
+        TestObserver<TestResponse> testObserver = mBus
+                .request(new TestRequest(), TestResponse.class, 10, TimeUnit.MILLISECONDS)
+                .test();
+
+        testObserver.awaitTerminalEvent(1, TimeUnit.SECONDS);
+        testObserver.assertError(TimeoutException.class);
+    }
+
+    @Test
+    public void Bus_setOverflowPolicy_dropOldestShouldKeepNewestEvents() {
+        // Use a scheduler that only handles events when asked, so the events wait in the queue
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+        bus.setOverflowPolicy(TestEvent.class, OverflowPolicy.DROP_OLDEST, 2);
+
+        Observable<String> observable = bus.register(TestEvent.class).map(event -> event.testMessage);
+        TestObserver<String> testObserver = observable.test();
+
+        for (int i = 1; i <= 5; i++) {
+            bus.post(new TestEvent("Event " + i));
+        }
+
+        // The first event is being handed to the subscriber, the two newest are waiting and two are dropped
+        assertEquals(3, bus.getQueueDepth(TestEvent.class));
+        assertEquals(2, bus.getDroppedEvents(TestEvent.class));
+
+        scheduler.triggerActions();
+
+        testObserver.assertValues("Event 1", "Event 4", "Event 5");
+        assertEquals(0, bus.getQueueDepth(TestEvent.class));
+        testObserver.dispose();
+    }
+
+    @Test
+    public void Bus_setOverflowPolicy_latestShouldOnlyKeepLastEvent() {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+        bus.setOverflowPolicy(TestEvent.class, OverflowPolicy.LATEST, 1);
+
+        TestObserver<String> testObserver = bus.register(TestEvent.class).map(event -> event.testMessage).test();
+
+        for (int i = 1; i <= 5; i++) {
+            bus.post(new TestEvent("Event " + i));
+        }
+        scheduler.triggerActions();
+
+        testObserver.assertValues("Event 1", "Event 5");
+        assertEquals(3, bus.getDroppedEvents(TestEvent.class));
+        testObserver.dispose();
+    }
+
+    @Test
+    public void Bus_setOverflowPolicy_blockShouldWaitForRoomInQueue() throws InterruptedException {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+        bus.setOverflowPolicy(TestEvent.class, OverflowPolicy.BLOCK, 2);
+
+        TestObserver<String> testObserver = bus.register(TestEvent.class).map(event -> event.testMessage).test();
+
+        bus.post(new TestEvent("Event 1"));
+        bus.post(new TestEvent("Event 2"));
+        assertEquals(2, bus.getQueueDepth(TestEvent.class));
+
+        // The queue is full, so posting another event should block until there is room again
+        Thread poster = new Thread(() -> bus.post(new TestEvent("Event 3")));
+        poster.start();
+        poster.join(100);
+        assertTrue(poster.isAlive());
+
+        scheduler.triggerActions();
+        poster.join(1000);
+        assertFalse(poster.isAlive());
+        scheduler.triggerActions();
+
+        testObserver.assertValues("Event 1", "Event 2", "Event 3");
+        assertEquals(0, bus.getQueueDepth(TestEvent.class));
+        assertEquals(0, bus.getDroppedEvents(TestEvent.class));
+        testObserver.dispose();
+    }
+
+    @Test
+    public void Bus_post_shouldNotBlockOrDropByDefault() {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+
+        TestObserver<TestEvent> testObserver = bus.register(TestEvent.class).test();
+
+        // Nothing is handled, so a bounded queue would either stop the poster or drop events when it is full
+        for (int i = 0; i < 2 * EventChannel.DEFAULT_CAPACITY; i++) {
+            bus.post(new TestEvent("Event " + i));
+        }
+        assertEquals(0, bus.getDroppedEvents(TestEvent.class));
+
+        scheduler.triggerActions();
+
+        testObserver.assertValueCount(2 * EventChannel.DEFAULT_CAPACITY);
+        assertEquals(0, bus.getQueueDepth(TestEvent.class));
+        testObserver.dispose();
+    }
+
+    @Test
+    public void Bus_request_shouldCompleteEveryRequestDuringFloodOfResponses() {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+
+        // Every request waits for its own response, so every response is queued for every request
+        List<TestObserver<String>> testObservers = new ArrayList<>();
+        List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 2 * EventChannel.DEFAULT_CAPACITY; i++) {
+            TestRequest request = new TestRequest();
+            requests.add(request);
+            testObservers.add(bus.request(request, TestResponse.class, 10, TimeUnit.SECONDS)
+                    .map(response -> response.mMessage)
+                    .test());
+        }
+
+        // Respond to all requests before any response is handled
+        for (int i = 0; i < requests.size(); i++) {
+            TestResponse response = new TestResponse("Response " + i);
+            response.setCorrelationId(requests.get(i).getCorrelationId());
+            bus.post(response);
+        }
+        scheduler.triggerActions();
+
+        for (int i = 0; i < testObservers.size(); i++) {
+            testObservers.get(i).assertValue("Response " + i);
+        }
+        assertEquals(0, bus.getDroppedEvents(TestResponse.class));
+    }
+
+    @Test
+    public void Bus_register_disposingShouldReleaseWaitingEvents() {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+        bus.setOverflowPolicy(TestEvent.class, OverflowPolicy.DROP_OLDEST, 4);
+
+        TestObserver<TestEvent> testObserver = bus.register(TestEvent.class).test();
+        bus.post(new TestEvent("Event 1"));
+        bus.post(new TestEvent("Event 2"));
+        assertEquals(2, bus.getQueueDepth(TestEvent.class));
+
+        // The events that were never handled should no longer count as waiting
+        testObserver.dispose();
+        assertEquals(0, bus.getQueueDepth(TestEvent.class));
+    }
+
+    @Test
+    public void Bus_register_disposingShouldReleaseBlockedPosters() throws InterruptedException {
+        TestScheduler scheduler = new TestScheduler();
+        Bus bus = new Bus(scheduler);
+        bus.setOverflowPolicy(TestEvent.class, OverflowPolicy.BLOCK, 1);
+
+        TestObserver<TestEvent> testObserver = bus.register(TestEvent.class).test();
+        bus.post(new TestEvent("Event 1"));
+
+        // The queue is full, so the poster waits until the subscriber leaves
+        Thread poster = new Thread(() -> bus.post(new TestEvent("Event 2")));
+        poster.start();
+        poster.join(100);
+        assertTrue(poster.isAlive());
+
+        testObserver.dispose();
+        poster.join(1000);
+        assertFalse(poster.isAlive());
+        assertEquals(0, bus.getQueueDepth(TestEvent.class));
+    }
+
+    @Test
+    public void Bus_setScheduler_shouldHandleRoutedEventsOnThatScheduler() {
+        // The default scheduler delivers immediately, the routed one only when asked
+        TestScheduler routedScheduler = new TestScheduler();
+        Bus bus = new Bus(Schedulers.trampoline());
+        bus.setScheduler(TestEvent.class, routedScheduler);
+
+        TestObserver<TestEvent> routedObserver = bus.register(TestEvent.class).test();
+        TestObserver<OtherTestEvent> defaultObserver = bus.register(OtherTestEvent.class).test();
+
+        bus.post(new TestEvent("Routed"));
+        bus.post(new OtherTestEvent());
+
+        defaultObserver.assertValueCount(1);
+        routedObserver.assertNoValues();
+
+        routedScheduler.triggerActions();
+        routedObserver.assertValueCount(1);
+
+        routedObserver.dispose();
+        defaultObserver.dispose();
+    }
+
+    @Test
+    public void Bus_register_shouldRecordMetricsPerEventClass() {
+        Bus bus = new Bus(Schedulers.trampoline());
+        Disposable disposable = bus.register(TestEvent.class).subscribe(event -> Thread.sleep(1));
+
+        bus.post(new TestEvent("First"));
+        bus.post(new TestEvent("Second"));
+
+        EventMetrics metrics = bus.getMetrics().get(TestEvent.class);
+        assertEquals(2, metrics.getPosts());
+        assertEquals(2, metrics.getQueueLatency().getCount());
+        assertEquals(2, metrics.getHandlerTime().getCount());
+        assertTrue(metrics.getHandlerTime().getMax(TimeUnit.MILLISECONDS) >= 1);
+        assertTrue(bus.getMetricsReport().contains("TestEvent"));
+
+        disposable.dispose();
+    }
+
+    @Test
+    public void Bus_register_shouldReportOwnersThatLeakSubscriptions() {
+        Bus bus = new Bus(Schedulers.trampoline());
+        Object owner = new Object();
+        List<Disposable> disposables = new ArrayList<>();
+
+        for (int i = 0; i < SubscriptionTracker.LEAK_THRESHOLD; i++) {
+            disposables.add(bus.register(owner, TestEvent.class).subscribe());
+        }
+
+        assertEquals(SubscriptionTracker.LEAK_THRESHOLD,
+                bus.getSubscriptionTracker().getLiveSubscriptions(TestEvent.class));
+        assertTrue(bus.getSubscriptionTracker().getLeakReport().contains("Object -> TestEvent"));
+
+        // Disposing the subscriptions should stop tracking them
+        for (Disposable disposable : disposables) {
+            disposable.dispose();
+        }
+
+        assertEquals(0, bus.getSubscriptionTracker().getLiveSubscriptions(TestEvent.class));
+        assertEquals("", bus.getSubscriptionTracker().getLeakReport());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Bus_setOverflowPolicy_shouldRejectEmptyQueue() {
+        mBus.setOverflowPolicy(OtherTestEvent.class, OverflowPolicy.BLOCK, 0);
+    }
 
     /**
      * Test event class
@@ -49,4 +352,33 @@ public class BusUnitTest {
             this.testMessage = testMessage;
         }
     }
+
+    /**
+     * Second test event class
+     */
+    private class OtherTestEvent implements Event {
+    }
+
+    /**
+     * Test event class that no one registers for
+     */
+    private class UnregisteredTestEvent implements Event {
+    }
+
+    /**
+     * Test request class
+     */
+    private class TestRequest extends CorrelatedEvent {
+    }
+
+    /**
+     * Test response class
+     */
+    private class TestResponse extends CorrelatedEvent {
+        private String mMessage;
+
+        public TestResponse(String message) {
+            mMessage = message;
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package com.aurora.kernel;
+
+import android.os.Build;
+
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
+import com.aurora.plugin.InternalServices;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Benchmark that processes the test documents with every execution profile. It reports the throughput and the CPU
+ * time of the whole process, which is used as a proxy for the energy the profile uses.
+ */
+public class ExecutionProfileLongTest {
+
+    /**
+     * The test documents
+     */
+    private static final String[] DOCUMENTS = new String[]{"Pasta.txt", "Pasta.docx", "Banana Bread.docx",
+            "blueberry.docx", "Pasta.pdf"};
+
+    /**
+     * The directory with the test documents
+     */
+    private static final String DOCUMENTS_DIRECTORY = "src/test/res/";
+
+    /**
+     * The internal services that are run on every document
+     */
+    private static final List<InternalServices> SERVICES = Arrays.asList(InternalServices.TEXT_EXTRACTION,
+            InternalServices.IMAGE_EXTRACTION, InternalServices.NLP_TOKENIZE, InternalServices.NLP_SSPLIT,
+            InternalServices.NLP_POS);
+
+    /**
+     * The number of rounds that are run before measuring, so the models are loaded and the JIT has warmed up
+     */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /**
+     * The number of rounds that are measured
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * The maximal allowed ratio between the CPU time of the battery profile and of the performance profile
+     */
+    private static final double MAX_CPU_TIME_RATIO = 1.2;
+
+    @BeforeClass
+    public static void initialize() throws NoSuchFieldException, IllegalAccessException {
+        // NLP is only done from API level 26
+        setSdkInt(Build.VERSION_CODES.O);
+    }
+
+    @AfterClass
+    public static void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        setSdkInt(Build.VERSION_CODES.LOLLIPOP_MR1);
+    }
+
+    @Test
+    public void ExecutionProfile_batteryShouldNotUseMoreCpuTimeThanPerformance() throws Exception {
+        LocalDocumentProcessor processor = new LocalDocumentProcessor(new InternalTextProcessor());
+        ExecutorService clients = Executors.newFixedThreadPool(DOCUMENTS.length);
+
+        Map<ExecutionProfile, Long> cpuTimes = new EnumMap<>(ExecutionProfile.class);
+        try {
+            for (ExecutionProfile profile : ExecutionProfile.values()) {
+                processor.setExecutionProfile(profile);
+
+                for (int round = 0; round < WARMUP_ROUNDS; round++) {
+                    processAll(processor, clients);
+                }
+
+                long cpuStart = getProcessCpuTime();
+                long start = System.nanoTime();
+                for (int round = 0; round < ROUNDS; round++) {
+                    processAll(processor, clients);
+                }
+                long time = System.nanoTime() - start;
+                long cpuTime = getProcessCpuTime() - cpuStart;
+                cpuTimes.put(profile, cpuTime);
+
+                int documents = ROUNDS * DOCUMENTS.length;
+                System.out.println(String.format(Locale.US,
+                        "%-12s %6.2f documents/s, %8.2f ms CPU per document (%d stage threads, %d documents at once)",
+                        profile, documents / (time / 1e9), cpuTime / 1e6 / documents, profile.getStageThreads(),
+                        profile.getMaxConcurrentDocuments()));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        Assert.assertTrue("The battery profile uses more CPU time than the performance profile",
+                cpuTimes.get(ExecutionProfile.BATTERY)
+                        < MAX_CPU_TIME_RATIO * cpuTimes.get(ExecutionProfile.PERFORMANCE));
+    }
+
+    /**
+     * Private helper method that processes all test documents at the same time, like several plugins asking for
+     * documents at once. The processor decides how many of them run at the same time.
+     *
+     * @param processor the processor that runs the internal services
+     * @param clients   the threads that hand the documents to the processor
+     * @throws Exception when a document could not be processed
+     */
+    private static void processAll(LocalDocumentProcessor processor, ExecutorService clients) throws Exception {
+        List<Future<?>> results = new ArrayList<>();
+        for (String document : DOCUMENTS) {
+            results.add(clients.submit(() -> {
+                try (InputStream file = new FileInputStream(DOCUMENTS_DIRECTORY + document)) {
+                    return processor.process(document, document, getType(document), file, SERVICES,
+                            new CancellationToken());
+                }
+            }));
+        }
+
+        for (Future<?> result : results) {
+            result.get();
+        }
+    }
+
+    /**
+     * Private helper method that gets the CPU time that all threads of the process used so far
+     *
+     * @return the CPU time in nanoseconds
+     */
+    private static long getProcessCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+                .getProcessCpuTime();
+    }
+
+    /**
+     * Private helper method that gets the type of a document from its extension
+     *
+     * @param document the name of the document
+     * @return the extension of the document
+     */
+    private static String getType(String document) {
+        return document.substring(document.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Private helper method that changes the API level the tests run on
+     *
+     * @param sdkInt the API level
+     * @throws NoSuchFieldException   when the field with the API level does not exist
+     * @throws IllegalAccessException when the field with the API level cannot be changed
+     */
+    private static void setSdkInt(int sdkInt) throws NoSuchFieldException, IllegalAccessException {
+        Field field = Build.VERSION.class.getField("SDK_INT");
+        field.setAccessible(true);
+
+        Field modifiersField = Field.class.getDeclaredField("modifiers");
+        modifiersField.setAccessible(true);
+        modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+
+        field.set(null, sdkInt);
+    }
+}
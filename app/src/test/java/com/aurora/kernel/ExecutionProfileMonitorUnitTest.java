@@ -0,0 +1,41 @@
+package com.aurora.kernel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExecutionProfileMonitorUnitTest {
+
+    private static final int COOL = 300;
+
+    @Test
+    public void ExecutionProfileMonitor_select_shouldUseBatteryProfileInPowerSaveMode() {
+        assertEquals(ExecutionProfile.BATTERY,
+                ExecutionProfileMonitor.select(ExecutionProfile.BALANCED, true, COOL, true));
+    }
+
+    @Test
+    public void ExecutionProfileMonitor_select_shouldUsePerformanceProfileWhenChargingAndCool() {
+        assertEquals(ExecutionProfile.PERFORMANCE,
+                ExecutionProfileMonitor.select(ExecutionProfile.BALANCED, false, COOL, true));
+        assertEquals(ExecutionProfile.BALANCED,
+                ExecutionProfileMonitor.select(ExecutionProfile.PERFORMANCE, false, COOL, false));
+        assertEquals(ExecutionProfile.BALANCED, ExecutionProfileMonitor.select(ExecutionProfile.PERFORMANCE, false,
+                ExecutionProfileMonitor.WARM_TEMPERATURE, true));
+    }
+
+    @Test
+    public void ExecutionProfileMonitor_select_shouldOnlyLeaveBatteryProfileWhenCooledDown() {
+        int between = (ExecutionProfileMonitor.COOL_TEMPERATURE + ExecutionProfileMonitor.HOT_TEMPERATURE) / 2;
+
+        assertEquals(ExecutionProfile.BATTERY, ExecutionProfileMonitor.select(ExecutionProfile.BALANCED, false,
+                ExecutionProfileMonitor.HOT_TEMPERATURE, false));
+        // Between the two temperatures the profile stays what it was
+        assertEquals(ExecutionProfile.BATTERY,
+                ExecutionProfileMonitor.select(ExecutionProfile.BATTERY, false, between, false));
+        assertEquals(ExecutionProfile.BALANCED,
+                ExecutionProfileMonitor.select(ExecutionProfile.BALANCED, false, between, false));
+        assertEquals(ExecutionProfile.BALANCED, ExecutionProfileMonitor.select(ExecutionProfile.BATTERY, false,
+                ExecutionProfileMonitor.COOL_TEMPERATURE - 1, false));
+    }
+}
@@ -0,0 +1,174 @@
+package com.aurora.kernel;
+
+import com.aurora.kernel.event.CorrelatedEvent;
+import com.aurora.kernel.event.Event;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderUnitTest {
+
+    @Test
+    public void FlightRecorder_writeChromeTrace_shouldContainPostsAndHandledEvents() throws IOException {
+        Bus bus = new Bus(Schedulers.trampoline());
+        Disposable disposable = bus.register(TestRequest.class).subscribe(event -> {
+        });
+
+        TestRequest request = new TestRequest();
+        bus.post(request);
+
+        JsonArray traceEvents = writeTrace(bus.getFlightRecorder());
+        assertEquals(2, traceEvents.size());
+
+        JsonObject post = traceEvents.get(0).getAsJsonObject();
+        assertEquals("TestRequest", post.get("name").getAsString());
+        assertEquals("i", post.get("ph").getAsString());
+        assertEquals(request.getCorrelationId(),
+                post.getAsJsonObject("args").get("correlationId").getAsLong());
+
+        JsonObject handled = traceEvents.get(1).getAsJsonObject();
+        assertEquals("X", handled.get("ph").getAsString());
+        assertNotNull(handled.get("dur"));
+
+        disposable.dispose();
+    }
+
+    @Test
+    public void FlightRecorder_shouldOnlyKeepLastRecords() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(3);
+
+        // The capacity is rounded up to 4
+        for (int i = 0; i < 10; i++) {
+            recorder.recordPost(new TestRequest());
+        }
+
+        assertEquals(4, writeTrace(recorder).size());
+    }
+
+    @Test
+    public void FlightRecorder_dump_shouldWriteTraceFileOnTrigger() throws IOException, InterruptedException {
+        File directory = Files.createTempDirectory("traces").toFile();
+        Bus bus = new Bus(Schedulers.trampoline());
+        bus.getFlightRecorder().setDumpDirectory(directory);
+        bus.getFlightRecorder().addDumpTrigger(ErrorEvent.class);
+
+        bus.post(new TestRequest());
+        bus.post(new ErrorEvent());
+
+        // The dump is written in the background
+        File[] files = directory.listFiles();
+        for (int i = 0; i < 100 && (files == null || files.length == 0); i++) {
+            Thread.sleep(10);
+            files = directory.listFiles();
+        }
+
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        try (Reader reader = new FileReader(files[0])) {
+            JsonObject trace = new JsonParser().parse(reader).getAsJsonObject();
+            assertEquals(2, trace.getAsJsonArray("traceEvents").size());
+        }
+
+        files[0].delete();
+        directory.delete();
+    }
+
+    @Test
+    public void FlightRecorder_writeChromeTrace_shouldKeepThreadOfFinishedThread()
+            throws IOException, InterruptedException {
+        FlightRecorder recorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
+        Thread thread = new Thread(() -> recorder.recordPost(new TestRequest()), "recording-thread");
+        thread.start();
+        thread.join();
+
+        JsonObject post = writeTrace(recorder).get(0).getAsJsonObject();
+        assertEquals(thread.getId(), post.get("tid").getAsLong());
+        assertEquals("recording-thread", post.getAsJsonObject("args").get("thread").getAsString());
+    }
+
+    @Test
+    public void FlightRecorder_writeChromeTrace_shouldNotWriteTornRecordsWhileRecording()
+            throws IOException, InterruptedException {
+        FlightRecorder recorder = new FlightRecorder(16);
+        AtomicBoolean stop = new AtomicBoolean();
+
+        // Every thread only posts events of its own class, so a record mixing two threads is torn
+        Thread requests = new Thread(() -> {
+            while (!stop.get()) {
+                recorder.recordPost(new TestRequest());
+            }
+        }, "TestRequest");
+        Thread errors = new Thread(() -> {
+            while (!stop.get()) {
+                recorder.recordPost(new ErrorEvent());
+            }
+        }, "ErrorEvent");
+        requests.start();
+        errors.start();
+
+        try {
+            for (int i = 0; i < 200; i++) {
+                for (JsonElement element : writeTrace(recorder)) {
+                    JsonObject event = element.getAsJsonObject();
+                    assertEquals(event.get("name").getAsString(),
+                            event.getAsJsonObject("args").get("thread").getAsString());
+                    long tid = event.get("tid").getAsLong();
+                    assertTrue(tid == requests.getId() || tid == errors.getId());
+                }
+            }
+        } finally {
+            stop.set(true);
+            requests.join();
+            errors.join();
+        }
+    }
+
+    @Test
+    public void FlightRecorder_dump_shouldNotWriteWithoutDirectory() {
+        assertNull(new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY).dump());
+    }
+
+    /**
+     * Private helper method that writes the trace of a recorder and parses it again
+     *
+     * @param recorder the recorder to write the trace of
+     * @return the trace events in the trace
+     * @throws IOException if writing the trace fails
+     */
+    private static JsonArray writeTrace(FlightRecorder recorder) throws IOException {
+        StringWriter writer = new StringWriter();
+        recorder.writeChromeTrace(writer);
+        return new JsonParser().parse(writer.toString()).getAsJsonObject().getAsJsonArray("traceEvents");
+    }
+
+    /**
+     * Test request class
+     */
+    private static class TestRequest extends CorrelatedEvent {
+    }
+
+    /**
+     * Test event class that reports an error
+     */
+    private static class ErrorEvent implements Event {
+    }
+}
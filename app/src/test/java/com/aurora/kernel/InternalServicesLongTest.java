@@ -0,0 +1,212 @@
+package com.aurora.kernel;
+
+import android.os.Build;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.internalservice.internalnlp.InternalNLP;
+import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
+import com.aurora.internalservice.internaltranslation.Translator;
+import com.aurora.kernel.event.InternalProcessorRequest;
+import com.aurora.kernel.event.InternalProcessorResponse;
+import com.aurora.plugin.InternalServices;
+import com.aurora.util.FakeRequestQueue;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Benchmark for running the internal services on the test documents. It compares the graph of stages in the
+ * PluginInternalServiceCommunicator with running the services one after the other, and reports the time of every
+ * stage.
+ */
+public class InternalServicesLongTest {
+
+    /**
+     * The test documents
+     */
+    private static final String[] DOCUMENTS = new String[]{"Pasta.txt", "Pasta.docx", "Banana Bread.docx",
+            "blueberry.docx", "Pasta.pdf"};
+
+    /**
+     * The directory with the test documents
+     */
+    private static final String DOCUMENTS_DIRECTORY = "src/test/res/";
+
+    /**
+     * The internal services that are run on every document
+     */
+    private static final List<InternalServices> SERVICES = Arrays.asList(InternalServices.TEXT_EXTRACTION,
+            InternalServices.IMAGE_EXTRACTION, InternalServices.NLP_TOKENIZE, InternalServices.NLP_SSPLIT,
+            InternalServices.NLP_POS);
+
+    /**
+     * The number of rounds that are run before measuring, so the models are loaded and the JIT has warmed up
+     */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /**
+     * The number of rounds that are measured
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * The maximal allowed ratio between the time of the graph and the time of running the services in sequence
+     */
+    private static final double MAX_TIME_RATIO = 1.2;
+
+    private static Bus sBus;
+    private static PluginInternalServiceCommunicator sCommunicator;
+
+    @BeforeClass
+    public static void initialize() throws NoSuchFieldException, IllegalAccessException {
+        // NLP is only done from API level 26
+        setSdkInt(Build.VERSION_CODES.O);
+
+        sBus = new Bus(Schedulers.trampoline());
+        sCommunicator = new PluginInternalServiceCommunicator(sBus, new InternalTextProcessor(),
+                new Translator(new FakeRequestQueue()));
+    }
+
+    @AfterClass
+    public static void tearDown() throws NoSuchFieldException, IllegalAccessException {
+        setSdkInt(Build.VERSION_CODES.LOLLIPOP_MR1);
+    }
+
+    @Test
+    public void InternalServices_graphShouldNotBeSlowerThanSequentialServices() throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (String document : DOCUMENTS) {
+                runSequential(document);
+                runGraph(document);
+            }
+        }
+
+        long totalSequential = 0;
+        long totalGraph = 0;
+        for (String document : DOCUMENTS) {
+            long sequential = 0;
+            long graph = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                sequential += runSequential(document);
+                graph += runGraph(document);
+            }
+
+            System.out.println(String.format(Locale.US, "%-20s sequential %8.2f ms, graph %8.2f ms %s",
+                    document, sequential / 1e6 / ROUNDS, graph / 1e6 / ROUNDS,
+                    formatTimings(sCommunicator.getLastStageTimings())));
+
+            totalSequential += sequential;
+            totalGraph += graph;
+        }
+
+        Assert.assertTrue("Running the services in a graph is slower than running them in sequence",
+                totalGraph < MAX_TIME_RATIO * totalSequential);
+    }
+
+    /**
+     * Runs the internal services on a document one after the other, like the communicator used to do
+     *
+     * @param document the name of the test document
+     * @return the time it took in nanoseconds
+     * @throws Exception when the document could not be processed
+     */
+    private static long runSequential(String document) throws Exception {
+        long start = System.nanoTime();
+
+        try (InputStream file = new FileInputStream(DOCUMENTS_DIRECTORY + document)) {
+            ExtractedText extractedText = new InternalTextProcessor().processFile(file, document, document,
+                    getType(document), true);
+
+            InternalNLP internalNLP = new InternalNLP();
+            internalNLP.addAnnotator(InternalServices.NLP_TOKENIZE);
+            internalNLP.addAnnotator(InternalServices.NLP_SSPLIT);
+            internalNLP.addAnnotator(InternalServices.NLP_POS);
+            internalNLP.annotate(extractedText);
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs the internal services on a document with the graph of stages in the communicator
+     *
+     * @param document the name of the test document
+     * @return the time it took in nanoseconds
+     * @throws Exception when the document could not be read
+     */
+    private static long runGraph(String document) throws Exception {
+        TestObserver<InternalProcessorResponse> testObserver =
+                sBus.register(InternalProcessorResponse.class).test();
+        long start = System.nanoTime();
+
+        try (InputStream file = new FileInputStream(DOCUMENTS_DIRECTORY + document)) {
+            sBus.post(new InternalProcessorRequest(document, document, getType(document), file, SERVICES));
+        }
+
+        long time = System.nanoTime() - start;
+        testObserver.assertValueCount(1);
+        testObserver.dispose();
+
+        return time;
+    }
+
+    /**
+     * Private helper method that gets the type of a document from its extension
+     *
+     * @param document the name of the document
+     * @return the extension of the document
+     */
+    private static String getType(String document) {
+        return document.substring(document.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Private helper method that formats the time of every stage
+     *
+     * @param timings the time every stage took in nanoseconds
+     * @return the names and times of the stages in milliseconds
+     */
+    private static String formatTimings(Map<String, Long> timings) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Map.Entry<String, Long> timing : timings.entrySet()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(String.format(Locale.US, "%s %.2f ms", timing.getKey(), timing.getValue() / 1e6));
+        }
+
+        return builder.append(')').toString();
+    }
+
+    /**
+     * Private helper method that changes the API level the tests run on
+     *
+     * @param sdkInt the API level
+     * @throws NoSuchFieldException   when the field with the API level does not exist
+     * @throws IllegalAccessException when the field with the API level cannot be changed
+     */
+    private static void setSdkInt(int sdkInt) throws NoSuchFieldException, IllegalAccessException {
+        Field field = Build.VERSION.class.getField("SDK_INT");
+        field.setAccessible(true);
+
+        Field modifiersField = Field.class.getDeclaredField("modifiers");
+        modifiersField.setAccessible(true);
+        modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
+
+        field.set(null, sdkInt);
+    }
+}
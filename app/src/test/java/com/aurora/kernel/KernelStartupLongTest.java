@@ -0,0 +1,189 @@
+package com.aurora.kernel;
+
+import com.aurora.internalservice.internalcache.CachedFileInfo;
+import com.aurora.kernel.event.QueryCacheRequest;
+import com.aurora.kernel.event.QueryCacheResponse;
+import com.aurora.util.MockContext;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the cold start of the kernel. It reports the time until the kernel hands out its communicators,
+ * which is what the first frame waits for, and the time until the list of cached files arrives. Only the second
+ * one should grow with the number of cached files.
+ */
+public class KernelStartupLongTest {
+
+    /**
+     * The name of the registry of cached files, as used by the internal cache
+     */
+    private static final String CACHE_REGISTRY = "cached-files.json";
+
+    /**
+     * The name of the plugin that the cached files were processed with
+     */
+    private static final String PLUGIN_NAME = "com.aurora.benchmarkplugin";
+
+    /**
+     * The maximum time the kernel may take to hand out its communicators once its classes are loaded, regardless
+     * of the size of the cache
+     */
+    private static final long MAX_FIRST_FRAME_MILLIS = 100;
+
+    /**
+     * The maximum time to wait for the list of cached files
+     */
+    private static final long CACHE_LIST_TIMEOUT_SECONDS = 60;
+
+    /**
+     * The directory in which the caches of the benchmark are created
+     */
+    private static File sRoot;
+
+    @BeforeClass
+    public static void createRoot() throws IOException {
+        sRoot = File.createTempFile("kernel-startup", "");
+        Assert.assertTrue(sRoot.delete() && sRoot.mkdir());
+    }
+
+    @AfterClass
+    public static void deleteRoot() {
+        delete(sRoot);
+    }
+
+    @Test
+    public void Kernel_initialize_firstFrameShouldNotWaitForTheCache() throws IOException {
+        int[] cacheSizes = new int[]{10, 1_000, 10_000};
+
+        // Start once with an empty cache, so loading the classes of the kernel is not measured
+        File emptyDir = new File(sRoot, "empty");
+        Assert.assertTrue(emptyDir.mkdir());
+        Kernel.initialize(new FilesDirContext(emptyDir)).whenReady().blockingAwait();
+
+        for (int cacheSize : cacheSizes) {
+            File filesDir = new File(sRoot, "cache-" + cacheSize);
+            Assert.assertTrue(filesDir.mkdir());
+            createCache(filesDir, cacheSize);
+
+            // Time to first frame: the activity can draw as soon as it has the communicators
+            long start = System.nanoTime();
+            Kernel kernel = Kernel.initialize(new FilesDirContext(filesDir));
+            long firstFrame = System.nanoTime() - start;
+
+            // Time to cache list: the list of recently opened files is the first thing the user sees
+            Bus bus = kernel.getAuroraCommunicator().mBus;
+            List<CachedFileInfo> cachedFiles = bus.request(new QueryCacheRequest(0), QueryCacheResponse.class,
+                    CACHE_LIST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .map(QueryCacheResponse::getResults)
+                    .blockingGet();
+            long cacheList = System.nanoTime() - start;
+
+            kernel.whenReady().blockingAwait();
+
+            System.out.println(String.format(Locale.US,
+                    "%6d cached files: first frame %8.2f ms, cache list %8.2f ms",
+                    cacheSize, firstFrame / 1e6, cacheList / 1e6));
+
+            Assert.assertEquals(cacheSize, cachedFiles.size());
+            Assert.assertTrue("The first frame waits for the cache to load",
+                    TimeUnit.NANOSECONDS.toMillis(firstFrame) < MAX_FIRST_FRAME_MILLIS);
+        }
+    }
+
+    /**
+     * Writes a cache registry with a given number of entries, and a cached file for each of them
+     *
+     * @param filesDir the directory in which the cache is created
+     * @param size     the number of cached files
+     * @throws IOException when the cache could not be written
+     */
+    private static void createCache(File filesDir, int size) throws IOException {
+        Gson gson = new Gson();
+
+        try (JsonWriter writer = new JsonWriter(new FileWriter(new File(filesDir, CACHE_REGISTRY)))) {
+            writer.beginArray();
+            writer.beginObject();
+            writer.name("uniquePluginName").value(PLUGIN_NAME);
+            writer.name("cachedFileRefs").beginArray();
+
+            for (int i = 0; i < size; i++) {
+                CachedFileInfo info = new CachedFileInfo("file" + i + ".txt", PLUGIN_NAME, new Date(i * 1000L));
+                gson.toJson(info, CachedFileInfo.class, writer);
+
+                try (FileWriter cachedFile = new FileWriter(new File(filesDir, "file" + i + "_benchmarkplugin.aur"))) {
+                    cachedFile.write("{}");
+                }
+            }
+
+            writer.endArray();
+            writer.endObject();
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Deletes a file, or a directory with everything in it
+     *
+     * @param file the file or directory to delete
+     */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * Context of which the files directory is a real directory, so the kernel reads the cache like on a device
+     */
+    private static class FilesDirContext extends MockContext {
+
+        /**
+         * The directory in which the files of the app are kept
+         */
+        private final File mFilesDir;
+
+        /**
+         * Creates a context with a given files directory
+         *
+         * @param filesDir the directory in which the files of the app are kept
+         */
+        FilesDirContext(File filesDir) {
+            mFilesDir = filesDir;
+        }
+
+        @Override
+        public File getFilesDir() {
+            return mFilesDir;
+        }
+
+        @Override
+        public File getCacheDir() {
+            return mFilesDir;
+        }
+
+        @Override
+        public FileInputStream openFileInput(String name) throws FileNotFoundException {
+            return new FileInputStream(new File(mFilesDir, name));
+        }
+    }
+}
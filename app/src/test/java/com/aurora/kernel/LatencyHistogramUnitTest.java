@@ -0,0 +1,56 @@
+package com.aurora.kernel;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramUnitTest {
+
+    @Test
+    public void LatencyHistogram_empty_shouldReportZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean(TimeUnit.NANOSECONDS));
+        assertEquals(0, histogram.getValueAtPercentile(99, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void LatencyHistogram_record_shouldBeExactForSmallValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(5, histogram.getValueAtPercentile(50, TimeUnit.NANOSECONDS));
+        assertEquals(10, histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS));
+        assertEquals(10, histogram.getMax(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void LatencyHistogram_getValueAtPercentile_shouldStayWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long millis = 1; millis <= 1000; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        long p90 = histogram.getValueAtPercentile(90, TimeUnit.MILLISECONDS);
+        assertTrue("p90 was " + p90, p90 >= 900 && p90 <= 900 * 1.125);
+        assertEquals(1000, histogram.getMax(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void LatencyHistogram_record_shouldHandleExtremeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50, TimeUnit.NANOSECONDS));
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100, TimeUnit.NANOSECONDS));
+    }
+}
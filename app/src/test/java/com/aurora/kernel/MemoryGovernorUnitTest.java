@@ -0,0 +1,89 @@
+package com.aurora.kernel;
+
+import android.content.ComponentCallbacks2;
+
+import com.aurora.kernel.event.MemoryPressureEvent;
+import com.aurora.kernel.event.MemoryPressureEvent.Degradation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+
+public class MemoryGovernorUnitTest {
+
+    private Bus mBus;
+
+    private TestObserver<MemoryPressureEvent> mEvents;
+
+    @Before
+    public void initialize() {
+        mBus = new Bus(Schedulers.trampoline());
+        mEvents = new TestObserver<>();
+        mBus.register(MemoryPressureEvent.class).subscribe(mEvents);
+    }
+
+    @Test
+    public void MemoryGovernor_getDegradation_shouldMapTrimLevelsInOrder() {
+        assertEquals(Degradation.DROP_CACHES,
+                MemoryGovernor.getDegradation(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE));
+        assertEquals(Degradation.UNLOAD_NLP_MODELS,
+                MemoryGovernor.getDegradation(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(Degradation.STREAM_RESULTS,
+                MemoryGovernor.getDegradation(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL));
+        assertEquals(Degradation.DROP_CACHES,
+                MemoryGovernor.getDegradation(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(Degradation.UNLOAD_NLP_MODELS,
+                MemoryGovernor.getDegradation(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+    }
+
+    @Test
+    public void MemoryGovernor_onTrimMemory_shouldOnlyPostWhenMoreWorkIsShed() {
+        MemoryGovernor governor = new MemoryGovernor(mBus);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+        // A lower level does not undo the degradation
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE);
+        governor.onLowMemory();
+
+        List<MemoryPressureEvent> events = mEvents.values();
+        assertEquals(2, events.size());
+        assertEquals(Degradation.UNLOAD_NLP_MODELS, events.get(0).getDegradation());
+        assertEquals("trim level " + ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW, events.get(0).getReason());
+        assertEquals(Degradation.STREAM_RESULTS, events.get(1).getDegradation());
+        assertEquals(Degradation.STREAM_RESULTS, governor.onHeapUsage(0.1));
+    }
+
+    @Test
+    public void MemoryGovernor_onHeapUsage_shouldDegradeAtWatermarks() {
+        MemoryGovernor governor = new MemoryGovernor(mBus);
+
+        assertEquals(Degradation.NONE, governor.onHeapUsage(0.3));
+        // A heap that is more than half full is normal while a document is processed
+        assertEquals(Degradation.NONE, governor.onHeapUsage(0.6));
+        assertEquals(Degradation.IMAGE_THUMBNAILS, governor.onHeapUsage(0.87));
+        assertEquals(Degradation.SKIP_IMAGES, governor.onHeapUsage(0.92));
+
+        List<MemoryPressureEvent> events = mEvents.values();
+        assertEquals(2, events.size());
+        assertEquals("heap 87% used", events.get(0).getReason());
+        assertEquals(Degradation.SKIP_IMAGES, events.get(1).getDegradation());
+    }
+
+    @Test
+    public void MemoryGovernor_onHeapUsage_shouldRecoverWhenPressureIsOver() {
+        MemoryGovernor governor = new MemoryGovernor(mBus, 0);
+
+        governor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+        assertEquals(Degradation.NONE, governor.onHeapUsage(0.2));
+
+        List<MemoryPressureEvent> events = mEvents.values();
+        assertEquals(2, events.size());
+        assertEquals(Degradation.NONE, events.get(1).getDegradation());
+    }
+}
@@ -4,12 +4,19 @@ import android.os.Build;
 
 import com.aurora.auroralib.ExtractedText;
 import com.aurora.auroralib.Section;
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.ProcessingPhase;
 import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
 import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
 import com.aurora.internalservice.internalprocessor.InternalTextProcessor;
+import com.aurora.internalservice.internalprocessor.PreviewListener;
 import com.aurora.internalservice.internaltranslation.Translator;
+import com.aurora.kernel.event.DocumentNotSupportedEvent;
+import com.aurora.kernel.event.Event;
+import com.aurora.kernel.event.ExecutionProfileChangedEvent;
 import com.aurora.kernel.event.InternalProcessorRequest;
 import com.aurora.kernel.event.InternalProcessorResponse;
+import com.aurora.kernel.event.ProcessingProgressEvent;
 import com.aurora.plugin.InternalServices;
 import com.aurora.plugin.Plugin;
 import com.aurora.util.FakeRequestQueue;
@@ -29,7 +36,11 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.AnnotationPipeline;
@@ -37,6 +48,7 @@ import edu.stanford.nlp.pipeline.POSTaggerAnnotator;
 import edu.stanford.nlp.pipeline.TokenizerAnnotator;
 import edu.stanford.nlp.pipeline.WordsToSentencesAnnotator;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.Schedulers;
 
@@ -117,6 +129,22 @@ public class PluginInternalServiceCommunicatorUnitTest {
         testObserver.dispose();
     }
 
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldNotRespondWhenCancelled() {
+        // Listen for internal processor response
+        TestObserver<InternalProcessorResponse> testObserver =
+                mBus.register(InternalProcessorResponse.class).test();
+
+        // Cancel the request before it is processed
+        InternalProcessorRequest request = new InternalProcessorRequest(mFileUri, mFileRef, mFileType, mInputStream,
+                Plugin.getDefaultInternalServices());
+        request.getCancellationToken().cancel();
+        mBus.post(request);
+
+        testObserver.assertNoValues();
+        testObserver.dispose();
+    }
+
     @Test
     public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldDoNLPWhenAsked()
     throws IllegalAccessException, NoSuchFieldException{
@@ -220,7 +248,303 @@ public class PluginInternalServiceCommunicatorUnitTest {
         testObserver.dispose();
     }
 
+    @Test
+    public void PluginInternalServiceCommunicator_extendWithInternalServices_shouldReuseExtractedText() {
+        TestObserver<ExtractedText> testObserver = mBus.register(InternalProcessorResponse.class)
+                .map(InternalProcessorResponse::getExtractedText)
+                .test();
+
+        // Create request to run NLP on a text that was already extracted, NLP is skipped below API level 26
+        ExtractedText extractedText = new ExtractedText(mFileUri, mTitle, mParagraphs);
+        InternalProcessorRequest request = new InternalProcessorRequest(mFileUri, mFileRef, extractedText,
+                Collections.singletonList(InternalServices.NLP_TOKENIZE));
+        mBus.post(request);
+
+        // Assert that the text itself was passed on instead of a text extracted from the file
+        testObserver.assertValueCount(1);
+        Assert.assertSame(extractedText, testObserver.values().get(0));
+
+        testObserver.dispose();
+    }
+
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldPostProgress() {
+        // A communicator that really extracts the file
+        Bus bus = new Bus(Schedulers.trampoline());
+        PluginInternalServiceCommunicator communicator = new PluginInternalServiceCommunicator(bus,
+                new InternalTextProcessor(), new Translator(new FakeRequestQueue()));
+
+        TestObserver<ProcessingProgressEvent> progressObserver = bus.register(ProcessingProgressEvent.class).test();
+        TestObserver<InternalProcessorResponse> responseObserver =
+                bus.register(InternalProcessorResponse.class).test();
+
+        InternalProcessorRequest request = new InternalProcessorRequest(mFileUri, mFileRef, mFileType, mInputStream,
+                Collections.singletonList(InternalServices.TEXT_EXTRACTION));
+        bus.post(request);
+
+        // The bytes are read and then the paragraphs are split, the last event says all paragraphs are done
+        responseObserver.assertValueCount(1);
+        List<ProcessingProgressEvent> events = progressObserver.values();
+        Assert.assertFalse(events.isEmpty());
+        Assert.assertEquals(ProcessingPhase.READING, events.get(0).getPhase());
+        ProcessingProgressEvent last = events.get(events.size() - 1);
+        Assert.assertEquals(ProcessingPhase.PARAGRAPHS, last.getPhase());
+        Assert.assertEquals(last.getTotal(), last.getDone());
+        for (ProcessingProgressEvent event : events) {
+            Assert.assertEquals(request.getCorrelationId(), event.getCorrelationId());
+            Assert.assertEquals(mFileUri, event.getFileUri());
+        }
+
+        // The same reports are used to measure the phases
+        Assert.assertTrue(communicator.getLastPhaseTimings().containsKey(ProcessingPhase.READING));
+
+        progressObserver.dispose();
+        responseObserver.dispose();
+    }
+
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldReportFailedProcessor() {
+        // A document processor that fails like one of which the process died
+        Bus bus = new Bus(Schedulers.trampoline());
+        new PluginInternalServiceCommunicator(bus, new FailingDocumentProcessor(),
+                Single.just(new Translator(new FakeRequestQueue())));
+
+        TestObserver<InternalProcessorResponse> responseObserver =
+                bus.register(InternalProcessorResponse.class).test();
+        TestObserver<DocumentNotSupportedEvent> notSupportedObserver =
+                bus.register(DocumentNotSupportedEvent.class).test();
+
+        InternalProcessorRequest request = new InternalProcessorRequest(mFileUri, mFileRef, mFileType, mInputStream,
+                Plugin.getDefaultInternalServices());
+        bus.post(request);
+
+        responseObserver.assertNoValues();
+        notSupportedObserver.assertValueCount(1);
+        Assert.assertEquals(request.getCorrelationId(), notSupportedObserver.values().get(0).getCorrelationId());
+        Assert.assertEquals(FailingDocumentProcessor.REASON, notSupportedObserver.values().get(0).getReason());
+
+        responseObserver.dispose();
+        notSupportedObserver.dispose();
+    }
+
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldQueueDocumentsOverProfile()
+            throws InterruptedException {
+        // The balanced profile processes one document at a time
+        Bus bus = new Bus(Schedulers.io());
+        BlockingDocumentProcessor processor = new BlockingDocumentProcessor();
+        new PluginInternalServiceCommunicator(bus, processor, Single.just(new Translator(new FakeRequestQueue())));
+        TestObserver<InternalProcessorResponse> responseObserver =
+                bus.register(InternalProcessorResponse.class).test();
+
+        bus.post(new InternalProcessorRequest(mFileUri, "first", mFileType, mInputStream,
+                Plugin.getDefaultInternalServices()));
+        bus.post(new InternalProcessorRequest(mFileUri, "second", mFileType, mInputStream,
+                Plugin.getDefaultInternalServices()));
+        Assert.assertTrue(processor.awaitStarted(1));
+
+        // The second document waits in the queue of the communicator, not on a thread of the bus
+        Thread.sleep(100);
+        Assert.assertEquals(Collections.singletonList("first"), processor.getStarted());
+        Assert.assertEquals(0, bus.getQueueDepth(InternalProcessorRequest.class));
+
+        // A profile that allows more documents starts the waiting one while the first is still running
+        bus.post(new ExecutionProfileChangedEvent(ExecutionProfile.PERFORMANCE, "charging"));
+        Assert.assertTrue(processor.awaitStarted(2));
+        Assert.assertEquals(Arrays.asList("first", "second"), processor.getStarted());
+
+        processor.release();
+        responseObserver.awaitCount(2);
+        responseObserver.assertValueCount(2);
+        responseObserver.dispose();
+    }
+
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldNotHoldTheBusThreads()
+            throws InterruptedException {
+        // A single thread delivers the events, like the computation pool of a device in battery mode
+        PriorityScheduler busScheduler = new PriorityScheduler(1, "test-bus");
+        PriorityScheduler documentScheduler = new PriorityScheduler(1, "test-documents");
+        try {
+            Bus bus = new Bus(busScheduler);
+            bus.setPriority(InteractiveEvent.class, Priority.INTERACTIVE);
+            BlockingDocumentProcessor processor = new BlockingDocumentProcessor();
+            new PluginInternalServiceCommunicator(bus, processor, Single.just(new Translator(new FakeRequestQueue())),
+                    new MemoryGovernor(bus), documentScheduler);
+            TestObserver<InteractiveEvent> interactiveObserver = bus.register(InteractiveEvent.class).test();
+
+            bus.post(new InternalProcessorRequest(mFileUri, "first", mFileType, mInputStream,
+                    Plugin.getDefaultInternalServices()));
+            Assert.assertTrue(processor.awaitStarted(1));
+
+            // The event the user waits for is delivered while the document is still running
+            bus.post(new InteractiveEvent());
+            interactiveObserver.awaitCount(1);
+            interactiveObserver.assertValueCount(1);
+
+            processor.release();
+            interactiveObserver.dispose();
+        } finally {
+            busScheduler.shutdown();
+            documentScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void PluginInternalServiceCommunicator_processFileWithInternalProcessor_shouldDropCancelledWaitingDocument()
+            throws InterruptedException {
+        Bus bus = new Bus(Schedulers.io());
+        BlockingDocumentProcessor processor = new BlockingDocumentProcessor();
+        new PluginInternalServiceCommunicator(bus, processor, Single.just(new Translator(new FakeRequestQueue())));
+        TestObserver<InternalProcessorResponse> responseObserver =
+                bus.register(InternalProcessorResponse.class).test();
+
+        bus.post(new InternalProcessorRequest(mFileUri, "first", mFileType, mInputStream,
+                Plugin.getDefaultInternalServices()));
+        Assert.assertTrue(processor.awaitStarted(1));
+        InternalProcessorRequest cancelled = new InternalProcessorRequest(mFileUri, "cancelled", mFileType,
+                mInputStream, Plugin.getDefaultInternalServices());
+        bus.post(cancelled);
+        cancelled.getCancellationToken().cancel();
+        bus.post(new InternalProcessorRequest(mFileUri, "third", mFileType, mInputStream,
+                Plugin.getDefaultInternalServices()));
+
+        processor.release();
+        responseObserver.awaitCount(2);
+        Assert.assertEquals(Arrays.asList("first", "third"), processor.getStarted());
+        responseObserver.dispose();
+    }
+
+    /**
+     * Test event class with a high priority
+     */
+    private static class InteractiveEvent implements Event {
+    }
+
+    /**
+     * Private document processor for testing purposes, that keeps every document busy until it is released
+     */
+    private static class BlockingDocumentProcessor implements DocumentProcessor {
+
+        /**
+         * The names of the files of the documents that were started, in the order they started
+         */
+        private final List<String> mStarted = new CopyOnWriteArrayList<>();
+
+        /**
+         * Released when the documents may finish
+         */
+        private final CountDownLatch mRelease = new CountDownLatch(1);
+
+        /**
+         * Waits until a number of documents have started
+         *
+         * @param count the number of documents
+         * @return true if they started within a second
+         * @throws InterruptedException when the test is interrupted
+         */
+        boolean awaitStarted(final int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 1000;
+            while (mStarted.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            return mStarted.size() >= count;
+        }
+
+        /**
+         * @return the names of the files of the documents that were started
+         */
+        List<String> getStarted() {
+            return mStarted;
+        }
+
+        /**
+         * Lets every document that is running or still starts finish
+         */
+        void release() {
+            mRelease.countDown();
+        }
+
+        @Override
+        public ExtractedText process(String fileUri, String fileRef, String type, InputStream file,
+                                     List<InternalServices> internalServices, CancellationToken cancellationToken) {
+            mStarted.add(fileRef);
+            try {
+                mRelease.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return new ExtractedText(fileUri, fileRef);
+        }
+
+        @Override
+        public ExtractedText process(String fileUri, String fileRef, String type, InputStream file,
+                                     List<InternalServices> internalServices, int previewSections,
+                                     PreviewListener previewListener, CancellationToken cancellationToken) {
+            return process(fileUri, fileRef, type, file, internalServices, cancellationToken);
+        }
+
+        @Override
+        public ExtractedText extend(String fileRef, ExtractedText extractedText,
+                                    List<InternalServices> internalServices, CancellationToken cancellationToken) {
+            return extractedText;
+        }
+
+        @Override
+        public void setExecutionProfile(ExecutionProfile profile) {
+            // The communicator decides how many documents run at the same time
+        }
+
+        @Override
+        public Map<String, Long> getLastStageTimings() {
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Private document processor for testing purposes, that fails on every document
+     */
+    private static class FailingDocumentProcessor implements DocumentProcessor {
+
+        /**
+         * The reason with which every document fails
+         */
+        private static final String REASON = "The document is too large or complex to process";
+
+        @Override
+        public ExtractedText process(String fileUri, String fileRef, String type, InputStream file,
+                                     List<InternalServices> internalServices, CancellationToken cancellationToken)
+                throws DocumentNotSupportedException {
+            throw new DocumentNotSupportedException(REASON);
+        }
+
+        @Override
+        public ExtractedText process(String fileUri, String fileRef, String type, InputStream file,
+                                     List<InternalServices> internalServices, int previewSections,
+                                     PreviewListener previewListener, CancellationToken cancellationToken)
+                throws DocumentNotSupportedException {
+            throw new DocumentNotSupportedException(REASON);
+        }
+
+        @Override
+        public ExtractedText extend(String fileRef, ExtractedText extractedText,
+                                    List<InternalServices> internalServices, CancellationToken cancellationToken)
+                throws DocumentNotSupportedException {
+            throw new DocumentNotSupportedException(REASON);
+        }
+
+        @Override
+        public void setExecutionProfile(ExecutionProfile profile) {
+            // Every document fails regardless of the profile
+        }
 
+        @Override
+        public Map<String, Long> getLastStageTimings() {
+            return Collections.emptyMap();
+        }
+    }
 
     /**
      * Private dummy processing class for testing purposes.
@@ -234,14 +558,16 @@ public class PluginInternalServiceCommunicatorUnitTest {
          * @param fileUri the uri of the file
          * @param fileRef the name of the file
          * @param extractImages boolean indicating whether or not to extract images
+         * @param cancellationToken token to stop the extraction early
          * @return dummy extracted text
          * @throws FileTypeNotSupportedException thrown when a file with an unsupported extension is opened
          */
         @Override
         public ExtractedText processFile(InputStream file, String fileUri, String fileRef, String type,
-                                         boolean extractImages) throws FileTypeNotSupportedException, DocumentNotSupportedException {
+                                         boolean extractImages, CancellationToken cancellationToken)
+                throws FileTypeNotSupportedException, DocumentNotSupportedException {
             // Just return the dummy extracted text
-            mExtractedText = super.processFile(file, fileUri, fileRef, type, extractImages);
+            mExtractedText = super.processFile(file, fileUri, fileRef, type, extractImages, cancellationToken);
             return mExtractedText;
         }
     }
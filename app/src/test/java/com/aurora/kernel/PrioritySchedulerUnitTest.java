@@ -0,0 +1,156 @@
+package com.aurora.kernel;
+
+import com.aurora.kernel.event.Event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrioritySchedulerUnitTest {
+
+    private PriorityScheduler mScheduler;
+
+    @Before
+    public void initialize() {
+        // A single thread makes the order in which tasks run predictable
+        mScheduler = new PriorityScheduler(1, "test");
+    }
+
+    @After
+    public void tearDown() {
+        mScheduler.shutdown();
+    }
+
+    @Test
+    public void PriorityScheduler_shouldRunInteractiveTasksFirst() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // Keep the only thread busy, so the other tasks have to wait
+        mScheduler.scheduleDirect(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        mScheduler.lane(Priority.BACKGROUND).scheduleDirect(() -> {
+            order.add("background");
+            done.countDown();
+        });
+        mScheduler.lane(Priority.NORMAL).scheduleDirect(() -> {
+            order.add("normal");
+            done.countDown();
+        });
+        mScheduler.lane(Priority.INTERACTIVE).scheduleDirect(() -> {
+            order.add("interactive 1");
+            done.countDown();
+        });
+        mScheduler.lane(Priority.INTERACTIVE).scheduleDirect(() -> {
+            order.add("interactive 2");
+            done.countDown();
+        });
+
+        blocker.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        assertEquals("interactive 1", order.get(0));
+        assertEquals("interactive 2", order.get(1));
+        assertEquals("normal", order.get(2));
+        assertEquals("background", order.get(3));
+    }
+
+    @Test
+    public void PriorityScheduler_setThreads_shouldRunTasksOnTheExtraThreads() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Keep the only thread busy
+        mScheduler.scheduleDirect(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        mScheduler.setThreads(2);
+        mScheduler.scheduleDirect(done::countDown);
+
+        // The second task runs while the first thread is still busy
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, mScheduler.getThreads());
+        blocker.countDown();
+    }
+
+    @Test
+    public void PriorityScheduler_shouldKeepWaitTimeStatisticsPerLane() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(2);
+        mScheduler.lane(Priority.INTERACTIVE).scheduleDirect(done::countDown);
+        mScheduler.lane(Priority.INTERACTIVE).scheduleDirect(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        assertEquals(2, mScheduler.getStatistics(Priority.INTERACTIVE).getCount());
+        assertEquals(0, mScheduler.getStatistics(Priority.BACKGROUND).getCount());
+    }
+
+    @Test
+    public void PriorityScheduler_getLaneReport_shouldHaveLinePerLane() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        mScheduler.lane(Priority.INTERACTIVE).scheduleDirect(done::countDown);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        String report = mScheduler.getLaneReport();
+        assertTrue(report.contains("Lane test/interactive: count=1 "));
+        assertTrue(report.contains("Lane test/background: count=0 "));
+        assertEquals(Priority.values().length, report.split("\n").length);
+    }
+
+    @Test
+    public void Bus_register_shouldHandleEventsInLaneOfTheirClass() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocker = new CountDownLatch(1);
+
+        // Keep the only thread busy, so subscribing and posting are handled by one and the same task
+        mScheduler.lane(Priority.BACKGROUND).scheduleDirect(() -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        Bus bus = new Bus(mScheduler);
+        bus.setPriority(InteractiveEvent.class, Priority.INTERACTIVE);
+
+        TestObserver<InteractiveEvent> testObserver = bus.register(InteractiveEvent.class).test();
+        bus.post(new InteractiveEvent());
+        blocker.countDown();
+
+        testObserver.awaitCount(1);
+        testObserver.assertValueCount(1);
+        assertEquals(1, mScheduler.getStatistics(Priority.INTERACTIVE).getCount());
+        assertEquals(0, mScheduler.getStatistics(Priority.NORMAL).getCount());
+        testObserver.dispose();
+    }
+
+    /**
+     * Test event class with a high priority
+     */
+    private class InteractiveEvent implements Event {
+    }
+}
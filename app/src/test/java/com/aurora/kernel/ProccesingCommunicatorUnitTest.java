@@ -13,9 +13,11 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.observers.TestObserver;
 import io.reactivex.schedulers.Schedulers;
 
 public class ProccesingCommunicatorUnitTest {
@@ -44,10 +46,15 @@ public class ProccesingCommunicatorUnitTest {
 
         // Subscribe to observable to return response
         Disposable disposable = cacheFileRequestObservable
-                .subscribe(cacheFileRequest -> sBus.post(new CacheFileResponse(true)));
+                .subscribe(cacheFileRequest -> {
+                    CacheFileResponse response = new CacheFileResponse(true);
+                    response.setCorrelationId(cacheFileRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
 
-        int resultCode = sProcessingCommunicator.cacheFile(fileRef, pluginObject, uniquePluginName);
+        int resultCode = sProcessingCommunicator.cacheFile(fileRef, pluginObject, uniquePluginName)
+                .blockingGet();
 
         Assert.assertEquals(CacheResults.CACHE_SUCCESS, resultCode);
 
@@ -66,10 +73,15 @@ public class ProccesingCommunicatorUnitTest {
 
         // Subscribe to observable to return response
         Disposable disposable = cacheFileRequestObservable
-                .subscribe(cacheFileRequest -> sBus.post(new CacheFileResponse(false)));
+                .subscribe(cacheFileRequest -> {
+                    CacheFileResponse response = new CacheFileResponse(false);
+                    response.setCorrelationId(cacheFileRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
         // Call method under test
-        int resultCode = sProcessingCommunicator.cacheFile(fileRef, pluginObject, uniquePluginName);
+        int resultCode = sProcessingCommunicator.cacheFile(fileRef, pluginObject, uniquePluginName)
+                .blockingGet();
 
         Assert.assertEquals(CacheResults.CACHE_FAIL, resultCode);
 
@@ -91,12 +103,16 @@ public class ProccesingCommunicatorUnitTest {
 
         // Subscribe to observable to return response
         Disposable disposable = translationRequestObservable
-                .subscribe(translationRequest -> sBus.post(new TranslationResponse(
-                        new String[]{"Hallo wereld!", "Dit is een test."})));
+                .subscribe(translationRequest -> {
+                    TranslationResponse response = new TranslationResponse(
+                            new String[]{"Hallo wereld!", "Dit is een test."});
+                    response.setCorrelationId(translationRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
         // Call method under test
         List<String> translatedSentences = sProcessingCommunicator.translateSentences(sentencesToTranslate,
-                sourceLanguage, destinationLanguage);
+                sourceLanguage, destinationLanguage).blockingGet();
         Assert.assertEquals(translatedSentences.size(), 2);
         Assert.assertEquals(translatedSentences.get(0), "Hallo wereld!");
         Assert.assertEquals(translatedSentences.get(1), "Dit is een test.");
@@ -117,14 +133,73 @@ public class ProccesingCommunicatorUnitTest {
 
         // Subscribe to observable to return response
         Disposable disposable = translationRequestObservable
-                .subscribe(translationRequest -> sBus.post(new TranslationResponse(
-                        new String[]{})));
+                .subscribe(translationRequest -> {
+                    TranslationResponse response = new TranslationResponse(new String[]{});
+                    response.setCorrelationId(translationRequest.getCorrelationId());
+                    sBus.post(response);
+                });
 
         // Call method under test
         List<String> translatedSentences = sProcessingCommunicator.translateSentences(sentencesToTranslate,
-                sourceLanguage, destinationLanguage);
+                sourceLanguage, destinationLanguage).blockingGet();
         Assert.assertEquals(translatedSentences.size(), 0);
         disposable.dispose();
 
     }
+
+    @Test
+    public void ProcessingCommunicator_translate_shouldNotLeaveSubscriptionsBehind() {
+        // Respond to every translation request
+        Disposable disposable = sBus.register(TranslationRequest.class)
+                .subscribe(translationRequest -> {
+                    TranslationResponse response = new TranslationResponse(new String[]{"Hallo"});
+                    response.setCorrelationId(translationRequest.getCorrelationId());
+                    sBus.post(response);
+                });
+
+        // Translate many times
+        for (int i = 0; i < 2 * SubscriptionTracker.LEAK_THRESHOLD; i++) {
+            sProcessingCommunicator.translateSentences(Arrays.asList("Hello"), "en", "nl").blockingGet();
+        }
+
+        // Every subscription for a response has ended
+        Assert.assertEquals(0, sBus.getSubscriptionTracker().getLiveSubscriptions(TranslationResponse.class));
+        Assert.assertEquals("", sBus.getSubscriptionTracker().getLeakReport());
+        disposable.dispose();
+    }
+
+    @Test
+    public void ProcessingCommunicator_cacheFile_concurrentRequestsShouldEachGetTheirOwnResponse() {
+        // Collect the requests without responding yet
+        List<CacheFileRequest> requests = new CopyOnWriteArrayList<>();
+        Disposable disposable = sBus.register(CacheFileRequest.class).subscribe(requests::add);
+
+        // Start caching two files at the same time, as two plugins would
+        TestObserver<Integer> firstObserver = sProcessingCommunicator.cacheFile("first", "{}",
+                "com.aurora.firstplugin").test();
+        TestObserver<Integer> secondObserver = sProcessingCommunicator.cacheFile("second", "{}",
+                "com.aurora.secondplugin").test();
+
+        // Wait until both requests came in
+        long deadline = System.currentTimeMillis() + 5000;
+        while (requests.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        Assert.assertEquals(2, requests.size());
+
+        // Fail the first file and succeed the second one, in the reverse order the requests came in
+        for (int i = requests.size() - 1; i >= 0; i--) {
+            CacheFileRequest request = requests.get(i);
+            CacheFileResponse response = new CacheFileResponse("second".equals(request.getFileRef()));
+            response.setCorrelationId(request.getCorrelationId());
+            sBus.post(response);
+        }
+
+        firstObserver.awaitTerminalEvent();
+        secondObserver.awaitTerminalEvent();
+        firstObserver.assertValue(CacheResults.CACHE_FAIL);
+        secondObserver.assertValue(CacheResults.CACHE_SUCCESS);
+
+        disposable.dispose();
+    }
 }
@@ -0,0 +1,197 @@
+package com.aurora.kernel;
+
+import com.aurora.auroralib.ExtractedText;
+import com.aurora.plugin.InternalServices;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ProcessingJobQueueUnitTest {
+
+    private static final String FILE_URI = "content://dummy/file.docx";
+    private static final String PLUGIN_NAME = "com.aurora.dummyplugin";
+    private static final List<InternalServices> SERVICES = Arrays.asList(InternalServices.TEXT_EXTRACTION,
+            InternalServices.IMAGE_EXTRACTION);
+
+    private File mDirectory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        mDirectory = File.createTempFile("processing-jobs", "");
+        Assert.assertTrue(mDirectory.delete() && mDirectory.mkdir());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] results = new File(mDirectory, ProcessingJobQueue.RESULTS_DIRECTORY).listFiles();
+        if (results != null) {
+            for (File result : results) {
+                result.delete();
+            }
+        }
+        new File(mDirectory, ProcessingJobQueue.RESULTS_DIRECTORY).delete();
+        new File(mDirectory, ProcessingJobQueue.JOBS_FILE).delete();
+        mDirectory.delete();
+    }
+
+    @Test
+    public void ProcessingJobQueue_add_shouldCoalesceJobsThatDoTheSameWork() {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+
+        ProcessingJob first = queue.add(createJob(FILE_URI, SERVICES, false));
+        // The same services in another order do the same work
+        ProcessingJob second = queue.add(createJob(FILE_URI, Arrays.asList(InternalServices.IMAGE_EXTRACTION,
+                InternalServices.TEXT_EXTRACTION), false));
+        ProcessingJob otherServices = queue.add(createJob(FILE_URI,
+                Collections.singletonList(InternalServices.TEXT_EXTRACTION), false));
+        ProcessingJob otherFile = queue.add(createJob("content://dummy/other.docx", SERVICES, false));
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, otherServices);
+        Assert.assertNotSame(first, otherFile);
+        Assert.assertEquals(3, queue.getPendingJobs(false).size());
+    }
+
+    @Test
+    public void ProcessingJobQueue_shouldKeepJobsWhenReopened() {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        ProcessingJob interactive = queue.add(createJob(FILE_URI, SERVICES, true));
+        queue.add(createJob("content://dummy/other.docx", SERVICES, false));
+
+        // A new queue on the same directory is what the app sees after the process was killed
+        ProcessingJobQueue reopened = new ProcessingJobQueue(mDirectory);
+        List<ProcessingJob> pending = reopened.getPendingJobs(true);
+
+        Assert.assertEquals(1, pending.size());
+        Assert.assertEquals(interactive.getId(), pending.get(0).getId());
+        Assert.assertEquals(FILE_URI, pending.get(0).getFileUri());
+        Assert.assertEquals(PLUGIN_NAME, pending.get(0).getUniquePluginName());
+        Assert.assertEquals(SERVICES, pending.get(0).getInternalServices());
+        Assert.assertEquals(1, reopened.getPendingJobs(false).size());
+    }
+
+    @Test
+    public void ProcessingJobQueue_markReady_shouldKeepTheExtractedTextUntilTheJobIsRemoved() throws IOException {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        ProcessingJob job = queue.add(createJob(FILE_URI, SERVICES, false));
+        ExtractedText extractedText = new ExtractedText(FILE_URI, "file.docx", Arrays.asList("First", "Second"));
+
+        queue.markReady(job, extractedText);
+
+        ProcessingJobQueue reopened = new ProcessingJobQueue(mDirectory);
+        Assert.assertTrue(reopened.getPendingJobs(false).isEmpty());
+        ProcessingJob ready = reopened.findReady(FILE_URI, SERVICES);
+        Assert.assertNotNull(ready);
+        Assert.assertEquals(extractedText, reopened.readResult(ready));
+
+        reopened.remove(ready);
+        Assert.assertNull(reopened.findReady(FILE_URI, SERVICES));
+        Assert.assertFalse(new File(ready.getResultPath()).exists());
+    }
+
+    @Test
+    public void ProcessingJobQueue_markReady_shouldWriteTheExtractedTextAsUtf8() throws IOException {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        ProcessingJob job = queue.add(createJob(FILE_URI, SERVICES, false));
+        ExtractedText extractedText = new ExtractedText(FILE_URI, "file.docx",
+                Collections.singletonList("Cr\u00e8me br\u00fbl\u00e9e \u65e5\u672c"));
+
+        queue.markReady(job, extractedText);
+
+        // The result is read back the same whatever the default charset of the device is
+        ProcessingJob ready = queue.findReady(FILE_URI, SERVICES);
+        Assert.assertNotNull(ready);
+        String json = new String(Files.readAllBytes(new File(ready.getResultPath()).toPath()),
+                StandardCharsets.UTF_8);
+        Assert.assertTrue(json.contains("Cr\u00e8me br\u00fbl\u00e9e \u65e5\u672c"));
+        Assert.assertEquals(extractedText, queue.readResult(ready));
+    }
+
+    @Test
+    public void ProcessingJobQueue_markReady_shouldDropTheTextOfARemovedJob() throws IOException {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        ProcessingJob job = queue.add(createJob(FILE_URI, SERVICES, false));
+        queue.remove(job);
+
+        queue.markReady(job, new ExtractedText(FILE_URI, "file.docx"));
+
+        Assert.assertNull(queue.findReady(FILE_URI, SERVICES));
+        String[] results = new File(mDirectory, ProcessingJobQueue.RESULTS_DIRECTORY).list();
+        Assert.assertNotNull(results);
+        Assert.assertEquals(0, results.length);
+    }
+
+    @Test
+    public void ProcessingJobQueue_evictResults_shouldEvictOldResults() throws IOException {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        ProcessingJob old = queue.add(createJob(FILE_URI, SERVICES, false));
+        ProcessingJob recent = queue.add(createJob("content://dummy/other.docx", SERVICES, false));
+        queue.markReady(old, new ExtractedText(FILE_URI, "file.docx"));
+        queue.markReady(recent, new ExtractedText("content://dummy/other.docx", "other.docx"));
+
+        File oldResult = new File(queue.findReady(FILE_URI, SERVICES).getResultPath());
+        long twoWeeksAgo = System.currentTimeMillis() - 2 * ProcessingJobQueue.MAX_RESULT_AGE_MILLIS;
+        Assert.assertTrue(oldResult.setLastModified(twoWeeksAgo));
+
+        // Call method under test
+        queue.evictResults();
+
+        Assert.assertNull(queue.findReady(FILE_URI, SERVICES));
+        Assert.assertFalse(oldResult.exists());
+        Assert.assertNotNull(new ProcessingJobQueue(mDirectory).findReady("content://dummy/other.docx", SERVICES));
+    }
+
+    @Test
+    public void ProcessingJobQueue_evictResults_shouldEvictOldestResultsWhenTooLarge() throws IOException {
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        List<String> fileUris = Arrays.asList(FILE_URI, "content://dummy/second.docx", "content://dummy/third.docx");
+        long modified = System.currentTimeMillis() - fileUris.size() * 1000;
+        for (String fileUri : fileUris) {
+            ProcessingJob job = queue.add(createJob(fileUri, SERVICES, false));
+            queue.markReady(job, new ExtractedText(fileUri, "file.docx", Collections.singletonList("Text")));
+            Assert.assertTrue(new File(queue.findReady(fileUri, SERVICES).getResultPath())
+                    .setLastModified(modified));
+            modified += 1000;
+        }
+        long resultBytes = new File(queue.findReady(FILE_URI, SERVICES).getResultPath()).length();
+
+        // Call method under test, with room for two results
+        queue.evictResults(ProcessingJobQueue.MAX_RESULT_AGE_MILLIS, 2 * resultBytes + resultBytes / 2);
+
+        Assert.assertNull(queue.findReady(FILE_URI, SERVICES));
+        Assert.assertNotNull(queue.findReady(fileUris.get(1), SERVICES));
+        Assert.assertNotNull(queue.findReady(fileUris.get(2), SERVICES));
+        Assert.assertEquals(2, new File(mDirectory, ProcessingJobQueue.RESULTS_DIRECTORY).list().length);
+    }
+
+    @Test
+    public void ProcessingJobQueue_shouldStartEmptyWhenTheJobsFileIsCorrupt() throws IOException {
+        // A jobs file that was cut off halfway
+        try (FileWriter writer = new FileWriter(new File(mDirectory, ProcessingJobQueue.JOBS_FILE))) {
+            writer.write("[{\"mId\":\"1234\",\"mFileUri\":");
+        }
+
+        ProcessingJobQueue queue = new ProcessingJobQueue(mDirectory);
+        Assert.assertTrue(queue.getPendingJobs(false).isEmpty());
+
+        ProcessingJob job = queue.add(createJob(FILE_URI, SERVICES, false));
+        ProcessingJobQueue reopened = new ProcessingJobQueue(mDirectory);
+        Assert.assertEquals(job.getId(), reopened.getPendingJobs(false).get(0).getId());
+        Assert.assertArrayEquals(new String[]{ProcessingJobQueue.JOBS_FILE}, mDirectory.list());
+    }
+
+    private static ProcessingJob createJob(String fileUri, List<InternalServices> services, boolean interactive) {
+        return new ProcessingJob(fileUri, "file.docx", "docx", PLUGIN_NAME, services, interactive);
+    }
+}
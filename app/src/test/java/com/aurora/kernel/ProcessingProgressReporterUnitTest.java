@@ -0,0 +1,92 @@
+package com.aurora.kernel;
+
+import com.aurora.internalservice.ProcessingPhase;
+import com.aurora.kernel.event.ProcessingProgressEvent;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingProgressReporterUnitTest {
+
+    private static final String FILE_URI = "dummyFileUri";
+    private static final String FILE_REF = "dummyFileRef";
+    private static final long CORRELATION_ID = 42;
+
+    @Test
+    public void ProcessingProgressReporter_onProgress_shouldThrottleEventsOfTheSamePhase() {
+        Bus bus = new Bus(Schedulers.trampoline());
+        TestObserver<ProcessingProgressEvent> observer = bus.register(ProcessingProgressEvent.class).test();
+        ProcessingProgressReporter reporter = new ProcessingProgressReporter(bus, FILE_URI, FILE_REF, CORRELATION_ID);
+
+        reporter.onPhaseStarted(ProcessingPhase.READING);
+        for (int i = 1; i <= 1000; i++) {
+            reporter.onProgress(ProcessingPhase.READING, i * 1024L, -1);
+        }
+
+        // The start of the phase is always posted, the bytes read only now and then
+        assertTrue(observer.valueCount() >= 1);
+        assertTrue("Posted " + observer.valueCount() + " events", observer.valueCount() < 100);
+        ProcessingProgressEvent first = observer.values().get(0);
+        assertEquals(ProcessingPhase.READING, first.getPhase());
+        assertEquals(CORRELATION_ID, first.getCorrelationId());
+        assertEquals(FILE_URI, first.getFileUri());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void ProcessingProgressReporter_onProgress_shouldAlwaysPostWhenPhaseIsDone() {
+        Bus bus = new Bus(Schedulers.trampoline());
+        TestObserver<ProcessingProgressEvent> observer = bus.register(ProcessingProgressEvent.class).test();
+        ProcessingProgressReporter reporter = new ProcessingProgressReporter(bus, FILE_URI, FILE_REF, CORRELATION_ID);
+
+        reporter.onPhaseStarted(ProcessingPhase.PARAGRAPHS);
+        for (int i = 1; i <= 10; i++) {
+            reporter.onProgress(ProcessingPhase.PARAGRAPHS, i, 10);
+        }
+
+        ProcessingProgressEvent last = observer.values().get(observer.valueCount() - 1);
+        assertEquals(ProcessingPhase.PARAGRAPHS, last.getPhase());
+        assertTrue(last.isDeterminate());
+        assertEquals(10, last.getDone());
+        assertEquals(10, last.getTotal());
+
+        observer.dispose();
+    }
+
+    @Test
+    public void ProcessingProgressReporter_getPhaseTimings_shouldChargeTimeToTheRightPhase()
+            throws InterruptedException {
+        Bus bus = new Bus(Schedulers.trampoline());
+        ProcessingProgressReporter reporter = new ProcessingProgressReporter(bus, FILE_URI, FILE_REF, CORRELATION_ID);
+
+        // Reading takes 20 ms, the time until the next phase starts is still spent on reading
+        reporter.onPhaseStarted(ProcessingPhase.READING);
+        Thread.sleep(10);
+        reporter.onProgress(ProcessingPhase.READING, 100, -1);
+        Thread.sleep(10);
+        reporter.onPhaseStarted(ProcessingPhase.PAGES);
+
+        // The pages take 20 ms, after which the phase is done and the thread waits
+        Thread.sleep(20);
+        reporter.onProgress(ProcessingPhase.PAGES, 2, 2);
+        Thread.sleep(50);
+        reporter.onPhaseStarted(ProcessingPhase.ANNOTATION);
+
+        Map<ProcessingPhase, Long> timings = reporter.getPhaseTimings();
+        long reading = TimeUnit.NANOSECONDS.toMillis(timings.get(ProcessingPhase.READING));
+        long pages = TimeUnit.NANOSECONDS.toMillis(timings.get(ProcessingPhase.PAGES));
+        assertTrue("Reading took " + reading + " ms", reading >= 20 && reading < 50);
+        assertTrue("Pages took " + pages + " ms", pages >= 20 && pages < 50);
+        assertFalse(timings.containsKey(ProcessingPhase.ANNOTATION));
+    }
+}
@@ -0,0 +1,165 @@
+package com.aurora.kernel;
+
+import com.aurora.internalservice.CancellationToken;
+import com.aurora.internalservice.internalprocessor.DocumentNotSupportedException;
+import com.aurora.internalservice.internalprocessor.FileTypeNotSupportedException;
+import com.aurora.plugin.InternalServices;
+import com.aurora.plugin.ServiceArtifact;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.schedulers.Schedulers;
+
+public class ServiceGraphUnitTest {
+
+    @Test
+    public void ServiceGraph_execute_shouldRunStagesAfterTheStagesTheyReadFrom() throws Exception {
+        ServiceGraph graph = new ServiceGraph();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION),
+                () -> order.add("extraction"));
+        graph.addStage("tokenize", Collections.singletonList(InternalServices.NLP_TOKENIZE),
+                () -> order.add("tokenize"));
+        graph.addStage("ssplit", Collections.singletonList(InternalServices.NLP_SSPLIT),
+                () -> order.add("ssplit"));
+
+        graph.execute(Schedulers.newThread(), new CancellationToken());
+
+        Assert.assertEquals(Arrays.asList("extraction", "tokenize", "ssplit"), order);
+    }
+
+    @Test
+    public void ServiceGraph_execute_shouldRunIndependentStagesAtTheSameTime() throws Exception {
+        ServiceGraph graph = new ServiceGraph();
+
+        // Both stages only finish when the other one has started, which only works when they run at the same time
+        CountDownLatch started = new CountDownLatch(2);
+        ServiceGraph.Stage waitForOther = () -> {
+            started.countDown();
+            try {
+                Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION), waitForOther);
+        graph.addStage("models", Collections.emptyList(), waitForOther);
+
+        graph.execute(Schedulers.newThread(), new CancellationToken());
+
+        Assert.assertEquals(0, started.getCount());
+    }
+
+    @Test
+    public void ServiceGraph_execute_shouldWaitForExplicitDependencies() throws Exception {
+        ServiceGraph graph = new ServiceGraph();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION),
+                () -> order.add("extraction"));
+        ServiceGraph.Node models = graph.addStage("models", Collections.emptyList(), () -> {
+            sleep(50);
+            order.add("models");
+        });
+        graph.addStage("annotation", Collections.singletonList(InternalServices.NLP_TOKENIZE),
+                () -> order.add("annotation"), models);
+
+        graph.execute(Schedulers.newThread(), new CancellationToken());
+
+        Assert.assertEquals(3, order.size());
+        Assert.assertEquals("annotation", order.get(2));
+    }
+
+    @Test
+    public void ServiceGraph_execute_shouldReportTheTimeOfEveryStage() throws Exception {
+        ServiceGraph graph = new ServiceGraph();
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION),
+                () -> sleep(20));
+        graph.addStage("tokenize", Collections.singletonList(InternalServices.NLP_TOKENIZE), () -> {
+        });
+
+        Map<String, Long> timings = graph.execute(Schedulers.newThread(), new CancellationToken());
+
+        Assert.assertEquals(Arrays.asList("extraction", "tokenize"), Arrays.asList(timings.keySet().toArray()));
+        Assert.assertTrue(timings.get("extraction") >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void ServiceGraph_execute_shouldThrowTheErrorOfAFailedStage() {
+        ServiceGraph graph = new ServiceGraph();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION), () -> {
+            throw new DocumentNotSupportedException("Broken document");
+        });
+        graph.addStage("tokenize", Collections.singletonList(InternalServices.NLP_TOKENIZE),
+                () -> order.add("tokenize"));
+
+        try {
+            graph.execute(Schedulers.newThread(), new CancellationToken());
+            Assert.fail("The error of the extraction should be thrown");
+        } catch (DocumentNotSupportedException e) {
+            Assert.assertEquals("Broken document", e.getMessage());
+        } catch (FileTypeNotSupportedException e) {
+            Assert.fail("The error of the extraction should be thrown");
+        }
+
+        // The stage that depends on the failed stage never ran
+        Assert.assertTrue(order.isEmpty());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void ServiceGraph_execute_shouldStopWhenCancelled() throws Exception {
+        ServiceGraph graph = new ServiceGraph();
+        CancellationToken cancellationToken = new CancellationToken();
+        cancellationToken.cancel();
+
+        graph.addStage("extraction", Collections.singletonList(InternalServices.TEXT_EXTRACTION), () ->
+                Assert.fail("Stages should not start when the token is cancelled"));
+
+        graph.execute(Schedulers.newThread(), cancellationToken);
+    }
+
+    @Test
+    public void ServiceGraph_addStage_shouldRejectServicesOfWhichTheInputsAreNotProduced() {
+        ServiceGraph graph = new ServiceGraph();
+
+        // Nothing extracts the text that has to be tokenized
+        Assert.assertEquals(Collections.singleton(ServiceArtifact.TEXT),
+                graph.getMissingInputs(Collections.singletonList(InternalServices.NLP_TOKENIZE)));
+
+        try {
+            graph.addStage("tokenize", Collections.singletonList(InternalServices.NLP_TOKENIZE), () -> {
+            });
+            Assert.fail("Tokenizing without text extraction should not be possible");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("TEXT"));
+        }
+    }
+
+    /**
+     * Private helper method that keeps a stage busy for some time
+     *
+     * @param millis the time to sleep in milliseconds
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -40,6 +40,13 @@ public final class Constants {
      */
     public static final String PLUGIN_INPUT_TYPE_OBJECT = "PLUGIN_INPUT_TYPE_OBJECT";
 
+    /**
+     * Key used for a boolean Intent Extra that is true when the ExtractedText only holds the title
+     * and the first sections of the file. The whole file follows in a new intent, which is
+     * delivered to the same activity.
+     */
+    public static final String PLUGIN_INPUT_PREVIEW = "PLUGIN_INPUT_PREVIEW";
+
     /**
      * Intent Action used to indicate that a plugin failed
      */
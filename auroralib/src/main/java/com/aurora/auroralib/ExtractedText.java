@@ -343,6 +343,16 @@ public class ExtractedText implements Serializable {
         return gson.toJson(this);
     }
 
+    /**
+     * Writes the extracted text as JSON to a writer, without building the whole JSON string in memory first.
+     *
+     * @param writer the writer to which the JSON is written
+     */
+    public void writeJSON(@NonNull final Appendable writer) {
+        Gson gson = new Gson();
+        gson.toJson(this, writer);
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -51,6 +51,33 @@ public abstract class PluginActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Handles the whole file that Aurora sends after the preview of a long file, by processing it
+     * and representing it again in place of the preview.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+
+        if (mProcessorCommunicator != null) {
+            callProcessIntent(intent);
+
+            representPluginObject();
+        }
+    }
+
+    /**
+     * @return true if the intent that started this activity only holds the title and the first
+     * sections of the file, in which case the whole file follows in {@link #onNewIntent(Intent)}
+     */
+    protected boolean isPreview() {
+        return getIntent() != null
+                && getIntent().getBooleanExtra(Constants.PLUGIN_INPUT_PREVIEW, false);
+    }
+
     /**
      * Processes the intent that started this activity
      *